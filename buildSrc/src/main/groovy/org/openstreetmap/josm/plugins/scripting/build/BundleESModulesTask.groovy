@@ -0,0 +1,63 @@
+package org.openstreetmap.josm.plugins.scripting.build
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputDirectory
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+
+/**
+ * Bundles the ES modules reachable from a list of entry modules into a single,
+ * pre-linked module. See {@link ESModuleBundler}.
+ */
+@SuppressWarnings('unused')
+abstract class BundleESModulesTask extends DefaultTask {
+
+    /**
+     * The root directory of the ES modules
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    abstract DirectoryProperty getSourceDir()
+
+    /**
+     * The IDs of the entry modules, i.e. <code>josm</code>
+     */
+    @Input
+    abstract ListProperty<String> getEntryPoints()
+
+    /**
+     * The name of the bundle file
+     */
+    @Input
+    abstract Property<String> getBundleFileName()
+
+    /**
+     * The directory where the bundle, the stubs for the bundled modules, and
+     * the remaining modules are written to
+     */
+    @OutputDirectory
+    abstract DirectoryProperty getOutputDir()
+
+    BundleESModulesTask() {
+        bundleFileName.convention(ESModuleBundler.DEFAULT_BUNDLE_FILE_NAME)
+    }
+
+    @TaskAction
+    def bundle() {
+        final outputDir = this.outputDir.get().asFile
+        outputDir.deleteDir()
+        final bundler = new ESModuleBundler(
+            sourceDir.get().asFile,
+            entryPoints.get(),
+            bundleFileName.get()
+        )
+        final modules = bundler.bundle(outputDir)
+        logger.info("Bundled ES modules ${modules*.id} into '${new File(outputDir, bundleFileName.get())}'")
+    }
+}
@@ -0,0 +1,540 @@
+package org.openstreetmap.josm.plugins.scripting.build
+
+import org.gradle.api.GradleException
+
+import java.util.regex.Pattern
+
+/**
+ * Bundles a tree of ES modules into a single, pre-linked module.
+ * <p>
+ * Starting from a list of entry modules, the bundler collects all modules which are
+ * imported directly or indirectly (tree-shaking on the module level). It writes
+ * <ul>
+ *    <li>a bundle file with the code of the collected modules. Each module is
+ *    wrapped in a function which replies a frozen namespace object with the
+ *    module exports. The modules are evaluated in the same order as the ES
+ *    module loader would evaluate them, and imports are replaced by references
+ *    to the namespace objects of the imported modules.</li>
+ *    <li>for each collected module, a small stub module at the original location,
+ *    which re-exports the module from the bundle. Scripts can therefore still
+ *    import individual modules, i.e. <code>josm/util</code>, and share the module
+ *    instances with the bundle.</li>
+ *    <li>a verbatim copy of every other module in the tree. These modules are
+ *    loaded individually, as before.</li>
+ * </ul>
+ * The bundler doesn't parse JavaScript. It only supports the module syntax used in
+ * the JOSM scripting API and fails with a {@link GradleException} on anything else,
+ * i.e. on <code>export {a, b}</code> or on exports with destructuring patterns.
+ * Import and export declarations must be the first statement on a line. Comments,
+ * and string, template and regular expression literals are masked before the
+ * declarations are matched, see {@link #mask(String)}.
+ * <p>
+ * The namespace object of a bundled module holds the values of the exports at
+ * the end of the module evaluation. It can't hold live bindings. The bundler
+ * therefore rejects <code>export let</code> and <code>export var</code>. Exported
+ * functions and classes must not be assigned to.
+ */
+class ESModuleBundler {
+
+    static final String DEFAULT_BUNDLE_FILE_NAME = "josm-api-bundle.mjs"
+
+    static private final List<String> SUFFIXES = ["", ".mjs", ".js"]
+    static private final String IDENTIFIER = /[A-Za-z_$][\w$]*/
+
+    static private final Pattern IMPORT_DECLARATION = ~/(?ms)^[ \t]*import\s+(?:(\S[^'"]*?)\s+from\s+)?['"]([^'"]+)['"][ \t]*;?/
+    static private final Pattern EXPORT_ALL_DECLARATION = ~/(?m)^[ \t]*export\s*\*\s*from\s*['"]([^'"]+)['"][ \t]*;?/
+    static private final Pattern EXPORT_DEFAULT_IDENTIFIER = ~/(?m)^[ \t]*export\s+default\s+(${IDENTIFIER})[ \t]*;?[ \t]*$/
+    static private final Pattern EXPORT_DEFAULT_DECLARATION = ~/(?m)^[ \t]*export\s+default\s+((?:async\s+)?function\s*\*?\s*|class\s+)(${IDENTIFIER})/
+    static private final Pattern EXPORT_DECLARATION = ~/(?m)^[ \t]*export\s+((?:async\s+)?function\s*\*?\s*|class\s+|(?:const|let|var)\s+)(${IDENTIFIER})(?=\s*[(={]|\s+extends\b|\s*$)/
+    static private final Pattern ANY_EXPORT = ~/(?m)^[ \t]*export\b.*$/
+
+    // keywords after which a '/' starts a regular expression literal
+    static private final Set<String> KEYWORDS_BEFORE_EXPRESSION = Set.of(
+        "return", "typeof", "instanceof", "in", "of", "new", "delete", "void",
+        "throw", "case", "do", "else", "yield", "await"
+    )
+
+    /**
+     * A binding created by an import declaration.
+     */
+    static class ImportBinding {
+        /** the imported name, 'default', or '*' for the namespace */
+        final String imported
+        /** the local name */
+        final String local
+
+        ImportBinding(final String imported, final String local) {
+            this.imported = imported
+            this.local = local
+        }
+    }
+
+    /**
+     * An import declaration in a module.
+     */
+    static class ImportDeclaration {
+        final String specifier
+        final List<ImportBinding> bindings
+        Module module
+
+        ImportDeclaration(final String specifier, final List<ImportBinding> bindings) {
+            this.specifier = specifier
+            this.bindings = bindings
+        }
+    }
+
+    /**
+     * A module in the module tree.
+     */
+    static class Module {
+        /** the module ID, i.e. 'josm/util' */
+        final String id
+        final File file
+        final List<ImportDeclaration> imports = []
+        final List<Module> exportAllFrom = []
+        final List<String> ownExports = []
+        String defaultExport
+        String body
+
+        Module(final String id, final File file) {
+            this.id = id
+            this.file = file
+        }
+
+        /**
+         * Replies the names exported by this module, excluding 'default'.
+         */
+        Set<String> getExportedNames() {
+            final names = new LinkedHashSet<String>(ownExports)
+            exportAllFrom.each {names.addAll(it.exportedNames)}
+            return names
+        }
+
+        boolean hasDefaultExport() {
+            return defaultExport != null
+        }
+
+        String getNamespaceVariable() {
+            return "__module_" + id.replaceAll(/[^\w$]/, "_")
+        }
+    }
+
+    final File sourceDir
+    final List<String> entryPoints
+    final String bundleFileName
+
+    private final Map<String, Module> modules = [:]
+
+    /**
+     * Creates a bundler.
+     *
+     * @param sourceDir the root directory of the module tree
+     * @param entryPoints the IDs of the entry modules, relative to <code>sourceDir</code>, i.e. 'josm'
+     * @param bundleFileName the name of the bundle file, created in the root of the output directory
+     */
+    ESModuleBundler(final File sourceDir, final List<String> entryPoints,
+                    final String bundleFileName = DEFAULT_BUNDLE_FILE_NAME) {
+        this.sourceDir = sourceDir.canonicalFile
+        this.entryPoints = List.copyOf(entryPoints)
+        this.bundleFileName = bundleFileName
+    }
+
+    static private String normalize(final List<String> segments) {
+        final normalized = new LinkedList<String>()
+        for (final segment in segments) {
+            if (segment == "" || segment == ".") {
+                continue
+            }
+            if (segment == "..") {
+                if (normalized.isEmpty()) {
+                    return null
+                }
+                normalized.removeLast()
+            } else {
+                normalized.add(segment)
+            }
+        }
+        return normalized.join("/")
+    }
+
+    private Module resolve(final String specifier, final Module importer) {
+        def path
+        if (specifier.startsWith("./") || specifier.startsWith("../")) {
+            final segments = importer.id.split("/").toList()
+            segments.removeLast()
+            path = normalize(segments + specifier.split("/").toList())
+        } else {
+            path = normalize(specifier.split("/").toList())
+        }
+        if (path == null) {
+            throw new GradleException("Module '${importer?.id}': import '$specifier' refers to a module outside of '$sourceDir'")
+        }
+        final file = SUFFIXES
+            .collect {new File(sourceDir, path + it)}
+            .find {it.isFile()}
+        if (file == null) {
+            throw new GradleException("Module '${importer?.id}': can't resolve import '$specifier' in '$sourceDir'")
+        }
+        final id = sourceDir.toPath().relativize(file.canonicalFile.toPath()).toString()
+            .replace(File.separatorChar, '/' as char)
+            .replaceFirst(/\.m?js$/, "")
+        return modules.computeIfAbsent(id) {new Module(id, file)}
+    }
+
+    static private List<ImportBinding> parseImportClause(final String clause, final Module module) {
+        if (clause == null) {
+            return []
+        }
+        final bindings = []
+        def rest = clause.trim()
+        final defaultMatcher = rest =~ /^(${IDENTIFIER})\s*(?:,\s*|$)/
+        if (defaultMatcher.find()) {
+            bindings << new ImportBinding("default", defaultMatcher.group(1))
+            rest = rest.substring(defaultMatcher.end()).trim()
+        }
+        if (rest.isEmpty()) {
+            return bindings
+        }
+        final namespaceMatcher = rest =~ /^\*\s*as\s+(${IDENTIFIER})$/
+        if (namespaceMatcher.matches()) {
+            bindings << new ImportBinding("*", namespaceMatcher.group(1))
+            return bindings
+        }
+        final namedMatcher = rest =~ /(?s)^\{(.*)}$/
+        if (!namedMatcher.matches()) {
+            throw new GradleException("Module '${module.id}': unsupported import clause '$clause'")
+        }
+        namedMatcher.group(1).split(",")
+            .collect {it.trim()}
+            .findAll {!it.isEmpty()}
+            .each {specifier ->
+                final m = specifier =~ /^(${IDENTIFIER})(?:\s+as\s+(${IDENTIFIER}))?$/
+                if (!m.matches()) {
+                    throw new GradleException("Module '${module.id}': unsupported import specifier '$specifier'")
+                }
+                bindings << new ImportBinding(m.group(1), m.group(2) ?: m.group(1))
+            }
+        return bindings
+    }
+
+    // replaces a declaration by blank lines, so that the line numbers in the bundle
+    // stay aligned with the module source
+    static private String blank(final String declaration) {
+        return "\n" * declaration.count("\n")
+    }
+
+    // replaces the characters in [from, to) by blanks, except line breaks
+    static private void blankRange(final StringBuilder masked, final int from, final int to) {
+        for (int i = from; i < Math.min(to, masked.length()); i++) {
+            if (masked.charAt(i) != '\n' as char) {
+                masked.setCharAt(i, ' ' as char)
+            }
+        }
+    }
+
+    // replies the index after the content of a template literal starting at 'from',
+    // i.e. the index of the closing '`' or of the '${' starting a substitution
+    static private int skipTemplate(final String source, final int from) {
+        int i = from
+        while (i < source.length()) {
+            final c = source[i]
+            if (c == "\\") {
+                i += 2
+            } else if (c == "`" || source.startsWith('${', i)) {
+                return i
+            } else {
+                i++
+            }
+        }
+        return source.length()
+    }
+
+    /**
+     * Replies a copy of <code>source</code> in which comments, and the content of string,
+     * template and regular expression literals, are replaced by blanks. Line breaks are
+     * kept and the copy has the same length as the source, so that a declaration found
+     * in the copy is at the same position in the source.
+     * <p>
+     * The code in the substitutions of template literals isn't blanked. A '/' starts a regular
+     * expression literal, if it can't be a division, i.e. after an operator, an opening
+     * bracket, or a keyword like <code>return</code>.
+     */
+    static String mask(final String source) {
+        final masked = new StringBuilder(source)
+        // for each template substitution the scanner is in, the brace depth at which it started
+        final substitutions = new ArrayDeque<Integer>()
+        int braces = 0
+        boolean regexAllowed = true
+        int i = 0
+        final n = source.length()
+        while (i < n) {
+            final c = source[i]
+            if (source.startsWith("//", i)) {
+                final end = source.indexOf("\n", i)
+                final to = end < 0 ? n : end
+                blankRange(masked, i, to)
+                i = to
+            } else if (source.startsWith("/*", i)) {
+                final end = source.indexOf("*/", i + 2)
+                final to = end < 0 ? n : end + 2
+                blankRange(masked, i, to)
+                i = to
+            } else if (c == "'" || c == '"') {
+                int j = i + 1
+                while (j < n && source[j] != c && source[j] != "\n") {
+                    j += source[j] == "\\" ? 2 : 1
+                }
+                blankRange(masked, i + 1, j)
+                i = j + 1
+                regexAllowed = false
+            } else if (c == "`" || (c == "}" && !substitutions.isEmpty() && substitutions.peek() == braces)) {
+                if (c == "}") {
+                    substitutions.pop()
+                }
+                final j = skipTemplate(source, i + 1)
+                blankRange(masked, i + 1, j)
+                if (j < n && source[j] == '$') {
+                    // the code in the substitution is scanned like any other code
+                    substitutions.push(braces)
+                    i = j + 2
+                    regexAllowed = true
+                } else {
+                    i = j + 1
+                    regexAllowed = false
+                }
+            } else if (c == "/" && regexAllowed) {
+                int j = i + 1
+                boolean inClass = false
+                while (j < n && source[j] != "\n" && (inClass || source[j] != "/")) {
+                    if (source[j] == "\\") {
+                        j++
+                    } else if (source[j] == "[") {
+                        inClass = true
+                    } else if (source[j] == "]") {
+                        inClass = false
+                    }
+                    j++
+                }
+                blankRange(masked, i + 1, j)
+                i = j + 1
+                regexAllowed = false
+            } else if (Character.isJavaIdentifierPart(c as char)) {
+                int j = i
+                while (j < n && Character.isJavaIdentifierPart(source[j] as char)) {
+                    j++
+                }
+                regexAllowed = KEYWORDS_BEFORE_EXPRESSION.contains(source.substring(i, j))
+                i = j
+            } else {
+                if (c == "{") {
+                    braces++
+                } else if (c == "}") {
+                    braces--
+                }
+                if (!Character.isWhitespace(c as char)) {
+                    regexAllowed = c != ")" && c != "]"
+                }
+                i++
+            }
+        }
+        return masked.toString()
+    }
+
+    /**
+     * Replaces the matches of <code>pattern</code> in the masked copy of <code>source</code>.
+     * The groups passed to <code>replacement</code> are taken from the source.
+     */
+    static private String replaceDeclarations(final String source, final Pattern pattern,
+                                              final Closure<String> replacement) {
+        final matcher = pattern.matcher(mask(source))
+        final result = new StringBuilder()
+        int last = 0
+        while (matcher.find()) {
+            final groups = (0..matcher.groupCount()).collect {
+                matcher.start(it) < 0 ? null : source.substring(matcher.start(it), matcher.end(it))
+            }
+            result.append(source, last, matcher.start())
+            result.append(replacement(groups))
+            last = matcher.end()
+        }
+        result.append(source, last, source.length())
+        return result.toString()
+    }
+
+    private void parse(final Module module) {
+        def source = module.file.getText("UTF-8")
+
+        source = replaceDeclarations(source, IMPORT_DECLARATION) {List<String> groups ->
+            final declaration = new ImportDeclaration(groups[2], parseImportClause(groups[1], module))
+            declaration.module = resolve(declaration.specifier, module)
+            module.imports << declaration
+            return blank(groups[0])
+        }
+        source = replaceDeclarations(source, EXPORT_ALL_DECLARATION) {List<String> groups ->
+            final target = resolve(groups[1], module)
+            module.imports << new ImportDeclaration(groups[1], [])
+            module.imports.last().module = target
+            module.exportAllFrom << target
+            return blank(groups[0])
+        }
+        source = replaceDeclarations(source, EXPORT_DEFAULT_IDENTIFIER) {List<String> groups ->
+            module.defaultExport = groups[1]
+            return ""
+        }
+        source = replaceDeclarations(source, EXPORT_DEFAULT_DECLARATION) {List<String> groups ->
+            module.defaultExport = groups[2]
+            return groups[1] + groups[2]
+        }
+        source = replaceDeclarations(source, EXPORT_DECLARATION) {List<String> groups ->
+            final kind = groups[1].trim()
+            if (kind == "let" || kind == "var") {
+                throw new GradleException(
+                    "Module '${module.id}': unsupported export declaration 'export ${kind} ${groups[2]}'. "
+                    + "The bundle can't export live bindings, use 'export const'.")
+            }
+            module.ownExports << groups[2]
+            return groups[1] + groups[2]
+        }
+        final unsupported = mask(source) =~ ANY_EXPORT
+        if (unsupported.find()) {
+            final declaration = source.substring(unsupported.start(), unsupported.end())
+            throw new GradleException("Module '${module.id}': unsupported export declaration '${declaration}'")
+        }
+        module.body = source
+    }
+
+    private void visit(final Module module, final Set<Module> ordered, final Set<Module> visiting) {
+        if (ordered.contains(module)) {
+            return
+        }
+        if (!visiting.add(module)) {
+            throw new GradleException("Module '${module.id}': cyclic imports aren't supported")
+        }
+        parse(module)
+        module.imports.each {visit(it.module, ordered, visiting)}
+        visiting.remove(module)
+        ordered.add(module)
+    }
+
+    /**
+     * Collects the modules reachable from the entry points, in evaluation order.
+     */
+    private List<Module> collect() {
+        final ordered = new LinkedHashSet<Module>()
+        final visiting = new HashSet<Module>()
+        entryPoints.each {entryPoint ->
+            visit(resolve(entryPoint, null), ordered, visiting)
+        }
+        return ordered.toList()
+    }
+
+    static private void checkImports(final Module module) {
+        module.imports.each {declaration ->
+            declaration.bindings.each {binding ->
+                final target = declaration.module
+                final exported = switch (binding.imported) {
+                    case "*" -> true
+                    case "default" -> target.hasDefaultExport()
+                    default -> target.exportedNames.contains(binding.imported)
+                }
+                if (!exported) {
+                    throw new GradleException(
+                        "Module '${module.id}': module '${target.id}' doesn't export '${binding.imported}'")
+                }
+            }
+        }
+    }
+
+    static private String buildImportBindings(final Module module) {
+        return module.imports.collectMany {declaration ->
+            final ns = declaration.module.namespaceVariable
+            declaration.bindings.collect {binding ->
+                switch (binding.imported) {
+                    case "*" -> "const ${binding.local} = ${ns};"
+                    default -> "const ${binding.local} = ${ns}.${binding.imported};"
+                }
+            }
+        }.join(" ")
+    }
+
+    static private String buildNamespace(final Module module) {
+        final properties = []
+        properties << "__proto__: null"
+        properties << "[Symbol.toStringTag]: 'Module'"
+        module.ownExports.each {properties << it}
+        module.exportAllFrom.each {target ->
+            target.exportedNames
+                .findAll {!module.ownExports.contains(it)}
+                .each {properties << "${it}: ${target.namespaceVariable}.${it}"}
+        }
+        if (module.hasDefaultExport()) {
+            properties << "default: ${module.defaultExport}"
+        }
+        return "Object.freeze({${properties.join(', ')}})"
+    }
+
+    private String buildBundle(final List<Module> bundled) {
+        final bundle = new StringBuilder()
+        bundle << "// Generated by the build, don't edit. Bundles the modules ${bundled.collect {"'${it.id}'"}.join(', ')}.\n"
+        bundled.each {module ->
+            bundle << "\n// ---- module '${module.id}' ----\n"
+            bundle << "const ${module.namespaceVariable} = (() => { ${buildImportBindings(module)}\n"
+            bundle << module.body
+            if (!module.body.endsWith("\n")) {
+                bundle << "\n"
+            }
+            bundle << "return ${buildNamespace(module)}\n"
+            bundle << "})()\n"
+        }
+        bundle << "\nexport {${bundled.collect {it.namespaceVariable}.join(', ')}}\n"
+        return bundle.toString()
+    }
+
+    private String buildStub(final Module module) {
+        final depth = module.id.count("/")
+        final bundlePath = (depth == 0 ? "./" : "../" * depth) + bundleFileName
+        final ns = module.namespaceVariable
+        final stub = new StringBuilder()
+        stub << "// Generated by the build, don't edit. Re-exports the module '${module.id}' from '${bundleFileName}'.\n"
+        stub << "import {${ns}} from '${bundlePath}'\n"
+        final names = module.exportedNames
+        if (!names.isEmpty()) {
+            stub << "export const {${names.join(', ')}} = ${ns}\n"
+        }
+        if (module.hasDefaultExport()) {
+            stub << "export default ${ns}.default\n"
+        }
+        return stub.toString()
+    }
+
+    /**
+     * Bundles the modules reachable from the entry points and writes the bundle,
+     * the stub modules, and the remaining modules to <code>outputDir</code>.
+     *
+     * @param outputDir the output directory
+     * @return the bundled modules, in evaluation order
+     * @throws GradleException if a module can't be bundled
+     */
+    List<Module> bundle(final File outputDir) {
+        final bundled = collect()
+        bundled.each {checkImports(it)}
+        final bundledFiles = bundled.collect {it.file.canonicalFile} as Set
+
+        outputDir.mkdirs()
+        new File(outputDir, bundleFileName).setText(buildBundle(bundled), "UTF-8")
+        bundled.each {module ->
+            final target = new File(outputDir, sourceDir.toPath().relativize(module.file.canonicalFile.toPath()).toString())
+            target.parentFile.mkdirs()
+            target.setText(buildStub(module), "UTF-8")
+        }
+        sourceDir.eachFileRecurse {file ->
+            if (!file.isFile() || !(file.name ==~ /.*\.m?js/) || bundledFiles.contains(file.canonicalFile)) {
+                return
+            }
+            final target = new File(outputDir, sourceDir.toPath().relativize(file.canonicalFile.toPath()).toString())
+            target.parentFile.mkdirs()
+            target.bytes = file.bytes
+        }
+        return bundled
+    }
+}
@@ -0,0 +1,196 @@
+package org.openstreetmap.josm.plugins.scripting.build
+
+import groovy.test.GroovyTestCase
+import org.gradle.api.GradleException
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class ESModuleBundlerTest extends GroovyTestCase {
+
+    File sourceDir
+    File outputDir
+
+    @BeforeEach
+    void createDirectories() {
+        final tempDir = File.createTempDir("es-module-bundler")
+        sourceDir = new File(tempDir, "src")
+        outputDir = new File(tempDir, "out")
+        sourceDir.mkdirs()
+    }
+
+    @AfterEach
+    void deleteDirectories() {
+        sourceDir.parentFile.deleteDir()
+    }
+
+    def writeModule(final String path, final String source) {
+        final file = new File(sourceDir, path)
+        file.parentFile.mkdirs()
+        file.setText(source.stripIndent(), "UTF-8")
+    }
+
+    def writeModules() {
+        writeModule("main.mjs", """
+            import * as util from 'lib/util'
+            import counter, {increment as inc} from './lib/counter'
+            export default main
+            const main = {util, inc, counter}
+            """)
+        writeModule("lib/util.mjs", """
+            export function twice(value) {
+              return 2 * value
+            }
+            export const ONE = 1
+            """)
+        writeModule("lib/counter.mjs", """
+            import {ONE} from './util'
+            const counter = {value: 0}
+            export function increment() {
+              counter.value += ONE
+            }
+             export default counter
+            """)
+        writeModule("lib/unused.mjs", """
+            export class Unused {}
+            """)
+    }
+
+    @Test
+    void "should bundle the reachable modules in evaluation order"() {
+        writeModules()
+        final modules = new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+        assertEquals(["lib/util", "lib/counter", "main"], modules*.id)
+
+        final bundle = new File(outputDir, ESModuleBundler.DEFAULT_BUNDLE_FILE_NAME).getText("UTF-8")
+        assertTrue(bundle.contains("const __module_lib_util = (() => {"))
+        assertTrue(bundle.contains("const ONE = __module_lib_util.ONE;"))
+        assertTrue(bundle.contains("const counter = __module_lib_counter.default; const inc = __module_lib_counter.increment;"))
+        assertTrue(bundle.contains("return Object.freeze({__proto__: null, [Symbol.toStringTag]: 'Module', increment, default: counter})"))
+        assertFalse((bundle =~ /(?m)^\s*import\b/).find())
+        assertTrue(bundle.endsWith("export {__module_lib_util, __module_lib_counter, __module_main}\n"))
+    }
+
+    @Test
+    void "should write stubs for the bundled modules and copy the other modules"() {
+        writeModules()
+        new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+
+        final mainStub = new File(outputDir, "main.mjs").getText("UTF-8")
+        assertTrue(mainStub.contains("import {__module_main} from './josm-api-bundle.mjs'"))
+        assertTrue(mainStub.contains("export default __module_main.default"))
+
+        final utilStub = new File(outputDir, "lib/util.mjs").getText("UTF-8")
+        assertTrue(utilStub.contains("import {__module_lib_util} from '../josm-api-bundle.mjs'"))
+        assertTrue(utilStub.contains("export const {twice, ONE} = __module_lib_util"))
+
+        assertEquals(
+            new File(sourceDir, "lib/unused.mjs").getText("UTF-8"),
+            new File(outputDir, "lib/unused.mjs").getText("UTF-8"))
+    }
+
+    @Test
+    void "should re-export all exports of a module"() {
+        writeModule("all.mjs", """
+            export * from './lib/util'
+            export const TWO = 2
+            """)
+        writeModule("lib/util.mjs", """
+            export const ONE = 1
+            """)
+        new ESModuleBundler(sourceDir, ["all"]).bundle(outputDir)
+        final stub = new File(outputDir, "all.mjs").getText("UTF-8")
+        assertTrue(stub.contains("export const {TWO, ONE} = __module_all"))
+    }
+
+    @Test
+    void "should reject unsupported export declarations"() {
+        writeModule("main.mjs", """
+            const a = 1
+            export {a}
+            """)
+        shouldFail(GradleException) {
+            new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+        }
+    }
+
+    @Test
+    void "should ignore declarations in comments and literals"() {
+        writeModule("main.mjs", """
+            import {ONE} from './util'
+            /*
+            import {missing} from './no-such-module'
+            export {ONE}
+            */
+            // export let commented = 1
+            const template = `
+            import {missing} from './no-such-module'
+            export let inTemplate = \${ONE}
+            `
+            const quote = /['"]/
+            export const QUOTED = "export {ONE}"
+            """)
+        writeModule("util.mjs", """
+            export const ONE = 1
+            """)
+        final modules = new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+        assertEquals(["util", "main"], modules*.id)
+        assertEquals(["QUOTED"], modules.last().ownExports)
+
+        final bundle = new File(outputDir, ESModuleBundler.DEFAULT_BUNDLE_FILE_NAME).getText("UTF-8")
+        assertTrue(bundle.contains("import {missing} from './no-such-module'"))
+        assertTrue(bundle.contains("export let inTemplate = \${ONE}"))
+        assertTrue(bundle.contains('const QUOTED = "export {ONE}"'))
+    }
+
+    @Test
+    void "should mask comments and literals"() {
+        final source = "const a = 'x' // c\nconst b = `t\${a}t` / 2\nconst r = /'/ /* c */"
+        final masked = ESModuleBundler.mask(source)
+        assertEquals(source.length(), masked.length())
+        assertEquals("const a = ' '     \nconst b = ` \${a} ` / 2\nconst r = / /        ", masked)
+    }
+
+    @Test
+    void "should reject exported let and var declarations"() {
+        ["let", "var"].each {kind ->
+            writeModule("main.mjs", """
+                export ${kind} count = 0
+                export function increment() {
+                  count++
+                }
+                """)
+            shouldFail(GradleException) {
+                new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+            }
+        }
+    }
+
+    @Test
+    void "should reject imports of names which aren't exported"() {
+        writeModule("main.mjs", """
+            import {missing} from './util'
+            """)
+        writeModule("util.mjs", """
+            export const ONE = 1
+            """)
+        shouldFail(GradleException) {
+            new ESModuleBundler(sourceDir, ["main"]).bundle(outputDir)
+        }
+    }
+
+    @Test
+    void "should reject cyclic imports"() {
+        writeModule("a.mjs", """
+            import {B} from './b'
+            export const A = 1
+            """)
+        writeModule("b.mjs", """
+            import {A} from './a'
+            export const B = 2
+            """)
+        shouldFail(GradleException) {
+            new ESModuleBundler(sourceDir, ["a"]).bundle(outputDir)
+        }
+    }
+}
@@ -84,6 +84,11 @@ public class ScriptingPlugin extends Plugin implements PreferenceKeys{
         if (GraalVMFacadeFactory.isGraalVMPresent()) {
             initGraalVMJSModuleRepository();
             initGraalVMESModuleRepositories(info);
+            if (!inTestEnvironment && Preferences.main().getBoolean(PREF_KEY_GRAALVM_WARM_UP, false)) {
+                // opt-in: create the engine and parse the API V3 modules now,
+                // so that the first script doesn't have to
+                GraalVMFacadeFactory.warmUpInBackground();
+            }
         }
         SyntaxConstantsEngine.getInstance().loadRules(this);
 
@@ -0,0 +1,18 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+/**
+ * Thrown if a script running in the GraalVM is cancelled, either by the
+ * user or because it exceeded a resource limit.
+ * <p>
+ * The message explains why the script was cancelled.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class GraalVMCancelledException extends GraalVMEvalException {
+    public GraalVMCancelledException(String message) {
+        super(message);
+    }
+
+    public GraalVMCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
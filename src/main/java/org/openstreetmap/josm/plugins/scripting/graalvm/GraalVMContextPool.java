@@ -0,0 +1,284 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import org.graalvm.polyglot.Context;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A pool of ready-to-use GraalVM contexts.
+ * <p>
+ * Contexts are created by a factory, usually on an {@link org.graalvm.polyglot.Engine}
+ * shared by all contexts. The pool keeps up to <code>capacity</code> idle contexts and
+ * replenishes them on a low priority background thread whenever a context is acquired.
+ * If the pool is empty, {@link #acquire()} builds a context synchronously on the calling
+ * thread.
+ * <p>
+ * A context built on the background thread isn't entered by this thread anymore when
+ * it is handed out. It can therefore be used by any other thread, i.e. the Swing EDT.
+ * <p>
+ * Every idle context remembers the version of the configuration it was built with.
+ * If the configuration has changed since, i.e. because a privilege was revoked,
+ * {@link #acquire()} discards the context instead of handing it out.
+ */
+public class GraalVMContextPool {
+    static private final Logger logger =
+        Logger.getLogger(GraalVMContextPool.class.getName());
+
+    /**
+     * A snapshot of the pool metrics.
+     *
+     * @param hits the number of contexts acquired from the pool
+     * @param misses the number of contexts built synchronously because the pool was empty
+     * @param builds the number of built contexts, including synchronous builds
+     * @param buildTimeNanos the accumulated time spent building contexts, in nanoseconds
+     */
+    public record Statistics(long hits, long misses, long builds, long buildTimeNanos) {
+
+        /**
+         * Replies the average time in milliseconds to build a context.
+         *
+         * @return the average build time. 0, if no context was built yet.
+         */
+        public double averageBuildTimeMillis() {
+            return builds == 0 ? 0 : buildTimeNanos / (builds * 1_000_000d);
+        }
+
+        /**
+         * Replies the ratio of acquisitions served from the pool.
+         *
+         * @return the hit rate in the range [0,1]. 0, if no context was acquired yet.
+         */
+        public double hitRate() {
+            final long total = hits + misses;
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, builds={2}, avg build time={3,number,0.0}ms",
+                hits, misses, builds, averageBuildTimeMillis());
+        }
+    }
+
+    // an idle context and the version of the configuration it was built with
+    private record IdleContext(Context context, long configurationVersion) {}
+
+    private final Supplier<Context> factory;
+    private final LongSupplier configurationVersion;
+    private final int capacity;
+    private final LinkedBlockingQueue<IdleContext> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ExecutorService builder;
+    private volatile boolean shutdown = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong buildTimeNanos = new AtomicLong();
+
+    /**
+     * Creates a new pool.
+     *
+     * @param factory creates a new, fully initialized context. Must not be null.
+     * @param capacity the maximum number of idle contexts. 0, if contexts
+     *                 should always be built on demand.
+     * @throws NullPointerException if <code>factory</code> is null
+     * @throws IllegalArgumentException if <code>capacity</code> is negative
+     */
+    public GraalVMContextPool(@NotNull final Supplier<Context> factory, final int capacity) {
+        this(factory, capacity, () -> 0);
+    }
+
+    /**
+     * Creates a new pool whose contexts depend on a configuration.
+     *
+     * @param factory creates a new, fully initialized context. Must not be null.
+     * @param capacity the maximum number of idle contexts. 0, if contexts
+     *                 should always be built on demand.
+     * @param configurationVersion replies the current version of the configuration
+     *                 the factory builds contexts with. Must not be null.
+     * @throws NullPointerException if <code>factory</code> or
+     *                 <code>configurationVersion</code> is null
+     * @throws IllegalArgumentException if <code>capacity</code> is negative
+     */
+    public GraalVMContextPool(@NotNull final Supplier<Context> factory, final int capacity,
+                              @NotNull final LongSupplier configurationVersion) {
+        Objects.requireNonNull(factory);
+        Objects.requireNonNull(configurationVersion);
+        if (capacity < 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must not be negative, got {0}", capacity));
+        }
+        this.factory = factory;
+        this.configurationVersion = configurationVersion;
+        this.capacity = capacity;
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "josm-scripting-graalvm-context-pool");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private Context build() {
+        final long start = System.nanoTime();
+        final Context context = factory.get();
+        buildTimeNanos.addAndGet(System.nanoTime() - start);
+        builds.incrementAndGet();
+        return context;
+    }
+
+    private void buildInBackground() {
+        try {
+            if (shutdown) {
+                return;
+            }
+            // read the version before building, a concurrent change of the
+            // configuration makes the context stale
+            final long version = configurationVersion.getAsLong();
+            final Context context = build();
+            if (shutdown || !idle.offer(new IdleContext(context, version))) {
+                context.close();
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to build GraalVM context in the background", e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Schedules background builds until the pool holds <code>capacity</code>
+     * idle contexts.
+     */
+    public void replenish() {
+        while (!shutdown) {
+            final int scheduled = pending.get();
+            if (idle.size() + scheduled >= capacity) {
+                return;
+            }
+            if (!pending.compareAndSet(scheduled, scheduled + 1)) {
+                continue;
+            }
+            try {
+                builder.execute(this::buildInBackground);
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replies a ready-to-use context. Takes an idle context from the pool
+     * or, if the pool is empty, builds a new one on the calling thread.
+     * Triggers a background build to replace the acquired context.
+     * <p>
+     * The caller owns the context and is responsible for closing it.
+     *
+     * @return the context
+     * @throws IllegalStateException if the pool is shut down
+     */
+    public @NotNull Context acquire() {
+        if (shutdown) {
+            throw new IllegalStateException("context pool is shut down");
+        }
+        Context context = null;
+        final long version = configurationVersion.getAsLong();
+        IdleContext candidate;
+        while ((candidate = idle.poll()) != null) {
+            if (candidate.configurationVersion() == version) {
+                context = candidate.context();
+                break;
+            }
+            // built with an outdated configuration
+            closeQuietly(candidate.context());
+        }
+        if (context != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            context = build();
+        }
+        replenish();
+        return context;
+    }
+
+    /**
+     * Closes and discards all idle contexts, i.e. to release their memory.
+     * Contexts built in the background afterwards aren't affected.
+     */
+    public void clear() {
+        final List<IdleContext> contexts = new ArrayList<>();
+        idle.drainTo(contexts);
+        contexts.forEach(c -> closeQuietly(c.context()));
+    }
+
+    /**
+     * Shuts down the background builder and closes all idle contexts.
+     */
+    public void shutdown() {
+        shutdown = true;
+        builder.shutdown();
+        try {
+            if (!builder.awaitTermination(5, TimeUnit.SECONDS)) {
+                builder.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            builder.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        clear();
+    }
+
+    private void closeQuietly(final Context context) {
+        try {
+            context.close();
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Failed to close idle GraalVM context", e);
+        }
+    }
+
+    /**
+     * Replies the maximum number of idle contexts.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replies the current number of idle contexts.
+     *
+     * @return the number of idle contexts
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Replies a snapshot of the pool metrics.
+     *
+     * @return the metrics
+     */
+    public @NotNull Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), builds.get(), buildTimeNanos.get());
+    }
+}
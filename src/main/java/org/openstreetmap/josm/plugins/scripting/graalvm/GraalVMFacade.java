@@ -2,6 +2,8 @@ package org.openstreetmap.josm.plugins.scripting.graalvm;
 
 import org.graalvm.polyglot.*;
 import org.graalvm.polyglot.io.IOAccess;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleCache;
 import org.openstreetmap.josm.plugins.scripting.graalvm.esmodule.ESModuleResolver;
 import org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDescriptor;
 import org.openstreetmap.josm.plugins.scripting.preferences.graalvm.GraalVMPrivilegesModel;
@@ -13,11 +15,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static java.text.MessageFormat.format;
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_GRAALVM_CONTEXT_POOL_SIZE;
 
 public class GraalVMFacade  implements IGraalVMFacade {
     static private final Logger logger =
@@ -26,10 +31,51 @@ public class GraalVMFacade  implements IGraalVMFacade {
     static final private Map<String, TypeResolveFunction> pluginObject =
         Collections.singletonMap("type", new TypeResolveFunction());
 
+    static private final int DEFAULT_CONTEXT_POOL_SIZE = 1;
+
+    static private final String RESET_HOOKS_BINDING = "__josmContextResetHooks__";
+
+    // the built-in API V3 modules imported when the GraalVM is warmed up
+    static private final List<String> WARM_UP_MODULES = List.of(
+        "josm", "josm/api", "josm/builder", "josm/command", "josm/context",
+        "josm/ds", "josm/layers", "josm/scriptingconsole", "josm/ui/menu",
+        "josm/util"
+    );
+
+    static private final int SOURCE_CACHE_CAPACITY = 100;
+
     // maintain one 'js' engine
     private final Engine engine;
 
-    private Context context;
+    // the descriptors of the languages supported by the engine. Built on demand.
+    private volatile List<ScriptEngineDescriptor> scriptEngineDescriptors = null;
+
+    // pre-built contexts sharing the engine
+    private final GraalVMContextPool contextPool;
+
+    // sources of script files, shared by all contexts built on the engine
+    private final GraalVMSourceCache sourceCache = new GraalVMSourceCache(SOURCE_CACHE_CAPACITY);
+
+    // the current context. Volatile, because a running script can be
+    // cancelled from another thread, see cancel().
+    private volatile Context context;
+
+    // true, if the current context was closed by cancel() or because the
+    // script exceeded a resource limit
+    private volatile boolean cancelled = false;
+
+    // why the running script was cancelled. Null, if it wasn't cancelled.
+    private volatile String cancelReason = null;
+
+    // cancels scripts exceeding the execution time limit or exhausting the heap
+    private final GraalVMWatchdog watchdog = new GraalVMWatchdog();
+
+    // the number of scripts currently evaluated in the current context
+    private final AtomicInteger runningEvaluations = new AtomicInteger();
+
+    // the number of runs of the script files evaluated as ES modules in the
+    // current context, keyed by their canonical path
+    private final Map<String, Integer> moduleRuns = new ConcurrentHashMap<>();
 
     // Cleanup callbacks registered by scripts, invoked on resetContext().
     private ContextResetHooks resetHooks;
@@ -85,24 +131,77 @@ public class GraalVMFacade  implements IGraalVMFacade {
     }
 
     /**
+     * Builds a new context with the standard bindings on the shared engine.
      *
      * @throws IllegalStateException thrown, if no language and polyglot implementation was found on the classpath
      */
-    private void initContext() throws IllegalStateException{
+    private Context buildContext() throws IllegalStateException {
         // currently GraalVM is only used for JavaScript
         final Context.Builder builder = Context.newBuilder("js")
             .engine(engine);
         grantPrivilegesToContext(builder);
         setOptionsOnContext(builder);
-        context = builder.build();
-        populateContext(context);
-        resetHooks = new ContextResetHooks();
-        context.getBindings("js").putMember("__josmContextResetHooks__", resetHooks);
+        final Context newContext = builder.build();
+        populateContext(newContext);
+        newContext.getBindings("js").putMember(RESET_HOOKS_BINDING, new ContextResetHooks());
+        return newContext;
+    }
+
+    private void initContext() {
+        final var previous = context;
+        if (previous != null) {
+            // the cached modules refer to the previous context and would
+            // keep it alive
+            CommonJSModuleCache.getInstance().clear(previous);
+        }
+        context = contextPool.acquire();
+        moduleRuns.clear();
+        resetHooks = context.getBindings("js").getMember(RESET_HOOKS_BINDING).asHostObject();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("GraalVM context pool: {0}", contextPool.getStatistics()));
+        }
+    }
+
+    static private int lookupContextPoolSize() {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return DEFAULT_CONTEXT_POOL_SIZE;
+        }
+        return Math.max(0, prefs.getInt(PREF_KEY_GRAALVM_CONTEXT_POOL_SIZE, DEFAULT_CONTEXT_POOL_SIZE));
     }
 
     public GraalVMFacade() {
         engine = Engine.create("js");
-        //initContext();
+        // contexts built with outdated privileges or resource limits aren't
+        // handed out
+        contextPool = new GraalVMContextPool(this::buildContext, lookupContextPoolSize(),
+            () -> GraalVMPrivilegesModel.getInstance().getVersion());
+    }
+
+    /**
+     * Replies the hit/miss and build-time metrics of the context pool.
+     *
+     * @return the metrics
+     */
+    public @NotNull GraalVMContextPool.Statistics getContextPoolStatistics() {
+        return contextPool.getStatistics();
+    }
+
+    /**
+     * Replies the hit/miss metrics of the cache for script file sources.
+     *
+     * @return the metrics
+     */
+    public @NotNull GraalVMSourceCache.Statistics getSourceCacheStatistics() {
+        return sourceCache.getStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearContextPool() {
+        contextPool.clear();
     }
 
     /**
@@ -110,9 +209,22 @@ public class GraalVMFacade  implements IGraalVMFacade {
      */
     @Override
     public void resetContext() {
+        if (cancelled) {
+            // the context is already closed, its reset hooks can't be invoked
+            // anymore
+            cancelled = false;
+            cancelReason = null;
+            initContext();
+            return;
+        }
+        // The UI doesn't reset the context while a script is running, see
+        // ScriptRunner.isRunning(). Refuse it anyway, the context would be
+        // closed under the running script.
+        if (runningEvaluations.get() > 0) {
+            throw new IllegalStateException("can't reset the context while a script is running");
+        }
         // Invoke script-registered cleanup callbacks first, while the context
-        // is still live. Scripts run on the EDT; resetContext() is also called
-        // from the EDT, so the context is not entered by any other thread here.
+        // is still live.
         if (resetHooks != null && context != null) {
             context.enter();
             try {
@@ -129,6 +241,99 @@ public class GraalVMFacade  implements IGraalVMFacade {
         initContext();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel() {
+        cancel("script execution cancelled");
+    }
+
+    private void cancel(@NotNull final String reason) {
+        final var current = context;
+        if (current == null) {
+            return;
+        }
+        cancelReason = reason;
+        cancelled = true;
+        try {
+            current.close(true /* cancelIfExecuting */);
+        } catch (PolyglotException e) {
+            // thrown if the context is closed while it is executing a script
+            logger.log(Level.FINE, "Cancelled running script", e);
+        } catch (IllegalStateException e) {
+            logger.log(Level.FINE, "Failed to cancel running script", e);
+        }
+        // the cached modules of the closed context can't be used anymore
+        CommonJSModuleCache.getInstance().clear(current);
+    }
+
+    // replaces a context closed by cancel() with a fresh context
+    private void ensureContextUsable() {
+        if (cancelled) {
+            cancelled = false;
+            cancelReason = null;
+            initContext();
+        }
+    }
+
+    private GraalVMEvalException buildEvalException(final String message, final PolyglotException e) {
+        if (e.isResourceExhausted() || e.isCancelled()) {
+            // the context is closed, if the script exceeded the statement limit
+            cancelled = true;
+            final var reason = cancelReason;
+            if (reason != null) {
+                return new GraalVMCancelledException(reason, e);
+            }
+            if (e.isResourceExhausted()) {
+                return new GraalVMCancelledException(format(
+                    "script execution cancelled: {0}", e.getMessage()), e);
+            }
+            return new GraalVMCancelledException("script execution cancelled", e);
+        }
+        return new GraalVMEvalException(message, e);
+    }
+
+    /**
+     * Evaluates a source in the current context, within the resource limits
+     * configured in the {@link GraalVMPrivilegesModel}.
+     */
+    private Value evalWithinLimits(@NotNull final Source source) {
+        final var limits = GraalVMPrivilegesModel.getInstance();
+        // the statement limit applies to a single script execution
+        context.resetLimits();
+        runningEvaluations.incrementAndGet();
+        try (var ignored = watchdog.watch(
+                limits.getExecutionTimeout(), limits.isCancelOnMemoryPressure(), this::cancel)) {
+            return context.eval(source);
+        } finally {
+            runningEvaluations.decrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void warmUp() {
+        final long start = System.nanoTime();
+        final var script = WARM_UP_MODULES.stream()
+            .map(module -> format("import ''{0}''", module))
+            .collect(Collectors.joining("\n"));
+        // The context isn't taken from the context pool. Modules evaluated
+        // during the warm-up must not leak into the contexts used by scripts.
+        try (var warmUpContext = buildContext()) {
+            final var source = Source.newBuilder("js", script, "josm-scripting-warm-up.mjs")
+                .mimeType("application/javascript+module")
+                .build();
+            warmUpContext.eval(source);
+            logger.log(Level.FINE, format("Warmed up GraalVM in {0} ms",
+                (System.nanoTime() - start) / 1_000_000));
+        } catch (IOException | PolyglotException | IllegalStateException e) {
+            logger.log(Level.WARNING, "Failed to warm up GraalVM", e);
+        }
+    }
+
     private ScriptEngineDescriptor buildDescriptorForGraalVMBasedEngine(final Engine engine, final Language info) {
 
         final ScriptEngineDescriptor desc = new ScriptEngineDescriptor(
@@ -160,7 +365,13 @@ public class GraalVMFacade  implements IGraalVMFacade {
      * @inheritDoc
      */
     public @NotNull List<ScriptEngineDescriptor> getScriptEngineDescriptors() {
-        return buildDescriptorsForGraalVMBasedEngines(engine);
+        // the languages of the engine don't change. Build the descriptors once.
+        var descriptors = scriptEngineDescriptors;
+        if (descriptors == null) {
+            descriptors = List.copyOf(buildDescriptorsForGraalVMBasedEngines(engine));
+            scriptEngineDescriptors = descriptors;
+        }
+        return descriptors;
     }
 
     private void ensureEngineIdPresent(String engineId) {
@@ -180,6 +391,7 @@ public class GraalVMFacade  implements IGraalVMFacade {
         Objects.requireNonNull(script);
         final String engineId = desc.getLocalEngineId();
         ensureEngineIdPresent(engineId);
+        ensureContextUsable();
         try {
             // Use a unique source name so GraalVM's ES module registry treats each execution as
             // a distinct module. Without it, modules are evaluated only once per context and
@@ -187,7 +399,7 @@ public class GraalVMFacade  implements IGraalVMFacade {
             final var source = Source.newBuilder(engineId, script, "console-script:" + System.nanoTime())
                 .mimeType("application/javascript+module")
                 .build();
-            return context.eval(source);
+            return evalWithinLimits(source);
         } catch(IOException e) {
             // shouldn't happen because we don't load the script from a file,
             // but just in case
@@ -197,7 +409,7 @@ public class GraalVMFacade  implements IGraalVMFacade {
         } catch(PolyglotException e) {
             final String message = format("failed to eval script");
             logger.log(Level.INFO, e.getMessage(), e);
-            throw new GraalVMEvalException(message, e);
+            throw buildEvalException(message, e);
         }
     }
 
@@ -210,14 +422,26 @@ public class GraalVMFacade  implements IGraalVMFacade {
         Objects.requireNonNull(script);
         final String engineId = desc.getLocalEngineId();
         ensureEngineIdPresent(engineId);
-        final var source = Source.newBuilder(engineId, script)
-            .mimeType("application/javascript+module")
-            .build();
+        ensureContextUsable();
+        // GraalJS evaluates an ES module once per context. Every run of the
+        // file in this context therefore gets a source with a distinct name,
+        // even if the run fails, because GraalJS also remembers a failed module.
+        final var run = moduleRuns.merge(script.getCanonicalPath(), 1, Integer::sum);
+        final var source = sourceCache.lookup(engineId, script, run);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("GraalVM source cache: {0}", sourceCache.getStatistics()));
+        }
         try {
-            return context.eval(source);
+            if (source.getPath() != null) {
+                return evalWithinLimits(source);
+            }
+            // the source of a later run doesn't have a path
+            final var base = script.getCanonicalFile().getParentFile().toPath();
+            return ESModuleResolver.getInstance().resolveRelativeImportsAgainst(base,
+                () -> evalWithinLimits(source));
         } catch(PolyglotException e) {
             final String message = format("failed to eval script in file ''{0}''", script);
-            throw new GraalVMEvalException(message, e);
+            throw buildEvalException(message, e);
         }
     }
 }
@@ -43,7 +43,7 @@ public class GraalVMFacadeFactory {
      *
      * @return a facade to the GraalVM. May be null.
      */
-    static public @Null IGraalVMFacade getOrCreateGraalVMFacade() {
+    static synchronized public @Null IGraalVMFacade getOrCreateGraalVMFacade() {
         if (instance == null) {
             instance = createGraalVMFacade();
             if (instance == null) {
@@ -53,4 +53,40 @@ public class GraalVMFacadeFactory {
         }
         return instance;
     }
+
+    /**
+     * Discards the idle pre-built contexts of the GraalVM facade, if the facade
+     * was already created. Invoke it after the configuration for new contexts
+     * has changed.
+     */
+    static synchronized public void clearContextPool() {
+        if (instance != null) {
+            instance.clearContextPool();
+        }
+    }
+
+    /**
+     * Creates the GraalVM facade and warms up the GraalVM on a low priority
+     * background thread. Doesn't block the calling thread.
+     * <p>
+     * Does nothing, if the GraalVM isn't present.
+     */
+    static public void warmUpInBackground() {
+        if (!isGraalVMPresent()) {
+            return;
+        }
+        final var thread = new Thread(() -> {
+            try {
+                final var facade = getOrCreateGraalVMFacade();
+                if (facade != null) {
+                    facade.warmUp();
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to warm up GraalVM", e);
+            }
+        }, "josm-scripting-graalvm-warm-up");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
 }
@@ -0,0 +1,185 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import org.graalvm.polyglot.Source;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Caches {@link Source} objects for script files.
+ * <p>
+ * Entries are keyed by the canonical path of the script file, the run number
+ * of the script in a context, and the SHA-256 hash of its content. As long as
+ * a file doesn't change, the cache replies the same {@link Source} object for
+ * the same run number. The GraalVM engine caches parsed and compiled code per
+ * source, so evaluating a cached source in any context built on the same
+ * engine reuses the code parsed for an earlier run.
+ * <p>
+ * GraalJS evaluates an ES module only once per context, keyed by its path
+ * or, if it doesn't have a path, by its name. The source for the first run of
+ * a script in a context is therefore backed by the script file. The sources
+ * for later runs don't have a path and are named
+ * <code>&lt;canonical path&gt;#&lt;run&gt;</code>, so that GraalJS evaluates
+ * the module body again.
+ * <p>
+ * The number of cached sources is bounded. The least recently used source is
+ * evicted first.
+ */
+public class GraalVMSourceCache {
+
+    static private final String MODULE_MIME_TYPE = "application/javascript+module";
+
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of lookups served from the cache
+     * @param misses the number of lookups which built a new source
+     * @param size the current number of cached sources
+     */
+    public record Statistics(long hits, long misses, int size) {
+
+        /**
+         * Replies the ratio of lookups served from the cache.
+         *
+         * @return the hit rate in the range [0,1]. 0, if there weren't any lookups yet.
+         */
+        public double hitRate() {
+            final long total = hits + misses;
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, size={2}, hit rate={3,number,0.00}",
+                hits, misses, size, hitRate());
+        }
+    }
+
+    private record Entry(@NotNull String contentHash, @NotNull Source source) {}
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity the maximum number of cached sources. Must be positive.
+     * @throws IllegalArgumentException if <code>capacity</code> isn't positive
+     */
+    public GraalVMSourceCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must be positive, got {0}", capacity));
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true /* access order */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > GraalVMSourceCache.this.capacity;
+            }
+        };
+    }
+
+    static private String sha256(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Replies the ES module source for the first run of a script file in a
+     * context.
+     *
+     * @param languageId the GraalVM language id, i.e. <code>js</code>. Must not be null.
+     * @param script the script file. Must not be null.
+     * @return the source
+     * @throws IOException thrown, if the script file can't be read
+     * @throws NullPointerException if <code>languageId</code> or <code>script</code> is null
+     * @see #lookup(String, File, int)
+     */
+    public @NotNull Source lookup(@NotNull final String languageId, @NotNull final File script)
+            throws IOException {
+        return lookup(languageId, script, 1);
+    }
+
+    /**
+     * Replies the ES module source for the <code>run</code>-th run of a
+     * script file in a context.
+     * <p>
+     * Reads the file and replies the cached source, if the file content didn't
+     * change since the source was cached. Otherwise, builds, caches, and replies
+     * a new source.
+     *
+     * @param languageId the GraalVM language id, i.e. <code>js</code>. Must not be null.
+     * @param script the script file. Must not be null.
+     * @param run the number of the run in the context, starting with 1
+     * @return the source
+     * @throws IOException thrown, if the script file can't be read
+     * @throws NullPointerException if <code>languageId</code> or <code>script</code> is null
+     * @throws IllegalArgumentException if <code>run</code> isn't positive
+     */
+    public @NotNull Source lookup(@NotNull final String languageId, @NotNull final File script,
+                                  final int run) throws IOException {
+        Objects.requireNonNull(languageId);
+        Objects.requireNonNull(script);
+        if (run <= 0) {
+            throw new IllegalArgumentException(format(
+                "run must be positive, got {0}", run));
+        }
+        final var path = script.getCanonicalPath();
+        final var content = Files.readAllBytes(script.toPath());
+        final var hash = sha256(content);
+        final var key = languageId + ":" + path + "#" + run;
+        synchronized (this) {
+            final var entry = entries.get(key);
+            if (entry != null && entry.contentHash().equals(hash)) {
+                hits++;
+                return entry.source();
+            }
+        }
+        final var text = new String(content, StandardCharsets.UTF_8);
+        final var builder = run == 1
+            ? Source.newBuilder(languageId, new File(path)).content(text)
+            : Source.newBuilder(languageId, text, path + "#" + run);
+        final var source = builder
+            .mimeType(MODULE_MIME_TYPE)
+            .build();
+        synchronized (this) {
+            misses++;
+            entries.put(key, new Entry(hash, source));
+        }
+        return source;
+    }
+
+    /**
+     * Removes all cached sources.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Replies a snapshot of the cache metrics.
+     *
+     * @return the metrics
+     */
+    public synchronized @NotNull Statistics getStatistics() {
+        return new Statistics(hits, misses, entries.size());
+    }
+}
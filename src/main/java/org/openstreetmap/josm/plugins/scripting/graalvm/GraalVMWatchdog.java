@@ -0,0 +1,120 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import javax.validation.constraints.NotNull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Cancels script executions which run too long or which exhaust the Java heap.
+ * <p>
+ * A single daemon thread watches all running script executions. A script
+ * execution is watched from {@link #watch(int, boolean, Consumer)} until the
+ * replied {@link Watch} is closed.
+ */
+public class GraalVMWatchdog {
+    static private final Logger logger = Logger.getLogger(GraalVMWatchdog.class.getName());
+
+    // ratio of the heap still in use after a garbage collection, above which
+    // the heap is considered to be almost exhausted
+    static private final double MEMORY_PRESSURE_THRESHOLD = 0.9;
+    static private final long MEMORY_CHECK_INTERVAL_MILLIS = 200;
+
+    /**
+     * Watches a script execution until it is closed.
+     */
+    public interface Watch extends AutoCloseable {
+        /**
+         * Stops watching the script execution.
+         */
+        @Override
+        void close();
+    }
+
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "josm-scripting-graalvm-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Replies true, if a heap memory pool is still almost full after the
+     * last garbage collection.
+     *
+     * @return true, if the Java heap is almost exhausted
+     */
+    static public boolean isUnderMemoryPressure() {
+        for (final var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            final var usage = pool.getCollectionUsage();
+            if (usage == null) {
+                continue;
+            }
+            final long max = usage.getMax() > 0 ? usage.getMax() : pool.getUsage().getMax();
+            if (max > 0 && usage.getUsed() >= max * MEMORY_PRESSURE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts watching a script execution.
+     *
+     * @param timeoutSeconds the maximum execution time in seconds. 0, if there
+     *     is no time limit.
+     * @param cancelOnMemoryPressure if true, the script is cancelled when the
+     *     Java heap is almost exhausted
+     * @param canceller cancels the script. Accepts the reason why the script is
+     *     cancelled. Invoked at most once, on the watchdog thread.
+     * @return the watch. Close it when the script execution is completed.
+     * @throws NullPointerException if <code>canceller</code> is null
+     */
+    public @NotNull Watch watch(final int timeoutSeconds, final boolean cancelOnMemoryPressure,
+                                @NotNull final Consumer<String> canceller) {
+        Objects.requireNonNull(canceller);
+        final var done = new AtomicBoolean(false);
+        final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        final Consumer<String> cancelOnce = reason -> {
+            if (done.compareAndSet(false, true)) {
+                logger.log(Level.INFO, reason);
+                canceller.accept(reason);
+            }
+        };
+        if (timeoutSeconds > 0) {
+            tasks.add(scheduler.schedule(
+                () -> cancelOnce.accept(format(
+                    "script execution cancelled: exceeded the time limit of {0,choice,1#1 second|1<{0} seconds}",
+                    timeoutSeconds)),
+                timeoutSeconds, TimeUnit.SECONDS));
+        }
+        if (cancelOnMemoryPressure) {
+            tasks.add(scheduler.scheduleWithFixedDelay(() -> {
+                    if (isUnderMemoryPressure()) {
+                        cancelOnce.accept(
+                            "script execution cancelled: the Java heap is almost exhausted");
+                    }
+                },
+                MEMORY_CHECK_INTERVAL_MILLIS, MEMORY_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        return () -> {
+            done.set(true);
+            tasks.forEach(task -> task.cancel(false));
+        };
+    }
+}
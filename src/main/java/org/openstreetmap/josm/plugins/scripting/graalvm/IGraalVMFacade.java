@@ -25,6 +25,9 @@ public interface IGraalVMFacade {
      * Replies a {@link org.graalvm.polyglot.Value} as result. We don't
      * declare it in the facade API because we want to load
      * <code></code>org.graalmv.*</code> dynamically.
+     * <p>
+     * The script is cancelled with a {@link GraalVMCancelledException}, if it
+     * exceeds the resource limits configured in the GraalVM preferences.
      *
      * @param desc   the script engine descriptor
      * @param script the script
@@ -42,6 +45,13 @@ public interface IGraalVMFacade {
      * Replies a {@link org.graalvm.polyglot.Value} as result. We don't
      * declare it in the facade API because we want to load
      * <code></code>org.graalmv.*</code> dynamically.
+     * <p>
+     * The script is evaluated as an ES module. If the script file was
+     * already evaluated in the current context, the module body is evaluated
+     * again in the same context.
+     * <p>
+     * The script is cancelled with a {@link GraalVMCancelledException}, if it
+     * exceeds the resource limits configured in the GraalVM preferences.
      *
      * @param desc   the script engine descriptor
      * @param script the script file
@@ -53,7 +63,37 @@ public interface IGraalVMFacade {
         throws IOException, GraalVMEvalException;
 
     /**
-     * Exits and discards the current context and initializes a new context
+     * Exits and discards the current context and initializes a new context.
+     * <p>
+     * Must not be invoked while a script is running in the current context,
+     * see {@link org.openstreetmap.josm.plugins.scripting.ui.ScriptRunner#isRunning()}.
+     *
+     * @throws IllegalStateException thrown, if a script is running in the current context
      */
     void resetContext();
+
+    /**
+     * Discards the idle pre-built contexts, i.e. after the privileges or
+     * resource limits for GraalVM contexts have changed. The current context
+     * isn't affected.
+     */
+    void clearContextPool();
+
+    /**
+     * Cancels the script currently running in the GraalVM, if any.
+     * <p>
+     * Can be invoked from any thread. The cancelled script fails with a
+     * {@link GraalVMCancelledException}. The next script is evaluated in a
+     * new context.
+     */
+    void cancel();
+
+    /**
+     * Warms up the GraalVM by importing the built-in API V3 modules in a
+     * throwaway context. Subsequent imports of these modules in other
+     * contexts reuse the code parsed during the warm-up.
+     * <p>
+     * Can be invoked from any thread. Doesn't throw if the warm-up fails.
+     */
+    void warmUp();
 }
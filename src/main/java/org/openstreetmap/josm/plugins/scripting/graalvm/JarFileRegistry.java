@@ -0,0 +1,202 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A registry of open {@link JarFile}s shared by the jar-based module
+ * repositories.
+ * <p>
+ * Opening a jar file reads its central directory. The registry keeps jar
+ * files open, so that resolving and loading the modules of a jar repository
+ * reads the central directory only once.
+ * <p>
+ * A jar file is acquired with {@link #acquire(File)} and released by closing
+ * the replied {@link Handle}. If the file was modified on disk, i.e. if its
+ * modification time or size changed, the next {@link #acquire(File)} opens
+ * it again. The outdated jar file is closed as soon as it isn't used anymore.
+ * <p>
+ * The registry is thread-safe. A {@link JarFile} can be read by multiple
+ * threads concurrently.
+ */
+public class JarFileRegistry {
+    static private final Logger logger = Logger.getLogger(JarFileRegistry.class.getName());
+
+    static private JarFileRegistry instance;
+
+    /**
+     * Replies the singleton instance of the registry.
+     *
+     * @return the registry
+     */
+    static public @NotNull JarFileRegistry getInstance() {
+        synchronized (JarFileRegistry.class) {
+            if (instance == null) {
+                instance = new JarFileRegistry();
+            }
+            return instance;
+        }
+    }
+
+    // an open jar file. Guarded by the monitor of the registry.
+    static private class Entry {
+        final JarFile jar;
+        final long lastModified;
+        final long length;
+        int refCount = 0;
+        boolean stale = false;
+
+        Entry(final JarFile jar, final long lastModified, final long length) {
+            this.jar = jar;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        boolean isUpToDate(final File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+
+    /**
+     * A handle to an open jar file. Close it to release the jar file.
+     */
+    public class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed = false;
+
+        private Handle(final Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Replies the open jar file.
+         *
+         * @return the jar file
+         */
+        public @NotNull JarFile getJarFile() {
+            return entry.jar;
+        }
+
+        /**
+         * Releases the jar file.
+         */
+        @Override
+        public void close() {
+            synchronized (JarFileRegistry.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    private final Map<File, Entry> jars = new HashMap<>();
+
+    /**
+     * Creates a registry.
+     */
+    public JarFileRegistry() {
+    }
+
+    static private File key(final File file) {
+        return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    static private void closeQuietly(final Entry entry) {
+        try {
+            entry.jar.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, format("Failed to close jar file ''{0}''", entry.jar.getName()), e);
+        }
+    }
+
+    private void release(final Entry entry) {
+        entry.refCount--;
+        if (entry.stale && entry.refCount <= 0) {
+            closeQuietly(entry);
+        }
+    }
+
+    private void retire(final File key, final Entry entry) {
+        jars.remove(key);
+        entry.stale = true;
+        if (entry.refCount <= 0) {
+            closeQuietly(entry);
+        }
+    }
+
+    /**
+     * Acquires the open jar file for <code>file</code>. Opens the jar file,
+     * if it isn't open yet or if it was modified since it was opened.
+     *
+     * @param file the jar file. Must not be null.
+     * @return the handle to the open jar file. Close it when the jar file
+     *     isn't used anymore.
+     * @throws NullPointerException if <code>file</code> is null
+     * @throws IOException if the jar file can't be opened
+     */
+    public synchronized @NotNull Handle acquire(@NotNull final File file) throws IOException {
+        Objects.requireNonNull(file);
+        final File key = key(file);
+        Entry entry = jars.get(key);
+        if (entry != null && !entry.isUpToDate(key)) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, format("Jar file ''{0}'' was modified, reopening it", key));
+            }
+            retire(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            final long lastModified = key.lastModified();
+            final long length = key.length();
+            entry = new Entry(new JarFile(key), lastModified, length);
+            jars.put(key, entry);
+        }
+        entry.refCount++;
+        return new Handle(entry);
+    }
+
+    /**
+     * Closes the jar file for <code>file</code> as soon as it isn't used
+     * anymore. The next {@link #acquire(File)} opens it again.
+     *
+     * @param file the jar file. Must not be null.
+     * @throws NullPointerException if <code>file</code> is null
+     */
+    public synchronized void invalidate(@NotNull final File file) {
+        Objects.requireNonNull(file);
+        final File key = key(file);
+        final Entry entry = jars.get(key);
+        if (entry != null) {
+            retire(key, entry);
+        }
+    }
+
+    /**
+     * Closes all jar files as soon as they aren't used anymore.
+     */
+    public synchronized void clear() {
+        Map.copyOf(jars).forEach(this::retire);
+    }
+
+    /**
+     * Replies the number of open jar files, excluding outdated jar files
+     * which are still in use.
+     *
+     * @return the number of open jar files
+     */
+    public synchronized int size() {
+        return jars.size();
+    }
+}
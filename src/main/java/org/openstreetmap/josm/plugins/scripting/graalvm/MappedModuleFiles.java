@@ -0,0 +1,151 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Reads module files from the file system.
+ * <p>
+ * Large module files, i.e. generated lookup tables, are memory-mapped instead
+ * of being copied onto the heap. Small module files are read, because mapping
+ * a file costs more than reading a few kilobytes.
+ * <p>
+ * Mapping is configured with the preference
+ * {@link PreferenceKeys#PREF_KEY_GRAALVM_MAP_MODULE_FILES}. It is disabled by
+ * default on Windows, because Windows doesn't allow to save a file while it
+ * is mapped, and a mapping is only released when it is garbage collected.
+ */
+public class MappedModuleFiles {
+
+    /**
+     * Module files of at least this size, in bytes, are memory-mapped.
+     */
+    static public final long MAPPING_THRESHOLD_BYTES = 64 * 1024;
+
+    // the size of the chunks in which module content is decoded
+    static private final int DECODE_CHUNK_SIZE = 8 * 1024;
+
+    private MappedModuleFiles() {
+    }
+
+    static private boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().startsWith("windows");
+    }
+
+    /**
+     * Replies true, if large module files are memory-mapped, see
+     * {@link PreferenceKeys#PREF_KEY_GRAALVM_MAP_MODULE_FILES}.
+     *
+     * @return true, if large module files are memory-mapped
+     */
+    static public boolean isMappingEnabled() {
+        final var prefs = Preferences.main();
+        final boolean defaultValue = !isWindows();
+        if (prefs == null) {
+            return defaultValue;
+        }
+        return prefs.getBoolean(PreferenceKeys.PREF_KEY_GRAALVM_MAP_MODULE_FILES, defaultValue);
+    }
+
+    /**
+     * Replies true, if a module file of size <code>size</code> is memory-mapped.
+     *
+     * @param size the size of the file, in bytes
+     * @return true, if the file is memory-mapped
+     */
+    static public boolean isMapped(final long size) {
+        return size >= MAPPING_THRESHOLD_BYTES && isMappingEnabled();
+    }
+
+    /**
+     * Memory-maps a module file read-only.
+     *
+     * @param file the file. Must not be null.
+     * @return the mapped content
+     * @throws IOException if the file can't be mapped, or if it is larger than 2GB
+     * @throws NullPointerException if <code>file</code> is null
+     */
+    static public @NotNull ByteBuffer map(@NotNull final Path file) throws IOException {
+        Objects.requireNonNull(file);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(format("module file ''{0}'' is too large, size={1}", file, size));
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Replies the content of a module file. Memory-maps the file, if it is
+     * large enough, see {@link #isMapped(long)}.
+     *
+     * @param file the file. Must not be null.
+     * @return the content
+     * @throws IOException if the file can't be read
+     * @throws NullPointerException if <code>file</code> is null
+     */
+    static public @NotNull ByteBuffer read(@NotNull final Path file) throws IOException {
+        Objects.requireNonNull(file);
+        return isMapped(Files.size(file)) ? map(file) : ByteBuffer.wrap(Files.readAllBytes(file));
+    }
+
+    /**
+     * Decodes UTF-8 encoded module content and replies it enclosed in a
+     * <code>header</code> and a <code>footer</code>. Malformed input is
+     * replaced.
+     * <p>
+     * The content is decoded in chunks, so that a mapped file is decoded
+     * directly into the resulting string, without an intermediate copy.
+     *
+     * @param header the header. Must not be null.
+     * @param content the content. Must not be null. Its position is advanced
+     *   to its limit.
+     * @param footer the footer. Must not be null.
+     * @return the decoded content, enclosed in the header and the footer
+     * @throws NullPointerException if one of the parameters is null
+     */
+    static public @NotNull String decode(@NotNull final String header,
+                                         @NotNull final ByteBuffer content,
+                                         @NotNull final String footer) {
+        Objects.requireNonNull(header);
+        Objects.requireNonNull(content);
+        Objects.requireNonNull(footer);
+        final var decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final var result = new StringBuilder(header.length() + content.remaining() + footer.length());
+        result.append(header);
+        final var chunk = CharBuffer.allocate(DECODE_CHUNK_SIZE);
+        while (true) {
+            final var status = decoder.decode(content, chunk, true);
+            result.append(chunk.flip());
+            chunk.clear();
+            if (status.isUnderflow()) {
+                break;
+            }
+        }
+        while (decoder.flush(chunk).isOverflow()) {
+            result.append(chunk.flip());
+            chunk.clear();
+        }
+        result.append(chunk.flip());
+        result.append(footer);
+        return result.toString();
+    }
+}
@@ -246,9 +246,9 @@ public class ModuleJarURI {
      * otherwise
      */
     public boolean refersToDirectoryJarEntry() {
-        try(final JarFile jar = new JarFile(getJarFile())) {
+        try(final var handle = JarFileRegistry.getInstance().acquire(getJarFile())) {
             final JarEntry entry =
-                jar.getJarEntry(this.getJarEntryName());
+                handle.getJarFile().getJarEntry(this.getJarEntryName());
             if (entry == null) {
                 return false;
             }
@@ -289,7 +289,7 @@ public class ModuleJarURI {
      *  false otherwise
      */
     public boolean refersToJarFile() {
-        try(final JarFile ignored = new JarFile(jarFilePath)) {
+        try(final var ignored = JarFileRegistry.getInstance().acquire(getJarFile())) {
             return true;
         } catch(IOException e) {
             return false;
@@ -384,8 +384,8 @@ public class ModuleJarURI {
 
         // if this URI refers to a jar entry of type file, then use
         // its parent dir as context path
-        try(final JarFile jar = new JarFile(getJarFile())) {
-            final JarEntry entry = jar.getJarEntry(normalizedJarEntryPath.toString());
+        try(final var handle = JarFileRegistry.getInstance().acquire(getJarFile())) {
+            final JarEntry entry = handle.getJarFile().getJarEntry(normalizedJarEntryPath.toString());
             if (entry != null) {
                 if (!entry.isDirectory() && normalizedJarEntryPath.getParent().isPresent()) {
                     normalizedJarEntryPath = normalizedJarEntryPath.getParent().get();
@@ -0,0 +1,387 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * The modules loaded during a script run, recorded by the {@link ModuleLoadProfiler}.
+ * <p>
+ * The profile is a tree. The root represents the script run, its descendants
+ * the loaded modules. The parent of a module is the module which imported or
+ * required it.
+ */
+public class ModuleLoadProfile {
+
+    /**
+     * The kind of node in a profile.
+     */
+    public enum Kind {
+        /** the script run */
+        SCRIPT("script"),
+        /** a CommonJS module loaded with <code>require()</code> */
+        COMMONJS_MODULE("commonjs"),
+        /** an ES module loaded with <code>import</code> */
+        ES_MODULE("esmodule");
+
+        private final String jsonName;
+
+        Kind(final String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        /**
+         * Replies the name of the kind in the JSON export.
+         *
+         * @return the name
+         */
+        public @NotNull String getJsonName() {
+            return jsonName;
+        }
+    }
+
+    /**
+     * A node in the profile.
+     * <p>
+     * Times are in nanoseconds. A time is -1, if it isn't known, i.e. because
+     * GraalJS doesn't expose the evaluation time of an individual ES module.
+     */
+    static public class ModuleLoad {
+        private final Kind kind;
+        private final String moduleId;
+        private final ModuleLoad importer;
+        private final List<ModuleLoad> children = new ArrayList<>();
+        private final long startOffsetNanos;
+        private String uri;
+        private boolean cached = false;
+        private boolean failed = false;
+        long resolveNanos = 0;
+        long readNanos = 0;
+        long parseNanos = -1;
+        long evalNanos = -1;
+        long totalNanos = -1;
+
+        ModuleLoad(@NotNull final Kind kind, @NotNull final String moduleId,
+                   @Null final ModuleLoad importer, final long startOffsetNanos) {
+            this.kind = kind;
+            this.moduleId = moduleId;
+            this.importer = importer;
+            this.startOffsetNanos = startOffsetNanos;
+            if (importer != null) {
+                importer.children.add(this);
+            }
+        }
+
+        /**
+         * Replies the kind of node.
+         *
+         * @return the kind
+         */
+        public @NotNull Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Replies the module ID as given in the <code>require()</code> call or
+         * the <code>import</code> declaration. For the root, replies the script name.
+         *
+         * @return the module ID
+         */
+        public @NotNull String getModuleId() {
+            return moduleId;
+        }
+
+        /**
+         * Replies the URI or path the module was resolved to.
+         *
+         * @return the URI. Null, if the module wasn't resolved.
+         */
+        public @Null String getUri() {
+            return uri;
+        }
+
+        void setUri(@Null final String uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * Replies true, if the module was served from the module cache of the
+         * polyglot context, instead of being loaded and evaluated.
+         *
+         * @return true, if the module was cached
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        void setCached(final boolean cached) {
+            this.cached = cached;
+        }
+
+        /**
+         * Replies true, if the module failed to load.
+         *
+         * @return true, if the module failed to load
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        void setFailed(final boolean failed) {
+            this.failed = failed;
+        }
+
+        /**
+         * Replies the module which imported or required this module.
+         *
+         * @return the importer. Null for the root.
+         */
+        public @Null ModuleLoad getImporter() {
+            return importer;
+        }
+
+        /**
+         * Replies the chain of importers, starting with the root and ending
+         * with the direct importer of this module.
+         *
+         * @return the importer chain. Empty for the root.
+         */
+        public @NotNull List<ModuleLoad> getImporterChain() {
+            final var chain = new LinkedList<ModuleLoad>();
+            for (var node = importer; node != null; node = node.importer) {
+                chain.addFirst(node);
+            }
+            return chain;
+        }
+
+        /**
+         * Replies the modules imported or required by this module, in load order.
+         *
+         * @return the modules
+         */
+        public @NotNull List<ModuleLoad> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Replies the time since the start of the script run when loading of
+         * this module started.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getStartOffsetNanos() {
+            return startOffsetNanos;
+        }
+
+        /**
+         * Replies the time spent resolving the module ID.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getResolveNanos() {
+            return resolveNanos;
+        }
+
+        /**
+         * Replies the time spent reading the module source.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getReadNanos() {
+            return readNanos;
+        }
+
+        /**
+         * Replies the time spent parsing the module source.
+         *
+         * @return the time in nanoseconds. -1, if unknown.
+         */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        /**
+         * Replies the time spent evaluating the module, including the time
+         * spent loading the modules it requires.
+         *
+         * @return the time in nanoseconds. -1, if unknown.
+         */
+        public long getEvalNanos() {
+            return evalNanos;
+        }
+
+        /**
+         * Replies the total time spent loading the module, including the
+         * time spent loading the modules it imports or requires.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getTotalNanos() {
+            if (totalNanos >= 0) {
+                return totalNanos;
+            }
+            return resolveNanos + readNanos + Math.max(0, parseNanos) + Math.max(0, evalNanos);
+        }
+
+        @Override
+        public String toString() {
+            return format("{0} ''{1}'': resolve={2}, read={3}, parse={4}, eval={5}, total={6}",
+                kind.getJsonName(), moduleId, resolveNanos, readNanos, parseNanos, evalNanos, getTotalNanos());
+        }
+    }
+
+    private final ModuleLoad root;
+    private final long startTime;
+
+    /**
+     * Creates a profile.
+     *
+     * @param root the root node, representing the script run
+     * @param startTime the start time of the script run, in milliseconds since the epoch
+     */
+    ModuleLoadProfile(@NotNull final ModuleLoad root, final long startTime) {
+        this.root = Objects.requireNonNull(root);
+        this.startTime = startTime;
+    }
+
+    /**
+     * Replies the root of the profile, which represents the script run.
+     *
+     * @return the root
+     */
+    public @NotNull ModuleLoad getRoot() {
+        return root;
+    }
+
+    /**
+     * Replies the name of the profiled script.
+     *
+     * @return the script name
+     */
+    public @NotNull String getScriptName() {
+        return root.getModuleId();
+    }
+
+    /**
+     * Replies the start time of the script run.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Replies the number of loaded modules, excluding the root.
+     *
+     * @return the number of modules
+     */
+    public int getModuleCount() {
+        return countModules(root);
+    }
+
+    static private int countModules(final ModuleLoad node) {
+        return node.children.stream().mapToInt(child -> 1 + countModules(child)).sum();
+    }
+
+    static private void writeJsonString(final Writer writer, @Null final String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    static private void writeJson(final Writer writer, final ModuleLoad node, final String indent)
+            throws IOException {
+        final var inner = indent + "  ";
+        writer.write("{\n");
+        writer.write(inner + "\"kind\": ");
+        writeJsonString(writer, node.kind.getJsonName());
+        writer.write(",\n" + inner + "\"id\": ");
+        writeJsonString(writer, node.moduleId);
+        writer.write(",\n" + inner + "\"uri\": ");
+        writeJsonString(writer, node.uri);
+        writer.write(",\n" + inner + "\"importers\": [");
+        final var chain = node.getImporterChain();
+        for (int i = 0; i < chain.size(); i++) {
+            writer.write(i == 0 ? "" : ", ");
+            writeJsonString(writer, chain.get(i).moduleId);
+        }
+        writer.write("],\n");
+        writer.write(inner + "\"cached\": " + node.cached + ",\n");
+        writer.write(inner + "\"failed\": " + node.failed + ",\n");
+        writer.write(inner + "\"startOffsetNanos\": " + node.startOffsetNanos + ",\n");
+        writer.write(inner + "\"resolveNanos\": " + node.resolveNanos + ",\n");
+        writer.write(inner + "\"readNanos\": " + node.readNanos + ",\n");
+        writer.write(inner + "\"parseNanos\": " + node.parseNanos + ",\n");
+        writer.write(inner + "\"evalNanos\": " + node.evalNanos + ",\n");
+        writer.write(inner + "\"totalNanos\": " + node.getTotalNanos() + ",\n");
+        writer.write(inner + "\"modules\": [");
+        for (int i = 0; i < node.children.size(); i++) {
+            writer.write(i == 0 ? "\n" + inner + "  " : ",\n" + inner + "  ");
+            writeJson(writer, node.children.get(i), inner + "  ");
+        }
+        writer.write(node.children.isEmpty() ? "]\n" : "\n" + inner + "]\n");
+        writer.write(indent + "}");
+    }
+
+    /**
+     * Writes the profile as JSON.
+     *
+     * @param writer the writer. Must not be null.
+     * @throws IOException if writing fails
+     * @throws NullPointerException if <code>writer</code> is null
+     */
+    public void writeJson(@NotNull final Writer writer) throws IOException {
+        Objects.requireNonNull(writer);
+        writer.write("{\n  \"startTime\": " + startTime + ",\n  \"script\": ");
+        writeJson(writer, root, "  ");
+        writer.write("\n}\n");
+        writer.flush();
+    }
+
+    /**
+     * Replies the profile as JSON.
+     *
+     * @return the JSON text
+     */
+    public @NotNull String toJson() {
+        final var writer = new StringWriter();
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            // can't happen with a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,403 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfile.Kind;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfile.ModuleLoad;
+
+import javax.swing.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_GRAALVM_MODULE_LOAD_PROFILER_ENABLED;
+
+/**
+ * An opt-in profiler for the CommonJS and ES modules loaded during a script run.
+ * <p>
+ * A script run is profiled from {@link #start(String)} until the replied
+ * {@link Session} is closed. The module loaders report to the profiler on the
+ * thread running the script:
+ * <ul>
+ *     <li>{@link RequireFunction} reports the resolution, reading, parsing, and
+ *     evaluation of a CommonJS module. Nested <code>require()</code> calls are
+ *     recorded as children of the requiring module.</li>
+ *     <li>{@link org.openstreetmap.josm.plugins.scripting.graalvm.esmodule.ESModuleResolver}
+ *     reports the file system calls GraalJS issues to load ES modules. GraalJS
+ *     parses the path of the importing module right before it resolves an import,
+ *     and it parses a module right after it has read it. The profiler derives the
+ *     importer of an ES module and its parse time from this sequence of calls.
+ *     GraalJS evaluates a graph of ES modules as a whole, so the evaluation time of
+ *     an individual ES module isn't known.</li>
+ * </ul>
+ * Listeners are notified on the Swing EDT about the profiles of completed runs,
+ * see {@link #PROP_LAST_PROFILE}.
+ */
+public class ModuleLoadProfiler {
+    static private final Logger logger = Logger.getLogger(ModuleLoadProfiler.class.getName());
+
+    /**
+     * The name of the property holding the profile of the most recently
+     * completed script run.
+     */
+    static public final String PROP_LAST_PROFILE = ModuleLoadProfiler.class.getName() + ".lastProfile";
+
+    static private final ThreadLocal<Session> current = new ThreadLocal<>();
+    static private final PropertyChangeSupport support = new PropertyChangeSupport(ModuleLoadProfiler.class);
+    static private volatile ModuleLoadProfile lastProfile = null;
+    static private volatile Boolean enabled = null;
+
+    private ModuleLoadProfiler() {
+    }
+
+    /**
+     * The profiling session of a script run.
+     */
+    static public class Session implements AutoCloseable {
+        private final long startNanos = System.nanoTime();
+        private final long startTime = System.currentTimeMillis();
+        private final ModuleLoad root;
+        // the CommonJS modules currently loaded, innermost module first
+        private final Deque<ModuleLoad> loading = new ArrayDeque<>();
+        private final Map<String, ModuleLoad> esModulesByPath = new HashMap<>();
+        // the importer of the next ES module. Null, if the next ES module is
+        // imported by the innermost CommonJS module or the script
+        private ModuleLoad esImporter = null;
+        // true, if the path parsed last was the path of an importing ES module
+        private boolean esImporterParsed = false;
+        // the module ID of the next ES module, i.e. 'josm/util'
+        private String pendingEsModuleId = null;
+        private long pendingEsResolveNanos = 0;
+        // the ES module read last, which GraalJS is parsing
+        private ModuleLoad parsingEsModule = null;
+        private long parsingEsModuleSince = 0;
+        private boolean closed = false;
+
+        private Session(@Null final String scriptName) {
+            root = scriptName == null ? null : new ModuleLoad(Kind.SCRIPT, scriptName, null, 0);
+            if (root != null) {
+                loading.push(root);
+            }
+        }
+
+        /**
+         * Replies true, if this session records module loads.
+         *
+         * @return true, if profiling is enabled for this session
+         */
+        public boolean isRecording() {
+            return root != null;
+        }
+
+        private long offset(final long nanos) {
+            return nanos - startNanos;
+        }
+
+        private void completeEsModuleParse(final long now) {
+            if (parsingEsModule != null) {
+                parsingEsModule.parseNanos = now - parsingEsModuleSince;
+                parsingEsModule = null;
+            }
+        }
+
+        /**
+         * Completes the session and publishes the profile.
+         */
+        @Override
+        public void close() {
+            if (closed || root == null) {
+                return;
+            }
+            closed = true;
+            // the parse time of the last ES module is unknown, because GraalJS
+            // starts to evaluate the module graph after it has been parsed
+            parsingEsModule = null;
+            root.totalNanos = System.nanoTime() - startNanos;
+            if (current.get() == this) {
+                current.remove();
+            }
+            publish(new ModuleLoadProfile(root, startTime));
+        }
+    }
+
+    static private void publish(@NotNull final ModuleLoadProfile profile) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("module load profile for ''{0}'': {1} modules",
+                profile.getScriptName(), profile.getModuleCount()));
+        }
+        final var oldProfile = lastProfile;
+        lastProfile = profile;
+        SwingUtilities.invokeLater(() ->
+            support.firePropertyChange(PROP_LAST_PROFILE, oldProfile, profile)
+        );
+    }
+
+    /**
+     * Replies true, if module loads are profiled.
+     *
+     * @return true, if module loads are profiled
+     */
+    static public boolean isEnabled() {
+        if (enabled == null) {
+            final var prefs = Preferences.main();
+            enabled = prefs != null && prefs.getBoolean(PREF_KEY_GRAALVM_MODULE_LOAD_PROFILER_ENABLED, false);
+        }
+        return enabled;
+    }
+
+    /**
+     * Enables or disables profiling of module loads. Takes effect for the next
+     * script run.
+     *
+     * @param enabled true, to profile module loads
+     */
+    static public void setEnabled(final boolean enabled) {
+        ModuleLoadProfiler.enabled = enabled;
+        final var prefs = Preferences.main();
+        if (prefs != null) {
+            prefs.putBoolean(PREF_KEY_GRAALVM_MODULE_LOAD_PROFILER_ENABLED, enabled);
+        }
+    }
+
+    /**
+     * Starts profiling a script run on the current thread. If profiling is
+     * disabled, replies a session which doesn't record anything.
+     *
+     * @param scriptName the name of the script. Must not be null.
+     * @return the session. Close it when the script run is completed.
+     * @throws NullPointerException if <code>scriptName</code> is null
+     */
+    static public @NotNull Session start(@NotNull final String scriptName) {
+        Objects.requireNonNull(scriptName);
+        if (!isEnabled()) {
+            return new Session(null);
+        }
+        final var session = new Session(scriptName);
+        current.set(session);
+        return session;
+    }
+
+    /**
+     * Notifies the profiler that a CommonJS module is required on the current
+     * thread. Must be followed by {@link #exitCommonJSModule(boolean)}.
+     * Ignored, if no script run is profiled on the current thread.
+     *
+     * @param moduleId the module ID. Must not be null.
+     */
+    static public void enterCommonJSModule(@NotNull final String moduleId) {
+        final var session = current.get();
+        if (session == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        session.completeEsModuleParse(now);
+        session.loading.push(new ModuleLoad(Kind.COMMONJS_MODULE, moduleId, session.loading.peek(), session.offset(now)));
+    }
+
+    static private @Null ModuleLoad currentCommonJSModule() {
+        final var session = current.get();
+        if (session == null) {
+            return null;
+        }
+        final var module = session.loading.peek();
+        return module == null || module.getKind() != Kind.COMMONJS_MODULE ? null : module;
+    }
+
+    /**
+     * Notifies the profiler that the CommonJS module required on the current
+     * thread was resolved.
+     *
+     * @param uri the resolved URI. Null, if the module ID couldn't be resolved.
+     * @param nanos the time spent resolving the module ID
+     */
+    static public void commonJSModuleResolved(@Null final String uri, final long nanos) {
+        final var module = currentCommonJSModule();
+        if (module != null) {
+            module.setUri(uri);
+            module.resolveNanos += nanos;
+        }
+    }
+
+    /**
+     * Notifies the profiler that the CommonJS module required on the current
+     * thread was served from the module cache.
+     */
+    static public void commonJSModuleCached() {
+        final var module = currentCommonJSModule();
+        if (module != null) {
+            module.setCached(true);
+        }
+    }
+
+    /**
+     * Notifies the profiler about the time spent reading the source of the
+     * CommonJS module required on the current thread.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    static public void commonJSModuleRead(final long nanos) {
+        final var module = currentCommonJSModule();
+        if (module != null) {
+            module.readNanos += nanos;
+        }
+    }
+
+    /**
+     * Notifies the profiler about the time spent parsing the CommonJS module
+     * required on the current thread.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    static public void commonJSModuleParsed(final long nanos) {
+        final var module = currentCommonJSModule();
+        if (module != null) {
+            module.parseNanos = Math.max(0, module.parseNanos) + nanos;
+        }
+    }
+
+    /**
+     * Notifies the profiler about the time spent evaluating the CommonJS module
+     * required on the current thread, including nested <code>require()</code> calls.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    static public void commonJSModuleEvaluated(final long nanos) {
+        final var module = currentCommonJSModule();
+        if (module != null) {
+            module.evalNanos = Math.max(0, module.evalNanos) + nanos;
+        }
+    }
+
+    /**
+     * Notifies the profiler that loading the CommonJS module required on the
+     * current thread is completed.
+     *
+     * @param failed true, if the module failed to load
+     */
+    static public void exitCommonJSModule(final boolean failed) {
+        final var module = currentCommonJSModule();
+        if (module == null) {
+            return;
+        }
+        final var session = current.get();
+        final long now = System.nanoTime();
+        session.completeEsModuleParse(now);
+        session.loading.pop();
+        module.setFailed(failed);
+        module.totalNanos = session.offset(now) - module.getStartOffsetNanos();
+    }
+
+    /**
+     * Notifies the profiler that GraalJS parsed a path while loading ES modules
+     * on the current thread.
+     *
+     * @param path the path. Must not be null.
+     * @param nanos the time spent resolving the path
+     */
+    static public void esModulePathParsed(@NotNull final String path, final long nanos) {
+        final var session = current.get();
+        if (session == null) {
+            return;
+        }
+        session.completeEsModuleParse(System.nanoTime() - nanos);
+        final var importer = session.esModulesByPath.get(path);
+        if (importer != null) {
+            // GraalJS is about to resolve an import of this module
+            session.esImporter = importer;
+            session.esImporterParsed = true;
+            session.pendingEsModuleId = null;
+        } else {
+            // a module ID. If GraalJS didn't parse the path of an importing
+            // module right before, the module ID is imported by the script
+            if (!session.esImporterParsed) {
+                session.esImporter = null;
+            }
+            session.esImporterParsed = false;
+            session.pendingEsModuleId = path;
+        }
+        session.pendingEsResolveNanos += nanos;
+    }
+
+    /**
+     * Notifies the profiler that GraalJS resolved a path to a real path while
+     * loading ES modules on the current thread.
+     *
+     * @param nanos the time spent resolving the path
+     */
+    static public void esModulePathResolved(final long nanos) {
+        final var session = current.get();
+        if (session == null) {
+            return;
+        }
+        session.completeEsModuleParse(System.nanoTime() - nanos);
+        session.pendingEsResolveNanos += nanos;
+    }
+
+    /**
+     * Notifies the profiler that GraalJS read an ES module on the current thread.
+     *
+     * @param path the path of the module. Must not be null.
+     * @param nanos the time spent reading the module
+     */
+    static public void esModuleRead(@NotNull final String path, final long nanos) {
+        final var session = current.get();
+        if (session == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        session.completeEsModuleParse(now - nanos);
+        final var importer = session.esImporter != null ? session.esImporter : session.loading.peek();
+        final var moduleId = session.pendingEsModuleId != null ? session.pendingEsModuleId : path;
+        final var module = new ModuleLoad(Kind.ES_MODULE, moduleId, importer,
+            session.offset(now - nanos - session.pendingEsResolveNanos));
+        module.setUri(path);
+        module.resolveNanos = session.pendingEsResolveNanos;
+        module.readNanos = nanos;
+        session.esModulesByPath.put(path, module);
+        session.pendingEsModuleId = null;
+        session.pendingEsResolveNanos = 0;
+        session.parsingEsModule = module;
+        session.parsingEsModuleSince = now;
+    }
+
+    /**
+     * Replies the profile of the most recently completed script run.
+     *
+     * @return the profile. Null, if no script run was profiled yet.
+     */
+    static public @Null ModuleLoadProfile getLastProfile() {
+        return lastProfile;
+    }
+
+    /**
+     * Adds a listener for changes of the property {@link #PROP_LAST_PROFILE}.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    static public void addPropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.addPropertyChangeListener(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    static public void removePropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.removePropertyChangeListener(listener);
+    }
+}
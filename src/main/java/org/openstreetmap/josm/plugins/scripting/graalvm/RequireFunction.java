@@ -1,22 +1,19 @@
 package org.openstreetmap.josm.plugins.scripting.graalvm;
 
-import com.github.mustachejava.DefaultMustacheFactory;
-import com.github.mustachejava.Mustache;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.PolyglotException;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleCache;
 import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleRepositoryRegistry;
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleSourceCache;
+import org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetricsRecorder;
 
 import javax.validation.constraints.NotNull;
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
@@ -36,33 +33,44 @@ public class RequireFunction implements Function<String, Value> {
     static private final Logger logger
         = Logger.getLogger(RequireFunction.class.getName());
 
-    // the resource name of the mustache template for the wrapper function
-    static private final String REQUIRE_WRAPPER_RESOURCE = "/graalvm/require-wrapper.mustache";
+    // the resource name of the JavaScript wrapper function
+    static private final String REQUIRE_WRAPPER_RESOURCE = "/graalvm/require-wrapper.js";
 
-    static private Mustache requireWrapperTemplate = null;
+    // the maximum number of cached module sources
+    static private final int SOURCE_CACHE_CAPACITY = 256;
 
-    static private void prepareWrapperTemplate() throws IOException {
+    // the wrapper function is parsed once per engine, because the same
+    // source is evaluated in every context
+    static private Source requireWrapperSource = null;
+
+    static private final CommonJSModuleSourceCache sourceCache =
+        new CommonJSModuleSourceCache(SOURCE_CACHE_CAPACITY);
+
+    static private void prepareWrapperSource() throws IOException {
         try(final InputStream is =
             RequireFunction.class.getResourceAsStream(REQUIRE_WRAPPER_RESOURCE)) {
             if (is == null) {
                 throw new IOException(format(
-                    "mustache template with resource name ''{0}'' not found",
+                    "wrapper function with resource name ''{0}'' not found",
                     REQUIRE_WRAPPER_RESOURCE
                 ));
             }
-            requireWrapperTemplate = new DefaultMustacheFactory().compile(
-                new BufferedReader(new InputStreamReader(is)),
-                "require-wrapper-template"
-            );
+            requireWrapperSource = Source.newBuilder(
+                    "js",
+                    new String(is.readAllBytes(), StandardCharsets.UTF_8),
+                    "require-wrapper.js"
+                )
+                .cached(true)
+                .build();
         }
     }
 
     static {
         try {
-            prepareWrapperTemplate();
+            prepareWrapperSource();
         } catch(Throwable e) {
             logger.log(Level.SEVERE, format(
-                "failed to load and compile mustache template resource ''{0}''", REQUIRE_WRAPPER_RESOURCE
+                "failed to load wrapper function resource ''{0}''", REQUIRE_WRAPPER_RESOURCE
             ), e);
         }
     }
@@ -96,21 +104,21 @@ public class RequireFunction implements Function<String, Value> {
         this.contextURI = contextURI;
     }
 
-    private String loadModuleSourceFromFile(@NotNull URI uri)
+    private ByteBuffer loadModuleSourceFromFile(@NotNull URI uri)
         throws IOException {
         // pre: uri is a file URI - don't check again
         final File moduleFile = new File(uri);
-        return new String(
-            Files.readAllBytes(Paths.get(moduleFile.getAbsolutePath()))
-        );
+        // large module files are memory-mapped, not copied onto the heap
+        return MappedModuleFiles.read(moduleFile.getAbsoluteFile().toPath());
     }
 
-    private String loadModuleSourceFromJarEntry(@NotNull URI uri)
+    private ByteBuffer loadModuleSourceFromJarEntry(@NotNull URI uri)
         throws IOException {
         // pre: uri is a jar file URI - don't check again
         final ModuleJarURI moduleUri = new ModuleJarURI(uri);
 
-        try (final JarFile jarFile = new JarFile(moduleUri.getJarFile())) {
+        try (final var handle = JarFileRegistry.getInstance().acquire(moduleUri.getJarFile())) {
+            final JarFile jarFile = handle.getJarFile();
             final JarEntry entry = jarFile.getJarEntry(
                 moduleUri.getJarEntryName());
             if (entry == null || entry.isDirectory()) {
@@ -123,20 +131,13 @@ public class RequireFunction implements Function<String, Value> {
                     uri
                 ));
             }
-            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             try(InputStream is = jarFile.getInputStream(entry)) {
-                final byte [] data = new byte[1024];
-                int numRead;
-                while ((numRead = is.read(data, 0, data.length)) != -1) {
-                    buffer.write(data, 0, numRead);
-                }
-                buffer.flush();
-                return buffer.toString(StandardCharsets.UTF_8);
+                return ByteBuffer.wrap(is.readAllBytes());
             }
         }
     }
 
-    private String loadModuleSource(@NotNull URI uri) throws IOException {
+    private ByteBuffer loadModuleSource(@NotNull URI uri) throws IOException {
         Objects.requireNonNull(uri);
         final String scheme = uri.getScheme().toLowerCase();
         return switch (scheme) {
@@ -148,25 +149,38 @@ public class RequireFunction implements Function<String, Value> {
         };
     }
 
-    private String wrapModuleSource(@NotNull String moduleID,
-        @NotNull String moduleURI, @NotNull String moduleSource) {
-
-        // assemble parameters
-        final Map<String, String> parameters = new HashMap<>();
-        parameters.put("moduleID", moduleID);
-        parameters.put("moduleURI", moduleURI);
-        parameters.put("moduleSource", moduleSource);
-
-        if (requireWrapperTemplate == null) {
-            throw new IllegalStateException(
-                "can't evaluate mustache template, template not compiled yet"
-            );
+    static private long lastModified(@NotNull URI uri) {
+        // pre: uri is a file or a jar URI - don't check again
+        if ("jar".equalsIgnoreCase(uri.getScheme())) {
+            return new ModuleJarURI(uri).getJarFile().lastModified();
         }
+        return new File(uri).lastModified();
+    }
 
-        // evaluate template
-        final StringWriter buffer = new StringWriter();
-        requireWrapperTemplate.execute(buffer, parameters);
-        return buffer.toString();
+    /**
+     * Replies the source of the module function for the module given by
+     * <code>moduleURI</code>. The source evaluates to a function accepting
+     * the parameters <code>module</code>, <code>exports</code>, and
+     * <code>require</code>.
+     */
+    private Source lookupModuleFunctionSource(@NotNull URI moduleURI) throws IOException {
+        return sourceCache.lookup(moduleURI, lastModified(moduleURI), () -> {
+            // the module source is decoded directly into the module function
+            final String moduleFunction = MappedModuleFiles.decode(
+                // no line break after the function header, so that
+                // line numbers in error messages match the module file
+                "(function(module, exports, require) {",
+                loadModuleSource(moduleURI),
+                "\n})"
+            );
+            return Source.newBuilder(
+                    "js",                                          // language
+                    moduleFunction,                                // source
+                    moduleURI.toString()                           // source name
+                )
+                .cached(true)
+                .build();
+        });
     }
 
     /**
@@ -180,6 +194,18 @@ public class RequireFunction implements Function<String, Value> {
      */
     @Override
     public Value apply(String moduleID) {
+        ModuleLoadProfiler.enterCommonJSModule(moduleID);
+        boolean failed = true;
+        try {
+            final Value module = requireModule(moduleID);
+            failed = false;
+            return module;
+        } finally {
+            ModuleLoadProfiler.exitCommonJSModule(failed);
+        }
+    }
+
+    private Value requireModule(String moduleID) {
 
         final CommonJSModuleCache cache = CommonJSModuleCache.getInstance();
         final Context context = Context.getCurrent();
@@ -191,6 +217,9 @@ public class RequireFunction implements Function<String, Value> {
             throw new IllegalStateException(message);
         }
 
+        // time spent resolving and loading the module, without evaluating it,
+        // is recorded in the metrics of the current script run
+        final long loadStart = System.nanoTime();
         Optional<URI> resolvedModuleURI;
         if (contextURI == null) {
             if (logger.isLoggable(Level.FINE)) {
@@ -211,6 +240,10 @@ public class RequireFunction implements Function<String, Value> {
                 moduleID,
                 contextURI);
         }
+        ModuleLoadProfiler.commonJSModuleResolved(
+            resolvedModuleURI.map(URI::toString).orElse(null),
+            System.nanoTime() - loadStart
+        );
 
         if (resolvedModuleURI.isEmpty()) {
             final var message = format(
@@ -226,22 +259,28 @@ public class RequireFunction implements Function<String, Value> {
         final URI moduleURI = resolvedModuleURI.get();
         final Optional<Value> cachedModule = cache.lookup(moduleURI, context);
         if (cachedModule.isPresent()) {
+            ScriptRunMetricsRecorder.addModuleLoadTime(System.nanoTime() - loadStart);
+            ModuleLoadProfiler.commonJSModuleCached();
             return cachedModule.get();
         }
 
+        if (requireWrapperSource == null) {
+            throw new IllegalStateException(
+                "can't evaluate module, wrapper function not loaded"
+            );
+        }
         try {
-            final String moduleSource = loadModuleSource(moduleURI);
-            final String wrapperSource = wrapModuleSource(
-                moduleID,
-                moduleURI.toString(),
-                moduleSource);
-
-            final Source source = Source.newBuilder(
-                    "js",                                  // language
-                    new StringReader(wrapperSource),       // source
-                    moduleURI + "(wrapped)"                // source name
-                ).build();
-            final Value module = context.eval(source);
+            final long readStart = System.nanoTime();
+            final Source source = lookupModuleFunctionSource(moduleURI);
+            final long parseStart = System.nanoTime();
+            ModuleLoadProfiler.commonJSModuleRead(parseStart - readStart);
+            final Value moduleFunction = context.eval(source);
+            final Value wrapper = context.eval(requireWrapperSource);
+            final long evalStart = System.nanoTime();
+            ModuleLoadProfiler.commonJSModuleParsed(evalStart - parseStart);
+            ScriptRunMetricsRecorder.addModuleLoadTime(evalStart - loadStart);
+            final Value module = wrapper.execute(moduleID, moduleURI.toString(), moduleFunction);
+            ModuleLoadProfiler.commonJSModuleEvaluated(System.nanoTime() - evalStart);
             cache.remember(moduleURI, module, context);
             return module;
         } catch(IOException | PolyglotException e) {
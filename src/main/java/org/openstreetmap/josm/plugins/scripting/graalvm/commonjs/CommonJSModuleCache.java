@@ -2,23 +2,84 @@ package org.openstreetmap.josm.plugins.scripting.graalvm.commonjs;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Value;
+import org.openstreetmap.josm.data.Preferences;
 
 import javax.validation.constraints.NotNull;
 import java.net.URI;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_GRAALVM_COMMONJS_MODULE_CACHE_SIZE;
 
 /**
  * Provides a singleton cache for CommonJS modules.
+ * <p>
+ * The cache is thread-safe. Modules are cached per polyglot {@link Context}.
+ * Contexts are weakly referenced keys. A module value refers to the context
+ * it was created in, though, so the modules of a context should be removed
+ * with {@link #clear(Context)} when the context is closed or replaced.
+ * <p>
+ * Each context caches up to {@link #getCapacity() capacity} modules. If
+ * the modules of a context exceed it, the least recently used module of this
+ * context is evicted. Requiring an evicted module again evaluates its body
+ * again. The modules of other contexts are never evicted.
  */
 public class CommonJSModuleCache {
 
+    /**
+     * The default maximum number of modules cached per context.
+     */
+    static public final int DEFAULT_CAPACITY = 256;
+
     static private CommonJSModuleCache instance = null;
 
-    // the cache of required CommonJS modules
-    private final Map<Context, Map<URI, Value>> cache = new HashMap<>();
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of lookups which found a cached module
+     * @param misses the number of lookups which didn't find a cached module
+     * @param evictions the number of modules evicted because the modules of
+     *     a context exceeded the capacity
+     */
+    public record Statistics(long hits, long misses, long evictions) {
+
+        /**
+         * Replies the ratio of lookups which found a cached module.
+         *
+         * @return the hit rate in the range [0,1]. 0, if no module was looked up yet.
+         */
+        public double hitRate() {
+            final long total = hits + misses;
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, evictions={2}", hits, misses, evictions);
+        }
+    }
+
+    // the cache of required CommonJS modules, weakly keyed by context. The
+    // modules of a context are kept in least recently used order. Guarded
+    // by the monitor of 'cache'.
+    private final Map<Context, Map<URI, Value>> cache = new WeakHashMap<>();
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    static private int lookupCapacity() {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return DEFAULT_CAPACITY;
+        }
+        return Math.max(1, prefs.getInt(PREF_KEY_GRAALVM_COMMONJS_MODULE_CACHE_SIZE, DEFAULT_CAPACITY));
+    }
 
     /**
      * Replies the singleton instance of the cache
@@ -26,10 +87,28 @@ public class CommonJSModuleCache {
      * @return the singleton instance
      */
     static public CommonJSModuleCache getInstance() {
-        if (instance == null) {
-            instance = new CommonJSModuleCache();
+        synchronized (CommonJSModuleCache.class) {
+            if (instance == null) {
+                instance = new CommonJSModuleCache(lookupCapacity());
+            }
+            return instance;
         }
-        return instance;
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum number of modules cached per context. Must be
+     *     greater than 0.
+     * @throws IllegalArgumentException if <code>capacity</code> isn't positive
+     */
+    public CommonJSModuleCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must be > 0, got {0}", capacity
+            ));
+        }
+        this.capacity = capacity;
     }
 
     /**
@@ -51,8 +130,22 @@ public class CommonJSModuleCache {
         Objects.requireNonNull(module);
         Objects.requireNonNull(forContext);
 
-        cache.computeIfAbsent(forContext, context -> new HashMap<>())
-            .put(moduleURI, module);
+        synchronized (cache) {
+            cache.computeIfAbsent(forContext, context -> newModuleMap()).put(moduleURI, module);
+        }
+    }
+
+    private Map<URI, Value> newModuleMap() {
+        return new LinkedHashMap<>(16, 0.75f, true /* access order */) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<URI, Value> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
     }
 
     /**
@@ -67,9 +160,11 @@ public class CommonJSModuleCache {
                       @NotNull  final Context inContext) {
         Objects.requireNonNull(moduleURI);
         Objects.requireNonNull(inContext);
-        Map<URI, Value> modulesCache = cache.get(inContext);
-        if (modulesCache == null) return;
-        modulesCache.remove(moduleURI);
+        synchronized (cache) {
+            final Map<URI, Value> modulesCache = cache.get(inContext);
+            if (modulesCache == null) return;
+            modulesCache.remove(moduleURI);
+        }
     }
 
     /**
@@ -81,7 +176,9 @@ public class CommonJSModuleCache {
      */
     public void clear(@NotNull  final Context context) {
         Objects.requireNonNull(context);
-        cache.remove(context);
+        synchronized (cache) {
+            cache.remove(context);
+        }
     }
 
     /**
@@ -100,10 +197,45 @@ public class CommonJSModuleCache {
         Objects.requireNonNull(moduleURI);
         Objects.requireNonNull(context);
 
-        final Map<URI, Value> modulesCache = cache.get(context);
-        if (modulesCache == null) {
-            return Optional.empty();
+        final Value module;
+        synchronized (cache) {
+            final Map<URI, Value> modulesCache = cache.get(context);
+            module = modulesCache == null ? null : modulesCache.get(moduleURI);
         }
-        return Optional.ofNullable(modulesCache.get(moduleURI));
+        (module == null ? misses : hits).incrementAndGet();
+        return Optional.ofNullable(module);
+    }
+
+    /**
+     * Replies the maximum number of modules cached per context.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replies the number of modules cached for <code>context</code>.
+     *
+     * @param context the polyglot context. Must not be null.
+     * @return the number of cached modules
+     * @throws NullPointerException if <code>context</code> is null
+     */
+    public int size(@NotNull final Context context) {
+        Objects.requireNonNull(context);
+        synchronized (cache) {
+            final Map<URI, Value> modulesCache = cache.get(context);
+            return modulesCache == null ? 0 : modulesCache.size();
+        }
+    }
+
+    /**
+     * Replies the hit, miss, and eviction counts of the cache.
+     *
+     * @return the metrics
+     */
+    public @NotNull Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), evictions.get());
     }
 }
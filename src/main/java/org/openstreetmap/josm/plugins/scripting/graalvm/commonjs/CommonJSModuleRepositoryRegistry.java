@@ -11,6 +11,11 @@ import javax.validation.constraints.Null;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -24,13 +29,24 @@ import static java.text.MessageFormat.format;
  * <p>
  * Provides methods to resolve a module ID against the repositories
  * managed in this registry.
+ * <p>
+ * The registry publishes immutable snapshots of the repositories. Module IDs
+ * are resolved against the current snapshot without locking, so that they can
+ * be resolved concurrently from multiple contexts and threads. Changes to the
+ * repositories are serialized and published as a new snapshot.
+ * <p>
+ * Changes to the user defined repositories are saved to the preferences
+ * with a short delay, so that a series of changes is saved only once.
  */
 @SuppressWarnings("unused")
 public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepositoriesSource {
     static private final Logger logger = Logger.getLogger(CommonJSModuleRepositoryRegistry.class.getName());
 
-    static private CommonJSModuleRepositoryRegistry instance;
+    static private final CommonJSModuleRepositoryRegistry instance = new CommonJSModuleRepositoryRegistry();
 
+    // the delay after the last change, after which the user defined
+    // repositories are saved to the preferences
+    static private final long SAVE_DELAY_MILLIS = 500;
 
     /**
      * Replies the singleton instance of the registry.
@@ -38,14 +54,54 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @return the singleton instance
      */
     static public @NotNull CommonJSModuleRepositoryRegistry getInstance() {
-        if (instance == null) {
-            instance = new CommonJSModuleRepositoryRegistry();
-        }
         return instance;
     }
 
-    private ICommonJSModuleRepository builtInRepo = null;
-    private List<ICommonJSModuleRepository> userDefinedRepos = new ArrayList<>();
+    /**
+     * An immutable snapshot of the repositories.
+     *
+     * @param builtInRepo the repository with the CommonJS modules shipped with
+     *     the plugin. May be null.
+     * @param userDefinedRepos the repositories the user can change in the preferences
+     */
+    private record Repositories(
+        @Null ICommonJSModuleRepository builtInRepo,
+        @NotNull List<ICommonJSModuleRepository> userDefinedRepos) {
+
+        Repositories {
+            userDefinedRepos = List.copyOf(userDefinedRepos);
+        }
+
+        Repositories withBuiltInRepo(@Null final ICommonJSModuleRepository repo) {
+            return new Repositories(repo, userDefinedRepos);
+        }
+
+        Repositories withUserDefinedRepos(@NotNull final List<ICommonJSModuleRepository> repos) {
+            return new Repositories(builtInRepo, repos);
+        }
+
+        /**
+         * Replies the built-in repository, if any, followed by the user
+         * defined repositories.
+         */
+        Stream<ICommonJSModuleRepository> all() {
+            return Stream.concat(Stream.ofNullable(builtInRepo), userDefinedRepos.stream());
+        }
+    }
+
+    private final AtomicReference<Repositories> repositories =
+        new AtomicReference<>(new Repositories(null, List.of()));
+    private final CommonJSModuleResolutionCache resolutionCache = new CommonJSModuleResolutionCache();
+
+    private final ScheduledExecutorService saveScheduler =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "josm-scripting-commonjs-repository-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    // the pending save of the user defined repositories. Guarded by the
+    // monitor of the registry.
+    private ScheduledFuture<?> pendingSave = null;
 
     /**
      * Sets the built-in repository for CommonJS modules.
@@ -56,8 +112,8 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      *
      * @param repo the repository
      */
-    public void setBuiltInRepository(@Null ICommonJSModuleRepository repo) {
-        this.builtInRepo = repo;
+    public synchronized void setBuiltInRepository(@Null ICommonJSModuleRepository repo) {
+        publish(repositories.get().withBuiltInRepo(repo));
     }
 
     /**
@@ -66,7 +122,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @return the built-in repository
      */
     public @Null ICommonJSModuleRepository getBuiltInRepository() {
-        return builtInRepo;
+        return repositories.get().builtInRepo();
     }
 
     /**
@@ -74,11 +130,52 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      */
     private CommonJSModuleRepositoryRegistry(){}
 
+    // publishes a new snapshot, then reconfigures and invalidates the cache of
+    // resolved module IDs. Resolutions computed against the previous snapshot
+    // aren't cached, because the cache is invalidated after the snapshot is
+    // published. Guarded by the monitor of the registry.
+    private void publish(@NotNull final Repositories snapshot) {
+        repositories.set(snapshot);
+        resolutionCache.setRepositories(snapshot.all()
+            .map(ICommonJSModuleRepository::getBaseURI)
+            .toList());
+    }
+
+    // saves the user defined repositories to the preferences after a delay.
+    // Guarded by the monitor of the registry.
+    private void scheduleSave() {
+        if (pendingSave != null) {
+            pendingSave.cancel(false);
+        }
+        pendingSave = saveScheduler.schedule(this::savePending, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void savePending() {
+        synchronized (this) {
+            pendingSave = null;
+        }
+        final var prefs = Preferences.main();
+        if (prefs != null) {
+            saveToPreferences(prefs);
+        }
+    }
+
+    /**
+     * Saves the user defined repositories to the preferences now, if a
+     * change hasn't been saved yet.
+     */
+    public void flushPendingSave() {
+        final boolean pending;
+        synchronized (this) {
+            pending = pendingSave != null && pendingSave.cancel(false);
+        }
+        if (pending) {
+            savePending();
+        }
+    }
+
     private Stream<ICommonJSModuleRepository> getRepositoriesAsStream() {
-        return Stream.concat(
-            Stream.of(builtInRepo),
-            userDefinedRepos.stream()
-        ).filter(Objects::nonNull);
+        return repositories.get().all();
     }
 
     protected boolean isPresent(final URI baseUri) {
@@ -96,13 +193,16 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @param repo the repository. Must not be null.
      * @throws NullPointerException if <code>repo</code> is null
      */
-    public void addUserDefinedRepository(final @NotNull ICommonJSModuleRepository repo) {
+    public synchronized void addUserDefinedRepository(final @NotNull ICommonJSModuleRepository repo) {
         Objects.requireNonNull(repo);
         if (isPresent(repo.getBaseURI())) {
             return;
         }
-        userDefinedRepos.add(repo);
-        saveToPreferences(Preferences.main());
+        final var snapshot = repositories.get();
+        final var repos = new ArrayList<>(snapshot.userDefinedRepos());
+        repos.add(repo);
+        publish(snapshot.withUserDefinedRepos(repos));
+        scheduleSave();
     }
 
     /**
@@ -123,12 +223,13 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @param baseUri the base URI. Must not be null.
      * @throws NullPointerException if <code>baseUri</code> is null
      */
-    public void removeUserDefinedRepository(final @NotNull URI baseUri) {
+    public synchronized void removeUserDefinedRepository(final @NotNull URI baseUri) {
         Objects.requireNonNull(baseUri);
-        userDefinedRepos = userDefinedRepos.stream()
+        final var snapshot = repositories.get();
+        publish(snapshot.withUserDefinedRepos(snapshot.userDefinedRepos().stream()
             .filter(repo -> ! repo.getBaseURI().equals(baseUri))
-            .collect(Collectors.toList());
-        saveToPreferences(Preferences.main());
+            .toList()));
+        scheduleSave();
     }
 
     /**
@@ -144,7 +245,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      */
     public @NotNull Optional<ICommonJSModuleRepository> getRepositoryForModule(final @NotNull URI moduleUri) {
         Objects.requireNonNull(moduleUri);
-        return userDefinedRepos.stream()
+        return repositories.get().userDefinedRepos().stream()
             .filter(repo -> repo.isBaseOf(moduleUri))
             .findFirst();
     }
@@ -156,7 +257,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @return the list of repositories
      */
     public @NotNull List<ICommonJSModuleRepository> getUserDefinedRepositories() {
-        return Collections.unmodifiableList(userDefinedRepos);
+        return repositories.get().userDefinedRepos();
     }
 
     /**
@@ -165,18 +266,17 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      * @param repos the list of user defined CommonJS module repositories
      * @throws NullPointerException if <code>repos</code> is null
      */
-    public void setUserDefinedRepositories(@NotNull final List<ICommonJSModuleRepository> repos) {
+    public synchronized void setUserDefinedRepositories(@NotNull final List<ICommonJSModuleRepository> repos) {
         Objects.requireNonNull(repos);
-        userDefinedRepos.clear();
-        userDefinedRepos.addAll(repos);
-        saveToPreferences(Preferences.main());
+        publish(repositories.get().withUserDefinedRepos(repos));
+        scheduleSave();
     }
 
     /**
      * Remove all repositories from the registry.
      */
-    public void clear() {
-        userDefinedRepos = new ArrayList<>();
+    public synchronized void clear() {
+        publish(repositories.get().withUserDefinedRepos(List.of()));
     }
 
     /**
@@ -185,6 +285,10 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
     @Override
     public @NotNull Optional<URI> resolve(final @NotNull  String id) {
         Objects.requireNonNull(id);
+        return resolutionCache.lookup(id, null, () -> resolveInRepositories(id));
+    }
+
+    private Optional<URI> resolveInRepositories(final String id) {
         return getRepositoriesAsStream()
             .map(repo -> {
                 if (logger.isLoggable(Level.FINE)) {
@@ -213,7 +317,17 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
             // try to resolve a relative module against each available module
             // repo, but only accept resolved modules from the same repo, to
             // which the contextUri refers
-            return getRepositoriesAsStream()
+            return resolutionCache.lookup(id, contextUri,
+                () -> resolveInRepositories(id, contextUri));
+        } else {
+            // resolve an absolute module ID without context against all
+            // available module repository
+            return resolve(id);
+        }
+    }
+
+    private Optional<URI> resolveInRepositories(final String id, final URI contextUri) {
+        return getRepositoriesAsStream()
                 .map(repo -> {
                     if (logger.isLoggable(Level.FINE)) {
                         logger.log(Level.FINE, format(
@@ -227,11 +341,6 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .findFirst();
-        } else {
-            // resolve an absolute module ID without context against all
-            // available module repository
-            return resolve(id);
-        }
     }
 
     /**
@@ -242,7 +351,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      */
     public void saveToPreferences(@NotNull final Preferences pref) {
         Objects.requireNonNull(pref);
-        List<String> entries = userDefinedRepos.stream()
+        List<String> entries = repositories.get().userDefinedRepos().stream()
             .map(repo -> {
                 try {
                     return repo.getBaseURI().toURL().toString();
@@ -268,8 +377,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
         Objects.requireNonNull(pref);
         final CommonJSModuleRepositoryFactory factory =
             CommonJSModuleRepositoryFactory.getInstance();
-        final CommonJSModuleRepositoryRegistry repos = CommonJSModuleRepositoryRegistry.getInstance();
-        repos.clear();
+        final var repos = new LinkedHashMap<URI, ICommonJSModuleRepository>();
         pref.getList(PreferenceKeys.PREF_KEY_GRAALVM_COMMONJS_MODULE_REPOSITORIES)
             .stream()
             .map(value -> {
@@ -285,7 +393,14 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
                 }
             })
             .filter(Objects::nonNull)
-            .forEach(repos::addUserDefinedRepository);
+            .forEach(repo -> repos.putIfAbsent(repo.getBaseURI(), repo));
+        synchronized (this) {
+            // the repositories were just loaded, they don't have to be saved
+            final var builtInRepo = repositories.get().builtInRepo();
+            publish(repositories.get().withUserDefinedRepos(repos.values().stream()
+                .filter(repo -> builtInRepo == null || !builtInRepo.getBaseURI().equals(repo.getBaseURI()))
+                .toList()));
+        }
     }
 
     /**
@@ -293,7 +408,7 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      */
     @Override
     public @NotNull List<URI> getRepositories() {
-        return userDefinedRepos.stream()
+        return repositories.get().userDefinedRepos().stream()
             .map(ICommonJSModuleRepository::getBaseURI)
             .collect(Collectors.toList());
     }
@@ -303,21 +418,22 @@ public class CommonJSModuleRepositoryRegistry implements IModuleResolver, IRepos
      */
     @Override
     public void setRepositories(@Null List<URI> repositories) {
-        this.userDefinedRepos.clear();
-        if (repositories == null) {
-            return;
+        final List<ICommonJSModuleRepository> repos = repositories == null
+            ? List.of()
+            : repositories.stream()
+                .map(uri -> {
+                    try {
+                        return CommonJSModuleRepositoryFactory.getInstance().build(uri);
+                    } catch (IllegalCommonJSModuleBaseURI e) {
+                        logger.log(Level.WARNING, format("Illegal base URI for CommonJS module. uri=''{0}''", uri), e);
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        synchronized (this) {
+            publish(this.repositories.get().withUserDefinedRepos(repos));
+            scheduleSave();
         }
-        final var repos = repositories.stream()
-            .map(uri -> {
-                try {
-                    return CommonJSModuleRepositoryFactory.getInstance().build(uri);
-                } catch (IllegalCommonJSModuleBaseURI e) {
-                    logger.log(Level.WARNING, format("Illegal base URI for CommonJS module. uri=''{0}''", uri), e);
-                    return null;
-                }
-            })
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
-        this.userDefinedRepos.addAll(repos);
     }
 }
@@ -0,0 +1,290 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.commonjs;
+
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleJarURI;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Caches the resolution of CommonJS module IDs to module URIs.
+ * <p>
+ * Both successful and failed resolutions are cached, keyed by the module ID
+ * and the context URI. Absolute module IDs are cached without context URI.
+ * <p>
+ * The cache is invalidated
+ * <ul>
+ *     <li>if a file or directory in a file system repository is created,
+ *     modified, or deleted. The repository directories are observed with a
+ *     {@link WatchService}.</li>
+ *     <li>if the modification time or the size of the jar file of a jar
+ *     repository changed</li>
+ *     <li>if the repositories are reconfigured, see
+ *     {@link #setRepositories(List)}</li>
+ * </ul>
+ * If the file system repositories can't be observed, resolutions aren't
+ * cached.
+ */
+public class CommonJSModuleResolutionCache {
+    static private final Logger logger =
+        Logger.getLogger(CommonJSModuleResolutionCache.class.getName());
+
+    // the cache is cleared if it grows beyond this size, i.e. because
+    // scripts require many distinct, unresolvable module IDs
+    static private final int MAX_SIZE = 4096;
+
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of lookups served from the cache
+     * @param misses the number of lookups which resolved the module ID
+     * @param size the current number of cached resolutions
+     */
+    public record Statistics(long hits, long misses, int size) {
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, size={2}", hits, misses, size);
+        }
+    }
+
+    private record Key(@NotNull String id, @Null URI contextUri) {}
+
+    private record JarStamp(@NotNull File jar, long lastModified, long length) {
+        static JarStamp of(final File jar) {
+            return new JarStamp(jar, jar.lastModified(), jar.length());
+        }
+
+        boolean isUpToDate() {
+            return jar.lastModified() == lastModified && jar.length() == length;
+        }
+    }
+
+    private final Map<Key, Optional<URI>> resolutions = new ConcurrentHashMap<>();
+    // incremented on every invalidation. A resolution is only cached, if no
+    // invalidation occurred while it was computed. Invalidating and caching a
+    // resolution are guarded by 'invalidationLock'.
+    private final AtomicLong generation = new AtomicLong();
+    private final Object invalidationLock = new Object();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile List<JarStamp> jarStamps = List.of();
+    private volatile boolean enabled = true;
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * Looks up the resolution of the module ID <code>id</code> in the context
+     * <code>contextUri</code>. If it isn't cached yet, resolves it with
+     * <code>resolver</code> and caches the result.
+     *
+     * @param id the module ID. Must not be null.
+     * @param contextUri the context URI. Null, to look up an absolute module ID.
+     * @param resolver resolves the module ID. Must not be null.
+     * @return the resolved module URI. Empty, if the module ID can't be resolved.
+     * @throws NullPointerException if <code>id</code> or <code>resolver</code> is null
+     */
+    public @NotNull Optional<URI> lookup(@NotNull final String id,
+                                         @Null final URI contextUri,
+                                         @NotNull final Supplier<Optional<URI>> resolver) {
+        Objects.requireNonNull(id);
+        Objects.requireNonNull(resolver);
+        if (!enabled) {
+            return resolver.get();
+        }
+        ensureJarFilesUpToDate();
+        final var key = new Key(id, contextUri);
+        final var cached = resolutions.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        final long start = generation.get();
+        final var resolved = resolver.get();
+        synchronized (invalidationLock) {
+            if (resolutions.size() >= MAX_SIZE) {
+                invalidate();
+            } else if (generation.get() == start) {
+                resolutions.put(key, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    private void ensureJarFilesUpToDate() {
+        final var stamps = jarStamps;
+        if (stamps.isEmpty() || stamps.stream().allMatch(JarStamp::isUpToDate)) {
+            return;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Jar file of CommonJS module repository changed, invalidating resolved modules");
+        }
+        jarStamps = stamps.stream()
+            .map(stamp -> JarStamp.of(stamp.jar()))
+            .toList();
+        invalidate();
+    }
+
+    /**
+     * Removes all cached resolutions.
+     */
+    public void invalidate() {
+        synchronized (invalidationLock) {
+            generation.incrementAndGet();
+            resolutions.clear();
+        }
+    }
+
+    /**
+     * Replies a snapshot of the cache metrics.
+     *
+     * @return the metrics
+     */
+    public @NotNull Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), resolutions.size());
+    }
+
+    /**
+     * Configures the repositories which provide the resolved modules and
+     * invalidates the cache.
+     *
+     * @param baseUris the base URIs of the repositories. Must not be null.
+     * @throws NullPointerException if <code>baseUris</code> is null
+     */
+    public synchronized void setRepositories(@NotNull final List<URI> baseUris) {
+        Objects.requireNonNull(baseUris);
+        stopWatching();
+        final var jars = new ArrayList<JarStamp>();
+        final var dirs = new ArrayList<Path>();
+        boolean observable = true;
+        for (final var uri : baseUris) {
+            final var scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase();
+            switch (scheme) {
+                case "jar" -> jars.add(JarStamp.of(new ModuleJarURI(uri).getJarFile()));
+                case "file" -> dirs.add(new File(uri).toPath());
+                default -> {
+                    logger.log(Level.WARNING, format(
+                        "Can''t observe CommonJS module repository. Resolved modules aren''t cached. uri=''{0}''",
+                        uri
+                    ));
+                    observable = false;
+                }
+            }
+        }
+        jarStamps = List.copyOf(jars);
+        enabled = observable && (dirs.isEmpty() || startWatching(dirs));
+        invalidate();
+    }
+
+    /**
+     * Stops observing the file system repositories and disables caching
+     * until the repositories are configured again.
+     */
+    public synchronized void close() {
+        stopWatching();
+        enabled = false;
+        invalidate();
+    }
+
+    private boolean startWatching(final List<Path> dirs) {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (final var dir : dirs) {
+                registerRecursively(watchService, dir);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.log(Level.WARNING,
+                "Failed to observe CommonJS module repositories. Resolved modules aren't cached.", e);
+            stopWatching();
+            return false;
+        }
+        final var service = watchService;
+        watcher = new Thread(() -> watch(service), "josm-scripting-commonjs-repository-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return true;
+    }
+
+    private synchronized void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Failed to close watch service", e);
+            }
+            watchService = null;
+        }
+        watcher = null;
+    }
+
+    static private void registerRecursively(final WatchService service, final Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (final var path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                path.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    private void watch(final WatchService service) {
+        try {
+            while (true) {
+                final WatchKey key = service.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && key.watchable() instanceof Path dir
+                            && event.context() instanceof Path name) {
+                        // observe new subdirectories too
+                        try {
+                            registerRecursively(service, dir.resolve(name));
+                        } catch (IOException e) {
+                            logger.log(Level.FINE, format("Failed to observe directory ''{0}''",
+                                dir.resolve(name)), e);
+                        }
+                    }
+                }
+                key.reset();
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, format(
+                        "CommonJS module repository ''{0}'' changed, invalidating resolved modules",
+                        key.watchable()
+                    ));
+                }
+                invalidate();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // the repositories were reconfigured
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
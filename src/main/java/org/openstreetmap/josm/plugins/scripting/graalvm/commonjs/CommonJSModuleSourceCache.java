@@ -0,0 +1,113 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.commonjs;
+
+import org.graalvm.polyglot.Source;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Caches the {@link Source} objects of CommonJS modules.
+ * <p>
+ * Entries are keyed by the module URI and the modification time of the file
+ * providing the module, that is the module file or the jar file. As long as
+ * the file doesn't change, the cache replies the same {@link Source} object.
+ * The GraalVM engine caches parsed code per source, so a module required in
+ * multiple contexts built on the same engine is parsed only once.
+ * <p>
+ * The number of cached sources is bounded. The least recently used source is
+ * evicted first.
+ */
+public class CommonJSModuleSourceCache {
+
+    /**
+     * Builds the source of a module, if it isn't cached yet.
+     */
+    @FunctionalInterface
+    public interface SourceBuilder {
+        /**
+         * Builds the source.
+         *
+         * @return the source
+         * @throws IOException if the module can't be read
+         */
+        @NotNull Source build() throws IOException;
+    }
+
+    private record Entry(long lastModified, @NotNull Source source) {}
+
+    private final int capacity;
+    private final Map<URI, Entry> entries;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity the maximum number of cached sources. Must be positive.
+     * @throws IllegalArgumentException if <code>capacity</code> isn't positive
+     */
+    public CommonJSModuleSourceCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must be positive, got {0}", capacity));
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true /* access order */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+                return size() > CommonJSModuleSourceCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Replies the source of the module with URI <code>moduleURI</code>.
+     * <p>
+     * Replies the cached source, if the module was cached with the same
+     * modification time. Otherwise, builds, caches, and replies a new source.
+     *
+     * @param moduleURI the module URI. Must not be null.
+     * @param lastModified the modification time of the file providing the module
+     * @param builder builds the source if it isn't cached. Must not be null.
+     * @return the source
+     * @throws IOException thrown, if <code>builder</code> fails to read the module
+     * @throws NullPointerException if <code>moduleURI</code> or <code>builder</code> is null
+     */
+    public @NotNull Source lookup(@NotNull final URI moduleURI,
+                                  final long lastModified,
+                                  @NotNull final SourceBuilder builder) throws IOException {
+        Objects.requireNonNull(moduleURI);
+        Objects.requireNonNull(builder);
+        synchronized (this) {
+            final var entry = entries.get(moduleURI);
+            if (entry != null && entry.lastModified() == lastModified) {
+                return entry.source();
+            }
+        }
+        final var source = builder.build();
+        synchronized (this) {
+            entries.put(moduleURI, new Entry(lastModified, source));
+        }
+        return source;
+    }
+
+    /**
+     * Removes all cached sources.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Replies the number of cached sources.
+     *
+     * @return the number of cached sources
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
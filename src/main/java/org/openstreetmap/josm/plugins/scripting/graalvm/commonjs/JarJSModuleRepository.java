@@ -1,5 +1,6 @@
 package org.openstreetmap.josm.plugins.scripting.graalvm.commonjs;
 
+import org.openstreetmap.josm.plugins.scripting.graalvm.JarFileRegistry;
 import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleID;
 import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleJarURI;
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath;
@@ -44,8 +45,8 @@ public class JarJSModuleRepository extends BaseJSModuleRepository {
     }
 
     static private JarEntry lookupJarEntry(final File jar, RelativePath entryKey) throws IOException {
-        try(final JarFile jarFile = new JarFile(jar)) {
-            final JarEntry entry = jarFile.getJarEntry(entryKey.toString());
+        try(final var handle = JarFileRegistry.getInstance().acquire(jar)) {
+            final JarEntry entry = handle.getJarFile().getJarEntry(entryKey.toString());
             if (entry == null) {
                 throw new IOException(format(
                     "jar entry in jar file doesn''t exist. file=''{0}'', entry key=''{1}''", jar, entryKey
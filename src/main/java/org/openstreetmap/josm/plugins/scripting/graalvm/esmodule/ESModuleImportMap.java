@@ -0,0 +1,527 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule;
+
+import org.openstreetmap.josm.plugins.scripting.model.RelativePath;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * An import map for an ES module repository. It maps module specifiers
+ * directly to the files providing the modules, so that the
+ * {@link ESModuleResolver} doesn't have to probe the repositories for them.
+ * <p>
+ * The import map is a JSON file <code>import-map.json</code> in the root of
+ * the repository, in the format of a
+ * <a href="https://github.com/WICG/import-maps">browser import map</a>:
+ * <pre>
+ * {
+ *   "imports": {
+ *     "foo": "./lib/foo.mjs",
+ *     "bar/": "./vendor/bar/"
+ *   }
+ * }
+ * </pre>
+ * <ul>
+ *   <li>An entry whose specifier doesn't end with <code>/</code> maps the specifier
+ *   to the path of a file, relative to the root of the repository. A mapped
+ *   specifier is resolved without probing the repository for the alternative file
+ *   names. If the mapped file doesn't exist anymore, i.e. because it was renamed
+ *   after the import map was generated, the specifier isn't mapped.</li>
+ *   <li>An entry whose specifier ends with <code>/</code> maps a prefix of
+ *   specifiers to a directory, i.e. <code>bar/baz</code> to <code>vendor/bar/baz</code>.
+ *   The mapped path is only resolved in the repository of the import map.</li>
+ * </ul>
+ * Other members of the JSON object, i.e. <code>scopes</code>, are ignored.
+ * <p>
+ * An import map for a directory can be generated with {@link #scan(File)}, or
+ * from the command line with
+ * <pre>
+ *     java -cp scripting.jar:josm.jar \
+ *        org.openstreetmap.josm.plugins.scripting.graalvm.esmodule.ESModuleImportMap &lt;repository directory&gt;
+ * </pre>
+ */
+public class ESModuleImportMap {
+
+    /**
+     * The name of the file with the import map in the root of a repository.
+     */
+    static public final String IMPORT_MAP_FILE_NAME = "import-map.json";
+
+    // the suffixes of module files, in the order the repositories probe them
+    private static final List<String> SUFFIXES = List.of(".mjs", ".js");
+
+    private final Map<String, String> entries;
+    private final Map<RelativePath, RelativePath> imports = new HashMap<>();
+    // the prefix entries, longest prefix first
+    private final List<Map.Entry<RelativePath, RelativePath>> prefixes = new ArrayList<>();
+
+    static private RelativePath parseTarget(@NotNull final String specifier, @NotNull final String target) {
+        final RelativePath path;
+        try {
+            path = RelativePath.parse(target).canonical().orElse(null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(format(
+                "Illegal target ''{0}'' for specifier ''{1}''. Expected a path relative to the repository root.",
+                target, specifier
+            ), e);
+        }
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException(format(
+                "Illegal target ''{0}'' for specifier ''{1}''. The path refers to a file outside of the repository.",
+                target, specifier
+            ));
+        }
+        return path;
+    }
+
+    static private RelativePath parseSpecifier(@NotNull final String specifier) {
+        final RelativePath path;
+        try {
+            path = RelativePath.parse(specifier).canonical().orElse(null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(format("Illegal specifier ''{0}''", specifier), e);
+        }
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException(format("Illegal specifier ''{0}''", specifier));
+        }
+        return path;
+    }
+
+    /**
+     * Creates an import map.
+     *
+     * @param entries the entries, mapping specifiers to paths relative to the
+     *     root of the repository. Must not be null.
+     * @throws NullPointerException if <code>entries</code> is null
+     * @throws IllegalArgumentException if a specifier or a path is illegal, or
+     *     if a path refers to a file outside of the repository
+     */
+    public ESModuleImportMap(@NotNull final Map<String, String> entries) throws IllegalArgumentException {
+        Objects.requireNonNull(entries);
+        this.entries = Collections.unmodifiableMap(new TreeMap<>(entries));
+        entries.forEach((specifier, target) -> {
+            Objects.requireNonNull(specifier);
+            Objects.requireNonNull(target);
+            final var specifierPath = parseSpecifier(specifier);
+            final var targetPath = parseTarget(specifier, target);
+            if (specifier.endsWith("/")) {
+                prefixes.add(Map.entry(specifierPath, targetPath));
+            } else {
+                imports.put(specifierPath, targetPath);
+            }
+        });
+        prefixes.sort(Comparator.comparingInt(
+            (Map.Entry<RelativePath, RelativePath> entry) -> entry.getKey().getLength()).reversed());
+    }
+
+    /**
+     * Replies a copy of this import map, whose targets are resolved against
+     * the directory <code>dir</code>.
+     *
+     * @param dir the directory, relative to the root of the repository
+     * @return the import map
+     */
+    @NotNull ESModuleImportMap relativeTo(@NotNull final RelativePath dir) {
+        Objects.requireNonNull(dir);
+        final var rebased = new HashMap<String, String>();
+        entries.forEach((specifier, target) -> {
+            final var path = dir.append(parseTarget(specifier, target)).toString();
+            rebased.put(specifier, target.endsWith("/") ? path + "/" : path);
+        });
+        return new ESModuleImportMap(rebased);
+    }
+
+    /**
+     * Replies the entries of the import map, sorted by specifier.
+     *
+     * @return the entries
+     */
+    public @NotNull Map<String, String> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Resolves a module specifier in the repository <code>repo</code> using
+     * this import map.
+     *
+     * @param repo the repository this import map belongs to. Must not be null.
+     * @param specifier the module specifier. Must not be null.
+     * @return the absolute module path, or null, if the import map doesn't
+     *     map <code>specifier</code> to an existing file
+     * @throws NullPointerException if <code>repo</code> or <code>specifier</code> is null
+     */
+    public @Null RelativePath resolve(@NotNull final IESModuleRepository repo,
+                                      @NotNull final RelativePath specifier) {
+        Objects.requireNonNull(repo);
+        Objects.requireNonNull(specifier);
+        final var canonicalSpecifier = specifier.canonical().orElse(null);
+        if (canonicalSpecifier == null || canonicalSpecifier.isEmpty()) {
+            return null;
+        }
+        final var target = imports.get(canonicalSpecifier);
+        if (target != null) {
+            // the target is checked, but the repo isn't probed for alternatives
+            return repo.resolveModulePath(repo.getUniquePathPrefix().append(target));
+        }
+        for (final var prefix : prefixes) {
+            if (canonicalSpecifier.getLength() > prefix.getKey().getLength()
+                    && canonicalSpecifier.startsWith(prefix.getKey())) {
+                final var segments = canonicalSpecifier.getSegments();
+                final var mapped = prefix.getValue()
+                    .append(RelativePath.of(segments.subList(prefix.getKey().getLength(), segments.size())));
+                return repo.resolveModulePath(repo.getUniquePathPrefix().append(mapped));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads an import map in JSON format.
+     *
+     * @param reader the reader. Must not be null.
+     * @return the import map
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the JSON is malformed, or if it
+     *     isn't a valid import map
+     * @throws NullPointerException if <code>reader</code> is null
+     */
+    static public @NotNull ESModuleImportMap parse(@NotNull final Reader reader)
+            throws IOException, IllegalArgumentException {
+        Objects.requireNonNull(reader);
+        final var buffer = new StringWriter();
+        reader.transferTo(buffer);
+        final var json = new JsonReader(buffer.toString());
+        final var entries = new LinkedHashMap<String, String>();
+        json.readObject(key -> {
+            if ("imports".equals(key)) {
+                json.readObject(specifier -> entries.put(specifier, json.readString()));
+            } else {
+                json.skipValue();
+            }
+        });
+        json.expectEnd();
+        return new ESModuleImportMap(entries);
+    }
+
+    /**
+     * Reads an import map from a file.
+     *
+     * @param file the file. Must not be null.
+     * @return the import map
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the file isn't a valid import map
+     * @throws NullPointerException if <code>file</code> is null
+     */
+    static public @NotNull ESModuleImportMap load(@NotNull final File file)
+            throws IOException, IllegalArgumentException {
+        Objects.requireNonNull(file);
+        try (var reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Generates an import map for the ES modules in a directory. Maps the path
+     * of every <code>.mjs</code> and <code>.js</code> file, without the suffix,
+     * to the file. Skips hidden directories.
+     * <p>
+     * If both <code>foo.mjs</code> and <code>foo.js</code> exist, <code>foo</code>
+     * is mapped to <code>foo.mjs</code>. If a file <code>foo</code> without suffix
+     * exists, <code>foo</code> isn't mapped, because the repository resolves it to
+     * this file.
+     *
+     * @param root the root directory of the repository. Must not be null.
+     * @return the import map
+     * @throws IOException if the directory can't be scanned
+     * @throws NullPointerException if <code>root</code> is null
+     */
+    static public @NotNull ESModuleImportMap scan(@NotNull final File root) throws IOException {
+        Objects.requireNonNull(root);
+        final var rootPath = root.toPath();
+        final var files = new HashSet<String>();
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                final var name = dir.getFileName();
+                return !dir.equals(rootPath) && name != null && name.toString().startsWith(".")
+                    ? FileVisitResult.SKIP_SUBTREE
+                    : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.add(RelativePath.of(rootPath.relativize(file)).toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        final var entries = new HashMap<String, String>();
+        for (final var suffix : SUFFIXES) {
+            for (final var file : files) {
+                if (!file.endsWith(suffix)) {
+                    continue;
+                }
+                final var specifier = file.substring(0, file.length() - suffix.length());
+                if (!specifier.isEmpty() && !files.contains(specifier)) {
+                    entries.putIfAbsent(specifier, "./" + file);
+                }
+            }
+        }
+        return new ESModuleImportMap(entries);
+    }
+
+    static private void writeJsonString(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes the import map in JSON format.
+     *
+     * @param writer the writer. Must not be null.
+     * @throws IOException if writing fails
+     * @throws NullPointerException if <code>writer</code> is null
+     */
+    public void writeJson(@NotNull final Writer writer) throws IOException {
+        Objects.requireNonNull(writer);
+        writer.write("{\n  \"imports\": {");
+        var first = true;
+        for (final var entry : entries.entrySet()) {
+            writer.write(first ? "\n    " : ",\n    ");
+            first = false;
+            writeJsonString(writer, entry.getKey());
+            writer.write(": ");
+            writeJsonString(writer, entry.getValue());
+        }
+        writer.write(entries.isEmpty() ? "}\n}\n" : "\n  }\n}\n");
+        writer.flush();
+    }
+
+    /**
+     * Replies the import map in JSON format.
+     *
+     * @return the JSON text
+     */
+    public @NotNull String toJson() {
+        final var writer = new StringWriter();
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            // can't happen with a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format("ESModuleImportMap[{0} entries]", entries.size());
+    }
+
+    /**
+     * Generates the import map for a repository directory and writes it to
+     * the file <code>import-map.json</code> in the directory.
+     * <pre>
+     *     ESModuleImportMap &lt;repository directory&gt; [output file]
+     * </pre>
+     *
+     * @param args the command line arguments
+     * @throws IOException if the import map can't be generated or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ESModuleImportMap <repository directory> [output file]");
+            System.exit(1);
+        }
+        final var root = new File(args[0]).getAbsoluteFile();
+        final var output = args.length > 1 ? new File(args[1]) : new File(root, IMPORT_MAP_FILE_NAME);
+        final var importMap = scan(root);
+        try (var writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            importMap.writeJson(writer);
+        }
+        System.out.println(format("Wrote {0} entries to ''{1}''", importMap.getEntries().size(), output));
+    }
+
+    /**
+     * A minimal reader for the subset of JSON used in import maps.
+     */
+    static private class JsonReader {
+        private final String text;
+        private int pos = 0;
+
+        JsonReader(final String text) {
+            this.text = text;
+        }
+
+        interface MemberHandler {
+            void handle(String key);
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(format("Malformed import map at offset {0}: {1}", pos, message));
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        private void expect(final char c) {
+            if (peek() != c) {
+                throw error(format("expected ''{0}'', got ''{1}''", c, text.charAt(pos)));
+            }
+            pos++;
+        }
+
+        void expectEnd() {
+            skipWhitespace();
+            if (pos < text.length()) {
+                throw error("unexpected content after the end of the import map");
+            }
+        }
+
+        void readObject(final MemberHandler handler) {
+            expect('{');
+            if (peek() == '}') {
+                pos++;
+                return;
+            }
+            while (true) {
+                final var key = readString();
+                expect(':');
+                handler.handle(key);
+                if (peek() == ',') {
+                    pos++;
+                    continue;
+                }
+                expect('}');
+                return;
+            }
+        }
+
+        String readString() {
+            expect('"');
+            final var sb = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("unterminated string");
+                }
+                final char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw error("unterminated string");
+                }
+                final char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("illegal unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("illegal unicode escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error(format("illegal escape ''\\{0}''", escaped));
+                }
+            }
+        }
+
+        void skipValue() {
+            final char c = peek();
+            switch (c) {
+                case '{' -> readObject(key -> skipValue());
+                case '[' -> {
+                    pos++;
+                    if (peek() == ']') {
+                        pos++;
+                        return;
+                    }
+                    while (true) {
+                        skipValue();
+                        if (peek() == ',') {
+                            pos++;
+                            continue;
+                        }
+                        expect(']');
+                        return;
+                    }
+                }
+                case '"' -> readString();
+                default -> {
+                    // a number, true, false, or null
+                    final int start = pos;
+                    while (pos < text.length() && "{}[],:\"".indexOf(text.charAt(pos)) < 0
+                            && !Character.isWhitespace(text.charAt(pos))) {
+                        pos++;
+                    }
+                    if (start == pos) {
+                        throw error(format("unexpected character ''{0}''", c));
+                    }
+                }
+            }
+        }
+    }
+}
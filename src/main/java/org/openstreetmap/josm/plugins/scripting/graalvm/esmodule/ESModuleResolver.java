@@ -4,12 +4,16 @@ import org.graalvm.polyglot.io.FileSystem;
 import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.plugins.PluginInformation;
 import org.openstreetmap.josm.plugins.scripting.graalvm.IRepositoriesSource;
+import org.openstreetmap.josm.plugins.scripting.graalvm.JarFileRegistry;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfiler;
 import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleJarURI;
 import org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys;
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath;
+import org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetricsRecorder;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Null;
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -18,6 +22,7 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.FileAttribute;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,6 +41,12 @@ import static org.openstreetmap.josm.plugins.scripting.graalvm.esmodule.Abstract
  *     <li>in the {@link FileSystems#getDefault() default file system}</li>
  * </ul>
  *
+ * A repository can provide an {@link ESModuleImportMap import map}. The repositories
+ * are consulted in order. For each repository, a specifier mapped by its import map is
+ * resolved without probing the repository for the alternative file names. The import
+ * map of a repository doesn't override a module provided by a repository consulted
+ * before.
+ * <p>
  * ESModuleResolver is a {@link FileSystem}. If it is set for {@link org.graalvm.polyglot.Context} then
  * <code>import</code> statements for ES Modules in this context are resolved against the ESModuleResolver.
  * <pre>
@@ -51,17 +62,47 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
 
     private static final ESModuleResolver instance = new ESModuleResolver();
 
+    /**
+     * The root entry of the built-in ES Modules in the plugin jar.
+     */
+    static public final String BUILTIN_MODULES_ROOT = "js/v3";
+
+    /**
+     * The root entry of the bundled built-in ES Modules in the plugin jar.
+     * The build bundles the modules of the API V3 into a single module and
+     * places it, together with stubs for the bundled modules, in this entry.
+     */
+    static public final String BUNDLED_BUILTIN_MODULES_ROOT = "js/v3-bundle";
+
+    static private boolean hasJarEntry(@NotNull final File jarFile, @NotNull final String name) {
+        try (var handle = JarFileRegistry.getInstance().acquire(jarFile)) {
+            return handle.getJarFile().getJarEntry(name) != null;
+        } catch (IOException e) {
+            logger.log(Level.FINE, format("Failed to look up entry ''{0}'' in jar file ''{1}''", name, jarFile), e);
+            return false;
+        }
+    }
+
     /**
      * Replies the jar URI referring to the built-in ES Modules
      * shipped in the plugin jar.
+     * <p>
+     * Refers to the bundled modules, if the plugin jar includes them, and
+     * to the individual modules otherwise.
      *
      * @param info plugin information
      * @return the URI
      */
     static public @Null URI buildRepositoryUrlForBuiltinModules(@NotNull PluginInformation info) {
         Objects.requireNonNull(info);
+        final var root = hasJarEntry(info.file, BUNDLED_BUILTIN_MODULES_ROOT + "/josm.mjs")
+            ? BUNDLED_BUILTIN_MODULES_ROOT
+            : BUILTIN_MODULES_ROOT;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("Loading built-in ES Modules from ''{0}''", root));
+        }
         try {
-            return ModuleJarURI.buildJarUri(info.file.getAbsolutePath(), RelativePath.parse("js/v3"));
+            return ModuleJarURI.buildJarUri(info.file.getAbsolutePath(), RelativePath.parse(root));
         } catch(MalformedURLException | URISyntaxException e) {
             logger.log(Level.WARNING, "Failed to create URI referring to the "
                     + "ES Modules in the plugin jar. Cannot load ES "
@@ -70,21 +111,90 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
         }
     }
 
+    /**
+     * The default maximum total size of the cached ES module content, in kilobytes.
+     */
+    static public final int DEFAULT_SOURCE_CACHE_SIZE_KB = 16 * 1024;
+
+    static private ESModuleSourceCache buildSourceCache() {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return new ESModuleSourceCache(DEFAULT_SOURCE_CACHE_SIZE_KB * 1024L, false /* on heap */);
+        }
+        final int sizeKB = Math.max(0,
+            prefs.getInt(PreferenceKeys.PREF_KEY_GRAALVM_ES_MODULE_CACHE_SIZE, DEFAULT_SOURCE_CACHE_SIZE_KB));
+        final boolean offHeap =
+            prefs.getBoolean(PreferenceKeys.PREF_KEY_GRAALVM_ES_MODULE_CACHE_OFF_HEAP, false);
+        return new ESModuleSourceCache(sizeKB * 1024L, offHeap);
+    }
+
     private final java.nio.file.FileSystem fullIO = FileSystems.getDefault();
 
+    private final ESModuleSourceCache sourceCache = buildSourceCache();
+
+    // the directory against which relative imports of a module without a
+    // path are resolved, while such a module is evaluated on this thread
+    private final ThreadLocal<Path> relativeImportBase = new ThreadLocal<>();
+
     /**
-     * the list of repositories the user can change in the preferences
+     * An immutable snapshot of the repositories. The resolver publishes a new
+     * snapshot whenever the repositories change, so that resolving modules
+     * doesn't have to lock while the repositories are edited, i.e. in the
+     * preferences dialog.
+     *
+     * @param apiRepo the repository with the built-in API modules. May be null.
+     * @param userDefinedRepos the repositories the user can change in the preferences
+     * @param reposByUuid the repositories, keyed by the <code>&lt;uuid&gt;</code> in
+     *     their unique path prefix <code>es-module-repo/&lt;uuid&gt;</code>
      */
-    private final List<IESModuleRepository> userDefinedRepos = new ArrayList<>();
+    private record Repositories(
+        @Null IESModuleRepository apiRepo,
+        @NotNull List<IESModuleRepository> userDefinedRepos,
+        @NotNull Map<String, IESModuleRepository> reposByUuid) {
+
+        static Repositories of(@Null final IESModuleRepository apiRepo,
+                               @NotNull final List<IESModuleRepository> userDefinedRepos) {
+            final var reposByUuid = new HashMap<String, IESModuleRepository>();
+            // if two repos had the same prefix, the first one would win, as
+            // with a sequential lookup
+            for (final var repo : userDefinedRepos) {
+                reposByUuid.putIfAbsent(repo.getUniquePathPrefix().getSegment(1), repo);
+            }
+            if (apiRepo != null) {
+                reposByUuid.put(apiRepo.getUniquePathPrefix().getSegment(1), apiRepo);
+            }
+            return new Repositories(apiRepo, List.copyOf(userDefinedRepos), Map.copyOf(reposByUuid));
+        }
+
+        /**
+         * Replies the repository whose unique path prefix is a prefix of
+         * <code>modulePath</code>.
+         */
+        @Null IESModuleRepository lookup(@NotNull final RelativePath modulePath) {
+            if (modulePath.getLength() < 2
+                    || !IESModuleRepository.ES_MODULE_REPO_PATH_PREFIX.equals(modulePath.getSegment(0))) {
+                return null;
+            }
+            return reposByUuid.get(modulePath.getSegment(1));
+        }
+
+        /**
+         * Replies the API repository, if any, followed by the user defined
+         * repositories.
+         */
+        @NotNull Stream<IESModuleRepository> all() {
+            return Stream.concat(Stream.ofNullable(apiRepo), userDefinedRepos.stream());
+        }
+    }
 
-    private IESModuleRepository apiRepo = null;
+    private volatile Repositories repositories = Repositories.of(null, List.of());
 
-    public void setApiRepository(@Null final IESModuleRepository repo) {
-        this.apiRepo = repo;
+    public synchronized void setApiRepository(@Null final IESModuleRepository repo) {
+        repositories = Repositories.of(repo, repositories.userDefinedRepos());
     }
 
     public @Null IESModuleRepository getApiRepository() {
-        return apiRepo;
+        return repositories.apiRepo();
     }
 
     /**
@@ -102,9 +212,11 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      * @param repo the repo
      * @throws NullPointerException thrown if <code>repo</code> is null
      */
-    public void addUserDefinedRepository(@NotNull final IESModuleRepository repo) {
+    public synchronized void addUserDefinedRepository(@NotNull final IESModuleRepository repo) {
         Objects.requireNonNull(repo);
-        userDefinedRepos.add(repo);
+        final var repos = new ArrayList<>(repositories.userDefinedRepos());
+        repos.add(repo);
+        repositories = Repositories.of(repositories.apiRepo(), repos);
     }
 
     /**
@@ -112,13 +224,15 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      *
      * @param repo the repo. Ignore if null.
      */
-    public void removeUserDefinedRepository(final IESModuleRepository repo) {
+    public synchronized void removeUserDefinedRepository(final IESModuleRepository repo) {
         if (repo == null) {
             return;
         }
-        for (int i = 0; i < userDefinedRepos.size(); i++) {
-            if (repo.getUniquePathPrefix().toString().equals(userDefinedRepos.get(i).getUniquePathPrefix().toString())) {
-                userDefinedRepos.remove(i);
+        final var repos = new ArrayList<>(repositories.userDefinedRepos());
+        for (int i = 0; i < repos.size(); i++) {
+            if (repo.getUniquePathPrefix().toString().equals(repos.get(i).getUniquePathPrefix().toString())) {
+                repos.remove(i);
+                repositories = Repositories.of(repositories.apiRepo(), repos);
                 return;
             }
         }
@@ -129,12 +243,11 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      *
      * @param repos the list of repositories. If <code>null</code>, removes all repositories
      */
-    public void setUserDefinedRepositories(final List<IESModuleRepository> repos) {
-        this.userDefinedRepos.clear();
-        if (repos == null || repos.isEmpty()) {
-            return;
-        }
-        this.userDefinedRepos.addAll(repos.stream().filter(Objects::nonNull).collect(Collectors.toList()));
+    public synchronized void setUserDefinedRepositories(final List<IESModuleRepository> repos) {
+        final List<IESModuleRepository> userDefinedRepos = repos == null
+            ? List.of()
+            : repos.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        repositories = Repositories.of(repositories.apiRepo(), userDefinedRepos);
     }
 
     /**
@@ -143,17 +256,44 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      * @return the user defined repositories
      */
     public @NotNull List<IESModuleRepository> getUserDefinedRepositories() {
-        return Collections.unmodifiableList(this.userDefinedRepos);
+        return repositories.userDefinedRepos();
     }
 
     private IESModuleRepository lookupRepoForModulePath(Path path) {
-        return Stream.concat(
-            Stream.ofNullable(apiRepo),
-            userDefinedRepos.stream()
-        )
-        .filter(repo -> repo.matchesWithUniquePathPrefix(RelativePath.of(path)))
-        .findFirst()
-        .orElse(null);
+        return repositories.lookup(RelativePath.of(path));
+    }
+
+    /**
+     * Runs <code>action</code> while relative imports of a module without a
+     * path, i.e. <code>import {foo} from './foo.mjs'</code>, are resolved
+     * against the directory <code>base</code>.
+     * <p>
+     * GraalJS resolves the relative imports of a module with a path against
+     * the directory of the module. A module evaluated from a string doesn't
+     * have a path, though, and GraalJS passes its relative imports unresolved
+     * to {@link #parsePath(String)}.
+     *
+     * @param base the directory. Must not be null.
+     * @param action the action. Must not be null.
+     * @param <T> the type of the result
+     * @return the result of <code>action</code>
+     * @throws NullPointerException if one of the parameters is null
+     */
+    public <T> T resolveRelativeImportsAgainst(@NotNull final Path base,
+                                               @NotNull final Supplier<T> action) {
+        Objects.requireNonNull(base);
+        Objects.requireNonNull(action);
+        final var previous = relativeImportBase.get();
+        relativeImportBase.set(base);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                relativeImportBase.remove();
+            } else {
+                relativeImportBase.set(previous);
+            }
+        }
     }
 
     /**
@@ -182,6 +322,17 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      */
     @Override
     public Path parsePath(String path) {
+        final long start = System.nanoTime();
+        try {
+            return resolvePath(path);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            ScriptRunMetricsRecorder.addModuleLoadTime(nanos);
+            ModuleLoadProfiler.esModulePathParsed(path, nanos);
+        }
+    }
+
+    private Path resolvePath(String path) {
         if (logger.isLoggable(Level.FINE)) {
             logger.fine(format("path=''{0}''", path));
         }
@@ -193,12 +344,36 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
             }
             return fullIOPath;
         }
+        final var base = relativeImportBase.get();
+        if (base != null && (path.startsWith("./") || path.startsWith("../"))) {
+            final var resolved = fullIO.getPath(base.resolve(path).normalize().toString());
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "path is relative to ''{0}''. resolved path is ''{1}''",
+                    new Object[]{base, resolved});
+            }
+            return resolved;
+        }
 
-        var resolvedPath = Stream.concat(Stream.ofNullable(apiRepo), userDefinedRepos.stream())
-            .map(repo -> repo.resolveModulePath(RelativePath.of(p)))
-            .filter(Objects::nonNull)
-            .findFirst()
-            .orElse(null);
+        final var modulePath = RelativePath.of(p);
+        final var snapshot = repositories;
+        final RelativePath resolvedPath;
+        if (startsWithESModuleRepoPathPrefix(modulePath)) {
+            // only the repo with the unique path prefix can resolve the path
+            final var repo = snapshot.lookup(modulePath);
+            resolvedPath = repo == null ? null : repo.resolveModulePath(modulePath);
+        } else {
+            // consult the repos in order. In a repo, a specifier mapped by its
+            // import map is resolved without probing the repo.
+            resolvedPath = snapshot.all()
+                .map(repo -> {
+                    final var importMap = repo.getImportMap();
+                    final var mappedPath = importMap == null ? null : importMap.resolve(repo, modulePath);
+                    return mappedPath != null ? mappedPath : repo.resolveModulePath(modulePath);
+                })
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+        }
         if (resolvedPath == null) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.log(Level.FINE, format("failed to resolve path ''{0}'' in the available module repos", path));
@@ -253,6 +428,17 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      */
     @Override
     public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return openByteChannel(path, options, attrs);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            ScriptRunMetricsRecorder.addModuleLoadTime(nanos);
+            ModuleLoadProfiler.esModuleRead(path.toString(), nanos);
+        }
+    }
+
+    private SeekableByteChannel openByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
         if (logger.isLoggable(Level.FINE)) {
             logger.fine(format("path=''{0}''", path));
         }
@@ -263,10 +449,24 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine(format("creating byteChannel, path=''{0}''", path));
             }
-            return repo.newByteChannel(RelativePath.of(path));
+            final var modulePath = RelativePath.of(path);
+            return sourceCache.lookup(
+                modulePath.toString(),
+                repo.lastModified(modulePath),
+                () -> repo.newByteChannel(modulePath)
+            );
         }
     }
 
+    /**
+     * Replies the metrics of the cache of ES module content.
+     *
+     * @return the metrics
+     */
+    public @NotNull ESModuleSourceCache.Statistics getSourceCacheStatistics() {
+        return sourceCache.getStatistics();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -294,6 +494,15 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      */
     @Override
     public Path toRealPath(Path path, LinkOption... linkOptions) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return resolveRealPath(path);
+        } finally {
+            ModuleLoadProfiler.esModulePathResolved(System.nanoTime() - start);
+        }
+    }
+
+    private Path resolveRealPath(Path path) throws IOException {
         if (logger.isLoggable(Level.FINE)) {
             logger.fine(format("toRealPath: path=''{0}''", path));
         }
@@ -337,7 +546,7 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
     @Override
     public List<URI> getRepositories() {
         // only the user defined repos, without the built-in API repo
-        return userDefinedRepos.stream()
+        return repositories.userDefinedRepos().stream()
             .map(IESModuleRepository::getBaseURI)
             .collect(Collectors.toUnmodifiableList());
     }
@@ -348,12 +557,12 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      */
     @Override
     public void setRepositories(@Null List<URI> repositories) {
-        userDefinedRepos.clear();
         if (repositories == null) {
+            setUserDefinedRepositories(null);
             return;
         }
         final var builder = new ESModuleRepositoryBuilder();
-        repositories.stream()
+        final var repos = repositories.stream()
             .map(uri -> {
                 try {
                     return builder.build(uri);
@@ -365,7 +574,8 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
                 }
             })
             .filter(Objects::nonNull)
-            .forEach(this::addUserDefinedRepository);
+            .collect(Collectors.toList());
+        setUserDefinedRepositories(repos);
     }
 
     /**
@@ -376,7 +586,7 @@ public class ESModuleResolver implements FileSystem, IRepositoriesSource  {
      */
     public void saveToPreferences(@NotNull final Preferences pref) {
         Objects.requireNonNull(pref);
-        List<String> entries = userDefinedRepos.stream()
+        List<String> entries = repositories.userDefinedRepos().stream()
             .map(repo -> {
                 try {
                     return repo.getBaseURI().toURL().toString();
@@ -0,0 +1,183 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Caches the content of ES modules served by the {@link ESModuleResolver}.
+ * <p>
+ * Entries are keyed by the full module path, which starts with the unique
+ * path prefix of the repository, and validated by the modification time of
+ * the module. The total size of the cached content is bounded. The least
+ * recently used content is evicted first.
+ * <p>
+ * The content is either held on the heap or off-heap in direct buffers.
+ * Readers get read-only channels over the cached buffers, the content isn't
+ * copied. Content served from memory-mapped files isn't cached, because it
+ * is already held in the page cache of the operating system.
+ */
+public class ESModuleSourceCache {
+
+    /**
+     * Reads the content of a module, if it isn't cached yet.
+     */
+    @FunctionalInterface
+    public interface ContentLoader {
+        /**
+         * Opens a channel to read the module content.
+         *
+         * @return the channel
+         * @throws IOException if the module can't be read
+         */
+        @NotNull SeekableByteChannel open() throws IOException;
+    }
+
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of lookups served from the cache
+     * @param misses the number of lookups which read the module content
+     * @param evictions the number of entries evicted because the cache was full
+     * @param sizeBytes the total size of the cached content, in bytes
+     */
+    public record Statistics(long hits, long misses, long evictions, long sizeBytes) {
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, evictions={2}, size={3,number,0}KB",
+                hits, misses, evictions, sizeBytes / 1024);
+        }
+    }
+
+    private record Entry(long lastModified, @NotNull ByteBuffer content) {}
+
+    private final long capacityBytes;
+    private final boolean offHeap;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true /* access order */);
+    private long sizeBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacityBytes the maximum total size of the cached content, in
+     *     bytes. 0, to disable caching.
+     * @param offHeap true, if the content is held off-heap in direct buffers
+     * @throws IllegalArgumentException if <code>capacityBytes</code> is negative
+     */
+    public ESModuleSourceCache(final long capacityBytes, final boolean offHeap) {
+        if (capacityBytes < 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must not be negative, got {0}", capacityBytes));
+        }
+        this.capacityBytes = capacityBytes;
+        this.offHeap = offHeap;
+    }
+
+    private ByteBuffer read(final SeekableByteChannel source) throws IOException {
+        try (final var channel = source) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(format("module is too large, size={0}", size));
+            }
+            final var buffer = offHeap
+                ? ByteBuffer.allocateDirect((int) size)
+                : ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Replies a channel to read the content of the module with the full
+     * module path <code>path</code>.
+     * <p>
+     * Replies a channel over the cached content, if the module was cached
+     * with the same modification time. Otherwise, reads the content with
+     * <code>loader</code> and caches it.
+     *
+     * @param path the full module path. Must not be null.
+     * @param lastModified the modification time of the module. Negative, if
+     *     unknown. Modules with an unknown modification time aren't cached.
+     * @param loader reads the content. Must not be null.
+     * @return a read-only channel
+     * @throws IOException if the content can't be read
+     * @throws NullPointerException if <code>path</code> or <code>loader</code> is null
+     */
+    public @NotNull SeekableByteChannel lookup(@NotNull final String path,
+                                               final long lastModified,
+                                               @NotNull final ContentLoader loader) throws IOException {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(loader);
+        if (lastModified < 0 || capacityBytes == 0) {
+            return loader.open();
+        }
+        synchronized (this) {
+            final var entry = entries.get(path);
+            if (entry != null && entry.lastModified() == lastModified) {
+                hits++;
+                return new ReadOnlyByteBufferChannel(entry.content());
+            }
+        }
+        final var channel = loader.open();
+        if (channel instanceof ReadOnlyByteBufferChannel bufferChannel && bufferChannel.isMapped()) {
+            // the content of a memory-mapped file isn't copied into the cache
+            synchronized (this) {
+                misses++;
+            }
+            return channel;
+        }
+        final var content = read(channel);
+        synchronized (this) {
+            misses++;
+            if (content.limit() <= capacityBytes) {
+                final var previous = entries.put(path, new Entry(lastModified, content));
+                if (previous != null) {
+                    sizeBytes -= previous.content().limit();
+                }
+                sizeBytes += content.limit();
+                evict();
+            }
+        }
+        return new ReadOnlyByteBufferChannel(content);
+    }
+
+    // evicts the least recently used entries until the cached content fits
+    // into the capacity. Guarded by the monitor of this cache.
+    private void evict() {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (sizeBytes > capacityBytes && it.hasNext()) {
+            sizeBytes -= it.next().content().limit();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all cached content.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * Replies a snapshot of the cache metrics.
+     *
+     * @return the metrics
+     */
+    public synchronized @NotNull Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, sizeBytes);
+    }
+}
@@ -1,5 +1,8 @@
 package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule;
 
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.graalvm.MappedModuleFiles;
+import org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys;
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath;
 
 import javax.validation.constraints.NotNull;
@@ -13,6 +16,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +47,14 @@ public class FileSystemESModuleRepository extends AbstractESModuleRepository {
     static private final Logger logger = Logger.getLogger(FileSystemESModuleRepository.class.getName());
     private final File root;
 
+    // the import map file is checked for modifications at most once per interval
+    private static final long IMPORT_MAP_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private ESModuleImportMap importMap;
+    private boolean importMapLoaded = false;
+    private long importMapLastModified = -1;
+    private long lastImportMapCheck;
+
     /**
      * Creates a new ES module repository for modules stored in a directory in the file system.
      *
@@ -261,6 +273,80 @@ public class FileSystemESModuleRepository extends AbstractESModuleRepository {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lastModified(@NotNull final RelativePath path) {
+        Objects.requireNonNull(path);
+        try {
+            final long lastModified = convertFullModuleRepoPathToModuleFilePath(path).toFile().lastModified();
+            return lastModified == 0 ? -1 : lastModified;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    static private boolean isImportMapScanEnabled() {
+        final var prefs = Preferences.main();
+        return prefs != null && prefs.getBoolean(PreferenceKeys.PREF_KEY_GRAALVM_ES_MODULE_IMPORT_MAP_SCAN, false);
+    }
+
+    private @Null ESModuleImportMap loadImportMap(@NotNull final File file) {
+        if (file.isFile()) {
+            try {
+                return ESModuleImportMap.load(file);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.log(Level.WARNING, format(
+                    "Failed to load import map ''{0}''. Resolving modules without import map.", file
+                ), e);
+                return null;
+            }
+        }
+        if (!isImportMapScanEnabled()) {
+            return null;
+        }
+        try {
+            final var scanned = ESModuleImportMap.scan(root);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(format("Generated import map with {0} entries for repository ''{1}''",
+                    scanned.getEntries().size(), root));
+            }
+            return scanned;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, format(
+                "Failed to scan repository ''{0}'' for an import map. Resolving modules without import map.", root
+            ), e);
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Loads the import map from the file <code>import-map.json</code> in the root
+     * directory, and reloads it if the file is modified. If the file doesn't exist,
+     * and the preference {@link PreferenceKeys#PREF_KEY_GRAALVM_ES_MODULE_IMPORT_MAP_SCAN}
+     * is set, generates the import map by scanning the root directory once.
+     */
+    @Override
+    public synchronized @Null ESModuleImportMap getImportMap() {
+        final long now = System.nanoTime();
+        if (importMapLoaded && now - lastImportMapCheck < IMPORT_MAP_CHECK_INTERVAL_NANOS) {
+            return importMap;
+        }
+        lastImportMapCheck = now;
+        final var file = new File(root, ESModuleImportMap.IMPORT_MAP_FILE_NAME);
+        final long lastModified = file.isFile() ? file.lastModified() : -1;
+        if (importMapLoaded && lastModified == importMapLastModified) {
+            return importMap;
+        }
+        importMap = loadImportMap(file);
+        importMapLoaded = true;
+        importMapLastModified = lastModified;
+        return importMap;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -268,6 +354,11 @@ public class FileSystemESModuleRepository extends AbstractESModuleRepository {
     public @NotNull SeekableByteChannel newByteChannel(@NotNull final RelativePath path) throws IOException {
         Objects.requireNonNull(path);
         final var absoluteRepoPath = convertFullModuleRepoPathToModuleFilePath(path);
+        if (MappedModuleFiles.isMapped(Files.size(absoluteRepoPath))) {
+            // large modules, i.e. generated lookup tables, are served from
+            // the memory-mapped file instead of being copied onto the heap
+            return new ReadOnlyByteBufferChannel(MappedModuleFiles.map(absoluteRepoPath), true /* mapped */);
+        }
         return Files.newByteChannel(absoluteRepoPath, StandardOpenOption.READ);
     }
 }
@@ -84,4 +84,28 @@ public interface IESModuleRepository {
      *  repository
      */
     @NotNull SeekableByteChannel newByteChannel(@NotNull final RelativePath path) throws IOException;
+
+    /**
+     * Replies the modification time of the content of the module given by the
+     * module path <code>path</code>. The content of a module is only cached,
+     * if its modification time is known.
+     *
+     * @param path an absolute module path
+     * @return the modification time. -1, if unknown.
+     * @throws NullPointerException if <code>path</code> is null
+     */
+    default long lastModified(@NotNull final RelativePath path) {
+        return -1;
+    }
+
+    /**
+     * Replies the import map of this repository. The {@link ESModuleResolver}
+     * resolves the specifiers mapped by the import map without probing the
+     * repositories.
+     *
+     * @return the import map. Null, if this repository doesn't have one.
+     */
+    default @Null ESModuleImportMap getImportMap() {
+        return null;
+    }
 }
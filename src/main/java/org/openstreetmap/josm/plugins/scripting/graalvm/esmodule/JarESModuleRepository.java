@@ -1,6 +1,7 @@
 package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule;
 
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.openstreetmap.josm.plugins.scripting.graalvm.JarFileRegistry;
 import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleJarURI;
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath;
 
@@ -8,19 +9,30 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Null;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * <code>JarESModuleRepository</code> is a repository of ES Modules stored in a jar file.
+ * <p>
+ * The jar file is opened with the {@link JarFileRegistry}. Every read acquires
+ * the jar file from the registry and releases it when it is done, so that a
+ * jar file which is reopened after a modification isn't closed while it is
+ * still read.
  */
 public class JarESModuleRepository extends AbstractESModuleRepository {
     private static final Logger logger = Logger.getLogger(JarESModuleRepository.class.getName());
@@ -28,11 +40,6 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
     /**
      * The jar file in which ES modules of this repository are stored.
      */
-    private final JarFile jar;
-
-    /**
-     * Same as {@link #jar}, but as the underlying file object
-     */
     private final File jarFile;
 
     /**
@@ -43,6 +50,104 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
 
     private static final List<String> SUFFIXES = List.of("", ".mjs", ".js");
 
+    // the jar file is checked for modifications at most once per interval
+    private static final long MODIFICATION_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The index of file entries in the jar file. Maps the canonical path of
+     * a module, with or without one of the {@link #SUFFIXES}, to the name of
+     * the file entry providing the module.
+     */
+    private Map<String, String> index;
+    private ESModuleImportMap importMap;
+    private long indexedLastModified;
+    private long indexedLength;
+    private long lastModificationCheck;
+
+    static private Map<String, String> buildIndex(@NotNull final JarFile jar) {
+        final var names = jar.stream()
+            .filter(entry -> !entry.isDirectory())
+            .map(ZipEntry::getName)
+            .toList();
+        final var index = new HashMap<String, String>(names.size() * 2);
+        // a path without suffix takes precedence over a path with suffix,
+        // and '.mjs' takes precedence over '.js'
+        for (final var suffix : SUFFIXES) {
+            for (final var name : names) {
+                if (name.endsWith(suffix)) {
+                    index.putIfAbsent(name.substring(0, name.length() - suffix.length()), name);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Replies the index of file entries. Rebuilds the index, if the jar file
+     * was modified since the index was built.
+     */
+    private synchronized Map<String, String> getIndex() {
+        final long now = System.nanoTime();
+        if (index != null && now - lastModificationCheck < MODIFICATION_CHECK_INTERVAL_NANOS) {
+            return index;
+        }
+        lastModificationCheck = now;
+        final long lastModified = jarFile.lastModified();
+        final long length = jarFile.length();
+        if (index != null && lastModified == indexedLastModified && length == indexedLength) {
+            return index;
+        }
+        if (index != null && logger.isLoggable(Level.FINE)) {
+            logger.fine(MessageFormat.format(
+                "Jar file ''{0}'' was modified, rebuilding the index of ES modules", jarFile
+            ));
+        }
+        // the registry reopens the jar file, if it was modified
+        try (var handle = JarFileRegistry.getInstance().acquire(jarFile)) {
+            final var jar = handle.getJarFile();
+            index = buildIndex(jar);
+            importMap = loadImportMap(jar);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, MessageFormat.format(
+                "Failed to open jar file ''{0}''", jarFile
+            ), e);
+            return index == null ? Map.of() : index;
+        }
+        indexedLastModified = lastModified;
+        indexedLength = length;
+        return index;
+    }
+
+    private @Null ESModuleImportMap loadImportMap(@NotNull final JarFile jar) {
+        final var entry = jar.getJarEntry(root.append(ESModuleImportMap.IMPORT_MAP_FILE_NAME).toString());
+        if (entry == null) {
+            return null;
+        }
+        try (var reader = new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8)) {
+            // the paths in this repository are the names of the jar entries,
+            // including the root entry
+            return ESModuleImportMap.parse(reader).relativeTo(root);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, MessageFormat.format(
+                "Failed to load import map ''{0}'' in jar file ''{1}''. Resolving modules without import map.",
+                entry.getName(), jarFile
+            ), e);
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Loads the import map from the entry <code>import-map.json</code> in the root
+     * entry of the repository, and reloads it if the jar file is modified.
+     */
+    @Override
+    public synchronized @Null ESModuleImportMap getImportMap() {
+        getIndex();
+        return importMap;
+    }
+
     private RelativePath resolveZipEntryPath(@NotNull RelativePath relativeModuleRepoPath) {
 
         final var canonicalPath = relativeModuleRepoPath.canonical();
@@ -54,24 +159,16 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
             }
             return null;
         }
-
-        if (logger.isLoggable(Level.FINE)) {
-            logger.fine(MessageFormat.format("canonical relative module path is ''{0}''", canonicalPath.get()));
+        final var entryName = getIndex().get(canonicalPath.get().toString());
+        if (entryName == null) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(MessageFormat.format(
+                    "No file entry found for canonical relative module path ''{0}''", canonicalPath.get()
+                ));
+            }
+            return null;
         }
-        // try to locate a suitable zip entry
-        return SUFFIXES.stream().map(suffix -> canonicalPath.get() + suffix)
-            .filter(p -> {
-                var entry = jar.getEntry(p);
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine(MessageFormat.format(
-                        "Tried relative module repo path ''{0}'', found entry ''{1}''", p, entry
-                    ));
-                }
-                return entry != null && !entry.isDirectory();
-            })
-            .findFirst()
-            .map(RelativePath::parse)
-            .orElse(null);
+        return RelativePath.parse(entryName);
     }
 
     /**
@@ -98,7 +195,8 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
     public JarESModuleRepository(@NotNull final File jarFile) throws IOException {
         Objects.requireNonNull(jarFile);
         this.jarFile = jarFile;
-        this.jar = new JarFile(jarFile);
+        // fail early, if the jar file can't be opened
+        JarFileRegistry.getInstance().acquire(jarFile).close();
         this.root = RelativePath.EMPTY;
     }
 
@@ -118,7 +216,6 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
         Objects.requireNonNull(jarFile);
         Objects.requireNonNull(rootEntry);
         this.jarFile = jarFile;
-        this.jar = new JarFile(jarFile);
 
         final var canonicalRootEntry = rootEntry.canonical();
         if (canonicalRootEntry.isEmpty()) {
@@ -128,17 +225,19 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
         }
 
         this.root = canonicalRootEntry.get();
-        if (!this.root.isEmpty()) {
-            var entry = this.jar.getEntry(this.root.toString());
-            if (entry == null) {
-                throw new IllegalArgumentException(MessageFormat.format(
-                    "Root entry ''{0}'' not found in jar file ''{1}''", rootEntry, this.jarFile
-                ));
-            }
-            if (!entry.isDirectory()) {
-                throw new IllegalArgumentException(MessageFormat.format(
-                    "Root entry ''{0}'' isn''t a directory entry in the jar file ''{1}''", rootEntry, this.jarFile
-                ));
+        try (var handle = JarFileRegistry.getInstance().acquire(jarFile)) {
+            if (!this.root.isEmpty()) {
+                var entry = handle.getJarFile().getEntry(this.root.toString());
+                if (entry == null) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                        "Root entry ''{0}'' not found in jar file ''{1}''", rootEntry, this.jarFile
+                    ));
+                }
+                if (!entry.isDirectory()) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                        "Root entry ''{0}'' isn''t a directory entry in the jar file ''{1}''", rootEntry, this.jarFile
+                    ));
+                }
             }
         }
     }
@@ -168,7 +267,8 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
                 ));
             }
             this.jarFile = moduleJarUri.getJarFile();
-            this.jar = new JarFile(jarFile);
+            // fail early, if the jar file can't be opened
+            JarFileRegistry.getInstance().acquire(jarFile).close();
             this.root = moduleJarUri.getJarEntryPath();
         } catch(IllegalArgumentException e) {
             throw new IllegalESModuleBaseUri(MessageFormat.format(
@@ -245,6 +345,18 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All modules in the jar file share the modification time of the jar file.
+     */
+    @Override
+    public long lastModified(@NotNull RelativePath path) {
+        Objects.requireNonNull(path);
+        final long lastModified = jarFile.lastModified();
+        return lastModified == 0 ? -1 : lastModified;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -272,15 +384,23 @@ public class JarESModuleRepository extends AbstractESModuleRepository {
                 path, getUniquePathPrefix()
             ));
         }
-        final var zipEntry = jar.getEntry(zipEntryPath.toString());
-        if (zipEntry == null) {
-            // shouldn't happen, but just in case
-            throw new IllegalArgumentException(MessageFormat.format(
-                "Can''t resolve path ''{0}''. Didn''t find a zip entry under this path in the repo ''{1}''",
-                path, getUniquePathPrefix()
-            ));
+        final byte[] bytes;
+        // the jar file stays open while it is read, even if the jar file is
+        // modified and reopened concurrently
+        try (var handle = JarFileRegistry.getInstance().acquire(jarFile)) {
+            final var jar = handle.getJarFile();
+            final var zipEntry = jar.getEntry(zipEntryPath.toString());
+            if (zipEntry == null) {
+                // shouldn't happen, but just in case
+                throw new IllegalArgumentException(MessageFormat.format(
+                    "Can''t resolve path ''{0}''. Didn''t find a zip entry under this path in the repo ''{1}''",
+                    path, getUniquePathPrefix()
+                ));
+            }
+            try (final var in = jar.getInputStream(zipEntry)) {
+                bytes = in.readAllBytes();
+            }
         }
-        final var bytes = jar.getInputStream(zipEntry).readAllBytes();
         return new SeekableInMemoryByteChannel(bytes);
     }
 }
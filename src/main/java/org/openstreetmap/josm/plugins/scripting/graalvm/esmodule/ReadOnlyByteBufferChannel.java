@@ -0,0 +1,117 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule;
+
+import javax.validation.constraints.NotNull;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a {@link ByteBuffer}.
+ * <p>
+ * The channel reads from a read-only view of the buffer. The content isn't
+ * copied, so multiple channels can share the same buffer.
+ */
+final class ReadOnlyByteBufferChannel implements SeekableByteChannel {
+
+    private final ByteBuffer buffer;
+    private final boolean mapped;
+    private boolean open = true;
+
+    /**
+     * Creates a channel reading the content of <code>buffer</code> from
+     * position 0 up to its limit.
+     *
+     * @param buffer the buffer. Must not be null.
+     * @throws NullPointerException if <code>buffer</code> is null
+     */
+    ReadOnlyByteBufferChannel(@NotNull final ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    /**
+     * Creates a channel reading the content of <code>buffer</code> from
+     * position 0 up to its limit.
+     *
+     * @param buffer the buffer. Must not be null.
+     * @param mapped true, if <code>buffer</code> is a memory-mapped file
+     * @throws NullPointerException if <code>buffer</code> is null
+     */
+    ReadOnlyByteBufferChannel(@NotNull final ByteBuffer buffer, final boolean mapped) {
+        Objects.requireNonNull(buffer);
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.buffer.rewind();
+        this.mapped = mapped;
+    }
+
+    /**
+     * Replies true, if the channel reads from a memory-mapped file.
+     *
+     * @return true, if the channel reads from a memory-mapped file
+     */
+    boolean isMapped() {
+        return mapped;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws ClosedChannelException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(dst.remaining(), buffer.remaining());
+        dst.put(dst.position(), buffer, buffer.position(), count);
+        dst.position(dst.position() + count);
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws ClosedChannelException {
+        ensureOpen();
+        return buffer.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws ClosedChannelException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("position must not be negative");
+        }
+        buffer.position((int) Math.min(newPosition, buffer.limit()));
+        return this;
+    }
+
+    @Override
+    public long size() throws ClosedChannelException {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(final long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
@@ -2,9 +2,13 @@ package org.openstreetmap.josm.plugins.scripting.js.api;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -13,6 +17,7 @@ import javax.validation.constraints.NotNull;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
@@ -24,6 +29,11 @@ import org.openstreetmap.josm.plugins.scripting.util.Assert;
  * {@link OsmPrimitive}. A change consists of a list of
  * {@link PropertyChange}s. It can be applied to a primitive, and it
  * can generate an explanation of the applied change.
+ * <p>
+ * For each {@link OsmPrimitiveType}, the property changes which apply to
+ * primitives of this type are compiled once into a plan. Applying a change
+ * to a primitive only checks whether the primitive is complete and then
+ * applies the plan for its type.
  */
 public class Change {
     @SuppressWarnings("unused")
@@ -33,14 +43,29 @@ public class Change {
     @SuppressWarnings("unused")
     public static abstract class PropertyChange<T> {
         protected T newValue;
+
+        /**
+         * Replies true, if this change applies to <code>primitive</code>.
+         * A change only applies to complete primitives.
+         *
+         * @param primitive the primitive
+         * @return true, if this change applies to the primitive
+         */
         public  boolean appliesTo(OsmPrimitive primitive) {
-            try {
-                ensureApplicable(primitive);
-                return true;
-            } catch(Exception e) {
-                return false;
-            }
+            return primitive != null
+                && !primitive.isIncomplete()
+                && appliesTo(primitive.getType());
         }
+
+        /**
+         * Replies true, if this change applies to complete primitives of
+         * type <code>type</code>.
+         *
+         * @param type the type of the primitive
+         * @return true, if this change applies to primitives of this type
+         */
+        public abstract boolean appliesTo(OsmPrimitiveType type);
+
         public abstract void apply(OsmPrimitive primitive);
         public abstract String explain(OsmPrimitive primitive);
 
@@ -52,6 +77,11 @@ public class Change {
     }
 
     public static class LatChange extends PropertyChange<Number>{
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return type == OsmPrimitiveType.NODE;
+        }
+
          protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(primitive instanceof Node,
                      "Expected a node, got {0}", primitive);
@@ -85,6 +115,11 @@ public class Change {
     }
 
     public static class LonChange extends PropertyChange<Number>{
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return type == OsmPrimitiveType.NODE;
+        }
+
          protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(primitive instanceof Node,
                      "Expected a node, got {0}", primitive);
@@ -118,6 +153,11 @@ public class Change {
     }
 
     public static class PosChange extends PropertyChange<LatLon> {
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return type == OsmPrimitiveType.NODE;
+        }
+
          protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(primitive instanceof Node,
                      "Expected a node, got {0}", primitive);
@@ -146,6 +186,11 @@ public class Change {
     }
 
     public static class TagsChange extends PropertyChange<Map<String,String>> {
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return true;
+        }
+
         protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(!primitive.isIncomplete(),
                      "Primitive must not be incomplete, got {0}", primitive);
@@ -189,6 +234,11 @@ public class Change {
     }
 
     public static class NodesChange extends PropertyChange<List<Node>> {
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return type == OsmPrimitiveType.WAY;
+        }
+
          protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(primitive instanceof Way,
                      "Expected a way, got {0}", primitive);
@@ -229,6 +279,11 @@ public class Change {
 
     public static class MemberChange extends PropertyChange<List<RelationMember>> {
 
+        @Override
+        public boolean appliesTo(OsmPrimitiveType type) {
+            return type == OsmPrimitiveType.RELATION;
+        }
+
          protected void ensureApplicable(OsmPrimitive primitive) {
              Assert.assertArg(primitive instanceof Relation,
                      "Expected a relation, got {0}", primitive);
@@ -271,6 +326,56 @@ public class Change {
 
     private final List<PropertyChange<?>> changes = new ArrayList<>();
 
+    // the property changes which apply to complete primitives of a given
+    // type, compiled on demand from changes. Reset whenever a property
+    // change is added.
+    private volatile Map<OsmPrimitiveType, PropertyChange<?>[]> plans;
+
+    static private final PropertyChange<?>[] EMPTY_PLAN = new PropertyChange<?>[0];
+
+    private Change addChange(PropertyChange<?> change) {
+        changes.add(change);
+        plans = null;
+        return this;
+    }
+
+    private Map<OsmPrimitiveType, PropertyChange<?>[]> getPlans() {
+        Map<OsmPrimitiveType, PropertyChange<?>[]> plans = this.plans;
+        if (plans == null) {
+            plans = new EnumMap<>(OsmPrimitiveType.class);
+            for (OsmPrimitiveType type: OsmPrimitiveType.values()) {
+                plans.put(type, changes.stream()
+                    .filter(change -> change.appliesTo(type))
+                    .toArray(PropertyChange<?>[]::new));
+            }
+            this.plans = plans;
+        }
+        return plans;
+    }
+
+    /**
+     * Replies the property changes which apply to <code>primitive</code>,
+     * in the order they were added to this change.
+     *
+     * @param primitive the primitive
+     * @return the property changes. An empty array, if no change applies.
+     */
+    PropertyChange<?>[] getPlan(OsmPrimitive primitive) {
+        if (primitive == null || primitive.isIncomplete()) {
+            return EMPTY_PLAN;
+        }
+        return getPlans().get(primitive.getType());
+    }
+
+    /**
+     * Replies the property changes of this change.
+     *
+     * @return the property changes
+     */
+    List<PropertyChange<?>> getPropertyChanges() {
+        return List.copyOf(changes);
+    }
+
     /**
      * Schedules a property change for the latitude of a {@link Node}
      *
@@ -278,8 +383,7 @@ public class Change {
      * @return the change (for method chaining)
      */
     public Change withLatChange(double lat) {
-        changes.add(new LatChange(lat));
-        return this;
+        return addChange(new LatChange(lat));
     }
 
     /**
@@ -289,8 +393,7 @@ public class Change {
      * @return the change (for method chaining)
      */
     public Change withLonChange(double lon) {
-        changes.add(new LonChange(lon));
-        return this;
+        return addChange(new LonChange(lon));
     }
 
     /**
@@ -300,8 +403,7 @@ public class Change {
      * @return the change (for method chaining)
      */
     public Change withPosChange(LatLon pos) {
-        changes.add(new PosChange(pos));
-        return this;
+        return addChange(new PosChange(pos));
     }
 
     /**
@@ -311,8 +413,7 @@ public class Change {
      * @return the change (for method chaining)
      */
     public Change withTagsChange(Map<String, String> tags){
-        changes.add(new TagsChange(tags));
-        return this;
+        return addChange(new TagsChange(tags));
     }
 
     /**
@@ -321,7 +422,7 @@ public class Change {
      * @param nodes the new list of nodes. Can be null to remove all nodes.
      */
     public void withNodeChange(List<Node> nodes) {
-        changes.add(new NodesChange(nodes));
+        addChange(new NodesChange(nodes));
     }
 
     /**
@@ -333,8 +434,67 @@ public class Change {
      * @return the change (for method chaining)
      */
     public Change withMemberChange(List<RelationMember> members) {
-        changes.add(new MemberChange(members));
-        return this;
+        return addChange(new MemberChange(members));
+    }
+
+    /**
+     * Replies true, if this change removes all tags of a primitive.
+     *
+     * @return true, if this change removes all tags
+     */
+    boolean isRemovingAllTags() {
+        return changes.stream().anyMatch(change ->
+            change instanceof TagsChange && change.getNewValue() == null);
+    }
+
+    /**
+     * Replies the keys of the tags which are set or removed by this change.
+     * Doesn't include the tags removed by a change which removes all tags,
+     * see {@link #isRemovingAllTags()}.
+     *
+     * @return the tag keys
+     */
+    @NotNull Set<String> getChangedTagKeys() {
+        final Set<String> keys = new LinkedHashSet<>();
+        for (PropertyChange<?> change: changes) {
+            if (change instanceof TagsChange tagsChange
+                    && tagsChange.getNewValue() != null) {
+                tagsChange.getNewValue().keySet().stream()
+                    .filter(Objects::nonNull)
+                    .forEach(keys::add);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Replies true, if this change sets the coordinates of a {@link Node}.
+     *
+     * @return true, if this change sets the coordinates
+     */
+    boolean isChangingCoordinates() {
+        return changes.stream().anyMatch(change ->
+            change instanceof LatChange
+            || change instanceof LonChange
+            || change instanceof PosChange);
+    }
+
+    /**
+     * Replies true, if this change sets the node list of a {@link Way}.
+     *
+     * @return true, if this change sets the node list
+     */
+    boolean isChangingNodes() {
+        return changes.stream().anyMatch(change -> change instanceof NodesChange);
+    }
+
+    /**
+     * Replies true, if this change sets the member list of a {@link Relation}.
+     *
+     * @return true, if this change sets the member list
+     */
+    boolean isChangingMembers() {
+        return changes.stream().anyMatch(change -> change instanceof MemberChange);
     }
 
     /**
@@ -343,10 +503,8 @@ public class Change {
      * @param primitive the primitive.
      */
     public void apply(OsmPrimitive primitive) {
-        for (PropertyChange<?> change: changes) {
-            if (change.appliesTo(primitive)) {
-                change.apply(primitive);
-            }
+        for (PropertyChange<?> change: getPlan(primitive)) {
+            change.apply(primitive);
         }
     }
 
@@ -360,8 +518,7 @@ public class Change {
     public String explain(OsmPrimitive primitive) {
         return primitive.getDisplayName(DefaultNameFormatter.getInstance()) +
             ": " +
-            changes.stream()
-                .filter(change -> change.appliesTo(primitive))
+            Arrays.stream(getPlan(primitive))
                 .map(change -> change.explain(primitive))
                 .collect(Collectors.joining(", "));
     }
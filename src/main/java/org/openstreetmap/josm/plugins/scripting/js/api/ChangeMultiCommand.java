@@ -2,21 +2,61 @@ package org.openstreetmap.josm.plugins.scripting.js.api;
 
 import static org.openstreetmap.josm.tools.I18n.trn;
 
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.validation.constraints.NotNull;
 
+import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
-import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 
+/**
+ * Applies a {@link Change} to a collection of primitives.
+ * <p>
+ * The undo state only includes the properties the change actually touches:
+ * the values of the changed tags (or all tags, if the change removes all
+ * tags), the coordinates of nodes, the node lists of ways and the member
+ * lists of relations. It is kept in arrays indexed by the position of the
+ * primitive in the command, see {@link #getUndoStateSize()}.
+ */
 public class ChangeMultiCommand extends MultiCommand {
 
+    // rough sizes of the JVM memory layout, used to estimate the size of the
+    // undo state
+    static private final int ARRAY_HEADER_SIZE = 16;
+    static private final int REFERENCE_SIZE = 4;
+
     private final Change change;
-    private PrimitiveData[] oldState;
+
+    // the keys of the tags set or removed by the change
+    private final String[] changedTagKeys;
+    private final boolean removingAllTags;
+    private final boolean changingCoordinates;
+    private final boolean changingNodes;
+    private final boolean changingMembers;
+
+    // the undo state, indexed by the position of the primitive in primitives.
+    // Only allocated for the properties touched by the change.
+    private BitSet oldModified;
+    // changedTagKeys.length values per primitive, null if a tag wasn't set
+    private String[] oldTagValues;
+    // the tags of each primitive as alternating keys and values, if the
+    // change removes all tags
+    private String[][] oldTags;
+    // lat and lon per primitive, NaN if the coordinates weren't known
+    private double[] oldCoordinates;
+    private Node[][] oldNodes;
+    private RelationMember[][] oldMembers;
 
     /**
      * Creates a command for adding a collection of objects to a layer.
@@ -40,6 +80,13 @@ public class ChangeMultiCommand extends MultiCommand {
         primitives = new OsmPrimitive[normalized.size()];
         normalized.toArray(primitives);
         this.change = change;
+        this.removingAllTags = change.isRemovingAllTags();
+        this.changedTagKeys = removingAllTags
+            ? new String[0]
+            : change.getChangedTagKeys().toArray(new String[0]);
+        this.changingCoordinates = change.isChangingCoordinates();
+        this.changingNodes = change.isChangingNodes();
+        this.changingMembers = change.isChangingMembers();
     }
 
     @Override
@@ -54,15 +101,143 @@ public class ChangeMultiCommand extends MultiCommand {
                 primitives.length, primitives.length);
     }
 
+    private void allocateUndoState() {
+        final int n = primitives.length;
+        oldModified = new BitSet(n);
+        oldTagValues = changedTagKeys.length == 0
+            ? null : new String[n * changedTagKeys.length];
+        oldTags = removingAllTags ? new String[n][] : null;
+        oldCoordinates = changingCoordinates ? new double[2 * n] : null;
+        oldNodes = changingNodes ? new Node[n][] : null;
+        oldMembers = changingMembers ? new RelationMember[n][] : null;
+    }
+
+    private void saveUndoState(int i, OsmPrimitive p) {
+        oldModified.set(i, p.isModified());
+        if (p.isIncomplete()) {
+            // the change doesn't apply to incomplete primitives
+            return;
+        }
+        if (oldTagValues != null) {
+            final int offset = i * changedTagKeys.length;
+            for (int k = 0; k < changedTagKeys.length; k++) {
+                oldTagValues[offset + k] = p.get(changedTagKeys[k]);
+            }
+        }
+        if (oldTags != null) {
+            final Map<String, String> tags = p.getKeys();
+            final String[] keysAndValues = new String[2 * tags.size()];
+            int j = 0;
+            for (Map.Entry<String, String> tag: tags.entrySet()) {
+                keysAndValues[j++] = tag.getKey();
+                keysAndValues[j++] = tag.getValue();
+            }
+            oldTags[i] = keysAndValues;
+        }
+        if (oldCoordinates != null && p instanceof Node node) {
+            final LatLon coor = node.getCoor();
+            oldCoordinates[2 * i] = coor == null ? Double.NaN : coor.lat();
+            oldCoordinates[2 * i + 1] = coor == null ? Double.NaN : coor.lon();
+        }
+        if (oldNodes != null && p instanceof Way way) {
+            oldNodes[i] = way.getNodes().toArray(new Node[0]);
+        }
+        if (oldMembers != null && p instanceof Relation relation) {
+            oldMembers[i] = relation.getMembers().toArray(new RelationMember[0]);
+        }
+    }
+
+    private void restoreUndoState(int i, OsmPrimitive p) {
+        if (oldTags != null && oldTags[i] != null) {
+            final String[] keysAndValues = oldTags[i];
+            final Map<String, String> tags = new HashMap<>(keysAndValues.length);
+            for (int j = 0; j < keysAndValues.length; j += 2) {
+                tags.put(keysAndValues[j], keysAndValues[j + 1]);
+            }
+            p.setKeys(tags);
+        } else if (oldTagValues != null && !p.isIncomplete()) {
+            final int offset = i * changedTagKeys.length;
+            for (int k = 0; k < changedTagKeys.length; k++) {
+                final String value = oldTagValues[offset + k];
+                if (value == null) {
+                    p.remove(changedTagKeys[k]);
+                } else {
+                    p.put(changedTagKeys[k], value);
+                }
+            }
+        }
+        if (oldCoordinates != null && p instanceof Node node && !p.isIncomplete()) {
+            final double lat = oldCoordinates[2 * i];
+            final double lon = oldCoordinates[2 * i + 1];
+            node.setCoor(Double.isNaN(lat) ? null : new LatLon(lat, lon));
+        }
+        if (oldNodes != null && oldNodes[i] != null) {
+            ((Way) p).setNodes(List.of(oldNodes[i]));
+        }
+        if (oldMembers != null && oldMembers[i] != null) {
+            ((Relation) p).setMembers(List.of(oldMembers[i]));
+        }
+        p.setModified(oldModified.get(i));
+    }
+
+    /**
+     * Replies an estimate of the memory used by the undo state of this
+     * command, in bytes. Tag keys and values, nodes and members are shared
+     * with the primitives, only the references to them are counted.
+     *
+     * @return the estimated size of the undo state. 0, if the command wasn't
+     *   executed yet.
+     */
+    public long getUndoStateSize() {
+        if (oldModified == null) {
+            return 0;
+        }
+        long size = ARRAY_HEADER_SIZE + oldModified.size() / 8;
+        if (oldTagValues != null) {
+            size += referenceArraySize(oldTagValues.length);
+        }
+        if (oldTags != null) {
+            size += referenceArraySize(oldTags.length);
+            for (String[] keysAndValues: oldTags) {
+                if (keysAndValues != null) {
+                    size += referenceArraySize(keysAndValues.length);
+                }
+            }
+        }
+        if (oldCoordinates != null) {
+            size += ARRAY_HEADER_SIZE + (long) Double.BYTES * oldCoordinates.length;
+        }
+        size += nestedReferenceArraySize(oldNodes);
+        size += nestedReferenceArraySize(oldMembers);
+        return size;
+    }
+
+    static private long referenceArraySize(int length) {
+        return ARRAY_HEADER_SIZE + (long) REFERENCE_SIZE * length;
+    }
+
+    static private long nestedReferenceArraySize(Object[][] arrays) {
+        if (arrays == null) {
+            return 0;
+        }
+        long size = referenceArraySize(arrays.length);
+        for (Object[] array: arrays) {
+            if (array != null) {
+                size += referenceArraySize(array.length);
+            }
+        }
+        return size;
+    }
+
     @Override
     public boolean executeCommand() {
         DataSet ds = getAffectedDataSet();
         try {
-            oldState = new PrimitiveData[primitives.length];
+            allocateUndoState();
             ds.beginUpdate();
             for (int i=0; i< primitives.length; i++) {
                 OsmPrimitive p = primitives[i];
-                oldState[i] = p.save();
+                saveUndoState(i, p);
                 change.apply(p);
                 p.setModified(true);
             }
@@ -78,11 +253,10 @@ public class ChangeMultiCommand extends MultiCommand {
         try {
             ds.beginUpdate();
             for (int i=primitives.length-1; i>=0; i--){
-                OsmPrimitive p = primitives[i];
-                p.load(oldState[i]);
+                restoreUndoState(i, primitives[i]);
             }
         } finally {
             ds.endUpdate();
         }
     }
-}
\ No newline at end of file
+}
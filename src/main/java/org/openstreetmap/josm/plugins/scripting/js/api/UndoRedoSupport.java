@@ -0,0 +1,68 @@
+package org.openstreetmap.josm.plugins.scripting.js.api;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+import javax.validation.constraints.NotNull;
+import java.util.Objects;
+
+import static org.openstreetmap.josm.plugins.scripting.ui.BackgroundDataSetLock.runUnlocked;
+
+/**
+ * Applies, undoes, and redoes commands on behalf of scripts.
+ * <p>
+ * JOSM expects commands to be applied on the Swing EDT, because applying a
+ * command notifies map views, dialogs, and other listeners. Scripts, however,
+ * can be run on a background thread. The methods in this class therefore
+ * always apply commands on the Swing EDT and wait for them to complete.
+ * <p>
+ * While a script runs in the background, the data sets of the data layers
+ * are locked (see {@link org.openstreetmap.josm.plugins.scripting.ui.BackgroundDataSetLock}).
+ * The methods in this class lift the lock while a command is applied,
+ * undone or redone.
+ */
+public class UndoRedoSupport {
+
+    private UndoRedoSupport() {
+    }
+
+    /**
+     * Applies a command to a layer and adds it to the undo/redo history.
+     *
+     * @param layer the layer. Must not be null.
+     * @param cmd the command. Must not be null.
+     * @throws NullPointerException if <code>layer</code> or <code>cmd</code> is null
+     */
+    static public void apply(@NotNull final OsmDataLayer layer, @NotNull final Command cmd) {
+        Objects.requireNonNull(layer);
+        Objects.requireNonNull(cmd);
+        runUnlocked(() -> {
+            final var ds = layer.getDataSet();
+            ds.beginUpdate();
+            try {
+                UndoRedoHandler.getInstance().add(cmd);
+            } finally {
+                ds.endUpdate();
+            }
+        });
+    }
+
+    /**
+     * Undoes the last <code>depth</code> commands.
+     *
+     * @param depth the number of commands to undo
+     */
+    static public void undo(final int depth) {
+        runUnlocked(() -> UndoRedoHandler.getInstance().undo(depth));
+    }
+
+    /**
+     * Redoes the last <code>depth</code> commands.
+     *
+     * @param depth the number of commands to redo
+     */
+    static public void redo(final int depth) {
+        runUnlocked(() -> UndoRedoHandler.getInstance().redo(depth));
+    }
+}
@@ -0,0 +1,526 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.Version;
+import org.openstreetmap.josm.plugins.scripting.ScriptingPlugin;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Persists the classes of compiled Groovy scripts in a directory, so that
+ * Groovy scripts aren't compiled again after JOSM is restarted.
+ * <p>
+ * Entries are keyed by the hash of the script source and the name of the
+ * script class, which is derived from the name of the script file. Two files
+ * with the same source but different names therefore have separate entries,
+ * because the compiled classes carry the script class name. Entries are kept in a
+ * subdirectory per Groovy version, JOSM version, plugin version and Groovy
+ * engine jar, see {@link #versionKey(ScriptEngine)}. Entries in other
+ * subdirectories, and entries which weren't used for
+ * {@link #STALE_AFTER_DAYS} days, are removed when the cache is used for the
+ * first time.
+ * <p>
+ * Groovy is a plugged script engine and isn't available at compile time.
+ * Scripts are therefore compiled with the public Groovy compiler API, looked
+ * up by reflection in the class loader of the Groovy script engine. If this
+ * fails, the script is compiled by the script engine and isn't cached.
+ */
+public class GroovyClassCache {
+    static private final Logger logger = Logger.getLogger(GroovyClassCache.class.getName());
+
+    /**
+     * The name of the cache directory in the plugin user data directory.
+     */
+    static public final String CACHE_DIRECTORY_NAME = "groovy-class-cache";
+
+    /**
+     * Entries which weren't used for this number of days are removed.
+     */
+    static public final int STALE_AFTER_DAYS = 30;
+
+    static private final String ENTRY_SUFFIX = ".classes";
+    static private final String TEMP_SUFFIX = ".tmp";
+    // "JSGC", the magic number of a cache entry
+    static private final int MAGIC = 0x4A534743;
+
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of scripts loaded from the cache
+     * @param misses the number of scripts compiled and written to the cache
+     * @param fallbacks the number of scripts compiled by the script engine,
+     *   because they couldn't be compiled or loaded by the cache
+     */
+    public record Statistics(long hits, long misses, long fallbacks) {
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, fallbacks={2}", hits, misses, fallbacks);
+        }
+    }
+
+    /**
+     * Replies the class cache in the plugin user data directory, or null, if
+     * the cache isn't enabled, see {@link PreferenceKeys#PREF_KEY_GROOVY_CLASS_CACHE}.
+     *
+     * @return the class cache, or null
+     */
+    static public @Null GroovyClassCache fromPreferences() {
+        final var prefs = Preferences.main();
+        final var plugin = ScriptingPlugin.getInstance();
+        if (prefs == null || plugin == null
+                || !prefs.getBoolean(PreferenceKeys.PREF_KEY_GROOVY_CLASS_CACHE, false)) {
+            return null;
+        }
+        final var dir = new File(plugin.getPluginDirs().getUserDataDirectory(false), CACHE_DIRECTORY_NAME);
+        return new GroovyClassCache(dir.toPath());
+    }
+
+    /**
+     * Replies true, if <code>engine</code> is a Groovy script engine.
+     *
+     * @param engine the engine. Must not be null.
+     * @return true, if the engine is a Groovy script engine
+     */
+    static public boolean isGroovyEngine(@NotNull final ScriptEngine engine) {
+        Objects.requireNonNull(engine);
+        final var factory = engine.getFactory();
+        return factory != null && factory.getNames().contains("groovy");
+    }
+
+    /**
+     * Replies the name of the class of a script compiled from the file
+     * <code>fileName</code>.
+     *
+     * @param fileName the file name. Must not be null.
+     * @return the class name
+     */
+    static @NotNull String scriptClassName(@NotNull final String fileName) {
+        final int dot = fileName.lastIndexOf('.');
+        final var baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+        final var name = new StringBuilder();
+        baseName.codePoints().forEach(c ->
+            name.appendCodePoint(Character.isJavaIdentifierPart(c) ? c : '_'));
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.codePointAt(0))) {
+            name.insert(0, '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * The classes of a compiled script.
+     *
+     * @param scriptClassName the name of the script class
+     * @param classes the class bytes, by class name
+     */
+    private record ScriptClasses(@NotNull String scriptClassName, @NotNull Map<String, byte[]> classes) {}
+
+    /**
+     * Defines the classes of a compiled script.
+     */
+    static private class ScriptClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        ScriptClassLoader(@NotNull final ClassLoader parent, @NotNull final Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = new HashMap<>(classes);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] bytes;
+            synchronized (classes) {
+                bytes = classes.remove(name);
+            }
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * A script compiled by the cache. Evaluated like a script compiled by the
+     * Groovy script engine.
+     */
+    static private class CachedScript extends CompiledScript {
+        private final ScriptEngine engine;
+        private final Method eval;
+        private final Class<?> scriptClass;
+
+        CachedScript(@NotNull final ScriptEngine engine, @NotNull final Method eval,
+                     @NotNull final Class<?> scriptClass) {
+            this.engine = engine;
+            this.eval = eval;
+            this.scriptClass = scriptClass;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            try {
+                return eval.invoke(engine, scriptClass, context);
+            } catch (InvocationTargetException e) {
+                final var cause = e.getCause();
+                if (cause instanceof ScriptException scriptException) {
+                    throw scriptException;
+                } else if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                } else if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new ScriptException(cause instanceof Exception ex ? ex : e);
+            } catch (IllegalAccessException e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+    }
+
+    private final Path cacheDir;
+    // the version directories, by the class of the script engine
+    private final Map<Class<?>, Path> versionDirs = new ConcurrentHashMap<>();
+    private boolean cleanedUp = false;
+    private long hits = 0;
+    private long misses = 0;
+    private long fallbacks = 0;
+
+    /**
+     * Creates a class cache.
+     *
+     * @param cacheDir the cache directory. Must not be null. Created, if it
+     *   doesn't exist.
+     */
+    public GroovyClassCache(@NotNull final Path cacheDir) {
+        Objects.requireNonNull(cacheDir);
+        this.cacheDir = cacheDir;
+    }
+
+    static private @NotNull String josmVersion() {
+        return Version.getInstance().getVersionString();
+    }
+
+    static private @NotNull String pluginVersion() {
+        final var plugin = ScriptingPlugin.getInstance();
+        if (plugin == null || plugin.getPluginInformation() == null) {
+            return "unknown";
+        }
+        return String.valueOf(plugin.getPluginInformation().version);
+    }
+
+    /**
+     * Replies the location, size and modification time of the jar file the
+     * class <code>engineClass</code> is loaded from.
+     */
+    static private @NotNull String jarFingerprint(@NotNull final Class<?> engineClass) {
+        final var codeSource = engineClass.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            return "unknown";
+        }
+        final var location = codeSource.getLocation();
+        try {
+            final var file = Path.of(location.toURI());
+            return format("{0}:{1,number,#}:{2,number,#}", file,
+                Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+            // not a local file. Use the location only.
+            return location.toString();
+        }
+    }
+
+    /**
+     * Replies the key of the cache entries compiled with <code>engine</code>.
+     * Consists of the Groovy version and a hash of the JOSM version, the
+     * plugin version and the fingerprint of the engine jar file, because
+     * compiled classes may refer to classes of all three.
+     *
+     * @param engine the engine. Must not be null.
+     * @return the key
+     */
+    static @NotNull String versionKey(@NotNull final ScriptEngine engine) {
+        final var fingerprint = String.join("\n",
+            josmVersion(), pluginVersion(), jarFingerprint(engine.getClass()));
+        final String hash;
+        try {
+            hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(fingerprint.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        final var version = engine.getFactory().getEngineVersion();
+        return "groovy-" + scriptClassName(String.valueOf(version)) + "-" + hash.substring(0, 16);
+    }
+
+    private @NotNull Path getVersionDir(@NotNull final ScriptEngine engine) {
+        return versionDirs.computeIfAbsent(engine.getClass(), c -> cacheDir.resolve(versionKey(engine)));
+    }
+
+    private @NotNull Path getEntryFile(@NotNull final ScriptEngine engine,
+                                       @NotNull final String scriptClassName,
+                                       @NotNull final byte[] sourceHash) {
+        final String entryKey;
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(sourceHash);
+            digest.update(scriptClassName.getBytes(StandardCharsets.UTF_8));
+            entryKey = HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        return getVersionDir(engine).resolve(entryKey + ENTRY_SUFFIX);
+    }
+
+    static private void deleteRecursively(@NotNull final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> children = Files.list(path)) {
+                for (final var child : children.toList()) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Removes the entries in other version directories, the entries which
+     * weren't used for {@link #STALE_AFTER_DAYS} days and unfinished
+     * entries.
+     *
+     * @param versionDir the current version directory
+     * @param now the current time
+     */
+    void cleanUp(@NotNull final Path versionDir, final long now) {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        final long staleBefore = now - TimeUnit.DAYS.toMillis(STALE_AFTER_DAYS);
+        try (Stream<Path> dirs = Files.list(cacheDir)) {
+            for (final var dir : dirs.toList()) {
+                if (dir.equals(versionDir)) {
+                    try (Stream<Path> entries = Files.list(dir)) {
+                        for (final var entry : entries.toList()) {
+                            if (entry.getFileName().toString().endsWith(TEMP_SUFFIX)
+                                    || Files.getLastModifiedTime(entry).toMillis() < staleBefore) {
+                                Files.deleteIfExists(entry);
+                            }
+                        }
+                    }
+                } else {
+                    deleteRecursively(dir);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, format("Failed to clean up the Groovy class cache ''{0}''", cacheDir), e);
+        }
+    }
+
+    private @Null ScriptClasses read(@NotNull final Path entryFile) {
+        if (!Files.isRegularFile(entryFile)) {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a Groovy class cache entry");
+            }
+            final var scriptClassName = in.readUTF();
+            final int count = in.readInt();
+            final var classes = new LinkedHashMap<String, byte[]>();
+            for (int i = 0; i < count; i++) {
+                final var name = in.readUTF();
+                final var bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            // mark the entry as used, see cleanUp()
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ScriptClasses(scriptClassName, classes);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, format("Failed to read the Groovy class cache entry ''{0}''. Removing it.",
+                entryFile), e);
+            try {
+                Files.deleteIfExists(entryFile);
+            } catch (IOException ex) {
+                // ignore
+            }
+            return null;
+        }
+    }
+
+    private void write(@NotNull final Path entryFile, @NotNull final ScriptClasses scriptClasses) {
+        try {
+            Files.createDirectories(entryFile.getParent());
+            final var tempFile = Files.createTempFile(entryFile.getParent(), "entry", TEMP_SUFFIX);
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(scriptClasses.scriptClassName());
+                out.writeInt(scriptClasses.classes().size());
+                for (final var entry : scriptClasses.classes().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            try {
+                Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, format("Failed to write the Groovy class cache entry ''{0}''", entryFile), e);
+        }
+    }
+
+    /**
+     * Compiles a script with the Groovy compiler of the script engine
+     * <code>engine</code>.
+     */
+    static private @NotNull ScriptClasses compileClasses(@NotNull final ScriptEngine engine,
+                                                         @NotNull final String scriptClassName,
+                                                         @NotNull final String source) throws ReflectiveOperationException {
+        final var loader = getGroovyClassLoader(engine);
+        final var compilerConfigurationClass = Class.forName(
+            "org.codehaus.groovy.control.CompilerConfiguration", true, loader);
+        final var groovyClassLoaderClass = Class.forName("groovy.lang.GroovyClassLoader", true, loader);
+        final var compilationUnitClass = Class.forName(
+            "org.codehaus.groovy.control.CompilationUnit", true, loader);
+        final var phasesClass = Class.forName("org.codehaus.groovy.control.Phases", true, loader);
+
+        final var compilationUnit = compilationUnitClass
+            .getConstructor(compilerConfigurationClass, CodeSource.class, groovyClassLoaderClass)
+            .newInstance(compilerConfigurationClass.getConstructor().newInstance(), null, loader);
+        compilationUnitClass.getMethod("addSource", String.class, String.class)
+            .invoke(compilationUnit, scriptClassName + ".groovy", source);
+        compilationUnitClass.getMethod("compile", int.class)
+            .invoke(compilationUnit, phasesClass.getField("CLASS_GENERATION").getInt(null));
+
+        final var classes = new LinkedHashMap<String, byte[]>();
+        for (final Object groovyClass : (List<?>) compilationUnitClass.getMethod("getClasses").invoke(compilationUnit)) {
+            final var name = (String) groovyClass.getClass().getMethod("getName").invoke(groovyClass);
+            final var bytes = (byte[]) groovyClass.getClass().getMethod("getBytes").invoke(groovyClass);
+            classes.put(name, bytes);
+        }
+        if (!classes.containsKey(scriptClassName)) {
+            throw new ClassNotFoundException(scriptClassName);
+        }
+        return new ScriptClasses(scriptClassName, classes);
+    }
+
+    static private @NotNull ClassLoader getGroovyClassLoader(@NotNull final ScriptEngine engine)
+            throws ReflectiveOperationException {
+        // the class loader of the Groovy script engine resolves the classes
+        // referred to in scripts
+        return (ClassLoader) engine.getClass().getMethod("getClassLoader").invoke(engine);
+    }
+
+    private @NotNull CompiledScript load(@NotNull final ScriptEngine engine,
+                                         @NotNull final ScriptClasses scriptClasses) throws ReflectiveOperationException {
+        final var loader = new ScriptClassLoader(getGroovyClassLoader(engine), scriptClasses.classes());
+        final var scriptClass = Class.forName(scriptClasses.scriptClassName(), true, loader);
+        final var eval = engine.getClass().getMethod("eval", Class.class, ScriptContext.class);
+        return new CachedScript(engine, eval, scriptClass);
+    }
+
+    /**
+     * Compiles a Groovy script, or loads its classes from the cache.
+     *
+     * @param engine the Groovy script engine. Must not be null.
+     * @param fileName the name of the script file. Must not be null.
+     * @param source the script source. Must not be null.
+     * @param sourceHash the hash of the script source. Must not be null.
+     * @return the compiled script, or null, if the script can't be compiled
+     *   by the cache. The script engine should compile it instead.
+     * @throws NullPointerException if one of the parameters is null
+     */
+    public @Null CompiledScript compile(@NotNull final ScriptEngine engine,
+                                        @NotNull final String fileName,
+                                        @NotNull final String source,
+                                        @NotNull final byte[] sourceHash) {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(fileName);
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(sourceHash);
+        final var scriptClassName = scriptClassName(fileName);
+        final var entryFile = getEntryFile(engine, scriptClassName, sourceHash);
+        synchronized (this) {
+            if (!cleanedUp) {
+                cleanedUp = true;
+                cleanUp(entryFile.getParent(), System.currentTimeMillis());
+            }
+        }
+        final var cached = read(entryFile);
+        try {
+            if (cached != null) {
+                final var script = load(engine, cached);
+                synchronized (this) {
+                    hits++;
+                }
+                return script;
+            }
+            final var compiled = compileClasses(engine, scriptClassName, source);
+            write(entryFile, compiled);
+            final var script = load(engine, compiled);
+            synchronized (this) {
+                misses++;
+            }
+            return script;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // i.e. a syntax error in the script, or an unsupported version
+            // of Groovy. The script engine compiles the script and reports
+            // errors.
+            logger.log(Level.FINE, format("Groovy class cache can''t compile ''{0}''", fileName), e);
+            synchronized (this) {
+                fallbacks++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Replies a snapshot of the cache metrics.
+     *
+     * @return the metrics
+     */
+    public synchronized @NotNull Statistics getStatistics() {
+        return new Statistics(hits, misses, fallbacks);
+    }
+}
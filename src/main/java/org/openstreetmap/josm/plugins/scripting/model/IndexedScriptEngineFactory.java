@@ -0,0 +1,132 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDiscoveryIndex.FactoryInfo;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.util.List;
+import java.util.Objects;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A script engine factory whose meta-data is read from the
+ * {@link ScriptEngineDiscoveryIndex}. The factory itself is only loaded from
+ * the script engine jar when a script engine is created.
+ */
+class IndexedScriptEngineFactory implements ScriptEngineFactory {
+
+    private final FactoryInfo info;
+    private final ClassLoader classLoader;
+    private ScriptEngineFactory delegate;
+
+    /**
+     * Creates a factory.
+     *
+     * @param info the meta-data of the factory. Must not be null.
+     * @param classLoader the class loader which loads the factory. Must not be null.
+     * @param delegate the factory, if it is already loaded. Null, to load it on demand.
+     */
+    IndexedScriptEngineFactory(@NotNull final FactoryInfo info,
+                               @NotNull final ClassLoader classLoader,
+                               @Null final ScriptEngineFactory delegate) {
+        Objects.requireNonNull(info);
+        Objects.requireNonNull(classLoader);
+        this.info = info;
+        this.classLoader = classLoader;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Replies the meta-data of the factory.
+     *
+     * @return the meta-data
+     */
+    @NotNull FactoryInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Replies true, if the factory is loaded from the script engine jar.
+     *
+     * @return true, if the factory is loaded
+     */
+    synchronized boolean isLoaded() {
+        return delegate != null;
+    }
+
+    private synchronized @NotNull ScriptEngineFactory getDelegate() {
+        if (delegate == null) {
+            try {
+                final var factoryClass = Class.forName(info.className(), true, classLoader);
+                delegate = (ScriptEngineFactory) factoryClass.getConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+                throw new IllegalStateException(format(
+                    "Failed to load script engine factory ''{0}''", info.className()), e);
+            }
+        }
+        return delegate;
+    }
+
+    @Override
+    public String getEngineName() {
+        return info.engineName();
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return info.engineVersion();
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return info.extensions();
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return info.mimeTypes();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return info.names();
+    }
+
+    @Override
+    public String getLanguageName() {
+        return info.languageName();
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return info.languageVersion();
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return getDelegate().getParameter(key);
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return getDelegate().getMethodCallSyntax(obj, m, args);
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return getDelegate().getOutputStatement(toDisplay);
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return getDelegate().getProgram(statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return getDelegate().getScriptEngine();
+    }
+}
@@ -1,28 +1,56 @@
 package org.openstreetmap.josm.plugins.scripting.model;
 
+import org.openstreetmap.josm.data.Preferences;
+
 import javax.script.Compilable;
 import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
-import java.util.HashMap;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static org.openstreetmap.josm.plugins.scripting.util.FileUtils.buildTextFileReader;
+import static java.text.MessageFormat.format;
 
 /**
  * <strong>CompiledScriptCache</strong> maintains a cache of compiled
  * scripts for script languages which are compiled before executed.
+ * <p>
+ * Entries are keyed by the canonical path of the script file and the
+ * script engine which compiled it, and validated by a hash of the script
+ * content. An edit is therefore detected even if it doesn't change the
+ * modification time of the file, i.e. on file systems with a coarse
+ * time resolution.
+ * <p>
+ * The number of cached scripts is bounded, see
+ * {@link PreferenceKeys#PREF_KEY_JSR223_COMPILED_SCRIPT_CACHE_SIZE}. The
+ * least recently used script is evicted first. The cache is thread-safe.
+ * Scripts are compiled outside of the lock of the cache.
+ * <p>
+ * Groovy scripts are compiled with the optional {@link GroovyClassCache}, if
+ * it is enabled, so that they aren't compiled again after JOSM is restarted.
  */
 public class JSR223CompiledScriptCache {
-    @SuppressWarnings("unused")
     static private final Logger logger = Logger.getLogger(
             JSR223CompiledScriptCache.class.getName());
 
+    /**
+     * The default maximum number of cached compiled scripts.
+     */
+    static public final int DEFAULT_CAPACITY = 256;
+
     private static final JSR223CompiledScriptCache instance =
             new JSR223CompiledScriptCache();
 
@@ -35,33 +63,110 @@ public class JSR223CompiledScriptCache {
         return instance;
     }
 
-    static private  class CacheEntry {
-        private final File file;
-        private final CompiledScript script;
-        private final long timestamp;
-
-        public CacheEntry(File file, CompiledScript script) {
-            this.timestamp = file.lastModified();
-            this.file = file;
-            this.script = script;
+    /**
+     * A snapshot of the cache metrics.
+     *
+     * @param hits the number of lookups served from the cache
+     * @param misses the number of lookups which compiled the script
+     * @param evictions the number of scripts evicted because the cache was full
+     * @param compileTimeNanos the total time spent compiling scripts
+     * @param size the current number of cached scripts
+     */
+    public record Statistics(long hits, long misses, long evictions, long compileTimeNanos, int size) {
+        /**
+         * Replies the total time spent compiling scripts, in milliseconds.
+         *
+         * @return the compile time
+         */
+        public double compileTimeMillis() {
+            return compileTimeNanos / 1_000_000d;
         }
 
-        public File getFile() {
-            return file;
+        @Override
+        public String toString() {
+            return format("hits={0}, misses={1}, evictions={2}, compileTime={3,number,0.0}ms, size={4}",
+                hits, misses, evictions, compileTimeMillis(), size);
         }
+    }
+
+    private record Key(@NotNull String canonicalPath, @NotNull String engine) {}
+
+    private record Entry(@NotNull byte[] contentHash, @NotNull CompiledScript script) {}
 
-        public CompiledScript getScript() {
-            return script;
+    /**
+     * Replies the capacity configured in the preferences, see
+     * {@link PreferenceKeys#PREF_KEY_JSR223_COMPILED_SCRIPT_CACHE_SIZE}.
+     *
+     * @return the capacity
+     */
+    static int capacityFromPreferences() {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return DEFAULT_CAPACITY;
         }
+        return Math.max(1, prefs.getInt(PreferenceKeys.PREF_KEY_JSR223_COMPILED_SCRIPT_CACHE_SIZE, DEFAULT_CAPACITY));
+    }
 
-        public long getTimestamp() {
-            return timestamp;
+    static private byte[] hash(final byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
         }
     }
 
-    private final Map<File, CacheEntry> cache = new HashMap<>();
+    private final int capacity;
+    private final GroovyClassCache groovyClassCache;
+    private final Map<Key, Entry> cache;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long compileTimeNanos = 0;
+
+    /**
+     * Creates a cache whose capacity is configured in the preferences.
+     */
+    public JSR223CompiledScriptCache() {
+        this(capacityFromPreferences(), GroovyClassCache.fromPreferences());
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum number of cached compiled scripts. Must be positive.
+     * @throws IllegalArgumentException if <code>capacity</code> isn't positive
+     */
+    public JSR223CompiledScriptCache(final int capacity) {
+        this(capacity, null);
+    }
 
-    public JSR223CompiledScriptCache() {}
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the maximum number of cached compiled scripts. Must be positive.
+     * @param groovyClassCache the cache of compiled Groovy classes. Null, to
+     *   compile Groovy scripts with the script engine.
+     * @throws IllegalArgumentException if <code>capacity</code> isn't positive
+     */
+    public JSR223CompiledScriptCache(final int capacity, @Null final GroovyClassCache groovyClassCache) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(format(
+                "capacity must be positive, got {0}", capacity));
+        }
+        this.capacity = capacity;
+        this.groovyClassCache = groovyClassCache;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true /* access order */) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > JSR223CompiledScriptCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
 
     /**
      * Compiles a script using {@code compiler} and replies the compiled
@@ -78,15 +183,60 @@ public class JSR223CompiledScriptCache {
             throws ScriptException, IOException {
         Objects.requireNonNull(scriptFile);
         Objects.requireNonNull(compiler);
-        CacheEntry entry = cache.get(scriptFile);
-        if (entry != null && entry.getTimestamp() >= scriptFile.lastModified()){
-            return entry.getScript();
+        final var key = new Key(scriptFile.getCanonicalPath(), compiler.getClass().getName());
+        final byte[] content = Files.readAllBytes(scriptFile.toPath());
+        final byte[] contentHash = hash(content);
+        synchronized (this) {
+            final var entry = cache.get(key);
+            if (entry != null && Arrays.equals(entry.contentHash(), contentHash)) {
+                hits++;
+                return entry.script();
+            }
+        }
+        final long start = System.nanoTime();
+        final CompiledScript script = compileScript(compiler, scriptFile, content, contentHash);
+        final long nanos = System.nanoTime() - start;
+        synchronized (this) {
+            misses++;
+            compileTimeNanos += nanos;
+            cache.put(key, new Entry(contentHash, script));
         }
-        try (Reader reader = buildTextFileReader(scriptFile)) {
-            CompiledScript script = compiler.compile(reader);
-            entry = new CacheEntry(scriptFile, script);
-            cache.put(scriptFile, entry);
-            return script;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("compiled script ''{0}'' in {1,number,0.0}ms. Compiled script cache: {2}",
+                key.canonicalPath(), nanos / 1_000_000d, getStatistics()));
         }
+        return script;
+    }
+
+    private @NotNull CompiledScript compileScript(@NotNull final Compilable compiler,
+                                                  @NotNull final File scriptFile,
+                                                  @NotNull final byte[] content,
+                                                  @NotNull final byte[] contentHash) throws ScriptException {
+        final var source = new String(content, StandardCharsets.UTF_8);
+        if (groovyClassCache != null
+                && compiler instanceof ScriptEngine engine
+                && GroovyClassCache.isGroovyEngine(engine)) {
+            final var script = groovyClassCache.compile(engine, scriptFile.getName(), source, contentHash);
+            if (script != null) {
+                return script;
+            }
+        }
+        return compiler.compile(new StringReader(source));
+    }
+
+    /**
+     * Removes all compiled scripts.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Replies a snapshot of the cache metrics.
+     *
+     * @return the metrics
+     */
+    public synchronized @NotNull Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, compileTimeNanos, cache.size());
     }
 }
@@ -13,18 +13,26 @@ import javax.script.ScriptEngineManager;
 import javax.swing.*;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Null;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -44,17 +52,29 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
      */
     static public final String DEFAULT_MIME_TYPES = "/resources/mime.types.default";
 
+    static private final String SCRIPT_ENGINE_FACTORY_SERVICE = "META-INF/services/javax.script.ScriptEngineFactory";
+
     @SuppressWarnings("unused")
     static private final Logger logger = Logger.getLogger(JSR223ScriptEngineProvider.class.getName());
 
     static private JSR223ScriptEngineProvider instance;
     private final List<ScriptEngineFactory> factories = new ArrayList<>();
     private final List<ScriptEngineDescriptor> descriptors = new ArrayList<>();
+    // lookup tables for the factories and descriptors, rebuilt when the
+    // factories are loaded
+    private Map<String, ScriptEngineFactory> factoriesByName = Map.of();
+    private Map<String, ScriptEngineFactory> factoriesByEngineId = Map.of();
+    private Map<String, List<ScriptEngineDescriptor>> descriptorsByMimeType = Map.of();
+    private final ScriptEngineDiscoveryIndex discoveryIndex = ScriptEngineDiscoveryIndex.load(Preferences.main());
     private final List<File> scriptEngineJars = new ArrayList<>();
     private MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
     private ClassLoader scriptClassLoader = getClass().getClassLoader();
     private ScriptEngineManager manager = null;
+    private final ScriptEnginePool enginePool = ScriptEnginePool.fromPreferences();
     private JSR223ScriptEngineProvider() {
+        // the state of a Jython interpreter refers to the interpreter, release
+        // it together with the interpreter
+        enginePool.addDiscardListener(JythonRuntime.getInstance()::discard);
         restoreScriptEngineUrlsFromPreferences();
         loadScriptEngineFactories();
         loadMimeTypesMap();
@@ -114,13 +134,35 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
             Preferences.main().getList(PREF_KEY_SCRIPTING_ENGINE_JARS).stream()
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
-                .map(ScriptEngineJarInfo::new)
-                .filter(info -> info.getStatusMessage().equals(ScriptEngineJarInfo.OK_MESSAGE))
-                .forEach(info -> scriptEngineJars.add(new File(info.getJarFilePath())));
+                .map(File::new)
+                .filter(this::isValidScriptEngineJar)
+                .forEach(scriptEngineJars::add);
         }
         buildClassLoader();
     }
 
+    /**
+     * Replies true, if <code>jar</code> provides script engines. Validates
+     * the jar with {@link ScriptEngineJarInfo}, unless it is unchanged since
+     * it was indexed.
+     *
+     * @param jar the jar
+     * @return true, if the jar provides script engines
+     */
+    protected boolean isValidScriptEngineJar(@NotNull File jar) {
+        final var entry = discoveryIndex.lookup(jar);
+        if (entry != null) {
+            return entry.isValid();
+        }
+        final var info = new ScriptEngineJarInfo(jar.getPath());
+        if (!info.getStatusMessage().equals(ScriptEngineJarInfo.OK_MESSAGE)) {
+            discoveryIndex.put(jar, info.getStatusMessage(), List.of());
+            return false;
+        }
+        // the factories are indexed when they are loaded
+        return true;
+    }
+
     protected void buildClassLoader() {
         URL[] urls = scriptEngineJars.stream()
             .map(jar -> {
@@ -144,17 +186,107 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
         }
     }
 
+    /**
+     * Loads the script engine factories provided by a jar which isn't
+     * indexed or which has changed since it was indexed.
+     *
+     * @param jar the jar
+     * @return the factories
+     */
+    protected @NotNull List<ScriptEngineFactory> scanScriptEngineJar(@NotNull File jar) {
+        final var scanned = new ArrayList<ScriptEngineFactory>();
+        final List<String> classNames;
+        try (var jarFile = new JarFile(jar)) {
+            final var entry = jarFile.getEntry(SCRIPT_ENGINE_FACTORY_SERVICE);
+            if (entry == null) {
+                return scanned;
+            }
+            try (var reader = new BufferedReader(new InputStreamReader(
+                    jarFile.getInputStream(entry), StandardCharsets.UTF_8))) {
+                classNames = reader.lines()
+                    .map(line -> line.replaceFirst("#.*", "").trim())
+                    .filter(line -> !line.isEmpty())
+                    .distinct()
+                    .toList();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, tr("failed to scan script engine jar ''{0}''", jar), e);
+            return scanned;
+        }
+        for (final var className : classNames) {
+            try {
+                final var factoryClass = Class.forName(className, true, scriptClassLoader);
+                scanned.add((ScriptEngineFactory) factoryClass.getConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+                logger.log(Level.WARNING, tr("failed to load script engine factory ''{0}'' from jar ''{1}''",
+                    className, jar), e);
+            }
+        }
+        return scanned;
+    }
+
     protected void loadScriptEngineFactories() {
         Objects.requireNonNull(scriptClassLoader);
         factories.clear();
         descriptors.clear();
-        final ScriptEngineManager manager = new ScriptEngineManager(scriptClassLoader);
+        // the factories on the class path of the plugin
+        final ScriptEngineManager manager = new ScriptEngineManager(getClass().getClassLoader());
         factories.addAll(manager.getEngineFactories());
+        final Set<String> factoryClassNames = factories.stream()
+            .map(factory -> factory.getClass().getName())
+            .collect(Collectors.toCollection(HashSet::new));
 
-        factories.sort(Comparator.comparing(ScriptEngineFactory::getEngineName));
+        // the factories in the script engine jars. Unchanged jars aren't
+        // scanned again.
+        for (final var jar : scriptEngineJars) {
+            var entry = discoveryIndex.lookup(jar);
+            final Map<String, ScriptEngineFactory> loaded = new HashMap<>();
+            if (entry == null || !entry.isValid()) {
+                final var scanned = scanScriptEngineJar(jar);
+                scanned.forEach(factory -> loaded.put(factory.getClass().getName(), factory));
+                entry = discoveryIndex.put(jar, ScriptEngineJarInfo.OK_MESSAGE,
+                    scanned.stream().map(ScriptEngineDiscoveryIndex.FactoryInfo::of).toList());
+            }
+            for (final var info : entry.factories()) {
+                if (factoryClassNames.add(info.className())) {
+                    factories.add(new IndexedScriptEngineFactory(info, scriptClassLoader,
+                        loaded.get(info.className())));
+                }
+            }
+        }
+        discoveryIndex.retainJars(scriptEngineJars);
+        discoveryIndex.save(Preferences.main());
+
+        factories.sort(Comparator.comparing(ScriptEngineFactory::getEngineName,
+            Comparator.nullsLast(Comparator.naturalOrder())));
         factories.stream()
             .map(ScriptEngineDescriptor::new)
             .collect(Collectors.toCollection(() -> descriptors));
+        buildLookupTables();
+    }
+
+    private void buildLookupTables() {
+        final var byName = new HashMap<String, ScriptEngineFactory>();
+        final var byEngineId = new HashMap<String, ScriptEngineFactory>();
+        final var byMimeType = new HashMap<String, List<ScriptEngineDescriptor>>();
+        for (int i = 0; i < factories.size(); i++) {
+            final var factory = factories.get(i);
+            final var desc = descriptors.get(i);
+            if (factory.getEngineName() != null) {
+                byName.putIfAbsent(factory.getEngineName(), factory);
+            }
+            final var names = factory.getNames();
+            if (names != null) {
+                names.stream().filter(Objects::nonNull).forEach(name -> byName.putIfAbsent(name, factory));
+            }
+            // the engine id is the first of the names of the factory
+            byEngineId.putIfAbsent(desc.getEngineId(), factory);
+            desc.getContentMimeTypes().forEach(mimeType ->
+                byMimeType.computeIfAbsent(mimeType, k -> new ArrayList<>()).add(desc));
+        }
+        factoriesByName = byName;
+        factoriesByEngineId = byEngineId;
+        descriptorsByMimeType = byMimeType;
     }
 
     /**
@@ -182,14 +314,13 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
         if (jars != null) {
             jars.stream()
                 .filter(Objects::nonNull)
-                .filter(jar -> new ScriptEngineJarInfo(jar.toString())
-                    .getStatusMessage()
-                    .equals(ScriptEngineJarInfo.OK_MESSAGE)
-                )
+                .filter(this::isValidScriptEngineJar)
                 .collect(Collectors.toCollection(() -> scriptEngineJars));
         }
         buildClassLoader();
         loadScriptEngineFactories();
+        // idle engines were created by the factories loaded from the previous jars
+        enginePool.clear();
         fireContentsChanged(this, 0, scriptEngineJars.size());
     }
 
@@ -202,12 +333,8 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
      */
     public @Null ScriptEngine getEngineById(@NotNull final String engineId) {
         Objects.requireNonNull(engineId);
-
-        return getScriptEngineFactories().stream()
-            .filter(f -> new ScriptEngineDescriptor(f).getEngineId().equals(engineId))
-            .findAny()
-            .map(ScriptEngineFactory::getScriptEngine)
-            .orElse(null);
+        final var factory = factoriesByEngineId.get(engineId);
+        return factory == null ? null : factory.getScriptEngine();
     }
 
     /**
@@ -218,7 +345,8 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
      * @see ScriptEngineManager#getEngineByMimeType(String)
      */
     public ScriptEngine getEngineByMimeType(String mimeType) {
-        return getScriptEngineManager().getEngineByMimeType(mimeType);
+        final var candidates = descriptorsByMimeType.getOrDefault(mimeType, List.of());
+        return candidates.isEmpty() ? null : getEngineById(candidates.get(0).getEngineId());
     }
 
     /**
@@ -232,11 +360,32 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
     public ScriptEngineDescriptor getEngineForFile(File scriptFile) {
         if (scriptFile == null) return null;
         final String mimeType = getContentTypeForFile(scriptFile);
-        return getScriptEngineManager().getEngineFactories().stream()
-            .filter(factory -> factory.getMimeTypes().contains(mimeType))
-            .findFirst()
-            .map(ScriptEngineDescriptor::new)
-            .orElse(null);
+        final var candidates = getDescriptorsForMimeType(mimeType);
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /**
+     * Replies the descriptors of the script engines which support scripts
+     * with the mime type <code>mimeType</code>.
+     *
+     * @param mimeType the mime type
+     * @return the descriptors. An unmodifiable list. Empty, if no script engine
+     * supports the mime type.
+     */
+    public @NotNull List<ScriptEngineDescriptor> getDescriptorsForMimeType(@Null String mimeType) {
+        if (mimeType == null) {
+            return List.of();
+        }
+        return Collections.unmodifiableList(descriptorsByMimeType.getOrDefault(mimeType, List.of()));
+    }
+
+    /**
+     * Replies the descriptors of the available script engines.
+     *
+     * @return the descriptors. An unmodifiable list.
+     */
+    public @NotNull List<ScriptEngineDescriptor> getDescriptors() {
+        return Collections.unmodifiableList(descriptors);
     }
 
     /**
@@ -273,11 +422,49 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
         Objects.requireNonNull(desc);
         Assert.assertArg(desc.getEngineType().equals(ScriptEngineType.PLUGGED),
                 "Expected a descriptor for a plugged script engine, got ''{0}''", desc);
-        return factories.stream()
-            .filter(factory -> desc.getLocalEngineId().equals(factory.getNames().get(0)))
-            .findFirst()
-            .map(ScriptEngineFactory::getScriptEngine)
-            .orElse(null);
+        final var factory = factoriesByEngineId.get(desc.getLocalEngineId());
+        return factory == null ? null : factory.getScriptEngine();
+    }
+
+    /**
+     * Borrows a script engine for the descriptor <code>desc</code> from the
+     * pool of idle script engines, or creates a new one, see
+     * {@link #getScriptEngine(ScriptEngineDescriptor)}.
+     * <p>
+     * Release the engine with {@link #releaseScriptEngine(ScriptEngineDescriptor, ScriptEngine)}
+     * after the script run.
+     *
+     * @param desc the descriptor. Must not be null. It's type must be
+     *             {@link ScriptEngineType#PLUGGED}
+     * @return the script engine or null
+     */
+    public ScriptEngine borrowScriptEngine(@NotNull ScriptEngineDescriptor desc) {
+        Objects.requireNonNull(desc);
+        Assert.assertArg(desc.getEngineType().equals(ScriptEngineType.PLUGGED),
+                "Expected a descriptor for a plugged script engine, got ''{0}''", desc);
+        return enginePool.borrow(desc.getLocalEngineId(), () -> getScriptEngine(desc));
+    }
+
+    /**
+     * Releases a script engine borrowed with {@link #borrowScriptEngine(ScriptEngineDescriptor)}
+     * and keeps it for reuse.
+     *
+     * @param desc the descriptor. Must not be null.
+     * @param engine the engine. Must not be null.
+     */
+    public void releaseScriptEngine(@NotNull ScriptEngineDescriptor desc, @NotNull ScriptEngine engine) {
+        Objects.requireNonNull(desc);
+        Objects.requireNonNull(engine);
+        enginePool.release(desc.getLocalEngineId(), engine);
+    }
+
+    /**
+     * Replies the pool of idle script engines.
+     *
+     * @return the pool
+     */
+    public @NotNull ScriptEnginePool getScriptEnginePool() {
+        return enginePool;
     }
 
     /**
@@ -296,15 +483,7 @@ public class JSR223ScriptEngineProvider extends AbstractListModel<ScriptEngineDe
      */
     public ScriptEngineFactory getScriptFactoryByName(@NotNull final String name) {
         Objects.requireNonNull(name);
-
-        final Predicate<ScriptEngineFactory> hasName = (factory) ->
-            (factory.getEngineName().equals(name))
-            || factory.getNames().contains(name);
-
-        return factories.stream()
-            .filter(hasName)
-            .findFirst()
-            .orElse(null);
+        return factoriesByName.get(name);
     }
 
     /**
@@ -0,0 +1,242 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.data.Preferences;
+
+import javax.script.Compilable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Runs Python scripts with reusable Jython interpreters.
+ * <p>
+ * A Jython interpreter, i.e. a JSR223 script engine borrowed from the
+ * {@link ScriptEnginePool}, is initialized once, when it runs its first
+ * script:
+ * <ul>
+ *   <li>the paths configured in {@link PreferenceKeys#PREF_KEY_JYTHON_SYS_PATHS}
+ *   and in the environment variable <tt>JYTHONPATH</tt> are added to
+ *   <tt>sys.path</tt></li>
+ *   <li>the modules configured in {@link PreferenceKeys#PREF_KEY_JYTHON_PRELOAD_MODULES}
+ *   are imported</li>
+ * </ul>
+ * The runtime remembers the <tt>sys.path</tt> of each interpreter, so that the
+ * directory of a script is only added once. Imported modules stay loaded in
+ * <tt>sys.modules</tt>. Between runs, only <tt>__file__</tt> and the global
+ * variables of the script are reset.
+ * <p>
+ * Each interpreter has its own cache of compiled scripts, because a compiled
+ * Jython script is evaluated by the interpreter which compiled it.
+ * <p>
+ * A compiled script refers to its interpreter. The state of an interpreter is
+ * therefore kept until it is explicitly {@link #discard(ScriptEngine) discarded},
+ * i.e. when the {@link ScriptEnginePool} discards the engine.
+ */
+public class JythonRuntime {
+    static private final Logger logger = Logger.getLogger(JythonRuntime.class.getName());
+
+    // the names of the temporary engine scope bindings used to initialize
+    // an interpreter
+    static private final String SYS_PATH_BINDING = "__josm_sys_path__";
+    static private final String MODULE_BINDING = "__josm_module__";
+
+    static private final String ADD_TO_SYS_PATH = String.join("\n",
+        "import sys",
+        "for __josm_path__ in " + SYS_PATH_BINDING + ":",
+        "    if __josm_path__ not in sys.path:",
+        "        sys.path.append(__josm_path__)"
+    );
+
+    static private final JythonRuntime instance = new JythonRuntime();
+
+    /**
+     * Replies the unique instance
+     *
+     * @return the unique instance
+     */
+    static public @NotNull JythonRuntime getInstance() {
+        return instance;
+    }
+
+    /**
+     * The state of an initialized interpreter.
+     */
+    static private class Interpreter {
+        // the paths this runtime added to sys.path
+        final Set<String> sysPath = new LinkedHashSet<>();
+        final JSR223CompiledScriptCache compiledScripts = new JSR223CompiledScriptCache(
+            JSR223CompiledScriptCache.capacityFromPreferences(), null /* no Groovy class cache */);
+    }
+
+    static private List<String> getPreferenceList(@NotNull final String key) {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return List.of();
+        }
+        return prefs.getList(key).stream()
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .toList();
+    }
+
+    // the initialized interpreters. Guarded by the monitor of 'interpreters'.
+    private final Map<ScriptEngine, Interpreter> interpreters = new IdentityHashMap<>();
+
+    JythonRuntime() {
+    }
+
+    /**
+     * Replies the paths added to <tt>sys.path</tt> when an interpreter is
+     * initialized.
+     *
+     * @return the paths
+     */
+    protected @NotNull List<String> getInitialSysPath() {
+        final var paths = new ArrayList<>(getPreferenceList(PreferenceKeys.PREF_KEY_JYTHON_SYS_PATHS));
+        final var jythonPath = System.getenv("JYTHONPATH");
+        if (jythonPath != null) {
+            Arrays.stream(jythonPath.split(File.pathSeparator))
+                .filter(path -> !path.isEmpty())
+                .forEach(paths::add);
+        }
+        return paths;
+    }
+
+    /**
+     * Replies the modules imported when an interpreter is initialized.
+     *
+     * @return the module names
+     */
+    protected @NotNull List<String> getPreloadModules() {
+        return getPreferenceList(PreferenceKeys.PREF_KEY_JYTHON_PRELOAD_MODULES);
+    }
+
+    private void addToSysPath(@NotNull final ScriptEngine engine,
+                              @NotNull final Interpreter interpreter,
+                              @NotNull final List<String> paths) {
+        final var newPaths = paths.stream()
+            .filter(path -> !interpreter.sysPath.contains(path))
+            .distinct()
+            .toList();
+        if (newPaths.isEmpty()) {
+            return;
+        }
+        final var bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        bindings.put(SYS_PATH_BINDING, newPaths);
+        try {
+            engine.eval(ADD_TO_SYS_PATH);
+            interpreter.sysPath.addAll(newPaths);
+        } catch (ScriptException e) {
+            logger.log(Level.WARNING, format("Failed to add {0} to sys.path", newPaths), e);
+        } finally {
+            bindings.remove(SYS_PATH_BINDING);
+        }
+    }
+
+    private @NotNull Interpreter initialize(@NotNull final ScriptEngine engine) {
+        final var interpreter = new Interpreter();
+        addToSysPath(engine, interpreter, getInitialSysPath());
+        final var bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        for (final var module : getPreloadModules()) {
+            bindings.put(MODULE_BINDING, module);
+            try {
+                engine.eval("__import__(" + MODULE_BINDING + ")");
+            } catch (ScriptException e) {
+                logger.log(Level.WARNING, format("Failed to preload Python module ''{0}''", module), e);
+            } finally {
+                bindings.remove(MODULE_BINDING);
+            }
+        }
+        return interpreter;
+    }
+
+    private @NotNull Interpreter getInterpreter(@NotNull final ScriptEngine engine) {
+        synchronized (interpreters) {
+            var interpreter = interpreters.get(engine);
+            if (interpreter == null) {
+                interpreter = initialize(engine);
+                interpreters.put(engine, interpreter);
+            }
+            return interpreter;
+        }
+    }
+
+    /**
+     * Replies true, if the interpreter <code>engine</code> is already
+     * initialized.
+     *
+     * @param engine the Jython engine. Must not be null.
+     * @return true, if the interpreter is initialized
+     */
+    public boolean isInitialized(@NotNull final ScriptEngine engine) {
+        Objects.requireNonNull(engine);
+        synchronized (interpreters) {
+            return interpreters.containsKey(engine);
+        }
+    }
+
+    /**
+     * Discards the state of the interpreter <code>engine</code>, including
+     * its compiled scripts. Invoke it, when the interpreter isn't used
+     * anymore.
+     *
+     * @param engine the Jython engine. Must not be null.
+     * @throws NullPointerException if <code>engine</code> is null
+     */
+    public void discard(@NotNull final ScriptEngine engine) {
+        Objects.requireNonNull(engine);
+        synchronized (interpreters) {
+            interpreters.remove(engine);
+        }
+    }
+
+    /**
+     * Runs the Python script in <code>scriptFile</code> with the Jython
+     * interpreter <code>engine</code>. Initializes the interpreter, if
+     * necessary, and adds the directory of the script to <tt>sys.path</tt>.
+     * <code>__file__</code> is set to the path of the script.
+     *
+     * @param engine the Jython engine. Must not be null.
+     * @param scriptFile the script file. Must not be null.
+     * @return the result of the script
+     * @throws ScriptException if the script fails
+     * @throws IOException if the script file can't be read
+     * @throws NullPointerException if one of the parameters is null
+     */
+    public Object run(@NotNull final ScriptEngine engine, @NotNull final File scriptFile)
+            throws ScriptException, IOException {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(scriptFile);
+        final var interpreter = getInterpreter(engine);
+        final var scriptDir = scriptFile.getAbsoluteFile().getParent();
+        if (scriptDir != null) {
+            addToSysPath(engine, interpreter, List.of(scriptDir));
+        }
+        final var bindings = engine.createBindings();
+        bindings.put("__file__", scriptFile.getPath());
+        if (engine instanceof Compilable compilable) {
+            return interpreter.compiledScripts.compile(compilable, scriptFile).eval(bindings);
+        }
+        try (var reader = new InputStreamReader(new FileInputStream(scriptFile), StandardCharsets.UTF_8)) {
+            return engine.eval(reader, bindings);
+        }
+    }
+}
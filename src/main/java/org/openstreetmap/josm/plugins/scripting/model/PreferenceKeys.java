@@ -16,6 +16,14 @@ public interface PreferenceKeys {
      */
     String PREF_KEY_SCRIPTING_ENGINE_JARS = "scripting.engine-jars";
 
+    /**
+     * The index of the script engine factories provided by the jars in
+     * {@link #PREF_KEY_SCRIPTING_ENGINE_JARS}. Maintained by the plugin.
+     * <p>
+     * Default value: empty
+     */
+    String PREF_KEY_SCRIPTING_ENGINE_JARS_INDEX = "scripting.engine-jars.index";
+
     /**
      * The preferences key for the script file history.
      * <p>
@@ -69,6 +77,108 @@ public interface PreferenceKeys {
      */
     String PREF_KEY_GRAALVM_COMMONJS_MODULE_REPOSITORIES = "scripting.graalvm.commonjs-module-repositories";
 
+    /**
+     * The number of GraalVM contexts which are built in the background and
+     * kept ready for the next context reset. 0, if contexts are always built
+     * on demand.
+     * <p>
+     * Default value: 1
+     */
+    String PREF_KEY_GRAALVM_CONTEXT_POOL_SIZE = "scripting.graalvm.context-pool-size";
+
+    /**
+     * The maximum number of CommonJS modules cached per GraalVM context. If
+     * a context requires more modules, its least recently used module is
+     * evicted and evaluated again when it is required again.
+     * <p>
+     * Default value: 256
+     */
+    String PREF_KEY_GRAALVM_COMMONJS_MODULE_CACHE_SIZE = "scripting.graalvm.commonjs-module-cache-size";
+
+    /**
+     * The maximum total size, in kilobytes, of the ES module content cached
+     * by the ES module resolver. 0, if ES module content isn't cached.
+     * <p>
+     * Default value: 16384
+     */
+    String PREF_KEY_GRAALVM_ES_MODULE_CACHE_SIZE = "scripting.graalvm.es-module-cache-size";
+
+    /**
+     * Whether the cached ES module content is held off-heap.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_GRAALVM_ES_MODULE_CACHE_OFF_HEAP = "scripting.graalvm.es-module-cache-off-heap";
+
+    /**
+     * Whether large CommonJS and ES module files are memory-mapped instead
+     * of being read onto the heap. On Windows, a mapped file can't be saved
+     * until the mapping is garbage collected. On other platforms, a mapped
+     * file which is truncated while it is read makes the read fail.
+     * <p>
+     * Default value: false on Windows, true on other platforms
+     */
+    String PREF_KEY_GRAALVM_MAP_MODULE_FILES = "scripting.graalvm.map-module-files";
+
+    /**
+     * Whether an import map is generated for a file system based ES module
+     * repository without an <code>import-map.json</code>, by scanning the
+     * repository directory.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_GRAALVM_ES_MODULE_IMPORT_MAP_SCAN = "scripting.graalvm.es-module-import-map-scan";
+
+    /**
+     * Whether the CommonJS and ES modules loaded by a script run are
+     * profiled. The profile is displayed in the scripting console.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_GRAALVM_MODULE_LOAD_PROFILER_ENABLED = "scripting.graalvm.module-load-profiler.enabled";
+
+    /**
+     * Whether the GraalVM is warmed up in the background when JOSM starts.
+     * Creates the GraalVM engine and pre-imports the built-in API V3 modules,
+     * so that the first script runs at warm speed.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_GRAALVM_WARM_UP = "scripting.graalvm.warm-up";
+
+    /**
+     * The maximum number of compiled scripts cached for script engines which
+     * compile scripts before they are executed, i.e. Groovy.
+     * <p>
+     * Default value: 256
+     */
+    String PREF_KEY_JSR223_COMPILED_SCRIPT_CACHE_SIZE = "scripting.jsr223.compiled-script-cache-size";
+
+    /**
+     * Whether the classes of compiled Groovy scripts are cached in the plugin
+     * user data directory, so that Groovy scripts aren't compiled again after
+     * JOSM is restarted.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_GROOVY_CLASS_CACHE = "scripting.groovy.class-cache";
+
+    /**
+     * The maximum number of idle script engines kept for reuse, per plugged
+     * script engine, i.e. Groovy or Jython. 0 disables the reuse of script
+     * engines.
+     * <p>
+     * Default value: 2
+     */
+    String PREF_KEY_JSR223_ENGINE_POOL_SIZE = "scripting.jsr223.engine-pool-size";
+
+    /**
+     * The number of seconds after which an idle script engine is discarded.
+     * <p>
+     * Default value: 300
+     */
+    String PREF_KEY_JSR223_ENGINE_POOL_IDLE_TIMEOUT = "scripting.jsr223.engine-pool-idle-timeout";
+
     /**
      * The array of local paths which are added to
      * the <tt>sys.path</tt> of the internal Jython interpreter
@@ -77,6 +187,27 @@ public interface PreferenceKeys {
      */
     String PREF_KEY_JYTHON_SYS_PATHS = "scripting.jython.sys.path";
 
+    /**
+     * The array of Python modules which are imported when a Jython
+     * interpreter is initialized, i.e. modules from <tt>site-packages</tt>
+     * used by most scripts. Reused interpreters keep them loaded.
+     * <p>
+     * Default value: empty
+     */
+    String PREF_KEY_JYTHON_PRELOAD_MODULES = "scripting.jython.preload-modules";
+
+    /**
+     * Whether scripts are run on a background thread instead of the Swing
+     * EDT. Scripts run in the background can be cancelled. While they run,
+     * data sets can only be modified with the commands of
+     * <code>josm/command</code>, which are run on the EDT. Other accesses to
+     * layers or Swing components from a background script aren't
+     * thread-safe.
+     * <p>
+     * Default value: false
+     */
+    String PREF_KEY_RUN_SCRIPTS_IN_BACKGROUND = "scripting.run-scripts-in-background";
+
     /**
      * The policy whether the GraalVM is granted the privilege to create and
      * execute external processes.
@@ -156,4 +287,30 @@ public interface PreferenceKeys {
      * @see org.graalvm.polyglot.Context.Builder#allowHostAccess(HostAccess) 
      */
     String GRAALVM_HOST_ACCESS_POLICY = "scripting.graalvm.host-access-policy";
+
+    /**
+     * The maximum time in seconds a single script execution in the GraalVM
+     * may take. A script exceeding it is cancelled.
+     * <p>
+     * Default value: 0 (no time limit)
+     */
+    String GRAALVM_EXECUTION_TIMEOUT = "scripting.graalvm.execution-timeout";
+
+    /**
+     * The maximum number of statements a single script execution in the
+     * GraalVM may execute. A script exceeding it is cancelled.
+     * <p>
+     * Default value: 0 (no statement limit)
+     *
+     * @see org.graalvm.polyglot.ResourceLimits.Builder#statementLimit(long, java.util.function.Predicate)
+     */
+    String GRAALVM_STATEMENT_LIMIT = "scripting.graalvm.statement-limit";
+
+    /**
+     * Whether a script running in the GraalVM is cancelled when the Java
+     * heap is almost exhausted.
+     * <p>
+     * Default value: false
+     */
+    String GRAALVM_CANCEL_ON_MEMORY_PRESSURE = "scripting.graalvm.cancel-on-memory-pressure";
 }
@@ -0,0 +1,306 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.preferences.ScriptEngineJarInfo;
+
+import javax.script.ScriptEngineFactory;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * An index of the script engine factories provided by script engine jars,
+ * persisted in the preferences, see
+ * {@link PreferenceKeys#PREF_KEY_SCRIPTING_ENGINE_JARS_INDEX}.
+ * <p>
+ * An indexed jar is keyed by its path, its size and its modification time.
+ * As long as a jar doesn't change, it isn't validated and scanned for script
+ * engine factories again. The meta-data of the factories is available without
+ * loading the factories from the jar.
+ */
+public class ScriptEngineDiscoveryIndex {
+    static private final Logger logger = Logger.getLogger(ScriptEngineDiscoveryIndex.class.getName());
+
+    // the keys in the preference maps. There is one map per factory, or one
+    // map without a factory class, if a jar doesn't provide a factory.
+    static private final String KEY_JAR = "jar";
+    static private final String KEY_SIZE = "size";
+    static private final String KEY_LAST_MODIFIED = "lastModified";
+    static private final String KEY_STATUS = "status";
+    static private final String KEY_FACTORY_CLASS = "factoryClass";
+    static private final String KEY_ENGINE_NAME = "engineName";
+    static private final String KEY_ENGINE_VERSION = "engineVersion";
+    static private final String KEY_LANGUAGE_NAME = "languageName";
+    static private final String KEY_LANGUAGE_VERSION = "languageVersion";
+    static private final String KEY_NAMES = "names";
+    static private final String KEY_MIME_TYPES = "mimeTypes";
+    static private final String KEY_EXTENSIONS = "extensions";
+
+    // separates the values of list valued keys
+    static private final String LIST_SEPARATOR = ",";
+
+    /**
+     * The meta-data of a script engine factory.
+     *
+     * @param className the name of the factory class
+     * @param engineName the engine name
+     * @param engineVersion the engine version
+     * @param languageName the language name
+     * @param languageVersion the language version
+     * @param names the short names of the engine
+     * @param mimeTypes the mime types of the scripts the engine supports
+     * @param extensions the file extensions of the scripts the engine supports
+     */
+    public record FactoryInfo(
+            @NotNull String className,
+            @Null String engineName,
+            @Null String engineVersion,
+            @Null String languageName,
+            @Null String languageVersion,
+            @NotNull List<String> names,
+            @NotNull List<String> mimeTypes,
+            @NotNull List<String> extensions) {
+
+        public FactoryInfo {
+            Objects.requireNonNull(className);
+            names = List.copyOf(names);
+            mimeTypes = List.copyOf(mimeTypes);
+            extensions = List.copyOf(extensions);
+        }
+
+        /**
+         * Replies the meta-data of a factory.
+         *
+         * @param factory the factory. Must not be null.
+         * @return the meta-data
+         */
+        static public @NotNull FactoryInfo of(@NotNull final ScriptEngineFactory factory) {
+            Objects.requireNonNull(factory);
+            return new FactoryInfo(
+                factory.getClass().getName(),
+                factory.getEngineName(),
+                factory.getEngineVersion(),
+                factory.getLanguageName(),
+                factory.getLanguageVersion(),
+                nonNull(factory.getNames()),
+                nonNull(factory.getMimeTypes()),
+                nonNull(factory.getExtensions())
+            );
+        }
+
+        static private List<String> nonNull(@Null final List<String> values) {
+            return values == null ? List.of() : values.stream().filter(Objects::nonNull).toList();
+        }
+    }
+
+    /**
+     * An indexed jar.
+     *
+     * @param path the path of the jar
+     * @param size the size of the jar when it was indexed
+     * @param lastModified the modification time of the jar when it was indexed
+     * @param status {@link ScriptEngineJarInfo#OK_MESSAGE},
+     *   if the jar provides script engines, or a message describing why it doesn't
+     * @param factories the factories provided by the jar
+     */
+    public record JarEntry(@NotNull String path, long size, long lastModified, @NotNull String status,
+                           @NotNull List<FactoryInfo> factories) {
+        public JarEntry {
+            Objects.requireNonNull(path);
+            Objects.requireNonNull(status);
+            factories = List.copyOf(factories);
+        }
+
+        /**
+         * Replies true, if the jar provides script engines.
+         *
+         * @return true, if the jar provides script engines
+         */
+        public boolean isValid() {
+            return ScriptEngineJarInfo.OK_MESSAGE.equals(status);
+        }
+
+        boolean isUpToDate(@NotNull final File jar) {
+            return jar.isFile() && jar.length() == size && jar.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Loads the index from the preferences.
+     *
+     * @param preferences the preferences. An empty index is replied, if null.
+     * @return the index
+     */
+    static public @NotNull ScriptEngineDiscoveryIndex load(@Null final Preferences preferences) {
+        final var index = new ScriptEngineDiscoveryIndex();
+        if (preferences != null) {
+            index.fromMaps(preferences.getListOfMaps(PreferenceKeys.PREF_KEY_SCRIPTING_ENGINE_JARS_INDEX));
+        }
+        return index;
+    }
+
+    // the indexed jars, keyed by path
+    private final Map<String, JarEntry> entries = new LinkedHashMap<>();
+    private boolean modified = false;
+
+    /**
+     * Replies the up-to-date index entry for <code>jar</code>, or null, if the jar
+     * isn't indexed or if it has changed since it was indexed.
+     *
+     * @param jar the jar. Must not be null.
+     * @return the index entry, or null
+     */
+    public synchronized @Null JarEntry lookup(@NotNull final File jar) {
+        Objects.requireNonNull(jar);
+        final var entry = entries.get(jar.getPath());
+        return entry != null && entry.isUpToDate(jar) ? entry : null;
+    }
+
+    /**
+     * Indexes a jar.
+     *
+     * @param jar the jar. Must not be null.
+     * @param status the validation status of the jar. Must not be null.
+     * @param factories the meta-data of the factories provided by the jar. Must not be null.
+     * @return the index entry
+     */
+    public synchronized @NotNull JarEntry put(@NotNull final File jar, @NotNull final String status,
+                                              @NotNull final List<FactoryInfo> factories) {
+        Objects.requireNonNull(jar);
+        final var entry = new JarEntry(jar.getPath(), jar.length(), jar.lastModified(), status, factories);
+        if (!entry.equals(entries.put(entry.path(), entry))) {
+            modified = true;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the entries for the jars which aren't in <code>jars</code>.
+     *
+     * @param jars the jars to keep. Must not be null.
+     */
+    public synchronized void retainJars(@NotNull final Collection<File> jars) {
+        Objects.requireNonNull(jars);
+        final Set<String> paths = jars.stream().map(File::getPath).collect(Collectors.toSet());
+        if (entries.keySet().retainAll(paths)) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Saves the index to the preferences, if it was modified since it was
+     * loaded or saved.
+     *
+     * @param preferences the preferences. Ignored, if null.
+     */
+    public synchronized void save(@Null final Preferences preferences) {
+        if (preferences == null || !modified) {
+            return;
+        }
+        preferences.putListOfMaps(PreferenceKeys.PREF_KEY_SCRIPTING_ENGINE_JARS_INDEX, toMaps());
+        modified = false;
+    }
+
+    static private String joinList(final List<String> values) {
+        return String.join(LIST_SEPARATOR, values);
+    }
+
+    static private List<String> splitList(@Null final String value) {
+        if (value == null || value.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.asList(value.split(LIST_SEPARATOR));
+    }
+
+    static private void putIfNotNull(final Map<String, String> map, final String key, @Null final String value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    synchronized @NotNull List<Map<String, String>> toMaps() {
+        final var maps = new ArrayList<Map<String, String>>();
+        for (final var entry : entries.values()) {
+            final var jarMap = new HashMap<String, String>();
+            jarMap.put(KEY_JAR, entry.path());
+            jarMap.put(KEY_SIZE, Long.toString(entry.size()));
+            jarMap.put(KEY_LAST_MODIFIED, Long.toString(entry.lastModified()));
+            jarMap.put(KEY_STATUS, entry.status());
+            if (entry.factories().isEmpty()) {
+                maps.add(jarMap);
+            }
+            for (final var factory : entry.factories()) {
+                final var map = new HashMap<>(jarMap);
+                map.put(KEY_FACTORY_CLASS, factory.className());
+                putIfNotNull(map, KEY_ENGINE_NAME, factory.engineName());
+                putIfNotNull(map, KEY_ENGINE_VERSION, factory.engineVersion());
+                putIfNotNull(map, KEY_LANGUAGE_NAME, factory.languageName());
+                putIfNotNull(map, KEY_LANGUAGE_VERSION, factory.languageVersion());
+                map.put(KEY_NAMES, joinList(factory.names()));
+                map.put(KEY_MIME_TYPES, joinList(factory.mimeTypes()));
+                map.put(KEY_EXTENSIONS, joinList(factory.extensions()));
+                maps.add(map);
+            }
+        }
+        return maps;
+    }
+
+    synchronized void fromMaps(@Null final List<Map<String, String>> maps) {
+        entries.clear();
+        modified = false;
+        if (maps == null) {
+            return;
+        }
+        final var factoriesByPath = new LinkedHashMap<String, List<FactoryInfo>>();
+        final var jarMaps = new HashMap<String, Map<String, String>>();
+        for (final var map : maps) {
+            final var path = map.get(KEY_JAR);
+            if (path == null || map.get(KEY_STATUS) == null) {
+                logger.warning(format("Ignoring malformed script engine index entry {0}", map));
+                continue;
+            }
+            jarMaps.putIfAbsent(path, map);
+            final var factories = factoriesByPath.computeIfAbsent(path, p -> new ArrayList<>());
+            final var className = map.get(KEY_FACTORY_CLASS);
+            if (className != null) {
+                factories.add(new FactoryInfo(
+                    className,
+                    map.get(KEY_ENGINE_NAME),
+                    map.get(KEY_ENGINE_VERSION),
+                    map.get(KEY_LANGUAGE_NAME),
+                    map.get(KEY_LANGUAGE_VERSION),
+                    splitList(map.get(KEY_NAMES)),
+                    splitList(map.get(KEY_MIME_TYPES)),
+                    splitList(map.get(KEY_EXTENSIONS))
+                ));
+            }
+        }
+        for (final var e : factoriesByPath.entrySet()) {
+            final var jarMap = jarMaps.get(e.getKey());
+            try {
+                entries.put(e.getKey(), new JarEntry(
+                    e.getKey(),
+                    Long.parseLong(jarMap.get(KEY_SIZE)),
+                    Long.parseLong(jarMap.get(KEY_LAST_MODIFIED)),
+                    jarMap.get(KEY_STATUS),
+                    e.getValue()
+                ));
+            } catch (NumberFormatException ex) {
+                logger.warning(format("Ignoring malformed script engine index entry {0}", jarMap));
+            }
+        }
+    }
+}
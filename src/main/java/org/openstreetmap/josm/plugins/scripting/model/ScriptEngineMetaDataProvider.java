@@ -19,9 +19,8 @@ public class ScriptEngineMetaDataProvider {
     static public @NotNull
         Stream<ScriptEngineDescriptor> getAvailablePluggedScriptEngines() {
         return JSR223ScriptEngineProvider
-            .getInstance().getScriptEngineFactories()
-            .stream()
-            .map(ScriptEngineDescriptor::new);
+            .getInstance().getDescriptors()
+            .stream();
     }
 
     /**
@@ -0,0 +1,348 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.data.Preferences;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps idle JSR223 script engines for reuse, so that a plugged script engine,
+ * i.e. Jython, isn't created again for every script run.
+ * <p>
+ * Engines are pooled per script engine factory. A borrowed engine is
+ * {@link #release(String, ScriptEngine) released} after the script run. Its
+ * engine scope bindings are replaced by empty bindings, so that the next run
+ * doesn't see the global variables of the previous run. At most
+ * {@link #getMaxIdlePerEngine()} idle engines are kept per factory. Engines
+ * which are idle for longer than the idle timeout are discarded.
+ * <p>
+ * {@link #clear() Clearing} the pool starts a new generation of engines. An
+ * engine borrowed before the pool was cleared is discarded when it is
+ * released, because it may have been created with a script engine factory
+ * which isn't available anymore.
+ * <p>
+ * Whenever the pool discards an engine, it notifies the
+ * {@link #addDiscardListener(Consumer) discard listeners}, so that state kept
+ * for the engine elsewhere can be released.
+ * <p>
+ * The pool is thread-safe. Engines are created and reset and discard
+ * listeners are notified outside of the lock of the pool.
+ */
+public class ScriptEnginePool {
+    static private final Logger logger = Logger.getLogger(ScriptEnginePool.class.getName());
+
+    /**
+     * The default maximum number of idle engines per script engine factory.
+     */
+    static public final int DEFAULT_MAX_IDLE_PER_ENGINE = 2;
+
+    /**
+     * The default idle timeout, in seconds.
+     */
+    static public final int DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+
+    /**
+     * A snapshot of the pool metrics.
+     *
+     * @param created the number of engines created, because no idle engine was available
+     * @param reused the number of borrowed idle engines
+     * @param evicted the number of idle engines discarded after the idle timeout
+     * @param idle the current number of idle engines
+     */
+    public record Statistics(long created, long reused, long evicted, int idle) {
+        @Override
+        public String toString() {
+            return format("created={0}, reused={1}, evicted={2}, idle={3}", created, reused, evicted, idle);
+        }
+    }
+
+    private record IdleEngine(@NotNull ScriptEngine engine, long idleSinceMillis) {}
+
+    /**
+     * Creates a pool configured in the preferences, see
+     * {@link PreferenceKeys#PREF_KEY_JSR223_ENGINE_POOL_SIZE} and
+     * {@link PreferenceKeys#PREF_KEY_JSR223_ENGINE_POOL_IDLE_TIMEOUT}.
+     *
+     * @return the pool
+     */
+    static public @NotNull ScriptEnginePool fromPreferences() {
+        final var prefs = Preferences.main();
+        if (prefs == null) {
+            return new ScriptEnginePool(DEFAULT_MAX_IDLE_PER_ENGINE,
+                TimeUnit.SECONDS.toMillis(DEFAULT_IDLE_TIMEOUT_SECONDS));
+        }
+        final int maxIdle = prefs.getInt(PreferenceKeys.PREF_KEY_JSR223_ENGINE_POOL_SIZE,
+            DEFAULT_MAX_IDLE_PER_ENGINE);
+        final int idleTimeout = prefs.getInt(PreferenceKeys.PREF_KEY_JSR223_ENGINE_POOL_IDLE_TIMEOUT,
+            DEFAULT_IDLE_TIMEOUT_SECONDS);
+        return new ScriptEnginePool(Math.max(0, maxIdle), TimeUnit.SECONDS.toMillis(Math.max(1, idleTimeout)));
+    }
+
+    private final int maxIdlePerEngine;
+    private final long idleTimeoutMillis;
+    private final LongSupplier clock;
+    // the idle engines per factory, the most recently released engine first.
+    // Guarded by the monitor of the pool.
+    private final Map<String, Deque<IdleEngine>> idleEngines = new HashMap<>();
+    private long created = 0;
+    private long reused = 0;
+    private long evicted = 0;
+    // incremented whenever the pool is cleared
+    private long generation = 0;
+    // the generation in which the borrowed engines were borrowed. Guarded by
+    // the monitor of the pool.
+    private final Map<ScriptEngine, Long> borrowedEngines = new IdentityHashMap<>();
+    // discards idle engines after the idle timeout. Created on demand.
+    // Guarded by the monitor of the pool.
+    private ScheduledExecutorService evictionScheduler = null;
+    private ScheduledFuture<?> pendingEviction = null;
+    private final List<Consumer<ScriptEngine>> discardListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxIdlePerEngine the maximum number of idle engines per script
+     *   engine factory. 0 disables the reuse of engines.
+     * @param idleTimeoutMillis the time after which an idle engine is discarded,
+     *   in milliseconds. Must be positive.
+     * @throws IllegalArgumentException if one of the parameters is out of range
+     */
+    public ScriptEnginePool(final int maxIdlePerEngine, final long idleTimeoutMillis) {
+        this(maxIdlePerEngine, idleTimeoutMillis, System::currentTimeMillis);
+    }
+
+    ScriptEnginePool(final int maxIdlePerEngine, final long idleTimeoutMillis,
+                     @NotNull final LongSupplier clock) {
+        if (maxIdlePerEngine < 0) {
+            throw new IllegalArgumentException(format(
+                "maxIdlePerEngine must not be negative, got {0}", maxIdlePerEngine));
+        }
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(format(
+                "idleTimeoutMillis must be positive, got {0}", idleTimeoutMillis));
+        }
+        Objects.requireNonNull(clock);
+        this.maxIdlePerEngine = maxIdlePerEngine;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Replies the maximum number of idle engines per script engine factory.
+     *
+     * @return the maximum number of idle engines
+     */
+    public int getMaxIdlePerEngine() {
+        return maxIdlePerEngine;
+    }
+
+    /**
+     * Borrows an idle engine for the factory <code>key</code>, or creates a
+     * new engine with <code>factory</code>, if no idle engine is available.
+     *
+     * @param key the key of the script engine factory. Must not be null.
+     * @param factory creates a new engine. Must not be null. May supply null.
+     * @return the engine, or null, if <code>factory</code> supplies null
+     * @throws NullPointerException if one of the parameters is null
+     */
+    public @Null ScriptEngine borrow(@NotNull final String key,
+                                     @NotNull final Supplier<ScriptEngine> factory) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(factory);
+        final List<ScriptEngine> discarded;
+        final long borrowedIn;
+        ScriptEngine idle = null;
+        synchronized (this) {
+            discarded = evictIdle(clock.getAsLong());
+            borrowedIn = generation;
+            final var engines = idleEngines.get(key);
+            if (engines != null && !engines.isEmpty()) {
+                reused++;
+                idle = engines.pop().engine();
+                borrowedEngines.put(idle, borrowedIn);
+            }
+        }
+        fireDiscarded(discarded);
+        if (idle != null) {
+            return idle;
+        }
+        final var engine = factory.get();
+        if (engine != null) {
+            synchronized (this) {
+                created++;
+                // if the pool was cleared while the engine was created, the
+                // engine is discarded when it is released
+                borrowedEngines.put(engine, borrowedIn);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Releases an engine after a script run. Keeps the engine for reuse, unless
+     * there are already enough idle engines for the factory <code>key</code>
+     * or the pool was {@link #clear() cleared} since the engine was borrowed.
+     *
+     * @param key the key of the script engine factory. Must not be null.
+     * @param engine the engine. Must not be null.
+     * @throws NullPointerException if one of the parameters is null
+     */
+    public void release(@NotNull final String key, @NotNull final ScriptEngine engine) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(engine);
+        final boolean stale;
+        synchronized (this) {
+            final Long borrowedIn = borrowedEngines.remove(engine);
+            stale = borrowedIn != null && borrowedIn != generation;
+        }
+        if (maxIdlePerEngine == 0 || stale) {
+            fireDiscarded(List.of(engine));
+            return;
+        }
+        try {
+            engine.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, format(
+                "Failed to reset the bindings of a script engine for ''{0}''. Discarding the engine.", key), e);
+            fireDiscarded(List.of(engine));
+            return;
+        }
+        final List<ScriptEngine> discarded;
+        synchronized (this) {
+            final long now = clock.getAsLong();
+            discarded = evictIdle(now);
+            final var engines = idleEngines.computeIfAbsent(key, k -> new ArrayDeque<>());
+            if (engines.size() >= maxIdlePerEngine) {
+                discarded.add(engine);
+            } else {
+                engines.push(new IdleEngine(engine, now));
+                scheduleEviction();
+            }
+        }
+        fireDiscarded(discarded);
+    }
+
+    /**
+     * Discards the idle engines whose idle timeout has expired.
+     */
+    public void evictIdle() {
+        final List<ScriptEngine> discarded;
+        synchronized (this) {
+            discarded = evictIdle(clock.getAsLong());
+        }
+        fireDiscarded(discarded);
+    }
+
+    // Guarded by the monitor of the pool. Replies the evicted engines.
+    private List<ScriptEngine> evictIdle(final long now) {
+        final List<ScriptEngine> discarded = new ArrayList<>();
+        for (final var it = idleEngines.values().iterator(); it.hasNext(); ) {
+            final var engines = it.next();
+            // the least recently released engines are at the tail of the deque
+            while (!engines.isEmpty() && now - engines.peekLast().idleSinceMillis() >= idleTimeoutMillis) {
+                discarded.add(engines.removeLast().engine());
+                evicted++;
+            }
+            if (engines.isEmpty()) {
+                it.remove();
+            }
+        }
+        return discarded;
+    }
+
+    private void fireDiscarded(@NotNull final List<ScriptEngine> engines) {
+        for (final var engine : engines) {
+            for (final var listener : discardListeners) {
+                try {
+                    listener.accept(engine);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Discard listener of the script engine pool failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a listener which is notified whenever the pool discards an
+     * engine, either a released engine which isn't kept for reuse or an
+     * idle engine.
+     *
+     * @param listener the listener. Must not be null.
+     * @throws NullPointerException if <code>listener</code> is null
+     */
+    public void addDiscardListener(@NotNull final Consumer<ScriptEngine> listener) {
+        Objects.requireNonNull(listener);
+        discardListeners.add(listener);
+    }
+
+    private void scheduleEviction() {
+        if (pendingEviction != null && !pendingEviction.isDone()) {
+            return;
+        }
+        if (evictionScheduler == null) {
+            evictionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "josm-scripting-engine-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        pendingEviction = evictionScheduler.schedule(() -> {
+            final List<ScriptEngine> discarded;
+            synchronized (this) {
+                pendingEviction = null;
+                discarded = evictIdle(clock.getAsLong());
+                if (!idleEngines.isEmpty()) {
+                    scheduleEviction();
+                }
+            }
+            fireDiscarded(discarded);
+        }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Discards all idle engines, i.e. because the available script engine
+     * factories have changed. Engines which are currently borrowed are
+     * discarded when they are released.
+     */
+    public void clear() {
+        final List<ScriptEngine> discarded = new ArrayList<>();
+        synchronized (this) {
+            generation++;
+            idleEngines.values().forEach(engines -> engines.forEach(idle -> discarded.add(idle.engine())));
+            idleEngines.clear();
+        }
+        fireDiscarded(discarded);
+    }
+
+    /**
+     * Replies a snapshot of the pool metrics.
+     *
+     * @return the metrics
+     */
+    public synchronized @NotNull Statistics getStatistics() {
+        final int idle = idleEngines.values().stream().mapToInt(Deque::size).sum();
+        return new Statistics(created, reused, evicted, idle);
+    }
+}
@@ -0,0 +1,62 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import javax.validation.constraints.NotNull;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Execution metrics of a single script run.
+ *
+ * @param scriptName the name of the script, i.e. the path of the script file
+ * @param wallTimeNanos the elapsed time, in nanoseconds
+ * @param cpuTimeNanos the CPU time consumed by the thread running the script,
+ *     in nanoseconds. -1, if the JVM doesn't measure thread CPU time.
+ * @param allocatedBytes the bytes allocated by the thread running the script.
+ *     -1, if the JVM doesn't measure thread allocations.
+ * @param moduleLoadTimeNanos the time spent resolving and loading ES modules
+ *     and CommonJS modules, in nanoseconds
+ * @param primitivesTouched the number of distinct OSM primitives added, changed,
+ *     or removed in a data layer while the script was running
+ * @param failed true, if the script failed or was cancelled
+ */
+public record ScriptRunMetrics(
+        @NotNull String scriptName,
+        long wallTimeNanos,
+        long cpuTimeNanos,
+        long allocatedBytes,
+        long moduleLoadTimeNanos,
+        int primitivesTouched,
+        boolean failed) {
+
+    static private double toMillis(final long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    public double wallTimeMillis() {
+        return toMillis(wallTimeNanos);
+    }
+
+    /**
+     * Replies the CPU time in milliseconds.
+     *
+     * @return the CPU time. -1, if the JVM doesn't measure thread CPU time.
+     */
+    public double cpuTimeMillis() {
+        return cpuTimeNanos < 0 ? -1 : toMillis(cpuTimeNanos);
+    }
+
+    public double moduleLoadTimeMillis() {
+        return toMillis(moduleLoadTimeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return format(
+            "script={0}, wall time={1,number,0.0}ms, cpu time={2,number,0.0}ms, "
+            + "allocated={3,number,0}KB, module load time={4,number,0.0}ms, "
+            + "primitives touched={5}, failed={6}",
+            scriptName, wallTimeMillis(), cpuTimeMillis(),
+            allocatedBytes < 0 ? -1 : allocatedBytes / 1024,
+            moduleLoadTimeMillis(), primitivesTouched, failed);
+    }
+}
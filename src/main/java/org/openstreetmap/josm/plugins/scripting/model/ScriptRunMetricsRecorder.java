@@ -0,0 +1,263 @@
+package org.openstreetmap.josm.plugins.scripting.model;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+import javax.swing.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Records {@link ScriptRunMetrics} for script runs.
+ * <p>
+ * A script run is recorded from {@link #start(String)} until the replied
+ * {@link Recording} is closed. CPU time and allocated bytes are measured for
+ * the thread running the script, so a recording must be started and closed on
+ * this thread.
+ * <p>
+ * Listeners are notified on the Swing EDT about the metrics of completed runs,
+ * see {@link #PROP_LAST_METRICS}.
+ */
+public class ScriptRunMetricsRecorder {
+    static private final Logger logger = Logger.getLogger(ScriptRunMetricsRecorder.class.getName());
+
+    /**
+     * The name of the property holding the metrics of the most recently
+     * completed script run.
+     */
+    static public final String PROP_LAST_METRICS = ScriptRunMetricsRecorder.class.getName() + ".lastMetrics";
+
+    static private final ThreadLocal<Recording> current = new ThreadLocal<>();
+    static private final PropertyChangeSupport support = new PropertyChangeSupport(ScriptRunMetricsRecorder.class);
+    static private volatile ScriptRunMetrics lastMetrics = null;
+
+    private ScriptRunMetricsRecorder() {
+    }
+
+    static private @Null com.sun.management.ThreadMXBean allocationMXBean(final ThreadMXBean bean) {
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean
+                && sunBean.isThreadAllocatedMemorySupported()
+                && sunBean.isThreadAllocatedMemoryEnabled()) {
+            return sunBean;
+        }
+        return null;
+    }
+
+    /**
+     * The recording of a running script.
+     */
+    static public class Recording implements AutoCloseable {
+        private final String scriptName;
+        private final Thread thread = Thread.currentThread();
+        private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        private final long startWallTime;
+        private final long startCpuTime;
+        private final long startAllocatedBytes;
+        private long moduleLoadTimeNanos = 0;
+        private boolean failed = false;
+        private boolean closed = false;
+
+        private final Set<OsmPrimitive> touched =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        private final DataSetListenerAdapter dataSetListener = new DataSetListenerAdapter(this::processDatasetEvent);
+        private final List<DataSet> observedDataSets;
+
+        private Recording(@NotNull final String scriptName) {
+            this.scriptName = scriptName;
+            this.observedDataSets = lookupDataSets();
+            observedDataSets.forEach(ds -> ds.addDataSetListener(dataSetListener));
+            startCpuTime = threadBean.isCurrentThreadCpuTimeSupported()
+                ? threadBean.getCurrentThreadCpuTime() : -1;
+            final var allocationBean = allocationMXBean(threadBean);
+            startAllocatedBytes = allocationBean != null
+                ? allocationBean.getCurrentThreadAllocatedBytes() : -1;
+            startWallTime = System.nanoTime();
+        }
+
+        static private List<DataSet> lookupDataSets() {
+            final var layerManager = MainApplication.getLayerManager();
+            if (layerManager == null) {
+                return List.of();
+            }
+            return layerManager.getLayersOfType(OsmDataLayer.class).stream()
+                .map(OsmDataLayer::getDataSet)
+                .filter(Objects::nonNull)
+                .toList();
+        }
+
+        private void processDatasetEvent(final AbstractDatasetChangedEvent event) {
+            // the events of a batched update, i.e. of a command, are fired
+            // as one DataChangedEvent whose primitives are all primitives of
+            // the dataset. Count the primitives of the wrapped events instead.
+            if (event instanceof DataChangedEvent dataChangedEvent
+                    && dataChangedEvent.getEvents() != null) {
+                dataChangedEvent.getEvents().forEach(this::processDatasetEvent);
+                return;
+            }
+            final var primitives = event.getPrimitives();
+            if (primitives != null) {
+                touched.addAll(primitives);
+            }
+        }
+
+        /**
+         * Marks the script run as failed.
+         */
+        public void setFailed() {
+            this.failed = true;
+        }
+
+        /**
+         * Replies the metrics recorded so far.
+         *
+         * @return the metrics
+         */
+        public @NotNull ScriptRunMetrics snapshot() {
+            final long wallTime = System.nanoTime() - startWallTime;
+            long cpuTime = -1;
+            if (startCpuTime >= 0 && Thread.currentThread() == thread) {
+                cpuTime = threadBean.getCurrentThreadCpuTime() - startCpuTime;
+            }
+            long allocatedBytes = -1;
+            final var allocationBean = allocationMXBean(threadBean);
+            if (startAllocatedBytes >= 0 && allocationBean != null && Thread.currentThread() == thread) {
+                allocatedBytes = allocationBean.getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+            }
+            return new ScriptRunMetrics(scriptName, wallTime, cpuTime, allocatedBytes,
+                moduleLoadTimeNanos, touched.size(), failed);
+        }
+
+        /**
+         * Completes the recording and publishes the metrics.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            final var metrics = snapshot();
+            observedDataSets.forEach(ds -> ds.removeDataSetListener(dataSetListener));
+            if (current.get() == this) {
+                current.remove();
+            }
+            publish(metrics);
+        }
+    }
+
+    static private void publish(@NotNull final ScriptRunMetrics metrics) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, format("script run metrics: {0}", metrics));
+        }
+        final var oldMetrics = lastMetrics;
+        lastMetrics = metrics;
+        SwingUtilities.invokeLater(() ->
+            support.firePropertyChange(PROP_LAST_METRICS, oldMetrics, metrics)
+        );
+    }
+
+    /**
+     * Starts recording a script run on the current thread.
+     *
+     * @param scriptName the name of the script. Must not be null.
+     * @return the recording. Close it when the script run is completed.
+     * @throws NullPointerException if <code>scriptName</code> is null
+     */
+    static public @NotNull Recording start(@NotNull final String scriptName) {
+        Objects.requireNonNull(scriptName);
+        final var recording = new Recording(scriptName);
+        current.set(recording);
+        return recording;
+    }
+
+    /**
+     * Adds time spent loading modules to the script run recorded on the
+     * current thread. Ignored, if no script run is recorded on the current
+     * thread.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    static public void addModuleLoadTime(final long nanos) {
+        final var recording = current.get();
+        if (recording != null) {
+            recording.moduleLoadTimeNanos += nanos;
+        }
+    }
+
+    /**
+     * Marks the script run recorded on the current thread as failed. Ignored,
+     * if no script run is recorded on the current thread.
+     */
+    static public void markFailed() {
+        final var recording = current.get();
+        if (recording != null) {
+            recording.setFailed();
+        }
+    }
+
+    /**
+     * Replies the metrics of the script run recorded on the current thread
+     * so far or, if no script run is recorded on the current thread, the
+     * metrics of the most recently completed script run.
+     *
+     * @return the metrics. Null, if no script was run yet.
+     */
+    static public @Null ScriptRunMetrics getMetrics() {
+        final var recording = current.get();
+        if (recording != null) {
+            return recording.snapshot();
+        }
+        return lastMetrics;
+    }
+
+    /**
+     * Replies the metrics of the most recently completed script run.
+     *
+     * @return the metrics. Null, if no script was run yet.
+     */
+    static public @Null ScriptRunMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    /**
+     * Adds a listener for changes of the property {@link #PROP_LAST_METRICS}.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    static public void addPropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.addPropertyChangeListener(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    static public void removePropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.removePropertyChangeListener(listener);
+    }
+}
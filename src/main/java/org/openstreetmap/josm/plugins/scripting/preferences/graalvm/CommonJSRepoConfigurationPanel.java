@@ -1,6 +1,5 @@
 package org.openstreetmap.josm.plugins.scripting.preferences.graalvm;
 
-import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleRepositoryRegistry;
 import org.openstreetmap.josm.plugins.scripting.ui.EditorPaneBuilder;
 
@@ -37,9 +36,9 @@ public class CommonJSRepoConfigurationPanel extends AbstractRepoConfigurationPan
     }
 
     public void persistToPreferences() {
-        // will also persist the configured CommonJS module base URIs to
-        // preferences
+        // the registry saves the configured CommonJS module base URIs with
+        // a delay. Save them now, before JOSM writes the preferences.
         mdlRepositories.saveRepositories(CommonJSModuleRepositoryRegistry.getInstance());
-        CommonJSModuleRepositoryRegistry.getInstance().saveToPreferences(Preferences.main());
+        CommonJSModuleRepositoryRegistry.getInstance().flushPendingSave();
     }
 }
@@ -16,7 +16,8 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 /**
  * The preferences configuration panel for the GraalVM. Supports interactive
- * configuration of a list of CommonJS module repositories.
+ * configuration of a list of CommonJS module repositories and of the
+ * resource limits for script executions.
  */
 public class GraalVMConfigurationPanel extends JPanel implements HyperlinkListener {
     @SuppressWarnings("unused")
@@ -25,6 +26,7 @@ public class GraalVMConfigurationPanel extends JPanel implements HyperlinkListen
 
     private CommonJSRepoConfigurationPanel pnlCommonJSRepoConfiguration;
     private ESModuleRepoConfigurationPanel pnlESModuleRepoConfiguration;
+    private ResourceLimitsConfigurationPanel pnlResourceLimitsConfiguration;
 
     static private final String MESSAGE_01 = tr(
           "The scripting plugin can run JavaScript scripts using "
@@ -69,6 +71,8 @@ public class GraalVMConfigurationPanel extends JPanel implements HyperlinkListen
                 pnlESModuleRepoConfiguration = new ESModuleRepoConfigurationPanel());
             tpPreferencesTabs.add(tr("CommonJS module repositories"),
                 pnlCommonJSRepoConfiguration = new CommonJSRepoConfigurationPanel());
+            tpPreferencesTabs.add(tr("Resource limits"),
+                pnlResourceLimitsConfiguration = new ResourceLimitsConfigurationPanel());
         }
 
         pnl.add(tpPreferencesTabs, BorderLayout.CENTER);
@@ -95,6 +99,9 @@ public class GraalVMConfigurationPanel extends JPanel implements HyperlinkListen
         if (pnlESModuleRepoConfiguration != null) {
             pnlESModuleRepoConfiguration.persistToPreferences();
         }
+        if (pnlResourceLimitsConfiguration != null) {
+            pnlResourceLimitsConfiguration.persistToPreferences();
+        }
     }
 
     @Override
@@ -2,6 +2,7 @@ package org.openstreetmap.josm.plugins.scripting.preferences.graalvm;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.EnvironmentAccess;
+import org.graalvm.polyglot.ResourceLimits;
 import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.spi.preferences.PreferenceChangeEvent;
 import org.openstreetmap.josm.spi.preferences.PreferenceChangedListener;
@@ -10,6 +11,7 @@ import org.openstreetmap.josm.spi.preferences.Setting;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Null;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,8 +31,11 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     static public GraalVMPrivilegesModel getInstance() {
         if (instance == null) {
             instance = new GraalVMPrivilegesModel();
-            instance.initFromPreferences(Preferences.main());
-            //TODO(Gubaer): Register as preferences listener
+            final var prefs = Preferences.main();
+            instance.initFromPreferences(prefs);
+            // keep the model in sync with preferences edited elsewhere, i.e.
+            // in the advanced preferences
+            prefs.addPreferenceChangeListener(instance);
         }
         return instance;
     }
@@ -216,6 +221,26 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     private EnvironmentAccessPolicy environmentAccessPolicy;
     private HostAccessPolicy hostAccessPolicy;
 
+    // resource limits for a single script execution. 0 means no limit.
+    private int executionTimeout;
+    private long statementLimit;
+    private boolean cancelOnMemoryPressure;
+
+    // incremented whenever a setting applied by prepareContextBuilder() changes
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Replies the version of the settings. The version changes whenever one
+     * of the settings applied by {@link #prepareContextBuilder(Context.Builder)}
+     * changes. Contexts built with an older version must not be handed out
+     * anymore.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     public void resetToDefaults() {
         defaultAccessPolicy = ALLOW_ALL;
 
@@ -228,6 +253,11 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
 
         environmentAccessPolicy = EnvironmentAccessPolicy.getDefault();
         hostAccessPolicy = HostAccessPolicy.getDefault();
+
+        executionTimeout = 0;
+        statementLimit = 0;
+        cancelOnMemoryPressure = false;
+        version.incrementAndGet();
     }
 
     public @NotNull GraalVMPrivilegesModel initFromPreferences(
@@ -257,6 +287,10 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
         hostAccessPolicy = HostAccessPolicy.fromPreferenceValue(
                 prefs.get(GRAALVM_HOST_ACCESS_POLICY)
         );
+        executionTimeout = Math.max(0, prefs.getInt(GRAALVM_EXECUTION_TIMEOUT, 0));
+        statementLimit = Math.max(0, prefs.getLong(GRAALVM_STATEMENT_LIMIT, 0));
+        cancelOnMemoryPressure = prefs.getBoolean(GRAALVM_CANCEL_ON_MEMORY_PRESSURE, false);
+        version.incrementAndGet();
 
         return this;
     }
@@ -291,6 +325,19 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
                 GRAALVM_ENVIRONMENT_ACCESS_POLICY,
                 environmentAccessPolicy.toPreferenceValue()
         );
+        saveResourceLimitsToPreferences(prefs);
+    }
+
+    /**
+     * Saves the resource limits for script executions to the preferences.
+     *
+     * @param prefs the preferences. Must not be null.
+     */
+    public void saveResourceLimitsToPreferences(@NotNull final Preferences prefs) {
+        Objects.requireNonNull(prefs);
+        prefs.putInt(GRAALVM_EXECUTION_TIMEOUT, executionTimeout);
+        prefs.putLong(GRAALVM_STATEMENT_LIMIT, statementLimit);
+        prefs.putBoolean(GRAALVM_CANCEL_ON_MEMORY_PRESSURE, cancelOnMemoryPressure);
     }
 
     public boolean isDefaultAccessAllowed() {
@@ -300,6 +347,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setDefaultAccessPolicy(@NotNull final DefaultAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.defaultAccessPolicy = policy;
+        version.incrementAndGet();
     }
 
     public @NotNull DefaultAccessPolicy getDefaultAccessPolicy() {
@@ -322,6 +370,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
 
     public void setCreateProcessPolicy(@NotNull final TernaryAccessPolicy policy) {
         this.createProcessPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowCreateThread() {
@@ -340,6 +389,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setCreateThreadPolicy(@NotNull final TernaryAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.createThreadPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowExperimentalOptions() {
@@ -360,6 +410,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setUseExperimentalOptionsPolicy(@NotNull final TernaryAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.useExperimentalOptionsPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowHostClassLoading() {
@@ -378,6 +429,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setHostClassLoadingPolicy(@NotNull final TernaryAccessPolicy policy) {
         Objects.requireNonNull(policy);
         hostClassLoadingPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowIO() {
@@ -396,6 +448,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setIOPolicy(@NotNull final TernaryAccessPolicy policy) {
         Objects.requireNonNull(policy);
         ioPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowNativeAccess() {
@@ -414,6 +467,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setNativeAccessPolicy(@NotNull final TernaryAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.nativeAccessPolicy = policy;
+        version.incrementAndGet();
     }
 
     public boolean allowEnvironmentAccess() {
@@ -430,6 +484,7 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setEnvironmentAccessPolicy(@NotNull final EnvironmentAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.environmentAccessPolicy = policy;
+        version.incrementAndGet();
     }
 
 
@@ -440,6 +495,72 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
     public void setHostAccessPolicy(@NotNull final HostAccessPolicy policy) {
         Objects.requireNonNull(policy);
         this.hostAccessPolicy = policy;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Replies the maximum time in seconds a single script execution may take.
+     *
+     * @return the timeout in seconds. 0, if there is no time limit.
+     */
+    public int getExecutionTimeout() {
+        return executionTimeout;
+    }
+
+    /**
+     * Sets the maximum time in seconds a single script execution may take.
+     *
+     * @param seconds the timeout in seconds. 0, if there is no time limit.
+     * @throws IllegalArgumentException if <code>seconds</code> is negative
+     */
+    public void setExecutionTimeout(final int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException(String.format(
+                "execution timeout must not be negative, got %d", seconds));
+        }
+        this.executionTimeout = seconds;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Replies the maximum number of statements a single script execution
+     * may execute.
+     *
+     * @return the statement limit. 0, if there is no statement limit.
+     */
+    public long getStatementLimit() {
+        return statementLimit;
+    }
+
+    /**
+     * Sets the maximum number of statements a single script execution
+     * may execute.
+     *
+     * @param limit the statement limit. 0, if there is no statement limit.
+     * @throws IllegalArgumentException if <code>limit</code> is negative
+     */
+    public void setStatementLimit(final long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException(String.format(
+                "statement limit must not be negative, got %d", limit));
+        }
+        this.statementLimit = limit;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Replies whether a script is cancelled when the Java heap is almost
+     * exhausted.
+     *
+     * @return true, if a script is cancelled on memory pressure
+     */
+    public boolean isCancelOnMemoryPressure() {
+        return cancelOnMemoryPressure;
+    }
+
+    public void setCancelOnMemoryPressure(final boolean cancelOnMemoryPressure) {
+        this.cancelOnMemoryPressure = cancelOnMemoryPressure;
+        version.incrementAndGet();
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -457,59 +578,97 @@ public class GraalVMPrivilegesModel implements PreferenceChangedListener {
         builder.allowEnvironmentAccess(
                 environmentAccessPolicy.toEnvironmentAccess());
 
+        // the statement count is reset before every script execution,
+        // see Context#resetLimits()
+        if (statementLimit > 0) {
+            builder.resourceLimits(ResourceLimits.newBuilder()
+                .statementLimit(statementLimit, null /* all sources */)
+                .build());
+        }
+
         return builder;
     }
 
     @Override
     public void preferenceChanged(PreferenceChangeEvent event) {
         final String key = event.getKey();
-        @SuppressWarnings("unchecked") final Setting<String> value = (Setting<String>) event.getNewValue();
+        final Setting<?> setting = event.getNewValue();
+        // null, if the preference was removed. Settings of other keys may
+        // be lists or maps.
+        final String newValue = setting != null && setting.getValue() instanceof String v ? v : null;
         switch (key) {
             case GRAALVM_CREATE_PROCESS_POLICY:
                 createProcessPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
             case GRAALVM_CREATE_THREAD_POLICY:
                 createThreadPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
 
             case GRAALVM_USE_EXPERIMENTAL_OPTIONS_POLICY:
                 useExperimentalOptionsPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
             case GRAALVM_HOST_CLASS_LOADING_POLICY:
                 hostClassLoadingPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
 
             case GRAALVM_IO_POLICY:
                 ioPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
 
             case GRAALVM_NATIVE_ACCESS_POLICY:
                 nativeAccessPolicy = TernaryAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
 
             case GRAALVM_ENVIRONMENT_ACCESS_POLICY:
                 environmentAccessPolicy = EnvironmentAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
 
             case GRAALVM_HOST_ACCESS_POLICY:
                 hostAccessPolicy = HostAccessPolicy.fromPreferenceValue(
-                        value.getValue()
+                        newValue
                 );
                 break;
+
+            case GRAALVM_EXECUTION_TIMEOUT:
+                executionTimeout = (int) Math.min(Integer.MAX_VALUE, parseLimit(newValue));
+                break;
+
+            case GRAALVM_STATEMENT_LIMIT:
+                statementLimit = parseLimit(newValue);
+                break;
+
+            case GRAALVM_CANCEL_ON_MEMORY_PRESSURE:
+                cancelOnMemoryPressure = Boolean.parseBoolean(newValue);
+                break;
+
+            default:
+                return;
+        }
+        version.incrementAndGet();
+    }
+
+    static private long parseLimit(@Null final String value) {
+        if (value == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARNING, String.format(
+                "illegal resource limit value. Using 0 instead. Got '%s'", value));
+            return 0;
         }
     }
-}
\ No newline at end of file
+}
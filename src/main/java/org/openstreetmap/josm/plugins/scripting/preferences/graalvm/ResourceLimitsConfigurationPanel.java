@@ -0,0 +1,91 @@
+package org.openstreetmap.josm.plugins.scripting.preferences.graalvm;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMFacadeFactory;
+import org.openstreetmap.josm.plugins.scripting.ui.EditorPaneBuilder;
+
+import javax.swing.*;
+import java.awt.*;
+
+import static org.openstreetmap.josm.plugins.scripting.ui.GridBagConstraintBuilder.gbc;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+/**
+ * Configures the resource limits for scripts executed in the GraalVM.
+ */
+public class ResourceLimitsConfigurationPanel extends JPanel {
+
+    private JSpinner spExecutionTimeout;
+    private JSpinner spStatementLimit;
+    private JCheckBox cbCancelOnMemoryPressure;
+
+    protected JPanel buildInfoPanel() {
+        final JEditorPane pane = EditorPaneBuilder.buildInfoEditorPane();
+        pane.setText("<html>" + tr(
+            "A script exceeding one of the following limits is cancelled. "
+            + "The limits apply to every single script execution. "
+            + "Enter 0 to disable a limit."
+        ) + "</html>");
+        final JPanel pnl = new JPanel(new BorderLayout());
+        pnl.add(pane, BorderLayout.CENTER);
+        return pnl;
+    }
+
+    protected JPanel buildLimitsPanel() {
+        final var model = GraalVMPrivilegesModel.getInstance();
+        final JPanel pnl = new JPanel(new GridBagLayout());
+        final Insets insets = new Insets(3, 3, 3, 3);
+
+        pnl.add(new JLabel(tr("Time limit (seconds):")),
+            gbc().cell(0, 0).anchor(GridBagConstraints.WEST).insets(insets).constraints());
+        spExecutionTimeout = new JSpinner(new SpinnerNumberModel(
+            model.getExecutionTimeout(), 0, Integer.MAX_VALUE, 1));
+        spExecutionTimeout.setToolTipText(
+            tr("The maximum time a script may run"));
+        pnl.add(spExecutionTimeout,
+            gbc().cell(1, 0).fillHorizontal().insets(insets).constraints());
+
+        pnl.add(new JLabel(tr("Statement limit:")),
+            gbc().cell(0, 1).anchor(GridBagConstraints.WEST).insets(insets).constraints());
+        spStatementLimit = new JSpinner(new SpinnerNumberModel(
+            Long.valueOf(model.getStatementLimit()), Long.valueOf(0), Long.valueOf(Long.MAX_VALUE),
+            Long.valueOf(1000)));
+        spStatementLimit.setToolTipText(
+            tr("The maximum number of statements a script may execute"));
+        pnl.add(spStatementLimit,
+            gbc().cell(1, 1).fillHorizontal().insets(insets).constraints());
+
+        cbCancelOnMemoryPressure = new JCheckBox(
+            tr("Cancel a script when the Java heap is almost exhausted"));
+        cbCancelOnMemoryPressure.setSelected(model.isCancelOnMemoryPressure());
+        pnl.add(cbCancelOnMemoryPressure,
+            gbc().cell(0, 2, 2, 1).anchor(GridBagConstraints.WEST).insets(insets).constraints());
+
+        pnl.add(new JPanel(),
+            gbc().cell(0, 3, 2, 1).fillboth().weight(1.0, 1.0).constraints());
+        return pnl;
+    }
+
+    protected void build() {
+        setLayout(new BorderLayout());
+        add(buildInfoPanel(), BorderLayout.NORTH);
+        add(buildLimitsPanel(), BorderLayout.CENTER);
+    }
+
+    public ResourceLimitsConfigurationPanel() {
+        build();
+    }
+
+    /**
+     * Persist the resource limits to the JOSM preferences file.
+     */
+    public void persistToPreferences() {
+        final var model = GraalVMPrivilegesModel.getInstance();
+        model.setExecutionTimeout(((Number) spExecutionTimeout.getValue()).intValue());
+        model.setStatementLimit(((Number) spStatementLimit.getValue()).longValue());
+        model.setCancelOnMemoryPressure(cbCancelOnMemoryPressure.isSelected());
+        model.saveResourceLimitsToPreferences(Preferences.main());
+        // pre-built contexts were built with the previous statement limit
+        GraalVMFacadeFactory.clearContextPool();
+    }
+}
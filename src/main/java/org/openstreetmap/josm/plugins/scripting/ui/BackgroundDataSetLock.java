@@ -0,0 +1,84 @@
+package org.openstreetmap.josm.plugins.scripting.ui;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.openstreetmap.josm.plugins.scripting.ui.SwingUtil.runOnSwingEDT;
+
+/**
+ * Locks the data sets of the data layers while a script runs in the
+ * background.
+ * <p>
+ * A script running in the background may only modify a data set with the
+ * commands of the module <code>josm/command</code>, which are applied on the
+ * Swing EDT. Every other modification of a locked data set, i.e. adding a
+ * primitive or changing its tags directly, is rejected by JOSM with an
+ * {@link IllegalStateException}. {@link #runUnlocked(Runnable)} lifts the
+ * lock while a command is applied, undone or redone on the Swing EDT.
+ * <p>
+ * Data sets which are already locked, i.e. read-only layers, are left
+ * untouched. All methods access the data sets on the Swing EDT.
+ */
+public class BackgroundDataSetLock {
+
+    // the data sets locked for the running background script. Only
+    // accessed on the Swing EDT.
+    static private final List<DataSet> locked = new ArrayList<>();
+
+    private BackgroundDataSetLock() {
+    }
+
+    /**
+     * Locks the data sets of the current data layers.
+     */
+    static public void lock() {
+        runOnSwingEDT(() -> {
+            final var layerManager = MainApplication.getLayerManager();
+            if (layerManager == null) {
+                return;
+            }
+            for (final OsmDataLayer layer : layerManager.getLayersOfType(OsmDataLayer.class)) {
+                final var ds = layer.getDataSet();
+                if (ds != null && !ds.isLocked()) {
+                    ds.lock();
+                    locked.add(ds);
+                }
+            }
+        });
+    }
+
+    /**
+     * Unlocks the data sets locked with {@link #lock()}.
+     */
+    static public void unlock() {
+        runOnSwingEDT(() -> {
+            locked.forEach(DataSet::unlock);
+            locked.clear();
+        });
+    }
+
+    /**
+     * Runs <code>r</code> on the Swing EDT while the data sets locked with
+     * {@link #lock()} are unlocked.
+     *
+     * @param r the runnable. Must not be null.
+     * @throws NullPointerException if <code>r</code> is null
+     */
+    static public void runUnlocked(@NotNull final Runnable r) {
+        Objects.requireNonNull(r);
+        runOnSwingEDT(() -> {
+            locked.forEach(DataSet::unlock);
+            try {
+                r.run();
+            } finally {
+                locked.forEach(DataSet::lock);
+            }
+        });
+    }
+}
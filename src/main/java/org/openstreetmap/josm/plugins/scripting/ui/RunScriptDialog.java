@@ -243,6 +243,16 @@ public class RunScriptDialog extends JDialog implements PreferenceKeys {
             // getOrCreateGraalVMFacade() is never null here: we're on the GraalVM path,
             // which requires GraalVM to be present and initialized.
             if (isGraalVM && cbResetContext.isSelected()) {
+                if (ScriptRunner.getInstance().isRunning()) {
+                    JOptionPane.showMessageDialog(
+                        RunScriptDialog.this,
+                        tr("Can''t reset the GraalJS context while a script is running. "
+                            + "Wait until the script is finished or cancel it."),
+                        tr("Script running"),
+                        JOptionPane.WARNING_MESSAGE
+                    );
+                    return;
+                }
                 GraalVMFacadeFactory.getOrCreateGraalVMFacade().resetContext();
             }
             pendingEngine = null;
@@ -74,10 +74,8 @@ public class RunScriptService {
     private Stream<ScriptEngineDescriptor> filterJSR223Engines(
             final String mimeType) {
         return JSR223ScriptEngineProvider.getInstance()
-            .getScriptEngineFactories()
-            .stream()
-            .filter(factory -> factory.getMimeTypes().contains(mimeType))
-            .map(ScriptEngineDescriptor::new);
+            .getDescriptorsForMimeType(mimeType)
+            .stream();
     }
 
     private Stream<ScriptEngineDescriptor> filterGraalVMEngines(
@@ -2,6 +2,7 @@ package org.openstreetmap.josm.plugins.scripting.ui;
 
 
 import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMCancelledException;
 import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMFacadeFactory;
 
 import javax.script.ScriptException;
@@ -137,6 +138,10 @@ public class ScriptErrorViewer extends JPanel {
 
         if (scriptException != null) {
             builder.append(formatScriptException((ScriptException) scriptException));
+        } else if (exception instanceof GraalVMCancelledException) {
+            // cancelled by the user or because the script exceeded a
+            // resource limit. The message explains why.
+            builder.append(exception.getMessage());
         } else if (GraalVMFacadeFactory.isGraalVMPresent()) {
             try {
                 // dynamic lookup necessary
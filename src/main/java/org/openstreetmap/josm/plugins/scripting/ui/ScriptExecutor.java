@@ -5,9 +5,12 @@ import org.openstreetmap.josm.gui.help.HelpUtil;
 import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMEvalException;
 import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMFacadeFactory;
 import org.openstreetmap.josm.plugins.scripting.graalvm.IGraalVMFacade;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfiler;
 import org.openstreetmap.josm.plugins.scripting.model.JSR223CompiledScriptCache;
 import org.openstreetmap.josm.plugins.scripting.model.JSR223ScriptEngineProvider;
+import org.openstreetmap.josm.plugins.scripting.model.JythonRuntime;
 import org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDescriptor;
+import org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetricsRecorder;
 import org.openstreetmap.josm.plugins.scripting.util.Assert;
 
 import javax.script.Compilable;
@@ -19,11 +22,9 @@ import javax.validation.constraints.Null;
 import java.awt.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import static org.openstreetmap.josm.plugins.scripting.ui.SwingUtil.runOnSwingEDT;
 import static org.openstreetmap.josm.tools.I18n.tr;
@@ -34,10 +35,19 @@ import static org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDescrip
  * A utility class providing methods for executing a script (as string or
  * as file) with either an embedded or a plugged script engine, including
  * error handling.
+ * <p>
+ * Scripts are run on the Swing EDT, unless running scripts in the background
+ * is enabled (see {@link ScriptRunner#isBackgroundExecutionEnabled()}), or
+ * unless another script is still running in the background. Then they are
+ * run by the {@link ScriptRunner}, one after the other, and can be cancelled.
+ * Errors are always reported on the Swing EDT.
  */
 public class ScriptExecutor {
     static private final Logger logger = Logger.getLogger(ScriptExecutor.class.getName());
 
+    // the name under which metrics for scripts run in the scripting console are recorded
+    static private final String CONSOLE_SCRIPT_NAME = "<console>";
+
     private final Component parent;
 
     /**
@@ -50,6 +60,49 @@ public class ScriptExecutor {
         this.parent = parent;
     }
 
+    /**
+     * Runs a script task, either on the Swing EDT or on the script runner
+     * thread, and records its {@link org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetrics}.
+     *
+     * @param scriptName the name of the script
+     * @param task the task
+     * @param cancelHandler cancels the task while it is running on the script
+     *     runner thread. If null, the script runner thread is interrupted.
+     */
+    private void runScriptTask(@NotNull final String scriptName, @NotNull final Runnable task,
+                               @Null final Runnable cancelHandler) {
+        final Runnable recordedTask = () -> {
+            try (var ignored = ScriptRunMetricsRecorder.start(scriptName);
+                 var ignoredProfile = ModuleLoadProfiler.start(scriptName)) {
+                task.run();
+            }
+        };
+        final var runner = ScriptRunner.getInstance();
+        // If a script is still running in the background, queue the script
+        // behind it, even if running in the background was disabled in the
+        // meantime. Two scripts must never run in the same context at the
+        // same time.
+        if (ScriptRunner.isBackgroundExecutionEnabled() || runner.isRunning()) {
+            runner.submit(recordedTask, cancelHandler);
+        } else {
+            runOnSwingEDT(recordedTask);
+        }
+    }
+
+    /**
+     * Runs a task reporting the outcome of a script on the Swing EDT.
+     * Doesn't wait for the task to complete, if invoked off the EDT.
+     *
+     * @param task the task
+     */
+    static private void report(@NotNull final Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            SwingUtilities.invokeLater(task);
+        }
+    }
+
     private void warnScriptingEngineNotFound() {
         HelpAwareOptionPane.showOptionDialog(
             this.parent,
@@ -81,7 +134,8 @@ public class ScriptExecutor {
 
     /**
      * Runs the script in the file <tt>scriptFile</tt> using the script
-     * engine described in <tt>desc</tt> on the Swing EDT.
+     * engine described in <tt>desc</tt>, either on the Swing EDT or in the
+     * background.
      *
      * @param desc       the script engine descriptor
      * @param scriptFile the script file
@@ -97,67 +151,53 @@ public class ScriptExecutor {
         Assert.assertArg(scriptFile.isFile(), "Expected a script file, got ''{0}''", scriptFile);
         Assert.assertArg(scriptFile.canRead(), "Expected a readable script file, got ''{0}''", scriptFile);
 
-        final ScriptEngine engine = JSR223ScriptEngineProvider.getInstance().getScriptEngine(desc);
-        if (engine == null) {
-            warnScriptingEngineNotFound();
-            return;
-        }
+        // the engine is borrowed when the script runs. A queued script which
+        // is cancelled before it runs doesn't hold an engine.
         final Runnable task = () -> {
-            final var bindings = engine.createBindings();
-            if (desc.isJython()) {
-                // For a python script we initialize the bindings as follows:
-                //    __file__ = <full path to script file>
-                bindings.put("__file__", scriptFile.getPath());
-
-                // For a python script we initialize the Jython engine as follows:
-                //    add the script's parent directory to sys.path
-                //    add the paths in JYTHONPATH to sys.path
-                final var sysPathStatement = format("import sys; sys.path.append(''{0}'')", scriptFile.getParent());
-                try {
-                    engine.eval(sysPathStatement);
-                } catch(ScriptException e) {
-                    logger.log(Level.WARNING, format("Failed to add ''{0}'' to sys.path", scriptFile.getParent()), e);
-                }
-                final var jythonPath = System.getenv("JYTHONPATH");
-                if (jythonPath != null) {
-                    final var paths = jythonPath.split(File.pathSeparator);
-                    if (paths.length > 0) {
-                        final var script = "import sys; " +
-                            Arrays.stream(paths)
-                                .distinct()
-                                .map(path -> format("sys.path.append(''{0}'')", path))
-                                .collect(Collectors.joining("; "));
-                        try {
-                            engine.eval(script);
-                        } catch(ScriptException e) {
-                            logger.log(Level.WARNING, format("Failed to add JYTHONPATH ''{0}'' to sys.path", jythonPath), e);
-                        }
-                    }
-                }
+            final var provider = JSR223ScriptEngineProvider.getInstance();
+            final ScriptEngine engine = provider.borrowScriptEngine(desc);
+            if (engine == null) {
+                ScriptRunMetricsRecorder.markFailed();
+                report(this::warnScriptingEngineNotFound);
+                return;
             }
             try {
-                if (engine instanceof Compilable) {
-                    JSR223CompiledScriptCache
-                        .getInstance()
-                        .compile((Compilable) engine, scriptFile)
-                        .eval(bindings);
-                } else {
-                    try (var reader = new InputStreamReader(new FileInputStream(scriptFile), StandardCharsets.UTF_8)) {
-                        engine.eval(reader, bindings);
-                    }
-                }
-            } catch (ScriptException e) {
-                ScriptErrorDialog.showErrorDialog(e);
-            } catch (IOException e) {
-                warnOpenScriptFileFailed(scriptFile, e);
+                runScriptFile(desc, engine, scriptFile);
+            } finally {
+                provider.releaseScriptEngine(desc, engine);
             }
         };
-        runOnSwingEDT(task);
+        runScriptTask(scriptFile.getPath(), task, null /* interrupt the script runner thread */);
+    }
+
+    private void runScriptFile(@NotNull final ScriptEngineDescriptor desc,
+                               @NotNull final ScriptEngine engine,
+                               @NotNull final File scriptFile) {
+        try {
+            if (desc.isJython()) {
+                JythonRuntime.getInstance().run(engine, scriptFile);
+            } else if (engine instanceof Compilable) {
+                JSR223CompiledScriptCache
+                    .getInstance()
+                    .compile((Compilable) engine, scriptFile)
+                    .eval(engine.createBindings());
+            } else {
+                try (var reader = new InputStreamReader(new FileInputStream(scriptFile), StandardCharsets.UTF_8)) {
+                    engine.eval(reader, engine.createBindings());
+                }
+            }
+        } catch (ScriptException e) {
+            ScriptRunMetricsRecorder.markFailed();
+            report(() -> ScriptErrorDialog.showErrorDialog(e));
+        } catch (IOException e) {
+            ScriptRunMetricsRecorder.markFailed();
+            report(() -> warnOpenScriptFileFailed(scriptFile, e));
+        }
     }
 
     /**
      * Runs the script <tt>script</tt> using the script engine described
-     * in <tt>desc</tt> on the Swing EDT.
+     * in <tt>desc</tt>, either on the Swing EDT or in the background.
      *
      * @param desc             the script engine descriptor. Must not be null.
      * @param script           the script. Ignored if null.
@@ -169,26 +209,31 @@ public class ScriptExecutor {
             final ScriptErrorViewerModel errorViewerModel) {
         Objects.requireNonNull(desc);
         if (script == null) return;
-        final ScriptEngine engine = JSR223ScriptEngineProvider.getInstance().getScriptEngine(desc);
-        if (engine == null) {
-            warnScriptingEngineNotFound();
-            return;
-        }
         Runnable task = () -> {
+            final var provider = JSR223ScriptEngineProvider.getInstance();
+            final ScriptEngine engine = provider.borrowScriptEngine(desc);
+            if (engine == null) {
+                ScriptRunMetricsRecorder.markFailed();
+                report(this::warnScriptingEngineNotFound);
+                return;
+            }
             try {
                 engine.eval(script);
             } catch (ScriptException e) {
-                errorViewerModel.setError(e);
+                ScriptRunMetricsRecorder.markFailed();
+                report(() -> errorViewerModel.setError(e));
+            } finally {
+                provider.releaseScriptEngine(desc, engine);
             }
         };
-        runOnSwingEDT(task);
+        runScriptTask(CONSOLE_SCRIPT_NAME, task, null /* interrupt the script runner thread */);
     }
 
     /**
      * Runs a script with a GraalVM engine.
      * <p>
-     * Runs the script on the Swing EDT. Handling errors is delegated to
-     * <code>errorViewerModel</code>.
+     * Runs the script either on the Swing EDT or in the background. Handling
+     * errors is delegated to <code>errorViewerModel</code>.
      *
      * @param engine           the descriptor. Must not be null.
      * @param script           the script
@@ -220,16 +265,17 @@ public class ScriptExecutor {
             try {
                 facade.eval(engine, script);
             } catch (Throwable e) {
-                errorViewerModel.setError(e);
+                ScriptRunMetricsRecorder.markFailed();
+                report(() -> errorViewerModel.setError(e));
             }
         };
-        runOnSwingEDT(task);
+        runScriptTask(CONSOLE_SCRIPT_NAME, task, facade::cancel);
     }
 
     /**
      * Runs a script file with a GraalVM engine.
      * <p>
-     * Runs the script on the Swing EDT.
+     * Runs the script either on the Swing EDT or in the background.
      *
      * @param engine  the descriptor. Must not be null.
      * @param script  the script. Must not be null.
@@ -251,11 +297,13 @@ public class ScriptExecutor {
             try {
                 facade.eval(engine, script);
             } catch (IOException e) {
-                warnOpenScriptFileFailed(script, e);
+                ScriptRunMetricsRecorder.markFailed();
+                report(() -> warnOpenScriptFileFailed(script, e));
             } catch (GraalVMEvalException e) {
-                ScriptErrorDialog.showErrorDialog(e);
+                ScriptRunMetricsRecorder.markFailed();
+                report(() -> ScriptErrorDialog.showErrorDialog(e));
             }
         };
-        runOnSwingEDT(task);
+        runScriptTask(script.getPath(), task, facade::cancel);
     }
 }
@@ -0,0 +1,250 @@
+package org.openstreetmap.josm.plugins.scripting.ui;
+
+import org.openstreetmap.josm.data.Preferences;
+
+import javax.swing.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_RUN_SCRIPTS_IN_BACKGROUND;
+
+/**
+ * Runs scripts on a dedicated worker thread, off the Swing EDT.
+ * <p>
+ * Scripts are run one after the other. The currently running script can be
+ * cancelled with {@link #cancel()}, which also drops the scripts waiting to
+ * be run. Listeners are notified on the Swing EDT about changes of the
+ * property {@link #PROP_RUNNING}.
+ * <p>
+ * While a script runs, the data sets of the data layers are locked with
+ * {@link BackgroundDataSetLock}. A script can only modify them with the
+ * commands of the module <code>josm/command</code>, which are applied,
+ * undone and redone on the Swing EDT. Direct modifications are rejected
+ * with an {@link IllegalStateException}. Other accesses to layers or Swing
+ * components from a script running in the background aren't marshalled
+ * onto the EDT and aren't thread-safe.
+ */
+public class ScriptRunner {
+    static private final Logger logger = Logger.getLogger(ScriptRunner.class.getName());
+
+    /**
+     * The name of the property which is true, while a script is running
+     * or waiting to be run.
+     */
+    static public final String PROP_RUNNING = ScriptRunner.class.getName() + ".running";
+
+    static private ScriptRunner instance;
+
+    /**
+     * Replies the unique instance of the script runner.
+     *
+     * @return the script runner
+     */
+    static public @NotNull ScriptRunner getInstance() {
+        synchronized (ScriptRunner.class) {
+            if (instance == null) {
+                instance = new ScriptRunner();
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Replies true, if scripts should be run off the Swing EDT.
+     *
+     * @return true, if scripts should be run in the background
+     */
+    static public boolean isBackgroundExecutionEnabled() {
+        final var prefs = Preferences.main();
+        return prefs != null && prefs.getBoolean(PREF_KEY_RUN_SCRIPTS_IN_BACKGROUND, false);
+    }
+
+    /**
+     * Enables or disables running scripts off the Swing EDT.
+     *
+     * @param enabled true, if scripts should be run in the background
+     */
+    static public void setBackgroundExecutionEnabled(final boolean enabled) {
+        final var prefs = Preferences.main();
+        if (prefs != null) {
+            prefs.putBoolean(PREF_KEY_RUN_SCRIPTS_IN_BACKGROUND, enabled);
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "josm-scripting-script-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final PropertyChangeSupport support = new PropertyChangeSupport(this);
+
+    // the number of scripts running or waiting to be run
+    private int scheduled = 0;
+    // the scripts waiting to be run
+    private final List<Job> waiting = new ArrayList<>();
+    private Job current;
+
+    /**
+     * A script submitted to the worker thread.
+     */
+    private final class Job implements Runnable {
+        private final Runnable task;
+        private final Runnable cancelHandler;
+        // set in submit(), before the job can start
+        private Future<?> future;
+
+        Job(@NotNull final Runnable task, @Null final Runnable cancelHandler) {
+            this.task = task;
+            this.cancelHandler = cancelHandler;
+        }
+
+        @Override
+        public void run() {
+            synchronized (ScriptRunner.this) {
+                if (!waiting.remove(this)) {
+                    // dropped by cancel(), which already updated the count
+                    return;
+                }
+                current = this;
+            }
+            try {
+                BackgroundDataSetLock.lock();
+                try {
+                    task.run();
+                } finally {
+                    BackgroundDataSetLock.unlock();
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Script failed with an unexpected exception", e);
+            } finally {
+                finished();
+            }
+        }
+
+        void cancel() {
+            if (cancelHandler != null) {
+                cancelHandler.run();
+            } else {
+                future.cancel(true /* interrupt */);
+            }
+        }
+    }
+
+    /**
+     * Creates a script runner. Use {@link #getInstance()} instead, except
+     * in tests.
+     */
+    ScriptRunner() {
+    }
+
+    private void fireRunningChanged(final boolean oldValue, final boolean newValue) {
+        SwingUtilities.invokeLater(() ->
+            support.firePropertyChange(PROP_RUNNING, oldValue, newValue)
+        );
+    }
+
+    private void finished() {
+        final boolean stillRunning;
+        synchronized (this) {
+            current = null;
+            scheduled--;
+            stillRunning = scheduled > 0;
+        }
+        if (!stillRunning) {
+            fireRunningChanged(true, false);
+        }
+    }
+
+    /**
+     * Submits a script for execution on the worker thread.
+     *
+     * @param task the task running the script. Must not be null.
+     * @param cancelHandler cancels the script while it is running, i.e. by
+     *    closing its GraalVM context. If null, the worker thread is interrupted.
+     * @throws NullPointerException if <code>task</code> is null
+     */
+    public void submit(@NotNull final Runnable task, @Null final Runnable cancelHandler) {
+        Objects.requireNonNull(task);
+        final boolean wasRunning;
+        final var job = new Job(task, cancelHandler);
+        synchronized (this) {
+            wasRunning = scheduled > 0;
+            scheduled++;
+            // the job can't start before it is added to the waiting jobs,
+            // because it has to acquire the monitor of the runner first
+            job.future = executor.submit(job);
+            waiting.add(job);
+        }
+        if (!wasRunning) {
+            fireRunningChanged(false, true);
+        }
+    }
+
+    /**
+     * Cancels the currently running script and drops the scripts waiting
+     * to be run.
+     */
+    public void cancel() {
+        final Job running;
+        final boolean stopped;
+        synchronized (this) {
+            // a dropped job may already have been started by the worker
+            // thread. It finds itself missing in the waiting jobs and
+            // returns without running its task.
+            waiting.forEach(job -> job.future.cancel(false));
+            scheduled -= waiting.size();
+            stopped = !waiting.isEmpty() && scheduled == 0;
+            waiting.clear();
+            running = current;
+        }
+        if (stopped) {
+            fireRunningChanged(true, false);
+        }
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    /**
+     * Replies true, if a script is running or waiting to be run.
+     *
+     * @return true, if a script is running
+     */
+    public synchronized boolean isRunning() {
+        return scheduled > 0;
+    }
+
+    /**
+     * Adds a listener for changes of the property {@link #PROP_RUNNING}.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    public void addPropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.addPropertyChangeListener(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener. Ignored if null.
+     */
+    public void removePropertyChangeListener(@Null final PropertyChangeListener listener) {
+        if (listener == null) {
+            return;
+        }
+        support.removePropertyChangeListener(listener);
+    }
+}
@@ -1,5 +1,6 @@
 package org.openstreetmap.josm.plugins.scripting.ui.console;
 
+import javax.swing.*;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import java.io.IOException;
@@ -21,6 +22,16 @@ public class DocumentWriter extends Writer {
     @Override
     public void write(char[] cbuf, int off, int len) throws IOException {
         String msg = new String(Arrays.copyOfRange(cbuf, off, off + len));
+        if (SwingUtilities.isEventDispatchThread()) {
+            append(msg);
+        } else {
+            // scripts run in the background write to the log from the
+            // script runner thread
+            SwingUtilities.invokeLater(() -> append(msg));
+        }
+    }
+
+    private void append(String msg) {
         try {
             doc.insertString(doc.getLength(), msg, null);
         } catch(BadLocationException e){
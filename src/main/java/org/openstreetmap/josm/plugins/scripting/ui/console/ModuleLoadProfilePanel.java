@@ -0,0 +1,234 @@
+package org.openstreetmap.josm.plugins.scripting.ui.console;
+
+import org.openstreetmap.josm.gui.HelpAwareOptionPane;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfile;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfile.ModuleLoad;
+import org.openstreetmap.josm.plugins.scripting.graalvm.ModuleLoadProfiler;
+import org.openstreetmap.josm.tools.ImageProvider;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Null;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.text.MessageFormat.format;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+/**
+ * Displays the modules loaded during the last profiled script run as a tree,
+ * see {@link ModuleLoadProfiler}.
+ */
+public class ModuleLoadProfilePanel extends JPanel implements PropertyChangeListener {
+    static private final Logger logger = Logger.getLogger(ModuleLoadProfilePanel.class.getName());
+
+    /**
+     * The orders in which the modules imported by a module are displayed.
+     */
+    private enum SortOrder {
+        LOAD_ORDER(tr("Load order"), ModuleLoad::getStartOffsetNanos, false),
+        TOTAL(tr("Total time"), ModuleLoad::getTotalNanos, true),
+        RESOLVE(tr("Resolve time"), ModuleLoad::getResolveNanos, true),
+        READ(tr("Read time"), ModuleLoad::getReadNanos, true),
+        PARSE(tr("Parse time"), ModuleLoad::getParseNanos, true),
+        EVAL(tr("Eval time"), ModuleLoad::getEvalNanos, true);
+
+        private final String displayName;
+        private final Comparator<ModuleLoad> comparator;
+
+        SortOrder(final String displayName, final ToLongFunction<ModuleLoad> key, final boolean descending) {
+            this.displayName = displayName;
+            final var comparator = Comparator.comparingLong(key);
+            this.comparator = descending ? comparator.reversed() : comparator;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final JTree tree = new JTree(new DefaultTreeModel(null));
+    private final JComboBox<SortOrder> cbSortOrder = new JComboBox<>(SortOrder.values());
+    private final JLabel lblSummary = new JLabel();
+    private final ExportAction exportAction = new ExportAction();
+    private ModuleLoadProfile profile;
+
+    /**
+     * Creates the panel.
+     */
+    public ModuleLoadProfilePanel() {
+        build();
+        setProfile(ModuleLoadProfiler.getLastProfile());
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        ModuleLoadProfiler.addPropertyChangeListener(this);
+        // a profile may have been recorded while the panel wasn't displayed
+        setProfile(ModuleLoadProfiler.getLastProfile());
+    }
+
+    @Override
+    public void removeNotify() {
+        ModuleLoadProfiler.removePropertyChangeListener(this);
+        super.removeNotify();
+    }
+
+    protected JPanel buildControlPanel() {
+        final var pnl = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        final var cbEnabled = new JCheckBox(tr("Profile module loads"));
+        cbEnabled.setToolTipText(tr("Record the CommonJS and ES modules loaded by the next script runs"));
+        cbEnabled.setSelected(ModuleLoadProfiler.isEnabled());
+        cbEnabled.addItemListener(e -> ModuleLoadProfiler.setEnabled(cbEnabled.isSelected()));
+        pnl.add(cbEnabled);
+
+        pnl.add(new JLabel(tr("Sort by:")));
+        cbSortOrder.addActionListener(e -> refreshTree());
+        pnl.add(cbSortOrder);
+        pnl.add(new JButton(exportAction));
+        return pnl;
+    }
+
+    protected void build() {
+        setLayout(new BorderLayout());
+        add(buildControlPanel(), BorderLayout.NORTH);
+        tree.setRootVisible(true);
+        tree.setShowsRootHandles(true);
+        tree.setCellRenderer(new ModuleLoadCellRenderer());
+        add(new JScrollPane(tree), BorderLayout.CENTER);
+        lblSummary.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        add(lblSummary, BorderLayout.SOUTH);
+    }
+
+    private void setProfile(@Null final ModuleLoadProfile profile) {
+        this.profile = profile;
+        exportAction.setEnabled(profile != null);
+        if (profile == null) {
+            lblSummary.setText(tr("No profile available. Enable profiling and run a script."));
+        } else {
+            lblSummary.setText(tr("Script ''{0}'' started at {1}: {2} modules loaded",
+                profile.getScriptName(), new Date(profile.getStartTime()), profile.getModuleCount()));
+        }
+        refreshTree();
+    }
+
+    static private DefaultMutableTreeNode buildTreeNode(
+            @NotNull final ModuleLoad module, @NotNull final Comparator<ModuleLoad> comparator) {
+        final var node = new DefaultMutableTreeNode(module);
+        module.getChildren().stream()
+            .sorted(comparator)
+            .forEach(child -> node.add(buildTreeNode(child, comparator)));
+        return node;
+    }
+
+    private void refreshTree() {
+        final var model = (DefaultTreeModel) tree.getModel();
+        if (profile == null) {
+            model.setRoot(null);
+            return;
+        }
+        final var sortOrder = (SortOrder) cbSortOrder.getSelectedItem();
+        final var comparator = sortOrder == null ? SortOrder.LOAD_ORDER.comparator : sortOrder.comparator;
+        model.setRoot(buildTreeNode(profile.getRoot(), comparator));
+        for (int i = 0; i < tree.getRowCount(); i++) {
+            tree.expandRow(i);
+        }
+    }
+
+    static private String formatNanos(final long nanos) {
+        return nanos < 0 ? "-" : format("{0,number,0.00} ms", nanos / 1_000_000d);
+    }
+
+    /* ------------------------------------------------------------------------ */
+    /* interface PropertyChangeListener                                          */
+    /* ------------------------------------------------------------------------ */
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (ModuleLoadProfiler.PROP_LAST_PROFILE.equals(evt.getPropertyName())) {
+            setProfile((ModuleLoadProfile) evt.getNewValue());
+        }
+    }
+
+    static private class ModuleLoadCellRenderer extends DefaultTreeCellRenderer {
+        @Override
+        public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected,
+                boolean expanded, boolean leaf, int row, boolean hasFocus) {
+            super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+            if (value instanceof DefaultMutableTreeNode node
+                    && node.getUserObject() instanceof ModuleLoad module) {
+                final var text = new StringBuilder();
+                text.append(format("{0}  [total {1}, resolve {2}, read {3}, parse {4}, eval {5}]",
+                    module.getModuleId(),
+                    formatNanos(module.getTotalNanos()),
+                    formatNanos(module.getResolveNanos()),
+                    formatNanos(module.getReadNanos()),
+                    formatNanos(module.getParseNanos()),
+                    formatNanos(module.getEvalNanos())
+                ));
+                if (module.isCached()) {
+                    text.append(" ").append(tr("(cached)"));
+                }
+                if (module.isFailed()) {
+                    text.append(" ").append(tr("(failed)"));
+                }
+                setText(text.toString());
+                setToolTipText(module.getUri());
+            }
+            return this;
+        }
+    }
+
+    private class ExportAction extends AbstractAction {
+        ExportAction() {
+            putValue(NAME, tr("Export as JSON ..."));
+            putValue(SHORT_DESCRIPTION, tr("Save the module load profile to a JSON file"));
+            putValue(SMALL_ICON, ImageProvider.get("save_as", ImageProvider.ImageSizes.MENU));
+        }
+
+        private File askFile() {
+            final var chooser = new JFileChooser();
+            chooser.setDialogTitle(tr("Select a JSON file"));
+            chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            chooser.setMultiSelectionEnabled(false);
+            chooser.setFileHidingEnabled(false);
+            final int ret = chooser.showSaveDialog(ModuleLoadProfilePanel.this);
+            if (ret != JFileChooser.APPROVE_OPTION) return null;
+            return chooser.getSelectedFile();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (profile == null) return;
+            final File file = askFile();
+            if (file == null) return;
+            try (var writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                profile.writeJson(writer);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, format("failed to export module load profile to ''{0}''", file), ex);
+                HelpAwareOptionPane.showOptionDialog(
+                    ModuleLoadProfilePanel.this,
+                    tr("Failed to export the module load profile to ''{0}''.", file),
+                    tr("Error"),
+                    JOptionPane.ERROR_MESSAGE,
+                    null
+                );
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.openstreetmap.josm.plugins.scripting.ui.console;
 
 import org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDescriptor;
+import org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetricsRecorder;
 import org.openstreetmap.josm.plugins.scripting.ui.EditorPaneBuilder;
 import org.openstreetmap.josm.plugins.scripting.ui.ScriptEngineCellRenderer;
 import org.openstreetmap.josm.plugins.scripting.ui.ScriptEngineSelectionDialog;
@@ -45,6 +46,22 @@ public class ScriptEngineInfoPanel extends JPanel implements PropertyChangeListe
         refreshInfo(model.getScriptEngineDescriptor());
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (model != null) {
+            ScriptRunMetricsRecorder.addPropertyChangeListener(this);
+            // a script may have completed while the panel wasn't displayed
+            refreshInfo(model.getScriptEngineDescriptor());
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        ScriptRunMetricsRecorder.removePropertyChangeListener(this);
+        super.removeNotify();
+    }
+
     protected void build() {
         jepInfo = EditorPaneBuilder.buildInfoEditorPane();
         jepInfo.addHyperlinkListener(this);
@@ -77,6 +94,28 @@ public class ScriptEngineInfoPanel extends JPanel implements PropertyChangeListe
         }
     }
 
+    private static String buildLastRunMetrics() {
+        final var metrics = ScriptRunMetricsRecorder.getLastMetrics();
+        if (metrics == null) {
+            return "";
+        }
+        final var sb = new StringBuilder();
+        sb.append("<p>");
+        sb.append(tr("Last run: {0,number,0.0} ms wall time, {1} CPU time, {2} allocated, "
+                + "{3,number,0.0} ms loading modules, {4} primitives touched{5}.",
+            metrics.wallTimeMillis(),
+            metrics.cpuTimeNanos() < 0 ? tr("unknown")
+                : format("{0,number,0.0} ms", metrics.cpuTimeMillis()),
+            metrics.allocatedBytes() < 0 ? tr("unknown")
+                : format("{0,number,0} KB", metrics.allocatedBytes() / 1024),
+            metrics.moduleLoadTimeMillis(),
+            metrics.primitivesTouched(),
+            metrics.failed() ? " (" + tr("failed") + ")" : ""
+        ));
+        sb.append("</p>");
+        return sb.toString();
+    }
+
     protected void refreshInfo(ScriptEngineDescriptor desc) {
         final var sb = new StringBuilder();
         if (desc == null) {
@@ -94,6 +133,7 @@ public class ScriptEngineInfoPanel extends JPanel implements PropertyChangeListe
             sb.append(" ").append(buildSelectScriptEngineLink(tr("Change") + "..."));
             sb.append("</p>");
             sb.append(buildJavascriptAPIHint(desc));
+            sb.append(buildLastRunMetrics());
             sb.append("</html>");
         }
         jepInfo.setText(sb.toString());
@@ -118,10 +158,11 @@ public class ScriptEngineInfoPanel extends JPanel implements PropertyChangeListe
     /* --------------------------------------------------------------------- */
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
-        if (!evt.getPropertyName().equals(ScriptEditorModel.PROP_SCRIPT_ENGINE)) {
-            return;
+        if (evt.getPropertyName().equals(ScriptEditorModel.PROP_SCRIPT_ENGINE)) {
+            refreshInfo((ScriptEngineDescriptor) evt.getNewValue());
+        } else if (evt.getPropertyName().equals(ScriptRunMetricsRecorder.PROP_LAST_METRICS)) {
+            refreshInfo(model.getScriptEngineDescriptor());
         }
-        refreshInfo((ScriptEngineDescriptor) evt.getNewValue());
     }
 
     /* --------------------------------------------------------------------- */
@@ -8,6 +8,7 @@ import org.openstreetmap.josm.plugins.scripting.ui.ScriptErrorViewer;
 import org.openstreetmap.josm.plugins.scripting.ui.ScriptErrorViewerModel;
 import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMFacadeFactory;
 import org.openstreetmap.josm.plugins.scripting.ui.ScriptExecutor;
+import org.openstreetmap.josm.plugins.scripting.ui.ScriptRunner;
 import org.openstreetmap.josm.tools.ImageProvider;
 
 import javax.swing.*;
@@ -39,11 +40,44 @@ public class ScriptingConsolePanel extends JPanel {
     private ScriptEditor editor;
     private ScriptErrorViewer errorViewer;
     private RunScriptAction actRun;
+    private ResetContextAction actResetContext;
+    private JProgressBar pbRunning;
+    private JButton btnCancel;
+    private final PropertyChangeListener scriptRunnerListener = evt -> {
+        if (!evt.getPropertyName().equals(ScriptRunner.PROP_RUNNING)) return;
+        updateRunningState();
+    };
 
     protected JPanel buildControlPanel() {
         final var pnl = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
         pnl.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
-        final var btnResetContext = new JButton(new ResetContextAction());
+
+        final var cbRunInBackground = new JCheckBox(tr("Run in background"));
+        cbRunInBackground.setToolTipText(
+            tr("<html>Run scripts on a background thread. Scripts run in the background can be cancelled.<br>"
+                + "Only use it for scripts which change data with <code>josm/command</code> and "
+                + "don''t access the user interface.</html>"));
+        cbRunInBackground.setSelected(ScriptRunner.isBackgroundExecutionEnabled());
+        cbRunInBackground.addItemListener(evt ->
+            ScriptRunner.setBackgroundExecutionEnabled(cbRunInBackground.isSelected())
+        );
+        pnl.add(cbRunInBackground);
+
+        pnl.add(Box.createHorizontalStrut(10));
+
+        pbRunning = new JProgressBar();
+        pbRunning.setIndeterminate(true);
+        pbRunning.setToolTipText(tr("A script is running"));
+        pbRunning.setVisible(false);
+        pnl.add(pbRunning);
+        btnCancel = new JButton(new CancelScriptAction());
+        btnCancel.setVisible(false);
+        pnl.add(btnCancel);
+
+        pnl.add(Box.createHorizontalStrut(10));
+
+        actResetContext = new ResetContextAction();
+        final var btnResetContext = new JButton(actResetContext);
         final ScriptEngineDescriptor initialDesc = editor.getModel().getScriptEngineDescriptor();
         btnResetContext.setVisible(initialDesc != null && initialDesc.getEngineType() == ScriptEngineType.GRAALVM);
         editor.getModel().addPropertyChangeListener(evt -> {
@@ -76,6 +110,8 @@ public class ScriptingConsolePanel extends JPanel {
         tabPane.addTab(tr("Errors"), errorViewer);
         tabPane.setIconAt(1, ImageProvider.get("circle-check-solid", ImageProvider.ImageSizes.SMALLICON));
         tabPane.setToolTipTextAt(1, tr("Displays scripting errors"));
+        tabPane.addTab(tr("Module loads"), new ModuleLoadProfilePanel());
+        tabPane.setToolTipTextAt(2, tr("Displays the modules loaded by the last profiled script run"));
 
         errorViewer.getModel().addPropertyChangeListener(new ErrorModelChangeListener(tabPane, errorViewer));
 
@@ -172,6 +208,27 @@ public class ScriptingConsolePanel extends JPanel {
         }
     }
 
+    protected void updateRunningState() {
+        final boolean running = ScriptRunner.getInstance().isRunning();
+        pbRunning.setVisible(running);
+        btnCancel.setVisible(running);
+        actRun.updateEnabledState();
+        actResetContext.setEnabled(!running);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        ScriptRunner.getInstance().addPropertyChangeListener(scriptRunnerListener);
+        updateRunningState();
+    }
+
+    @Override
+    public void removeNotify() {
+        ScriptRunner.getInstance().removePropertyChangeListener(scriptRunnerListener);
+        super.removeNotify();
+    }
+
     /**
      * Creates the scripting console pane
      *
@@ -257,7 +314,8 @@ public class ScriptingConsolePanel extends JPanel {
         }
 
         protected void updateEnabledState() {
-            setEnabled(model.getScriptEngineDescriptor() != null);
+            setEnabled(model.getScriptEngineDescriptor() != null
+                && !ScriptRunner.getInstance().isRunning());
         }
 
         @Override
@@ -277,6 +335,12 @@ public class ScriptingConsolePanel extends JPanel {
 
         @Override
         public void actionPerformed(ActionEvent e) {
+            if (ScriptRunner.getInstance().isRunning()) {
+                // the action is disabled while a script is running, but
+                // the running state is updated asynchronously
+                log.getLogWriter().println(tr("Can''t reset the GraalJS context while a script is running"));
+                return;
+            }
             // getOrCreateGraalVMFacade() is never null here: the button is only visible when
             // a GraalVM engine is selected, which requires GraalVM to be present and initialized.
             // resetContext() disposes windows opened by scripts (tracked during eval()).
@@ -285,6 +349,19 @@ public class ScriptingConsolePanel extends JPanel {
         }
     }
 
+    static class CancelScriptAction extends AbstractAction {
+        public CancelScriptAction() {
+            putValue(SMALL_ICON, ImageProvider.get("media-playback-stop", ImageProvider.ImageSizes.SMALLICON));
+            putValue(NAME, tr("Cancel"));
+            putValue(SHORT_DESCRIPTION, tr("Cancel the running script"));
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            ScriptRunner.getInstance().cancel();
+        }
+    }
+
     /**
      * Listens to property changes in the editor model and updates the view
      * accordingly
@@ -8,11 +8,13 @@
  * @module josm
  */
 /* global Java */
+/* global Plugin */
 
 const Version = Java.type('org.openstreetmap.josm.data.Version')
 const JOptionPane = Java.type('javax.swing.JOptionPane')
 const HelpAwareOptionPane = Java.type('org.openstreetmap.josm.gui.HelpAwareOptionPane')
 const MainApplication = Java.type('org.openstreetmap.josm.gui.MainApplication')
+const ScriptRunMetricsRecorder = Plugin.type('org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetricsRecorder')
 
 import * as util from 'josm/util'
 import * as console from 'josm/scriptingconsole'
@@ -282,3 +284,32 @@ Object.defineProperty(josm,  'console', {
   enumerable: true,
   value: console
 })
+
+/**
+ * Replies the execution metrics of the currently running script.
+ *
+ * The metrics include the elapsed wall time, the CPU time and the bytes
+ * allocated by the thread running the script, the time spent loading
+ * modules, and the number of OSM primitives touched in the data layers.
+ * Outside of a script run, the metrics of the most recently completed run
+ * are replied.
+ *
+ * @example
+ * import josm from 'josm'
+ * const metrics = josm.metrics
+ * josm.console.println(`wall time: ${metrics.wallTimeMillis()} ms`)
+ * josm.console.println(`module load time: ${metrics.moduleLoadTimeMillis()} ms`)
+ * josm.console.println(`primitives touched: ${metrics.primitivesTouched()}`)
+ *
+ * @readOnly
+ * @property {org.openstreetmap.josm.plugins.scripting.model.ScriptRunMetrics} metrics the execution metrics
+ * @name metrics
+ * @static
+ * @summary Replies the execution metrics of the current script run.
+ */
+Object.defineProperty(josm, 'metrics', {
+  enumerable: true,
+  get: function () {
+    return ScriptRunMetricsRecorder.getMetrics()
+  }
+})
@@ -18,6 +18,7 @@
 const AddMultiCommand = Plugin.type('org.openstreetmap.josm.plugins.scripting.js.api.AddMultiCommand')
 const ChangeMultiCommand = Plugin.type('org.openstreetmap.josm.plugins.scripting.js.api.ChangeMultiCommand')
 const Change = Plugin.type('org.openstreetmap.josm.plugins.scripting.js.api.Change')
+const UndoRedoSupport = Plugin.type('org.openstreetmap.josm.plugins.scripting.js.api.UndoRedoSupport')
 
 import * as util from 'josm/util'
 import layers from 'josm/layers'
@@ -77,12 +78,9 @@ class AbstractCommand {
     util.assert(layer instanceof OsmDataLayer,
       'layer: expected OsmDataLayer, got {0}', layer)
     const cmd = this.createJOSMCommand(layer)
-    try {
-      layer.getDataSet().beginUpdate()
-      UndoRedoHandler.getInstance().add(cmd)
-    } finally {
-      layer.getDataSet().endUpdate()
-    }
+    // applies the command on the Swing EDT, even if the script is run
+    // in the background
+    UndoRedoSupport.apply(layer, cmd)
   }
 
   ensureOsmDataLayer(layer) {
@@ -451,12 +449,7 @@ export class CommandHistory {
         depth)
       util.assert(depth > 0, 'depth: expected number > 0, got {0}', depth)
     }
-    const undoRedoHandler = UndoRedoHandler.getInstance()
-    if (depth) {
-      undoRedoHandler.undo(depth)
-    } else {
-      undoRedoHandler.undo()
-    }
+    UndoRedoSupport.undo(depth || 1)
   }
 
   /**
@@ -470,12 +463,7 @@ export class CommandHistory {
         depth)
       util.assert(depth > 0, 'depth: expected number > 0, got {0}', depth)
     }
-    const undoRedoHandler = UndoRedoHandler.getInstance()
-    if (depth) {
-      undoRedoHandler.redo(depth)
-    } else {
-      undoRedoHandler.redo()
-    }
+    UndoRedoSupport.redo(depth || 1)
   }
 
   /**
@@ -0,0 +1,31 @@
+// ----------------------------------------------------------------------------
+// The JavaScript wrapper around a required CommonJS module.
+//
+// Evaluates to a function which invokes the module function with the module
+// object, its exports, and a require() function in the context of the module.
+// Replies the exports of the module.
+//
+// RequireFunction is populated in the scripting context.
+// ----------------------------------------------------------------------------
+(function(moduleID, moduleURI, moduleFunction) {
+    const URI = Java.type('java.net.URI')
+    const RequireFunction = Plugin.type('org.openstreetmap.josm.plugins.scripting.graalvm.RequireFunction')
+
+    const module = {
+        exports: {},
+        id: moduleID,
+        uri: moduleURI
+    }
+
+    const require = (module) => (moduleId) => {
+        if (module && module.uri) {
+            return new RequireFunction(new URI(module.uri)).apply(moduleId)
+        } else {
+            return new RequireFunction().apply(moduleId)
+        }
+    }
+
+    moduleFunction(module, module.exports, require(module))
+
+    return module.exports
+})
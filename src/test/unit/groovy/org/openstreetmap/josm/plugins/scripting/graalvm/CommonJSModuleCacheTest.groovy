@@ -108,4 +108,88 @@ class CommonJSModuleCacheTest extends GroovyTestCase {
             context?.close()
         }
     }
+
+    @Test
+    void "the least recently used module of a context should be evicted if the context exceeds the capacity"() {
+        def moduleUri1 = new File("/repo/base/dir/module1.js").toURI()
+        def moduleUri2 = new File("/repo/base/dir/module2.js").toURI()
+        def moduleUri3 = new File("/repo/base/dir/module3.js").toURI()
+        def context = null
+
+        try {
+            context = Context.create("js")
+            def cache = new CommonJSModuleCache(2)
+            cache.remember(moduleUri1, Value.asValue("module1"), context)
+            cache.remember(moduleUri2, Value.asValue("module2"), context)
+            // module1 is now more recently used than module2
+            assertTrue(cache.lookup(moduleUri1, context).isPresent())
+            cache.remember(moduleUri3, Value.asValue("module3"), context)
+
+            assertEquals(2, cache.size(context))
+            assertTrue(cache.lookup(moduleUri1, context).isPresent())
+            assertFalse(cache.lookup(moduleUri2, context).isPresent())
+            assertTrue(cache.lookup(moduleUri3, context).isPresent())
+            assertEquals(1L, cache.getStatistics().evictions())
+        } finally {
+            context?.close()
+        }
+    }
+
+    @Test
+    void "modules of other contexts should not be evicted"() {
+        def moduleUri1 = new File("/repo/base/dir/module1.js").toURI()
+        def moduleUri2 = new File("/repo/base/dir/module2.js").toURI()
+        def moduleUri3 = new File("/repo/base/dir/module3.js").toURI()
+        def context1 = null
+        def context2 = null
+
+        try {
+            context1 = Context.create("js")
+            context2 = Context.create("js")
+            def cache = new CommonJSModuleCache(2)
+            cache.remember(moduleUri1, Value.asValue("module1"), context1)
+            cache.remember(moduleUri2, Value.asValue("module2"), context1)
+            cache.remember(moduleUri1, Value.asValue("module1"), context2)
+            cache.remember(moduleUri2, Value.asValue("module2"), context2)
+            cache.remember(moduleUri3, Value.asValue("module3"), context2)
+
+            assertEquals(2, cache.size(context1))
+            assertTrue(cache.lookup(moduleUri1, context1).isPresent())
+            assertTrue(cache.lookup(moduleUri2, context1).isPresent())
+            assertEquals(2, cache.size(context2))
+            assertEquals(1L, cache.getStatistics().evictions())
+        } finally {
+            context1?.close()
+            context2?.close()
+        }
+    }
+
+    @Test
+    void "lookups should be counted as hits and misses"() {
+        def moduleUri = new File("/repo/base/dir/my-module.js").toURI()
+        def context = null
+
+        try {
+            context = Context.create("js")
+            def cache = new CommonJSModuleCache(10)
+            cache.lookup(moduleUri, context)
+            cache.remember(moduleUri, Value.asValue("my message"), context)
+            cache.lookup(moduleUri, context)
+            cache.lookup(moduleUri, context)
+
+            def statistics = cache.getStatistics()
+            assertEquals(2L, statistics.hits())
+            assertEquals(1L, statistics.misses())
+            assertEquals(2/3d, statistics.hitRate(), 0.001d)
+        } finally {
+            context?.close()
+        }
+    }
+
+    @Test
+    void "cache with a non-positive capacity should be rejected"() {
+        shouldFail(IllegalArgumentException) {
+            new CommonJSModuleCache(0)
+        }
+    }
 }
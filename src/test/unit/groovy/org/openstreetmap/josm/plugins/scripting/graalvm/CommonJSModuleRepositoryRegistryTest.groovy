@@ -0,0 +1,117 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.data.Preferences
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleRepositoryRegistry
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.FileSystemJSModuleRepository
+import org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys
+
+import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class CommonJSModuleRepositoryRegistryTest extends BaseTestCase {
+
+    List<File> repoDirs = []
+
+    File createRepoDir(String... modules) {
+        final dir = Files.createTempDirectory("commonjs-repo").toFile()
+        modules.each {new File(dir, "${it}.js").text = "exports.name = '${it}'"}
+        repoDirs << dir
+        return dir
+    }
+
+    @BeforeEach
+    void clearRepositories() {
+        CommonJSModuleRepositoryRegistry.instance.clear()
+    }
+
+    @AfterEach
+    void deleteRepoDirs() {
+        CommonJSModuleRepositoryRegistry.instance.clear()
+        repoDirs*.deleteDir()
+    }
+
+    @Test
+    void "saves the repositories set in the preferences dialog"() {
+        final registry = CommonJSModuleRepositoryRegistry.instance
+        final prefs = Preferences.main()
+        final saved = prefs.getList(PreferenceKeys.PREF_KEY_GRAALVM_COMMONJS_MODULE_REPOSITORIES)
+        try {
+            final repo = new FileSystemJSModuleRepository(createRepoDir("foo"))
+            registry.setRepositories([repo.baseURI])
+            registry.flushPendingSave()
+            assertEquals([repo.baseURI.toURL().toString()],
+                prefs.getList(PreferenceKeys.PREF_KEY_GRAALVM_COMMONJS_MODULE_REPOSITORIES))
+        } finally {
+            prefs.putList(PreferenceKeys.PREF_KEY_GRAALVM_COMMONJS_MODULE_REPOSITORIES, saved)
+        }
+    }
+
+    @Test
+    void "user defined repositories are an immutable snapshot"() {
+        final registry = CommonJSModuleRepositoryRegistry.instance
+        final repo1 = new FileSystemJSModuleRepository(createRepoDir("foo"))
+        final repo2 = new FileSystemJSModuleRepository(createRepoDir("bar"))
+        registry.addUserDefinedRepository(repo1)
+        final snapshot = registry.userDefinedRepositories
+        registry.addUserDefinedRepository(repo2)
+        assertEquals([repo1.baseURI], snapshot*.baseURI)
+        assertEquals([repo1.baseURI, repo2.baseURI], registry.userDefinedRepositories*.baseURI)
+        shouldFail(UnsupportedOperationException) {
+            registry.userDefinedRepositories.add(repo1)
+        }
+    }
+
+    @Test
+    void "resolves module IDs concurrently while repositories change"() {
+        final registry = CommonJSModuleRepositoryRegistry.instance
+        final fooDir = createRepoDir("foo")
+        final barDir = createRepoDir("bar")
+        registry.setUserDefinedRepositories([new FileSystemJSModuleRepository(fooDir)])
+
+        final errors = new CopyOnWriteArrayList<Throwable>()
+        final done = new AtomicBoolean(false)
+        final started = new CountDownLatch(4)
+        final resolvers = (1..4).collect {
+            Thread.start {
+                started.countDown()
+                try {
+                    while (!done.get()) {
+                        // 'foo' is provided by every snapshot
+                        final foo = registry.resolve("foo")
+                        assertTrue(foo.isPresent())
+                        assertEquals(new File(fooDir, "foo.js").toURI(), foo.get())
+                        // 'bar' is only provided by some of the snapshots
+                        final bar = registry.resolve("bar")
+                        bar.ifPresent {assertEquals(new File(barDir, "bar.js").toURI(), it)}
+                    }
+                } catch (Throwable e) {
+                    errors << e
+                }
+            }
+        }
+        started.await()
+        100.times {
+            registry.setUserDefinedRepositories([
+                new FileSystemJSModuleRepository(fooDir),
+                new FileSystemJSModuleRepository(barDir)
+            ])
+            registry.removeUserDefinedRepository(barDir.toURI())
+        }
+        done.set(true)
+        resolvers*.join()
+        assertTrue(errors.toString(), errors.isEmpty())
+
+        // the cache of resolved module IDs is consistent with the last snapshot
+        assertFalse(registry.resolve("bar").isPresent())
+        assertTrue(registry.resolve("foo").isPresent())
+    }
+}
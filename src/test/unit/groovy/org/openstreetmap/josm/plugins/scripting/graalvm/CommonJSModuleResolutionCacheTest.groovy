@@ -0,0 +1,126 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleResolutionCache
+
+import java.nio.file.Files
+
+class CommonJSModuleResolutionCacheTest extends GroovyTestCase {
+
+    File repoDir
+    CommonJSModuleResolutionCache cache
+
+    @BeforeEach
+    void setUp() {
+        repoDir = Files.createTempDirectory("commonjs-repo").toFile()
+        repoDir.deleteOnExit()
+        cache = new CommonJSModuleResolutionCache()
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close()
+        repoDir.deleteDir()
+    }
+
+    def resolveIn(File dir, String id) {
+        def file = new File(dir, id + ".js")
+        return { file.exists() ? Optional.of(file.toURI()) : Optional.empty() }
+    }
+
+    @Test
+    void "should cache successful and failed resolutions"() {
+        cache.setRepositories([repoDir.toURI()])
+        new File(repoDir, "foo.js").text = "exports.foo = 1"
+        def resolutions = 0
+        def resolver = { resolutions++; resolveIn(repoDir, it).call() }
+
+        def foo1 = cache.lookup("foo", null, { resolver("foo") })
+        def foo2 = cache.lookup("foo", null, { resolver("foo") })
+        def bar1 = cache.lookup("bar", null, { resolver("bar") })
+        def bar2 = cache.lookup("bar", null, { resolver("bar") })
+        assertTrue(foo1.isPresent())
+        assertEquals(foo1, foo2)
+        assertFalse(bar1.isPresent())
+        assertFalse(bar2.isPresent())
+        assertEquals(2, resolutions)
+        assertEquals(2L, cache.getStatistics().hits())
+    }
+
+    @Test
+    void "should invalidate resolutions if a file system repository changes"() {
+        cache.setRepositories([repoDir.toURI()])
+        def resolver = resolveIn(repoDir, "foo")
+        assertFalse(cache.lookup("foo", null, resolver).isPresent())
+
+        new File(repoDir, "foo.js").text = "exports.foo = 1"
+        // the watch service reports the change asynchronously
+        def deadline = System.currentTimeMillis() + 10_000
+        while (!cache.lookup("foo", null, resolver).isPresent()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50)
+        }
+        assertTrue(cache.lookup("foo", null, resolver).isPresent())
+    }
+
+    @Test
+    void "should invalidate resolutions if a jar file changes"() {
+        def jar = File.createTempFile("modules", ".jar")
+        jar.deleteOnExit()
+        JarFileRegistryTest.writeJarFile(jar, ["foo.js": "exports.foo = 1"])
+        cache.setRepositories([ModuleJarURI.buildJarUri(jar.toString())])
+        def resolutions = 0
+        def resolver = { resolutions++; Optional.empty() }
+
+        cache.lookup("foo", null, resolver)
+        cache.lookup("foo", null, resolver)
+        assertEquals(1, resolutions)
+
+        JarFileRegistryTest.writeJarFile(jar, ["foo.js": "exports.foo = 1", "bar.js": "exports.bar = 1"])
+        jar.setLastModified(jar.lastModified() + 2000)
+        cache.lookup("foo", null, resolver)
+        assertEquals(2, resolutions)
+    }
+
+    @Test
+    void "should invalidate resolutions if the repositories are reconfigured"() {
+        cache.setRepositories([repoDir.toURI()])
+        cache.lookup("foo", null, resolveIn(repoDir, "foo"))
+        assertEquals(1, cache.getStatistics().size())
+        cache.setRepositories([])
+        assertEquals(0, cache.getStatistics().size())
+    }
+
+    @Test
+    void "should not cache a resolution computed while the cache was invalidated"() {
+        cache.setRepositories([repoDir.toURI()])
+        def resolutions = 0
+        def resolver = {
+            resolutions++
+            // i.e. the watcher thread reports a change during the resolution
+            if (resolutions == 1) cache.invalidate()
+            Optional.empty()
+        }
+        cache.lookup("foo", null, resolver)
+        assertEquals(0, cache.getStatistics().size())
+        cache.lookup("foo", null, resolver)
+        assertEquals(2, resolutions)
+        assertEquals(1, cache.getStatistics().size())
+    }
+
+    @Test
+    void "should cache relative module IDs per context"() {
+        cache.setRepositories([repoDir.toURI()])
+        def context1 = new File(repoDir, "a/module.js").toURI()
+        def context2 = new File(repoDir, "b/module.js").toURI()
+        def resolutions = 0
+        def resolver = { resolutions++; Optional.empty() }
+        cache.lookup("./foo", context1, resolver)
+        cache.lookup("./foo", context2, resolver)
+        cache.lookup("./foo", context1, resolver)
+        assertEquals(2, resolutions)
+    }
+}
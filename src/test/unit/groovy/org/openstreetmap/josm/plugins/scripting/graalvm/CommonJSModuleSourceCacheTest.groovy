@@ -0,0 +1,57 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.graalvm.polyglot.Source
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.graalvm.commonjs.CommonJSModuleSourceCache
+
+class CommonJSModuleSourceCacheTest extends GroovyTestCase {
+
+    static Source buildSource(String content) {
+        return Source.newBuilder("js", content, "module.js").build()
+    }
+
+    @Test
+    void "should reply the same source for an unchanged module"() {
+        def cache = new CommonJSModuleSourceCache(10)
+        def uri = new File("/repo/base/dir/module1.js").toURI()
+        def builds = 0
+        def source1 = cache.lookup(uri, 1000L, { builds++; buildSource("1") })
+        def source2 = cache.lookup(uri, 1000L, { builds++; buildSource("1") })
+        assertSame(source1, source2)
+        assertEquals(1, builds)
+    }
+
+    @Test
+    void "should reply a new source if the module was modified"() {
+        def cache = new CommonJSModuleSourceCache(10)
+        def uri = new File("/repo/base/dir/module1.js").toURI()
+        def source1 = cache.lookup(uri, 1000L, { buildSource("1") })
+        def source2 = cache.lookup(uri, 2000L, { buildSource("2") })
+        assertNotSame(source1, source2)
+        assertEquals("2", source2.getCharacters().toString())
+        assertEquals(1, cache.size())
+    }
+
+    @Test
+    void "should evict the least recently used source"() {
+        def cache = new CommonJSModuleSourceCache(2)
+        def uri1 = new File("/repo/base/dir/module1.js").toURI()
+        def uri2 = new File("/repo/base/dir/module2.js").toURI()
+        def uri3 = new File("/repo/base/dir/module3.js").toURI()
+        def source1 = cache.lookup(uri1, 1000L, { buildSource("1") })
+        cache.lookup(uri2, 1000L, { buildSource("2") })
+        // module1 is now the most recently used source
+        cache.lookup(uri1, 1000L, { buildSource("1") })
+        cache.lookup(uri3, 1000L, { buildSource("3") })
+        assertEquals(2, cache.size())
+        assertSame(source1, cache.lookup(uri1, 1000L, { buildSource("1") }))
+    }
+
+    @Test
+    void "should reject a non-positive capacity"() {
+        shouldFail(IllegalArgumentException) {
+            new CommonJSModuleSourceCache(0)
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.graalvm.polyglot.Context
+import org.graalvm.polyglot.Engine
+import org.graalvm.polyglot.PolyglotException
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.preferences.graalvm.GraalVMPrivilegesModel
+
+import static org.openstreetmap.josm.plugins.scripting.preferences.graalvm.GraalVMPrivilegesModel.TernaryAccessPolicy.DENY
+
+class GraalVMContextPoolTest extends GroovyTestCase {
+
+    private Engine engine
+    private GraalVMContextPool pool
+
+    @BeforeEach
+    void createEngine() {
+        engine = Engine.create("js")
+    }
+
+    @AfterEach
+    void closeEngine() {
+        pool?.shutdown()
+        engine?.close()
+    }
+
+    private Context buildContext() {
+        return Context.newBuilder("js").engine(engine).build()
+    }
+
+    private void waitForIdleContexts(int count) {
+        def deadline = System.currentTimeMillis() + 30_000
+        while (pool.getIdleCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("pool wasn't replenished in time")
+            }
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    void "should build a context on demand if the pool is empty"() {
+        pool = new GraalVMContextPool(this::buildContext, 0)
+        def context = pool.acquire()
+        try {
+            assertEquals(2, context.eval("js", "1 + 1").asInt())
+        } finally {
+            context.close()
+        }
+        def stats = pool.getStatistics()
+        assertEquals(0L, stats.hits())
+        assertEquals(1L, stats.misses())
+        assertEquals(1L, stats.builds())
+        assertEquals(0, pool.getIdleCount())
+    }
+
+    @Test
+    void "should serve a pre-built context after replenishing"() {
+        pool = new GraalVMContextPool(this::buildContext, 1)
+        pool.replenish()
+        waitForIdleContexts(1)
+
+        def context = pool.acquire()
+        try {
+            assertEquals(3, context.eval("js", "1 + 2").asInt())
+        } finally {
+            context.close()
+        }
+        def stats = pool.getStatistics()
+        assertEquals(1L, stats.hits())
+        assertEquals(0L, stats.misses())
+        assertEquals(1.0d, stats.hitRate())
+
+        // the acquired context is replaced in the background
+        waitForIdleContexts(1)
+    }
+
+    @Test
+    void "should not keep more idle contexts than its capacity"() {
+        pool = new GraalVMContextPool(this::buildContext, 2)
+        pool.replenish()
+        pool.replenish()
+        waitForIdleContexts(2)
+        pool.replenish()
+        Thread.sleep(100)
+        assertEquals(2, pool.getIdleCount())
+    }
+
+    @Test
+    void "clear should discard idle contexts"() {
+        pool = new GraalVMContextPool(this::buildContext, 1)
+        pool.replenish()
+        waitForIdleContexts(1)
+        pool.clear()
+        assertEquals(0, pool.getIdleCount())
+    }
+
+    @Test
+    void "should not serve a context built before a privilege was revoked"() {
+        def model = new GraalVMPrivilegesModel()
+        pool = new GraalVMContextPool({
+            def builder = Context.newBuilder("js").engine(engine)
+            model.prepareContextBuilder(builder)
+            builder.build()
+        }, 1, model::getVersion)
+        pool.replenish()
+        waitForIdleContexts(1)
+
+        // no host access for new contexts
+        model.setIOPolicy(DENY)
+        def context = pool.acquire()
+        try {
+            shouldFail(PolyglotException) {
+                context.eval("js", "Java.type('java.io.File')")
+            }
+        } finally {
+            context.close()
+        }
+        def stats = pool.getStatistics()
+        assertEquals(0L, stats.hits())
+        assertEquals(1L, stats.misses())
+    }
+
+    @Test
+    void "should reject acquiring a context after shutdown"() {
+        pool = new GraalVMContextPool(this::buildContext, 1)
+        pool.shutdown()
+        shouldFail(IllegalStateException) {
+            pool.acquire()
+        }
+    }
+
+    @Test
+    void "should reject a negative capacity"() {
+        shouldFail(IllegalArgumentException) {
+            new GraalVMContextPool(this::buildContext, -1)
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.junit.jupiter.api.Test
+
+class GraalVMSourceCacheTest extends GroovyTestCase {
+
+    static File createScriptFile(String content) {
+        def file = File.createTempFile("script", ".mjs")
+        file.deleteOnExit()
+        file.text = content
+        return file
+    }
+
+    @Test
+    void "should reply the same source for an unchanged file"() {
+        def cache = new GraalVMSourceCache(10)
+        def file = createScriptFile("console.log('hello')")
+        def source1 = cache.lookup("js", file)
+        def source2 = cache.lookup("js", file)
+        assertSame(source1, source2)
+        assertEquals(file.canonicalPath, source1.getPath())
+        assertEquals("application/javascript+module", source1.getMimeType())
+
+        def stats = cache.getStatistics()
+        assertEquals(1L, stats.hits())
+        assertEquals(1L, stats.misses())
+        assertEquals(1, stats.size())
+    }
+
+    @Test
+    void "should reply a new source if the file content changed"() {
+        def cache = new GraalVMSourceCache(10)
+        def file = createScriptFile("console.log('hello')")
+        def source1 = cache.lookup("js", file)
+        file.text = "console.log('world')"
+        def source2 = cache.lookup("js", file)
+        assertNotSame(source1, source2)
+        assertEquals("console.log('world')", source2.getCharacters().toString())
+        assertEquals(2L, cache.getStatistics().misses())
+        assertEquals(1, cache.getStatistics().size())
+    }
+
+    @Test
+    void "should reply a source without a path for a later run"() {
+        def cache = new GraalVMSourceCache(10)
+        def file = createScriptFile("console.log('hello')")
+        def source1 = cache.lookup("js", file, 1)
+        def source2 = cache.lookup("js", file, 2)
+        assertNotSame(source1, source2)
+        assertNull(source2.getPath())
+        assertEquals(file.canonicalPath + "#2", source2.getName())
+        assertEquals("application/javascript+module", source2.getMimeType())
+        assertEquals("console.log('hello')", source2.getCharacters().toString())
+        assertSame(source2, cache.lookup("js", file, 2))
+        assertEquals(2, cache.getStatistics().size())
+    }
+
+    @Test
+    void "should reject an illegal run"() {
+        def cache = new GraalVMSourceCache(10)
+        def file = createScriptFile("console.log('hello')")
+        shouldFail(IllegalArgumentException) {
+            cache.lookup("js", file, 0)
+        }
+    }
+
+    @Test
+    void "should evict the least recently used source"() {
+        def cache = new GraalVMSourceCache(2)
+        def file1 = createScriptFile("1")
+        def file2 = createScriptFile("2")
+        def file3 = createScriptFile("3")
+        def source1 = cache.lookup("js", file1)
+        cache.lookup("js", file2)
+        // file1 is now the most recently used source
+        assertSame(source1, cache.lookup("js", file1))
+        cache.lookup("js", file3)
+        assertEquals(2, cache.getStatistics().size())
+        assertSame(source1, cache.lookup("js", file1))
+        // file2 was evicted
+        def misses = cache.getStatistics().misses()
+        cache.lookup("js", file2)
+        assertEquals(misses + 1, cache.getStatistics().misses())
+    }
+
+    @Test
+    void "should fail for a missing file"() {
+        def cache = new GraalVMSourceCache(2)
+        shouldFail(IOException) {
+            cache.lookup("js", new File("/no/such/dir/script.mjs"))
+        }
+    }
+
+    @Test
+    void "should reject an illegal capacity"() {
+        shouldFail(IllegalArgumentException) {
+            new GraalVMSourceCache(0)
+        }
+    }
+}
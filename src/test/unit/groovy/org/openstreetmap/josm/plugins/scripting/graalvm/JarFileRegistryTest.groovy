@@ -0,0 +1,98 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.junit.jupiter.api.Test
+
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class JarFileRegistryTest extends GroovyTestCase {
+
+    static File createJarFile(Map<String, String> entries) {
+        def file = File.createTempFile("modules", ".jar")
+        file.deleteOnExit()
+        writeJarFile(file, entries)
+        return file
+    }
+
+    static void writeJarFile(File file, Map<String, String> entries) {
+        file.withOutputStream { os ->
+            def jos = new JarOutputStream(os)
+            entries.each { name, content ->
+                jos.putNextEntry(new JarEntry(name))
+                jos.write(content.getBytes("UTF-8"))
+                jos.closeEntry()
+            }
+            jos.finish()
+        }
+    }
+
+    @Test
+    void "should reply the same jar file for an unchanged file"() {
+        def registry = new JarFileRegistry()
+        def file = createJarFile(["foo.js": "module.exports = 1"])
+        def handle1 = registry.acquire(file)
+        def handle2 = registry.acquire(file)
+        try {
+            assertSame(handle1.getJarFile(), handle2.getJarFile())
+            assertNotNull(handle1.getJarFile().getJarEntry("foo.js"))
+            assertEquals(1, registry.size())
+        } finally {
+            handle1.close()
+            handle2.close()
+        }
+        // still open and reused after it was released
+        def handle3 = registry.acquire(file)
+        try {
+            assertSame(handle1.getJarFile(), handle3.getJarFile())
+        } finally {
+            handle3.close()
+        }
+    }
+
+    @Test
+    void "should reopen a modified jar file"() {
+        def registry = new JarFileRegistry()
+        def file = createJarFile(["foo.js": "module.exports = 1"])
+        def handle1 = registry.acquire(file)
+        writeJarFile(file, ["foo.js": "module.exports = 1", "bar.js": "module.exports = 2"])
+        file.setLastModified(file.lastModified() + 2000)
+        def handle2 = registry.acquire(file)
+        try {
+            assertNotSame(handle1.getJarFile(), handle2.getJarFile())
+            assertNotNull(handle2.getJarFile().getJarEntry("bar.js"))
+            assertEquals(1, registry.size())
+        } finally {
+            handle1.close()
+            handle2.close()
+        }
+    }
+
+    @Test
+    void "should reopen an invalidated jar file"() {
+        def registry = new JarFileRegistry()
+        def file = createJarFile(["foo.js": "module.exports = 1"])
+        def handle1 = registry.acquire(file)
+        handle1.close()
+        registry.invalidate(file)
+        assertEquals(0, registry.size())
+        def handle2 = registry.acquire(file)
+        try {
+            assertNotSame(handle1.getJarFile(), handle2.getJarFile())
+        } finally {
+            handle2.close()
+        }
+    }
+
+    @Test
+    void "should fail to acquire a file which isn't a jar file"() {
+        def registry = new JarFileRegistry()
+        def file = File.createTempFile("no-jar", ".txt")
+        file.deleteOnExit()
+        file.text = "not a jar file"
+        shouldFail(IOException) {
+            registry.acquire(file)
+        }
+        assertEquals(0, registry.size())
+    }
+}
@@ -0,0 +1,70 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import groovy.test.GroovyTestCase
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.data.Preferences
+
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.file.Files
+
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_GRAALVM_MAP_MODULE_FILES
+
+class MappedModuleFilesTest extends GroovyTestCase {
+
+    @Test
+    void "should read a small module file onto the heap"() {
+        final file = Files.createTempFile("module", ".js")
+        file.toFile().setText("exports.foo = 1", "UTF-8")
+        final content = MappedModuleFiles.read(file)
+        assertFalse(content instanceof MappedByteBuffer)
+        assertEquals("exports.foo = 1", MappedModuleFiles.decode("", content, ""))
+    }
+
+    @Test
+    void "should map a large module file"() {
+        final file = Files.createTempFile("module", ".js")
+        final source = "exports.table = [" + ("1, " * 40_000) + "]"
+        file.toFile().setText(source, "UTF-8")
+        final prefs = Preferences.main()
+        prefs.putBoolean(PREF_KEY_GRAALVM_MAP_MODULE_FILES, true)
+        try {
+            final content = MappedModuleFiles.read(file)
+            assertTrue(content instanceof MappedByteBuffer)
+            assertEquals("(" + source + ")", MappedModuleFiles.decode("(", content, ")"))
+        } finally {
+            prefs.put(PREF_KEY_GRAALVM_MAP_MODULE_FILES, null)
+        }
+    }
+
+    @Test
+    void "should read a large module file onto the heap if mapping is disabled"() {
+        final file = Files.createTempFile("module", ".js")
+        final source = "exports.table = [" + ("1, " * 40_000) + "]"
+        file.toFile().setText(source, "UTF-8")
+        final prefs = Preferences.main()
+        prefs.putBoolean(PREF_KEY_GRAALVM_MAP_MODULE_FILES, false)
+        try {
+            final content = MappedModuleFiles.read(file)
+            assertFalse(content instanceof MappedByteBuffer)
+            assertEquals(source, MappedModuleFiles.decode("", content, ""))
+        } finally {
+            prefs.put(PREF_KEY_GRAALVM_MAP_MODULE_FILES, null)
+        }
+    }
+
+    @Test
+    void "should decode multi-byte characters across chunk boundaries"() {
+        // 3-byte characters, decoded in chunks of 8K chars
+        final source = "exports.s = '" + ("€äö" * 10_000) + "'"
+        final decoded = MappedModuleFiles.decode(
+            "(function() {", ByteBuffer.wrap(source.getBytes("UTF-8")), "\n})")
+        assertEquals("(function() {" + source + "\n})", decoded)
+    }
+
+    @Test
+    void "should replace malformed input"() {
+        final content = ByteBuffer.wrap([0x61, 0xff, 0x62] as byte[])
+        assertEquals("a�b", MappedModuleFiles.decode("", content, ""))
+    }
+}
@@ -0,0 +1,132 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+
+import static org.junit.Assert.*
+
+class ModuleLoadProfilerTest extends BaseTestCase {
+
+    @BeforeEach
+    void enableProfiler() {
+        ModuleLoadProfiler.setEnabled(true)
+    }
+
+    @AfterEach
+    void disableProfiler() {
+        ModuleLoadProfiler.setEnabled(false)
+    }
+
+    @Test
+    void recordCommonJSModules() {
+        try (def session = ModuleLoadProfiler.start("test.js")) {
+            assertTrue(session.isRecording())
+            ModuleLoadProfiler.enterCommonJSModule("module1")
+            ModuleLoadProfiler.commonJSModuleResolved("file:/modules/module1.js", 100)
+            ModuleLoadProfiler.commonJSModuleRead(200)
+            ModuleLoadProfiler.commonJSModuleParsed(300)
+            // module1 requires module2
+            ModuleLoadProfiler.enterCommonJSModule("module2")
+            ModuleLoadProfiler.commonJSModuleResolved("file:/modules/module2.js", 10)
+            ModuleLoadProfiler.exitCommonJSModule(true)
+            ModuleLoadProfiler.commonJSModuleEvaluated(400)
+            ModuleLoadProfiler.exitCommonJSModule(false)
+            // module1 is required a second time
+            ModuleLoadProfiler.enterCommonJSModule("module1")
+            ModuleLoadProfiler.commonJSModuleResolved("file:/modules/module1.js", 50)
+            ModuleLoadProfiler.commonJSModuleCached()
+            ModuleLoadProfiler.exitCommonJSModule(false)
+        }
+        def profile = ModuleLoadProfiler.getLastProfile()
+        assertEquals("test.js", profile.scriptName)
+        assertEquals(3, profile.moduleCount)
+
+        def root = profile.root
+        assertEquals(2, root.children.size())
+        def module1 = root.children[0]
+        assertEquals("module1", module1.moduleId)
+        assertEquals("file:/modules/module1.js", module1.uri)
+        assertEquals(100L, module1.resolveNanos)
+        assertEquals(200L, module1.readNanos)
+        assertEquals(300L, module1.parseNanos)
+        assertEquals(400L, module1.evalNanos)
+        assertFalse(module1.cached)
+
+        def module2 = module1.children[0]
+        assertEquals("module2", module2.moduleId)
+        assertTrue(module2.failed)
+        assertEquals(["test.js", "module1"], module2.importerChain*.moduleId)
+
+        def cached = root.children[1]
+        assertTrue(cached.cached)
+        assertEquals(0L, cached.readNanos)
+    }
+
+    @Test
+    void recordESModules() {
+        final repo = "es-module-repo/1234"
+        try (def ignored = ModuleLoadProfiler.start("test.mjs")) {
+            // the sequence of file system calls issued by GraalJS for
+            //   import josm from 'josm'; import {builder} from 'josm/builder'
+            // where 'josm' imports './util'
+            ModuleLoadProfiler.esModulePathParsed("josm", 10)
+            ModuleLoadProfiler.esModulePathResolved(20)
+            ModuleLoadProfiler.esModuleRead("$repo/josm.mjs", 30)
+            ModuleLoadProfiler.esModulePathParsed("/current/dir", 1)
+            ModuleLoadProfiler.esModulePathParsed("$repo/josm.mjs", 1)
+            ModuleLoadProfiler.esModulePathResolved(5)
+            ModuleLoadProfiler.esModuleRead("$repo/josm/util.mjs", 40)
+            ModuleLoadProfiler.esModulePathParsed("/current/dir", 1)
+            ModuleLoadProfiler.esModulePathParsed("josm/builder", 1)
+            ModuleLoadProfiler.esModulePathResolved(5)
+            ModuleLoadProfiler.esModuleRead("$repo/josm/builder.mjs", 50)
+        }
+        def root = ModuleLoadProfiler.getLastProfile().root
+        assertEquals(["josm", "josm/builder"], root.children*.moduleId)
+
+        def josm = root.children[0]
+        assertEquals("$repo/josm.mjs".toString(), josm.uri)
+        assertEquals(30L, josm.readNanos)
+        assertTrue(josm.parseNanos >= 0)
+        assertEquals(-1L, josm.evalNanos)
+
+        def util = josm.children[0]
+        assertEquals("$repo/josm/util.mjs".toString(), util.moduleId)
+        assertEquals(["test.mjs", "josm"], util.importerChain*.moduleId)
+
+        // GraalJS doesn't tell when the last module is parsed
+        def builder = root.children[1]
+        assertEquals(-1L, builder.parseNanos)
+        assertTrue(builder.children.isEmpty())
+    }
+
+    @Test
+    void exportAsJson() {
+        try (def ignored = ModuleLoadProfiler.start("test.js")) {
+            ModuleLoadProfiler.enterCommonJSModule("module1")
+            ModuleLoadProfiler.commonJSModuleResolved("file:/modules/\"module1\".js", 100)
+            ModuleLoadProfiler.exitCommonJSModule(false)
+        }
+        def json = ModuleLoadProfiler.getLastProfile().toJson()
+        assertTrue(json.contains('"startTime": '))
+        assertTrue(json.contains('"kind": "commonjs"'))
+        assertTrue(json.contains('"id": "module1"'))
+        assertTrue(json.contains('"uri": "file:/modules/\\"module1\\".js"'))
+        assertTrue(json.contains('"importers": ["test.js"]'))
+        assertTrue(json.contains('"resolveNanos": 100'))
+    }
+
+    @Test
+    void doesNotRecordWhenDisabled() {
+        ModuleLoadProfiler.setEnabled(false)
+        def lastProfile = ModuleLoadProfiler.getLastProfile()
+        try (def session = ModuleLoadProfiler.start("test.js")) {
+            assertFalse(session.isRecording())
+            ModuleLoadProfiler.enterCommonJSModule("module1")
+            ModuleLoadProfiler.exitCommonJSModule(false)
+        }
+        assertSame(lastProfile, ModuleLoadProfiler.getLastProfile())
+    }
+}
@@ -0,0 +1,92 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule
+
+import org.graalvm.polyglot.Context
+import org.graalvm.polyglot.Engine
+import org.graalvm.polyglot.HostAccess
+import org.graalvm.polyglot.Source
+import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMFacade
+import org.openstreetmap.josm.plugins.scripting.model.RelativePath
+
+/**
+ * Compares the cold import time of the API V3 module <code>josm</code> when it is
+ * loaded from the individual modules in the plugin jar and when it is loaded from
+ * the bundled modules.
+ * <p>
+ * Every import runs in a new polyglot engine and a new repository, so that neither
+ * parsed code nor module content is shared between the imports.
+ * <p>
+ * Run it with <code>./gradlew benchmarkApiV3Import</code>, or with
+ * <pre>
+ *     ApiV3ImportBenchmark &lt;path to scripting.jar&gt; [iterations]
+ * </pre>
+ */
+class ApiV3ImportBenchmark {
+
+    static final String SCRIPT = """
+        import josm from 'josm'
+        typeof josm.alert
+        """
+
+    static double importOnce(final File pluginJar, final String root) {
+        final resolver = ESModuleResolver.instance
+        resolver.setApiRepository(new JarESModuleRepository(pluginJar, RelativePath.parse(root)))
+        final engine = Engine.newBuilder("js")
+            .option("engine.WarnInterpreterOnly", "false")
+            .build()
+        try {
+            final context = Context.newBuilder("js")
+                .engine(engine)
+                .allowHostAccess(HostAccess.ALL)
+                .allowHostClassLookup(className -> true)
+                .allowIO(true)
+                .fileSystem(resolver)
+                .build()
+            try {
+                GraalVMFacade.populateContext(context)
+                final source = Source.newBuilder("js", SCRIPT, "benchmark.mjs")
+                    .mimeType("application/javascript+module")
+                    .build()
+                final start = System.nanoTime()
+                context.eval(source)
+                return (System.nanoTime() - start) / 1_000_000d
+            } finally {
+                context.close()
+            }
+        } finally {
+            engine.close()
+        }
+    }
+
+    static double median(final List<Double> values) {
+        final sorted = values.sort(false)
+        final middle = sorted.size().intdiv(2)
+        return sorted.size() % 2 == 1
+            ? sorted[middle]
+            : (sorted[middle - 1] + sorted[middle]) / 2
+    }
+
+    static void main(final String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ApiV3ImportBenchmark <path to scripting.jar> [iterations]")
+            System.exit(1)
+        }
+        final pluginJar = new File(args[0])
+        final iterations = args.length > 1 ? args[1] as int : 10
+        final variants = [
+            "individual modules": ESModuleResolver.BUILTIN_MODULES_ROOT,
+            "bundled modules": ESModuleResolver.BUNDLED_BUILTIN_MODULES_ROOT
+        ]
+        final Map<String, List<Double>> times = variants.keySet().collectEntries {[(it): []]}
+
+        // warm up the host code, then alternate the variants to even out drift
+        variants.values().each {root -> 2.times {importOnce(pluginJar, root)}}
+        iterations.times {
+            variants.each {name, root -> times[name] << importOnce(pluginJar, root)}
+        }
+        variants.keySet().each {name ->
+            printf("%-20s median %8.1f ms, min %8.1f ms, max %8.1f ms (%d iterations)%n",
+                name, median(times[name]), times[name].min(), times[name].max(), iterations)
+        }
+        System.exit(0)
+    }
+}
@@ -0,0 +1,176 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+import org.openstreetmap.josm.plugins.scripting.model.RelativePath
+
+import java.nio.file.Files
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class ESModuleImportMapTest extends BaseTestCase {
+
+    static File createRepoDir() {
+        final root = Files.createTempDirectory("esmodules").toFile()
+        new File(root, "lib/vendor").mkdirs()
+        new File(root, "lib/foo-impl.mjs").text = "export const foo = 'foo'"
+        new File(root, "lib/vendor/bar.js").text = "export const bar = 'bar'"
+        new File(root, "lib/vendor/bar.mjs").text = "export const bar = 'bar'"
+        new File(root, "baz").text = "export const baz = 'baz'"
+        new File(root, "baz.mjs").text = "export const baz = 'baz'"
+        new File(root, ".git").mkdirs()
+        new File(root, ".git/hook.js").text = ""
+        return root
+    }
+
+    @Test
+    void "can parse an import map"() {
+        final importMap = ESModuleImportMap.parse(new StringReader("""
+            {
+              "imports": {
+                "foo": "./lib/foo-impl.mjs",
+                "vendor/": "./lib/vendor/",
+                "with\\"quote": "lib/quote.mjs"
+              },
+              "scopes": {"./lib/": {"x": "./y.mjs"}, "n": [1, 2.5, true, null]}
+            }
+            """))
+        assertEquals([
+            "foo": "./lib/foo-impl.mjs",
+            "vendor/": "./lib/vendor/",
+            "with\"quote": "lib/quote.mjs"
+        ], importMap.entries)
+    }
+
+    @Test
+    void "rejects malformed import maps"() {
+        shouldFail(IllegalArgumentException) {
+            ESModuleImportMap.parse(new StringReader('{"imports": {"foo": }}'))
+        }
+        shouldFail(IllegalArgumentException) {
+            ESModuleImportMap.parse(new StringReader('{"imports": {"foo": "foo.mjs"}'))
+        }
+        shouldFail(IllegalArgumentException) {
+            ESModuleImportMap.parse(new StringReader('{"imports": {"foo": "foo.mjs"}} trailing'))
+        }
+    }
+
+    @Test
+    void "rejects targets outside of the repository"() {
+        shouldFail(IllegalArgumentException) {
+            new ESModuleImportMap(["foo": "../foo.mjs"])
+        }
+        shouldFail(IllegalArgumentException) {
+            new ESModuleImportMap(["foo": "/etc/foo.mjs"])
+        }
+    }
+
+    @Test
+    void "can resolve mapped specifiers"() {
+        final root = createRepoDir()
+        final repo = new FileSystemESModuleRepository(root)
+        final importMap = new ESModuleImportMap([
+            "foo": "./lib/foo-impl.mjs",
+            "vendor/": "./lib/vendor/"
+        ])
+        assertEquals(repo.uniquePathPrefix.append("lib", "foo-impl.mjs"),
+            importMap.resolve(repo, RelativePath.parse("foo")))
+        // a prefix entry is resolved in the repository
+        assertEquals(repo.uniquePathPrefix.append("lib", "vendor", "bar.mjs"),
+            importMap.resolve(repo, RelativePath.parse("vendor/bar")))
+        assertNull(importMap.resolve(repo, RelativePath.parse("vendor/no-such-module")))
+        assertNull(importMap.resolve(repo, RelativePath.parse("bar")))
+    }
+
+    @Test
+    void "can generate an import map by scanning a directory"() {
+        final importMap = ESModuleImportMap.scan(createRepoDir())
+        // 'baz' isn't mapped, because the file 'baz' takes precedence over 'baz.mjs'
+        assertEquals([
+            "lib/foo-impl": "./lib/foo-impl.mjs",
+            "lib/vendor/bar": "./lib/vendor/bar.mjs"
+        ], importMap.entries)
+    }
+
+    @Test
+    void "can write and read an import map"() {
+        final importMap = new ESModuleImportMap([
+            "foo": "./lib/foo-impl.mjs",
+            "vendor/": "./lib/vendor/"
+        ])
+        final json = importMap.toJson()
+        assertEquals(importMap.entries, ESModuleImportMap.parse(new StringReader(json)).entries)
+    }
+
+    @Test
+    void "file system repository loads its import map"() {
+        final root = createRepoDir()
+        new File(root, ESModuleImportMap.IMPORT_MAP_FILE_NAME).text = '{"imports": {"foo": "./lib/foo-impl.mjs"}}'
+        final repo = new FileSystemESModuleRepository(root)
+        assertEquals(["foo": "./lib/foo-impl.mjs"], repo.importMap.entries)
+    }
+
+    @Test
+    void "jar repository loads its import map"() {
+        final jarFile = Files.createTempFile("esmodules", ".jar").toFile()
+        new JarOutputStream(new FileOutputStream(jarFile)).withCloseable {jar ->
+            jar.putNextEntry(new JarEntry("js/"))
+            jar.putNextEntry(new JarEntry("js/lib/foo-impl.mjs"))
+            jar.write("export const foo = 'foo'".bytes)
+            jar.putNextEntry(new JarEntry("js/import-map.json"))
+            jar.write('{"imports": {"foo": "./lib/foo-impl.mjs"}}'.bytes)
+        }
+        final repo = new JarESModuleRepository(jarFile, RelativePath.parse("js"))
+        final resolved = repo.importMap.resolve(repo, RelativePath.parse("foo"))
+        assertEquals(repo.uniquePathPrefix.append("js", "lib", "foo-impl.mjs"), resolved)
+        assertEquals(resolved, repo.resolveModulePath(resolved))
+    }
+
+    @Test
+    void "resolver resolves mapped specifiers"() {
+        final root = createRepoDir()
+        new File(root, ESModuleImportMap.IMPORT_MAP_FILE_NAME).text = '{"imports": {"foo": "./lib/foo-impl.mjs"}}'
+        final repo = new FileSystemESModuleRepository(root)
+        final resolver = new ESModuleResolver()
+        resolver.addUserDefinedRepository(repo)
+        assertEquals(repo.uniquePathPrefix.append("lib", "foo-impl.mjs").toPath(), resolver.parsePath("foo"))
+        // unmapped specifiers are still resolved by probing the repositories
+        assertEquals(repo.uniquePathPrefix.append("lib", "vendor", "bar.mjs").toPath(),
+            resolver.parsePath("lib/vendor/bar"))
+    }
+
+    @Test
+    void "resolver consults the import maps in the order of the repositories"() {
+        final root1 = Files.createTempDirectory("esmodules").toFile()
+        new File(root1, "foo.mjs").text = "export const foo = 'foo1'"
+        final root2 = createRepoDir()
+        new File(root2, ESModuleImportMap.IMPORT_MAP_FILE_NAME).text = '{"imports": {"foo": "./lib/foo-impl.mjs"}}'
+        final repo1 = new FileSystemESModuleRepository(root1)
+        final repo2 = new FileSystemESModuleRepository(root2)
+        final resolver = new ESModuleResolver()
+        resolver.addUserDefinedRepository(repo1)
+        resolver.addUserDefinedRepository(repo2)
+        // the module in the first repository isn't overridden by the import map
+        // of the second repository
+        assertEquals(repo1.uniquePathPrefix.append("foo.mjs").toPath(), resolver.parsePath("foo"))
+    }
+
+    @Test
+    void "resolver probes the repository if a mapped file doesn't exist anymore"() {
+        final root = createRepoDir()
+        final repo = new FileSystemESModuleRepository(root)
+        final importMap = ESModuleImportMap.scan(root)
+        assertEquals("./lib/foo-impl.mjs", importMap.entries["lib/foo-impl"])
+        new File(root, "lib/foo-impl.mjs").renameTo(new File(root, "lib/foo-impl.js"))
+        assertNull(importMap.resolve(repo, RelativePath.parse("lib/foo-impl")))
+
+        new File(root, ESModuleImportMap.IMPORT_MAP_FILE_NAME).text = importMap.toJson()
+        final resolver = new ESModuleResolver()
+        resolver.addUserDefinedRepository(repo)
+        assertEquals(repo.uniquePathPrefix.append("lib", "foo-impl.js").toPath(),
+            resolver.parsePath("lib/foo-impl"))
+    }
+}
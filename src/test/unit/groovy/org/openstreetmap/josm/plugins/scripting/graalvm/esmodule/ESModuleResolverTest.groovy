@@ -13,6 +13,7 @@ import java.nio.file.Path
 
 import static org.junit.Assert.assertEquals
 import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertSame
 
 class ESModuleResolverTest extends BaseTestCase {
 
@@ -108,4 +109,43 @@ class ESModuleResolverTest extends BaseTestCase {
         final result = context.eval(source)
         assertEquals("default-export", result.asString())
     }
+
+    @Test
+    void "resolves a full module repo path only in the repository with the matching prefix"() {
+        final resolver = ESModuleResolver.instance
+        final repoDir = new File(getProjectHome(), "src/test/resources/es-modules")
+        final repo1 = new FileSystemESModuleRepository(repoDir)
+        final repo2 = new FileSystemESModuleRepository(repoDir)
+        resolver.setUserDefinedRepositories(List.of(repo1, repo2))
+
+        final path = repo2.getUniquePathPrefix().append("foo").toString()
+        final resolvedPath = resolver.parsePath(path)
+        assertEquals(Path.of(repo2.getUniquePathPrefix().toString(), "foo.mjs").toString(), resolvedPath.toString())
+
+        // an unknown repository prefix isn't resolved in any repository
+        final unknown = new FileSystemESModuleRepository(repoDir).getUniquePathPrefix().append("foo").toString()
+        assertEquals(unknown, resolver.parsePath(unknown).toString())
+    }
+
+    @Test
+    void "replies an immutable snapshot of the user defined repositories"() {
+        final resolver = ESModuleResolver.instance
+        final repoDir = new File(getProjectHome(), "src/test/resources/es-modules")
+        final repo1 = new FileSystemESModuleRepository(repoDir)
+        final repo2 = new FileSystemESModuleRepository(repoDir)
+        resolver.setUserDefinedRepositories(List.of(repo1))
+        final snapshot = resolver.getUserDefinedRepositories()
+
+        resolver.addUserDefinedRepository(repo2)
+        assertEquals(1, snapshot.size())
+        assertEquals(2, resolver.getUserDefinedRepositories().size())
+
+        resolver.removeUserDefinedRepository(repo1)
+        assertSame(repo2, resolver.getUserDefinedRepositories()[0])
+        final path = repo1.getUniquePathPrefix().append("foo").toString()
+        assertEquals(path, resolver.parsePath(path).toString())
+
+        resolver.setUserDefinedRepositories(null)
+        assertEquals(0, resolver.getUserDefinedRepositories().size())
+    }
 }
@@ -0,0 +1,101 @@
+package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule
+
+import groovy.test.GroovyTestCase
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel
+import org.junit.jupiter.api.Test
+
+import java.nio.channels.Channels
+import java.nio.channels.NonWritableChannelException
+import java.nio.ByteBuffer
+
+class ESModuleSourceCacheTest extends GroovyTestCase {
+
+    static String readAll(channel) {
+        return Channels.newInputStream(channel).getText("UTF-8")
+    }
+
+    static loaderFor(String content, counter = null) {
+        return {
+            if (counter != null) counter[0]++
+            new SeekableInMemoryByteChannel(content.getBytes("UTF-8"))
+        } as ESModuleSourceCache.ContentLoader
+    }
+
+    @Test
+    void "should serve cached content for an unmodified module"() {
+        def cache = new ESModuleSourceCache(1024, false)
+        def reads = [0]
+        def content1 = readAll(cache.lookup("repo/foo.mjs", 1000L, loaderFor("export const foo = 1", reads)))
+        def content2 = readAll(cache.lookup("repo/foo.mjs", 1000L, loaderFor("export const foo = 1", reads)))
+        assertEquals("export const foo = 1", content1)
+        assertEquals(content1, content2)
+        assertEquals(1, reads[0])
+        assertEquals(1L, cache.getStatistics().hits())
+    }
+
+    @Test
+    void "should read a modified module again"() {
+        def cache = new ESModuleSourceCache(1024, true /* off heap */)
+        readAll(cache.lookup("repo/foo.mjs", 1000L, loaderFor("export const foo = 1")))
+        def content = readAll(cache.lookup("repo/foo.mjs", 2000L, loaderFor("export const foo = 2")))
+        assertEquals("export const foo = 2", content)
+        assertEquals(2L, cache.getStatistics().misses())
+        assertEquals(20L, cache.getStatistics().sizeBytes())
+    }
+
+    @Test
+    void "should not cache a module with unknown modification time"() {
+        def cache = new ESModuleSourceCache(1024, false)
+        def reads = [0]
+        readAll(cache.lookup("repo/foo.mjs", -1L, loaderFor("export const foo = 1", reads)))
+        readAll(cache.lookup("repo/foo.mjs", -1L, loaderFor("export const foo = 1", reads)))
+        assertEquals(2, reads[0])
+        assertEquals(0L, cache.getStatistics().sizeBytes())
+    }
+
+    @Test
+    void "should evict the least recently used content"() {
+        def cache = new ESModuleSourceCache(25, false)
+        readAll(cache.lookup("repo/a.mjs", 1000L, loaderFor("0123456789")))
+        readAll(cache.lookup("repo/b.mjs", 1000L, loaderFor("0123456789")))
+        // a.mjs is now the most recently used content
+        readAll(cache.lookup("repo/a.mjs", 1000L, loaderFor("0123456789")))
+        readAll(cache.lookup("repo/c.mjs", 1000L, loaderFor("0123456789")))
+
+        def statistics = cache.getStatistics()
+        assertEquals(1L, statistics.evictions())
+        assertEquals(20L, statistics.sizeBytes())
+        def reads = [0]
+        readAll(cache.lookup("repo/a.mjs", 1000L, loaderFor("0123456789", reads)))
+        readAll(cache.lookup("repo/b.mjs", 1000L, loaderFor("0123456789", reads)))
+        assertEquals(1, reads[0])
+    }
+
+    @Test
+    void "should reply independent read-only channels"() {
+        def cache = new ESModuleSourceCache(1024, false)
+        def channel1 = cache.lookup("repo/foo.mjs", 1000L, loaderFor("0123456789"))
+        def channel2 = cache.lookup("repo/foo.mjs", 1000L, loaderFor("0123456789"))
+        def buffer = ByteBuffer.allocate(4)
+        channel1.read(buffer)
+        assertEquals(4L, channel1.position())
+        assertEquals(0L, channel2.position())
+        assertEquals(10L, channel2.size())
+        channel2.position(8)
+        assertEquals("89", readAll(channel2))
+        shouldFail(NonWritableChannelException) {
+            channel1.write(ByteBuffer.wrap([1, 2] as byte[]))
+        }
+    }
+
+    @Test
+    void "should not copy the content of a memory-mapped file into the cache"() {
+        def cache = new ESModuleSourceCache(1024, false)
+        def buffer = ByteBuffer.wrap("export const foo = 1".getBytes("UTF-8"))
+        def channel = cache.lookup("repo/foo.mjs", 1000L,
+            {new ReadOnlyByteBufferChannel(buffer, true /* mapped */)} as ESModuleSourceCache.ContentLoader)
+        assertEquals("export const foo = 1", readAll(channel))
+        assertEquals(0L, cache.getStatistics().sizeBytes())
+        assertEquals(1L, cache.getStatistics().misses())
+    }
+}
@@ -2,12 +2,15 @@ package org.openstreetmap.josm.plugins.scripting.graalvm.esmodule
 
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.data.Preferences
 import org.openstreetmap.josm.plugins.scripting.BaseTestCase
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath
 
+import java.nio.channels.Channels
 import java.nio.file.Files
 
 import static groovy.test.GroovyAssert.shouldFail
+import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.PREF_KEY_GRAALVM_MAP_MODULE_FILES
 import static org.junit.Assert.*
 
 class FileSystemESModuleRepositoryTest extends BaseTestCase {
@@ -147,4 +150,24 @@ class FileSystemESModuleRepositoryTest extends BaseTestCase {
         resolved = repo.resolveModulePath(modulePath)
         assertNull(resolved)
     }
+
+    @Test
+    void "serves a large module from a memory-mapped file"() {
+        final root = Files.createTempDirectory("esmodules").toFile()
+        final content = "export const table = [" + ("1, " * 40_000) + "]"
+        new File(root, "table.mjs").setText(content, "UTF-8")
+        final largeRepo = new FileSystemESModuleRepository(root)
+        final path = largeRepo.resolveModulePath(RelativePath.of("table"))
+        final prefs = Preferences.main()
+        prefs.putBoolean(PREF_KEY_GRAALVM_MAP_MODULE_FILES, true)
+        try {
+            largeRepo.newByteChannel(path).withCloseable {channel ->
+                assertTrue(channel instanceof ReadOnlyByteBufferChannel)
+                assertTrue((channel as ReadOnlyByteBufferChannel).isMapped())
+                assertEquals(content, Channels.newInputStream(channel).getText("UTF-8"))
+            }
+        } finally {
+            prefs.put(PREF_KEY_GRAALVM_MAP_MODULE_FILES, null)
+        }
+    }
 }
@@ -6,6 +6,8 @@ import org.openstreetmap.josm.plugins.scripting.BaseTestCase
 import org.openstreetmap.josm.plugins.scripting.model.RelativePath
 
 import java.nio.channels.Channels
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
 
 import static groovy.test.GroovyAssert.shouldFail
 import static org.junit.Assert.*
@@ -227,4 +229,68 @@ class JarESModuleRepositoryTest extends BaseTestCase {
             repo.newByteChannel(resolvedPath)
         }
     }
+
+    static void writeJarFile(File file, Map<String, String> entries) {
+        file.withOutputStream { os ->
+            def jos = new JarOutputStream(os)
+            entries.each { name, content ->
+                jos.putNextEntry(new JarEntry(name))
+                jos.write(content.getBytes("UTF-8"))
+                jos.closeEntry()
+            }
+            jos.finish()
+        }
+    }
+
+    @Test
+    void "should read modules from the modified jar file"() {
+        def file = File.createTempFile("es-modules", ".jar")
+        file.deleteOnExit()
+        writeJarFile(file, ["a.mjs": "1"])
+        def repo = new JarESModuleRepository(file)
+        def path = repo.resolveModulePath(RelativePath.of("a"))
+        assertEquals("1", Channels.newReader(repo.newByteChannel(path), "utf-8").text)
+
+        writeJarFile(file, ["a.mjs": "22", "b.mjs": "3"])
+        file.setLastModified(file.lastModified() + 2000)
+        // the jar file is checked for modifications at most once per second
+        Thread.sleep(1100)
+        assertEquals("22", Channels.newReader(repo.newByteChannel(path), "utf-8").text)
+        assertNotNull(repo.resolveModulePath(RelativePath.of("b")))
+    }
+
+    @Test
+    void "should prefer a module without suffix, then with suffix mjs, then with suffix js"() {
+        def file = File.createTempFile("es-modules", ".jar")
+        file.deleteOnExit()
+        writeJarFile(file, [
+            "a.js": "", "a.mjs": "",
+            "b.js": "", "b": "",
+            "c.js": ""
+        ])
+        def repo = new JarESModuleRepository(file)
+        def prefix = repo.getUniquePathPrefix()
+        assertEquals(prefix.append(RelativePath.of("a.mjs")), repo.resolveModulePath(RelativePath.of("a")))
+        assertEquals(prefix.append(RelativePath.of("b")), repo.resolveModulePath(RelativePath.of("b")))
+        assertEquals(prefix.append(RelativePath.of("c.js")), repo.resolveModulePath(RelativePath.of("c")))
+        assertNull(repo.resolveModulePath(RelativePath.of("d")))
+    }
+
+    @Test
+    void "should resolve modules added to a modified jar file"() {
+        def file = File.createTempFile("es-modules", ".jar")
+        file.deleteOnExit()
+        writeJarFile(file, ["foo.mjs": "export const foo = 1"])
+        def repo = new JarESModuleRepository(file)
+        assertNull(repo.resolveModulePath(RelativePath.of("bar")))
+
+        writeJarFile(file, ["foo.mjs": "export const foo = 1", "bar.mjs": "export const bar = 2"])
+        file.setLastModified(file.lastModified() + 2000)
+        // the jar file is checked for modifications at most once per second
+        Thread.sleep(1100)
+        def resolved = repo.resolveModulePath(RelativePath.of("bar"))
+        assertNotNull(resolved)
+        def content = Channels.newInputStream(repo.newByteChannel(resolved)).text
+        assertEquals("export const bar = 2", content)
+    }
 }
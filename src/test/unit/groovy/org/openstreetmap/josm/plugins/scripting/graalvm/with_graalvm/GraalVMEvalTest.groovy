@@ -2,6 +2,9 @@ package org.openstreetmap.josm.plugins.scripting.graalvm.with_graalvm
 
 import org.junit.jupiter.api.Test
 import org.openstreetmap.josm.plugins.scripting.graalvm.AbstractGraalVMBasedTest
+import org.openstreetmap.josm.plugins.scripting.graalvm.GraalVMEvalException
+
+import static groovy.test.GroovyAssert.shouldFail
 
 class GraalVMEvalTest extends AbstractGraalVMBasedTest {
 
@@ -25,4 +28,84 @@ class GraalVMEvalTest extends AbstractGraalVMBasedTest {
             facade.eval(graalJSDescriptor, f)
         }
     }
+
+    @Test
+    void "should eval a script file again when it is run twice in the same context"() {
+        def property = "graalvm-eval-test.runs"
+        System.clearProperty(property)
+        def script = """
+            const System = Java.type('java.lang.System')
+            const runs = Number(System.getProperty('${property}', '0'))
+            System.setProperty('${property}', String(runs + 1))
+            """
+        File.createTempFile("js-script", ".mjs").with {
+            deleteOnExit()
+            write script
+            facade.resetContext()
+            facade.eval(graalJSDescriptor, it)
+            facade.eval(graalJSDescriptor, it)
+        }
+        assert System.getProperty(property) == "2"
+    }
+
+    @Test
+    void "should keep the context when a script file is run again"() {
+        def property = "graalvm-eval-test.context"
+        System.clearProperty(property)
+        def script = """
+            const System = Java.type('java.lang.System')
+            globalThis.runs = (globalThis.runs ?? 0) + 1
+            System.setProperty('${property}', String(globalThis.runs))
+            """
+        File.createTempFile("js-script", ".mjs").with {
+            deleteOnExit()
+            write script
+            facade.resetContext()
+            facade.eval(graalJSDescriptor, it)
+            facade.eval(graalJSDescriptor, it)
+            facade.eval(graalJSDescriptor, it)
+        }
+        assert System.getProperty(property) == "3"
+    }
+
+    @Test
+    void "should resolve relative imports when a script file is run again"() {
+        def dir = File.createTempDir("js-scripts", "")
+        dir.deleteOnExit()
+        new File(dir, "lib.mjs").with {
+            deleteOnExit()
+            write "export const answer = 42"
+        }
+        def property = "graalvm-eval-test.import"
+        new File(dir, "main.mjs").with {
+            deleteOnExit()
+            write """
+                import {answer} from './lib.mjs'
+                const System = Java.type('java.lang.System')
+                System.setProperty('${property}', String(answer))
+                """
+            facade.resetContext()
+            facade.eval(graalJSDescriptor, it)
+            System.clearProperty(property)
+            facade.eval(graalJSDescriptor, it)
+        }
+        assert System.getProperty(property) == "42"
+    }
+
+    @Test
+    void "should cancel a running script and eval the next script in a new context"() {
+        def canceller = new Thread({
+            Thread.sleep(500)
+            facade.cancel()
+        })
+        canceller.start()
+        def e = shouldFail(GraalVMEvalException) {
+            facade.eval(graalJSDescriptor, "while (true) {}")
+        }
+        canceller.join()
+        assert e.message == "script execution cancelled"
+
+        def result = facade.eval(graalJSDescriptor, "console.log('still alive')")
+        assert result != null
+    }
 }
@@ -83,9 +83,9 @@ class GraalVMPresentTest extends AbstractGraalVMBasedTest {
     @Test
     void "must not access a class in a foreign namespace"() {
         def script = """
-        const DefaultMustacheFactory = Java.type(
-            'com.github.spullara.mustache.java.DefaultMustacheFactory')
-        DefaultMustacheFactory
+        const ZipFile = Java.type(
+            'org.apache.commons.compress.archivers.zip.ZipFile')
+        ZipFile
         """
         shouldFail(GraalVMEvalException.class) {
             facade.eval(graalJSDescriptor, script) as Value
@@ -5,6 +5,7 @@ import org.openstreetmap.josm.data.coor.LatLon
 import org.openstreetmap.josm.data.osm.DataSet
 import org.openstreetmap.josm.data.osm.Node
 import org.openstreetmap.josm.data.osm.Relation
+import org.openstreetmap.josm.data.osm.RelationMember
 import org.openstreetmap.josm.data.osm.Way
 import org.openstreetmap.josm.gui.layer.OsmDataLayer
 import org.openstreetmap.josm.plugins.scripting.JOSMFixtureBasedTest
@@ -88,4 +89,68 @@ class ChangeMultiCommandTest extends JOSMFixtureBasedTest {
         assertEquals("newvalue", w1.get("name"))
         assertEquals("newvalue", r1.get("name"))
     }
+
+    @Test
+    void "undo state only includes the changed tags"() {
+        def n1 = new Node(new LatLon(1,1))
+        n1.put("name", "oldname")
+        n1.put("highway", "residential")
+        def w1 = new Way(1,1)
+        w1.setNodes([n1,n1])
+        w1.put("highway", "primary")
+
+        OsmDataLayer layer = newLayer()
+        layer.data.addPrimitive(n1)
+        layer.data.addPrimitive(w1)
+
+        def change = new Change().withTagsChange([name: "newname"])
+        def cmd = new ChangeMultiCommand(layer, [n1,w1], change)
+        assertEquals(0L, cmd.getUndoStateSize())
+        assertTrue(cmd.executeCommand())
+        assertEquals("newname", n1.get("name"))
+        assertEquals("newname", w1.get("name"))
+        assertTrue(n1.isModified())
+        assertTrue(cmd.getUndoStateSize() > 0)
+
+        cmd.undoCommand()
+        assertEquals("oldname", n1.get("name"))
+        assertEquals("residential", n1.get("highway"))
+        assertFalse(w1.hasKey("name"))
+        assertEquals("primary", w1.get("highway"))
+        assertEquals([n1,n1], w1.getNodes())
+        assertEquals(1, n1.getCoor().lat(), DELTA)
+        assertFalse(n1.isModified())
+    }
+
+    @Test
+    void "can undo removing all tags, nodes and members"() {
+        def n1 = new Node(new LatLon(1,1))
+        def n2 = new Node(new LatLon(2,2))
+        def w1 = new Way(1,1)
+        w1.setNodes([n1,n2])
+        w1.put("highway", "primary")
+        w1.put("name", "main street")
+        def r1 = new Relation(1,1)
+        r1.setMembers([new RelationMember("role", w1)])
+
+        OsmDataLayer layer = newLayer()
+        [n1,n2,w1,r1].each {layer.data.addPrimitive(it)}
+
+        def change = new Change()
+            .withTagsChange(null)
+            .withMemberChange([])
+        change.withNodeChange([n2,n1])
+        def cmd = new ChangeMultiCommand(layer, [w1,r1], change)
+        assertTrue(cmd.executeCommand())
+        assertFalse(w1.hasKeys())
+        assertEquals([n2,n1], w1.getNodes())
+        assertEquals(0, r1.getMembersCount())
+
+        cmd.undoCommand()
+        assertEquals("primary", w1.get("highway"))
+        assertEquals("main street", w1.get("name"))
+        assertEquals([n1,n2], w1.getNodes())
+        assertEquals(1, r1.getMembersCount())
+        assertEquals("role", r1.getMember(0).getRole())
+    }
 }
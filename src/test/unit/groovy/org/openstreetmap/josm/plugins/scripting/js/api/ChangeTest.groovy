@@ -344,4 +344,38 @@ class ChangeTest extends JOSMFixtureBasedTest {
         def explanation = change.explain(node)
         println "Change: combined: explanation: ${explanation}"
     }
+
+    @Test
+    void "applies a combined change to a mixed selection"() {
+        def change = new Change()
+            .withLatChange(11.11)
+            .withTagsChange([name: "test"])
+        change.withNodeChange([])
+
+        def node = new Node(new LatLon(0,0))
+        def n1 = new Node(new LatLon(1,1))
+        def way = new Way(1,1)
+        way.setNodes([n1,n1])
+        def relation = new Relation(1,1)
+        def incompleteWay = new Way(2)
+
+        [node, way, relation, incompleteWay].each {change.apply(it)}
+        assert node.getCoor().lat() == 11.11d
+        assert node.get("name") == "test"
+        assert way.getNodes() == []
+        assert way.get("name") == "test"
+        assert relation.get("name") == "test"
+        assert !incompleteWay.hasKey("name")
+
+        assert change.getPlan(node).length == 2
+        assert change.getPlan(way).length == 2
+        assert change.getPlan(relation).length == 1
+        assert change.getPlan(incompleteWay).length == 0
+
+        // a property change added later is included in the plans
+        change.withLonChange(22.22)
+        change.apply(node)
+        assert node.getCoor().lon() == 22.22d
+        assert change.getPlan(node).length == 3
+    }
 }
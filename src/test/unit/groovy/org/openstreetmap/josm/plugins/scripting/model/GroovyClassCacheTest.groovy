@@ -0,0 +1,221 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+
+import javax.script.AbstractScriptEngine
+import javax.script.Bindings
+import javax.script.Compilable
+import javax.script.CompiledScript
+import javax.script.ScriptContext
+import javax.script.ScriptEngine
+import javax.script.ScriptEngineFactory
+import javax.script.ScriptException
+import javax.script.SimpleBindings
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class GroovyClassCacheTest extends BaseTestCase {
+
+    /**
+     * Mimics the public API of the Groovy JSR223 script engine which is used
+     * by the class cache.
+     */
+    static class TestGroovyEngine extends AbstractScriptEngine implements Compilable {
+        int compileCount = 0
+        final GroovyClassLoader classLoader = new GroovyClassLoader(GroovyClassCacheTest.classLoader)
+
+        GroovyClassLoader getClassLoader() {
+            return classLoader
+        }
+
+        Object eval(Class<?> scriptClass, ScriptContext ctx) throws ScriptException {
+            final script = scriptClass.getDeclaredConstructor().newInstance() as Script
+            script.binding = new Binding(ctx.getBindings(ScriptContext.ENGINE_SCOPE))
+            return script.run()
+        }
+
+        @Override
+        CompiledScript compile(String script) throws ScriptException {
+            compileCount++
+            final scriptClass = classLoader.parseClass(script)
+            final engine = this
+            return new CompiledScript() {
+                @Override
+                Object eval(ScriptContext context) throws ScriptException {
+                    return engine.eval(scriptClass, context)
+                }
+
+                @Override
+                ScriptEngine getEngine() {
+                    return engine
+                }
+            }
+        }
+
+        @Override
+        CompiledScript compile(Reader script) throws ScriptException {
+            return compile(script.text)
+        }
+
+        @Override
+        Object eval(String script, ScriptContext context) throws ScriptException {
+            return compile(script).eval(context)
+        }
+
+        @Override
+        Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            return compile(reader).eval(context)
+        }
+
+        @Override
+        Bindings createBindings() {
+            return new SimpleBindings()
+        }
+
+        @Override
+        ScriptEngineFactory getFactory() {
+            return [
+                getNames: {["groovy", "Groovy"]},
+                getEngineVersion: {"5.0.4"}
+            ] as ScriptEngineFactory
+        }
+    }
+
+    static File createScriptFile(File dir, String name, String content) {
+        final file = new File(dir, name)
+        file.text = content
+        return file
+    }
+
+    static Object run(JSR223CompiledScriptCache cache, ScriptEngine engine, File scriptFile) {
+        final bindings = new SimpleBindings()
+        bindings.put("a", 2)
+        return cache.compile(engine as Compilable, scriptFile).eval(bindings)
+    }
+
+    @Test
+    void "loads compiled classes after a restart"() {
+        final cacheDir = Files.createTempDirectory("groovy-class-cache")
+        final scriptDir = Files.createTempDirectory("scripts").toFile()
+        final scriptFile = createScriptFile(scriptDir, "add-house-numbers.groovy", """
+            class Helper {
+                static int twice(int i) { 2 * i }
+            }
+            Helper.twice(a) + 1
+        """)
+
+        final classCache = new GroovyClassCache(cacheDir)
+        final engine = new TestGroovyEngine()
+        assertEquals(5, run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile))
+        assertEquals(1L, classCache.statistics.misses())
+        assertEquals(0, engine.compileCount)
+
+        // a new cache and a new engine, as after a restart of JOSM
+        final restartedClassCache = new GroovyClassCache(cacheDir)
+        final restartedEngine = new TestGroovyEngine()
+        assertEquals(5, run(new JSR223CompiledScriptCache(10, restartedClassCache), restartedEngine, scriptFile))
+        assertEquals(1L, restartedClassCache.statistics.hits())
+        assertEquals(0L, restartedClassCache.statistics.misses())
+        assertEquals(0, restartedEngine.compileCount)
+
+        cacheDir.toFile().deleteDir()
+        scriptDir.deleteDir()
+    }
+
+    @Test
+    void "scripts with errors are compiled by the script engine"() {
+        final cacheDir = Files.createTempDirectory("groovy-class-cache")
+        final scriptDir = Files.createTempDirectory("scripts").toFile()
+        final scriptFile = createScriptFile(scriptDir, "broken.groovy", "a +")
+
+        final classCache = new GroovyClassCache(cacheDir)
+        final engine = new TestGroovyEngine()
+        try {
+            run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile)
+            fail("expected a compilation error")
+        } catch (Exception expected) {
+            // the engine reports the compilation error
+        }
+        assertEquals(1L, classCache.statistics.fallbacks())
+        assertEquals(1, engine.compileCount)
+
+        cacheDir.toFile().deleteDir()
+        scriptDir.deleteDir()
+    }
+
+    @Test
+    void "removes stale entries"() {
+        final cacheDir = Files.createTempDirectory("groovy-class-cache")
+        final versionDir = Files.createDirectories(cacheDir.resolve("groovy-5_0_4"))
+        final otherVersionDir = Files.createDirectories(cacheDir.resolve("groovy-4_0_0"))
+        Files.write(otherVersionDir.resolve("0123.classes"), [1, 2, 3] as byte[])
+        final now = System.currentTimeMillis()
+        final staleEntry = Files.write(versionDir.resolve("4567.classes"), [1, 2, 3] as byte[])
+        Files.setLastModifiedTime(staleEntry,
+            FileTime.fromMillis(now - TimeUnit.DAYS.toMillis(GroovyClassCache.STALE_AFTER_DAYS + 1)))
+        final usedEntry = Files.write(versionDir.resolve("89ab.classes"), [1, 2, 3] as byte[])
+
+        new GroovyClassCache(cacheDir).cleanUp(versionDir, now)
+        assertFalse(Files.exists(otherVersionDir))
+        assertFalse(Files.exists(staleEntry))
+        assertTrue(Files.exists(usedEntry))
+
+        cacheDir.toFile().deleteDir()
+    }
+
+    @Test
+    void "keeps entries in a directory per version key"() {
+        final cacheDir = Files.createTempDirectory("groovy-class-cache")
+        final scriptDir = Files.createTempDirectory("scripts").toFile()
+        final scriptFile = createScriptFile(scriptDir, "script.groovy", "a + 1")
+        final engine = new TestGroovyEngine()
+
+        final versionKey = GroovyClassCache.versionKey(engine)
+        assertTrue(versionKey.matches(/groovy-5_0_4-[0-9a-f]{16}/))
+        assertEquals(versionKey, GroovyClassCache.versionKey(new TestGroovyEngine()))
+
+        final classCache = new GroovyClassCache(cacheDir)
+        assertEquals(3, run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile))
+        assertEquals(1, Files.list(cacheDir.resolve(versionKey)).count())
+
+        cacheDir.toFile().deleteDir()
+        scriptDir.deleteDir()
+    }
+
+    @Test
+    void "keeps separate entries for scripts with the same source but different names"() {
+        final cacheDir = Files.createTempDirectory("groovy-class-cache")
+        final scriptDir = Files.createTempDirectory("scripts").toFile()
+        final source = "this.class.name"
+        final scriptFile1 = createScriptFile(scriptDir, "first.groovy", source)
+        final scriptFile2 = createScriptFile(scriptDir, "second.groovy", source)
+        final engine = new TestGroovyEngine()
+
+        final classCache = new GroovyClassCache(cacheDir)
+        assertEquals("first", run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile1))
+        assertEquals("second", run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile2))
+        assertEquals(2L, classCache.statistics.misses())
+        assertEquals(0L, classCache.statistics.hits())
+
+        // a script with the same name and source in another directory reuses the entry
+        final otherDir = Files.createTempDirectory("scripts").toFile()
+        final scriptFile3 = createScriptFile(otherDir, "first.groovy", source)
+        assertEquals("first", run(new JSR223CompiledScriptCache(10, classCache), engine, scriptFile3))
+        assertEquals(1L, classCache.statistics.hits())
+
+        cacheDir.toFile().deleteDir()
+        scriptDir.deleteDir()
+        otherDir.deleteDir()
+    }
+
+    @Test
+    void "derives valid class names from file names"() {
+        assertEquals("AddHouseNumbers", GroovyClassCache.scriptClassName("AddHouseNumbers.groovy"))
+        assertEquals("add_house_numbers", GroovyClassCache.scriptClassName("add-house-numbers.groovy"))
+        assertEquals("_1script", GroovyClassCache.scriptClassName("1script.groovy"))
+    }
+}
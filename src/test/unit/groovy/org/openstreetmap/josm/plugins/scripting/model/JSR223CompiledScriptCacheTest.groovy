@@ -0,0 +1,107 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+
+import javax.script.Compilable
+import javax.script.CompiledScript
+import javax.script.ScriptContext
+import javax.script.ScriptEngine
+import javax.script.ScriptException
+import java.nio.file.Files
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class JSR223CompiledScriptCacheTest extends BaseTestCase {
+
+    static class CountingCompiler implements Compilable {
+        final List<String> compiled = []
+
+        @Override
+        CompiledScript compile(String script) throws ScriptException {
+            compiled << script
+            final source = script
+            return new CompiledScript() {
+                @Override
+                Object eval(ScriptContext context) throws ScriptException {
+                    return source
+                }
+
+                @Override
+                ScriptEngine getEngine() {
+                    return null
+                }
+            }
+        }
+
+        @Override
+        CompiledScript compile(Reader script) throws ScriptException {
+            return compile(script.text)
+        }
+    }
+
+    static File createScriptFile(String content) {
+        final file = Files.createTempFile("script", ".groovy").toFile()
+        file.deleteOnExit()
+        file.text = content
+        return file
+    }
+
+    @Test
+    void "replies a cached script if the content is unchanged"() {
+        final cache = new JSR223CompiledScriptCache(10)
+        final compiler = new CountingCompiler()
+        final file = createScriptFile("println 'hello'")
+        final script1 = cache.compile(compiler, file)
+        final script2 = cache.compile(compiler, file)
+        assertSame(script1, script2)
+        assertEquals(["println 'hello'"], compiler.compiled)
+        final stats = cache.statistics
+        assertEquals(1L, stats.hits())
+        assertEquals(1L, stats.misses())
+        assertEquals(1, stats.size())
+    }
+
+    @Test
+    void "recompiles a script if the content changes without changing the modification time"() {
+        final cache = new JSR223CompiledScriptCache(10)
+        final compiler = new CountingCompiler()
+        final file = createScriptFile("println 'hello'")
+        final lastModified = file.lastModified()
+        cache.compile(compiler, file)
+        file.text = "println 'world'"
+        file.setLastModified(lastModified)
+        assertEquals("println 'world'", cache.compile(compiler, file).eval(null as ScriptContext))
+        assertEquals(2, compiler.compiled.size())
+        assertEquals(1, cache.statistics.size())
+    }
+
+    @Test
+    void "evicts the least recently used script"() {
+        final cache = new JSR223CompiledScriptCache(2)
+        final compiler = new CountingCompiler()
+        final file1 = createScriptFile("1")
+        final file2 = createScriptFile("2")
+        final file3 = createScriptFile("3")
+        cache.compile(compiler, file1)
+        cache.compile(compiler, file2)
+        // file1 is now more recently used than file2
+        cache.compile(compiler, file1)
+        cache.compile(compiler, file3)
+        assertEquals(1L, cache.statistics.evictions())
+        assertEquals(2, cache.statistics.size())
+
+        cache.compile(compiler, file1)
+        assertEquals(["1", "2", "3"], compiler.compiled)
+        cache.compile(compiler, file2)
+        assertEquals(["1", "2", "3", "2"], compiler.compiled)
+    }
+
+    @Test
+    void "rejects an invalid capacity"() {
+        shouldFail(IllegalArgumentException) {
+            new JSR223CompiledScriptCache(0)
+        }
+    }
+}
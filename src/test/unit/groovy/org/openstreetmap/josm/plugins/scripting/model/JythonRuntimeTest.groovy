@@ -0,0 +1,118 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+
+import javax.script.ScriptEngine
+import javax.script.ScriptEngineManager
+import java.nio.file.Files
+
+import static org.junit.Assert.*
+
+class JythonRuntimeTest extends BaseTestCase {
+
+    public static Object result = null
+
+    static ScriptEngine createJythonEngine() {
+        final engine = new ScriptEngineManager().getEngineByName("python")
+        assertNotNull("No Jython scripting engine found", engine)
+        return engine
+    }
+
+    static File createScript(File dir, String name, String content) {
+        final file = new File(dir, name)
+        file.text = """
+from org.openstreetmap.josm.plugins.scripting.model import JythonRuntimeTest
+${content.replaceAll(/\s+$/, "").stripIndent().trim()}
+"""
+        return file
+    }
+
+    @Test
+    void "sets __file__ and adds the script directory to sys path"() {
+        final dir = Files.createTempDirectory("jython").toFile()
+        new File(dir, "my_module.py").text = "def add(a, b):\n    return a + b\n"
+        final script = createScript(dir, "my_script.py", """
+            from my_module import add
+            JythonRuntimeTest.result = [__file__, add(5, 3)]
+        """)
+        new JythonRuntime().run(createJythonEngine(), script)
+        assertEquals([script.path, 8], result)
+        dir.deleteDir()
+    }
+
+    @Test
+    void "initializes a reused interpreter only once"() {
+        final dir = Files.createTempDirectory("jython").toFile()
+        final runtime = new JythonRuntime() {
+            @Override
+            protected List<String> getInitialSysPath() {
+                return ["/foo/bar/sys-path"]
+            }
+
+            @Override
+            protected List<String> getPreloadModules() {
+                return ["json"]
+            }
+        }
+        final pool = new ScriptEnginePool(1, 60_000)
+        final script = createScript(dir, "my_script.py", """
+            import sys
+            try:
+                counter = counter + 1
+            except NameError:
+                counter = 1
+            JythonRuntimeTest.result = [
+                counter,
+                'json' in sys.modules,
+                sys.path.count('/foo/bar/sys-path'),
+                sys.path.count('${dir.path}')
+            ]
+        """)
+        def engine = pool.borrow("jython", JythonRuntimeTest::createJythonEngine)
+        assertFalse(runtime.isInitialized(engine))
+        runtime.run(engine, script)
+        assertTrue(runtime.isInitialized(engine))
+        assertEquals([1, true, 1, 1], result)
+        pool.release("jython", engine)
+
+        final reused = pool.borrow("jython", JythonRuntimeTest::createJythonEngine)
+        assertSame(engine, reused)
+        runtime.run(reused, script)
+        // the globals are reset, sys.path isn't extended again
+        assertEquals([1, true, 1, 1], result)
+        dir.deleteDir()
+    }
+
+    @Test
+    void "discards the state of an interpreter discarded by the pool"() {
+        final dir = Files.createTempDirectory("jython").toFile()
+        final runtime = new JythonRuntime()
+        final pool = new ScriptEnginePool(1, 60_000)
+        pool.addDiscardListener(runtime::discard)
+        final script = createScript(dir, "my_script.py", "JythonRuntimeTest.result = 1")
+        final engine = pool.borrow("jython", JythonRuntimeTest::createJythonEngine)
+        runtime.run(engine, script)
+        assertTrue(runtime.isInitialized(engine))
+        pool.release("jython", engine)
+        assertTrue(runtime.isInitialized(engine))
+
+        pool.clear()
+        assertFalse(runtime.isInitialized(engine))
+        dir.deleteDir()
+    }
+
+    @Test
+    void "recompiles a script if its content changes"() {
+        final dir = Files.createTempDirectory("jython").toFile()
+        final runtime = new JythonRuntime()
+        final engine = createJythonEngine()
+        final script = createScript(dir, "my_script.py", "JythonRuntimeTest.result = 1")
+        runtime.run(engine, script)
+        assertEquals(1, result)
+        createScript(dir, "my_script.py", "JythonRuntimeTest.result = 2")
+        runtime.run(engine, script)
+        assertEquals(2, result)
+        dir.deleteDir()
+    }
+}
@@ -0,0 +1,106 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+import org.openstreetmap.josm.plugins.scripting.model.ScriptEngineDiscoveryIndex.FactoryInfo
+import org.openstreetmap.josm.plugins.scripting.preferences.ScriptEngineJarInfo
+
+import javax.script.ScriptEngine
+import javax.script.ScriptEngineFactory
+import java.nio.file.Files
+
+import static org.junit.Assert.*
+
+class ScriptEngineDiscoveryIndexTest extends BaseTestCase {
+
+    static class TestScriptEngineFactory implements ScriptEngineFactory {
+        static int instances = 0
+
+        TestScriptEngineFactory() {
+            instances++
+        }
+
+        String getEngineName() { "Test Engine" }
+        String getEngineVersion() { "1.0" }
+        List<String> getExtensions() { ["test"] }
+        List<String> getMimeTypes() { ["text/x-test", "application/x-test"] }
+        List<String> getNames() { ["test", "Test"] }
+        String getLanguageName() { "test" }
+        String getLanguageVersion() { "2.0" }
+        Object getParameter(String key) { key == ScriptEngine.NAME ? "test" : null }
+        String getMethodCallSyntax(String obj, String m, String... args) { "" }
+        String getOutputStatement(String toDisplay) { "" }
+        String getProgram(String... statements) { "" }
+        ScriptEngine getScriptEngine() { null }
+    }
+
+    static File createJar() {
+        final jar = Files.createTempFile("engine", ".jar").toFile()
+        jar.deleteOnExit()
+        jar.bytes = [1, 2, 3] as byte[]
+        return jar
+    }
+
+    @Test
+    void "can save and load the index"() {
+        final jar = createJar()
+        final invalidJar = createJar()
+        final index = new ScriptEngineDiscoveryIndex()
+        final info = FactoryInfo.of(new TestScriptEngineFactory())
+        index.put(jar, ScriptEngineJarInfo.OK_MESSAGE, [info])
+        index.put(invalidJar, "no script engine", [])
+
+        final loaded = new ScriptEngineDiscoveryIndex()
+        loaded.fromMaps(index.toMaps())
+        final entry = loaded.lookup(jar)
+        assertNotNull(entry)
+        assertTrue(entry.isValid())
+        assertEquals([info], entry.factories())
+        assertEquals(TestScriptEngineFactory.name, entry.factories()[0].className())
+        assertEquals(["text/x-test", "application/x-test"], entry.factories()[0].mimeTypes())
+
+        final invalidEntry = loaded.lookup(invalidJar)
+        assertFalse(invalidEntry.isValid())
+        assertEquals([], invalidEntry.factories())
+    }
+
+    @Test
+    void "a changed jar isn't up to date"() {
+        final jar = createJar()
+        final index = new ScriptEngineDiscoveryIndex()
+        index.put(jar, ScriptEngineJarInfo.OK_MESSAGE, [])
+        assertNotNull(index.lookup(jar))
+        jar.bytes = [1, 2, 3, 4] as byte[]
+        assertNull(index.lookup(jar))
+        jar.delete()
+        assertNull(index.lookup(jar))
+    }
+
+    @Test
+    void "removes jars which aren't configured anymore"() {
+        final jar1 = createJar()
+        final jar2 = createJar()
+        final index = new ScriptEngineDiscoveryIndex()
+        index.put(jar1, ScriptEngineJarInfo.OK_MESSAGE, [])
+        index.put(jar2, ScriptEngineJarInfo.OK_MESSAGE, [])
+        index.retainJars([jar2])
+        assertNull(index.lookup(jar1))
+        assertNotNull(index.lookup(jar2))
+    }
+
+    @Test
+    void "indexed factory is loaded on demand"() {
+        final info = FactoryInfo.of(new TestScriptEngineFactory())
+        final instances = TestScriptEngineFactory.instances
+        final factory = new IndexedScriptEngineFactory(info, getClass().classLoader, null)
+        assertEquals("Test Engine", factory.engineName)
+        assertEquals(["test", "Test"], factory.names)
+        assertEquals(["test"], factory.extensions)
+        assertFalse(factory.isLoaded())
+        assertEquals(instances, TestScriptEngineFactory.instances)
+
+        assertEquals("test", factory.getParameter(ScriptEngine.NAME))
+        assertTrue(factory.isLoaded())
+        assertEquals(instances + 1, TestScriptEngineFactory.instances)
+    }
+}
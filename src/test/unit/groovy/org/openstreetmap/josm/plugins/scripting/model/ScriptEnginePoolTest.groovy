@@ -0,0 +1,149 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.BaseTestCase
+
+import javax.script.AbstractScriptEngine
+import javax.script.Bindings
+import javax.script.ScriptContext
+import javax.script.ScriptEngineFactory
+import javax.script.ScriptException
+import javax.script.SimpleBindings
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class ScriptEnginePoolTest extends BaseTestCase {
+
+    static class TestScriptEngine extends AbstractScriptEngine {
+        @Override
+        Object eval(String script, ScriptContext context) throws ScriptException {
+            return null
+        }
+
+        @Override
+        Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            return null
+        }
+
+        @Override
+        Bindings createBindings() {
+            return new SimpleBindings()
+        }
+
+        @Override
+        ScriptEngineFactory getFactory() {
+            return null
+        }
+    }
+
+    @Test
+    void "reuses a released engine"() {
+        final pool = new ScriptEnginePool(2, 60_000)
+        final engine1 = pool.borrow("test", {new TestScriptEngine()})
+        pool.release("test", engine1)
+        final engine2 = pool.borrow("test", {new TestScriptEngine()})
+        assertSame(engine1, engine2)
+        // engines aren't shared between factories
+        final engine3 = pool.borrow("other", {new TestScriptEngine()})
+        assertNotSame(engine1, engine3)
+        final stats = pool.statistics
+        assertEquals(2L, stats.created())
+        assertEquals(1L, stats.reused())
+    }
+
+    @Test
+    void "resets the bindings of a released engine"() {
+        final pool = new ScriptEnginePool(2, 60_000)
+        final engine = pool.borrow("test", {new TestScriptEngine()})
+        engine.put("foo", "bar")
+        pool.release("test", engine)
+        assertNull(pool.borrow("test", {new TestScriptEngine()}).get("foo"))
+    }
+
+    @Test
+    void "keeps at most the maximum number of idle engines"() {
+        final pool = new ScriptEnginePool(1, 60_000)
+        final engine1 = pool.borrow("test", {new TestScriptEngine()})
+        final engine2 = pool.borrow("test", {new TestScriptEngine()})
+        pool.release("test", engine1)
+        pool.release("test", engine2)
+        assertEquals(1, pool.statistics.idle())
+
+        final disabled = new ScriptEnginePool(0, 60_000)
+        disabled.release("test", disabled.borrow("test", {new TestScriptEngine()}))
+        assertEquals(0, disabled.statistics.idle())
+    }
+
+    @Test
+    void "evicts engines after the idle timeout"() {
+        long now = 0
+        final pool = new ScriptEnginePool(2, 1_000, {now})
+        final engine1 = pool.borrow("test", {new TestScriptEngine()})
+        final engine2 = pool.borrow("test", {new TestScriptEngine()})
+        pool.release("test", engine1)
+        now = 500
+        pool.release("test", engine2)
+        now = 1_000
+        pool.evictIdle()
+        def stats = pool.statistics
+        assertEquals(1L, stats.evicted())
+        assertEquals(1, stats.idle())
+        assertSame(engine2, pool.borrow("test", {new TestScriptEngine()}))
+    }
+
+    @Test
+    void "notifies discard listeners about discarded engines"() {
+        long now = 0
+        final discarded = []
+        final pool = new ScriptEnginePool(1, 1_000, {now})
+        pool.addDiscardListener({discarded << it})
+        final engine1 = pool.borrow("test", {new TestScriptEngine()})
+        final engine2 = pool.borrow("test", {new TestScriptEngine()})
+        final engine3 = pool.borrow("other", {new TestScriptEngine()})
+        pool.release("test", engine1)
+        // there is already an idle engine for 'test'
+        pool.release("test", engine2)
+        assertEquals([engine2], discarded)
+
+        now = 1_000
+        pool.evictIdle()
+        assertEquals([engine2, engine1], discarded)
+
+        pool.release("other", engine3)
+        pool.clear()
+        assertEquals([engine2, engine1, engine3], discarded)
+    }
+
+    @Test
+    void "discards an engine borrowed before the pool was cleared"() {
+        final discarded = []
+        final pool = new ScriptEnginePool(2, 60_000)
+        pool.addDiscardListener({discarded << it})
+        final engine1 = pool.borrow("test", {new TestScriptEngine()})
+        pool.clear()
+        final engine2 = pool.borrow("test", {new TestScriptEngine()})
+        pool.release("test", engine1)
+        pool.release("test", engine2)
+        assertEquals([engine1], discarded)
+        assertEquals(1, pool.statistics.idle())
+        assertSame(engine2, pool.borrow("test", {new TestScriptEngine()}))
+    }
+
+    @Test
+    void "replies null if no engine can be created"() {
+        final pool = new ScriptEnginePool(2, 60_000)
+        assertNull(pool.borrow("test", {null}))
+        assertEquals(0L, pool.statistics.created())
+    }
+
+    @Test
+    void "rejects invalid parameters"() {
+        shouldFail(IllegalArgumentException) {
+            new ScriptEnginePool(-1, 60_000)
+        }
+        shouldFail(IllegalArgumentException) {
+            new ScriptEnginePool(1, 0)
+        }
+    }
+}
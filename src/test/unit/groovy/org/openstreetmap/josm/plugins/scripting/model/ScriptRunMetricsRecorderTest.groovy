@@ -0,0 +1,82 @@
+package org.openstreetmap.josm.plugins.scripting.model
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.data.coor.LatLon
+import org.openstreetmap.josm.data.osm.DataSet
+import org.openstreetmap.josm.data.osm.Node
+import org.openstreetmap.josm.gui.MainApplication
+import org.openstreetmap.josm.gui.layer.OsmDataLayer
+import org.openstreetmap.josm.plugins.scripting.JOSMFixtureBasedTest
+import org.openstreetmap.josm.plugins.scripting.js.api.Change
+import org.openstreetmap.josm.plugins.scripting.js.api.ChangeMultiCommand
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class ScriptRunMetricsRecorderTest extends JOSMFixtureBasedTest {
+
+    @Test
+    void recordRun() {
+        def recording = ScriptRunMetricsRecorder.start("test.js")
+        try {
+            ScriptRunMetricsRecorder.addModuleLoadTime(2_000_000)
+            ScriptRunMetricsRecorder.addModuleLoadTime(3_000_000)
+            def metrics = ScriptRunMetricsRecorder.getMetrics()
+            assertEquals("test.js", metrics.scriptName())
+            assertEquals(5_000_000L, metrics.moduleLoadTimeNanos())
+            assertEquals(0, metrics.primitivesTouched())
+            assertFalse(metrics.failed())
+        } finally {
+            recording.close()
+        }
+        def metrics = ScriptRunMetricsRecorder.getLastMetrics()
+        assertEquals("test.js", metrics.scriptName())
+        assertTrue(metrics.wallTimeNanos() >= 0)
+        assertEquals(5.0d, metrics.moduleLoadTimeMillis(), 0.001d)
+    }
+
+    @Test
+    void markFailed() {
+        try (def recording = ScriptRunMetricsRecorder.start("failing.js")) {
+            ScriptRunMetricsRecorder.markFailed()
+        }
+        assertTrue(ScriptRunMetricsRecorder.getLastMetrics().failed())
+    }
+
+    @Test
+    void ignoreModuleLoadTimeOutsideOfRun() {
+        try (def recording = ScriptRunMetricsRecorder.start("test.js")) {
+        }
+        ScriptRunMetricsRecorder.addModuleLoadTime(1_000_000)
+        ScriptRunMetricsRecorder.markFailed()
+        def metrics = ScriptRunMetricsRecorder.getMetrics()
+        assertEquals(0L, metrics.moduleLoadTimeNanos())
+        assertFalse(metrics.failed())
+    }
+
+    @Test
+    void countPrimitivesTouchedByBatchedCommand() {
+        def layer = new OsmDataLayer(new DataSet(), null, null)
+        def nodes = (1..100).collect { new Node(new LatLon(0, 0)) }
+        nodes.each { layer.data.addPrimitive(it) }
+        MainApplication.getLayerManager().addLayer(layer)
+        try {
+            try (def recording = ScriptRunMetricsRecorder.start("batched.js")) {
+                // enough changes to be fired as one DataChangedEvent
+                def cmd = new ChangeMultiCommand(layer, nodes.subList(0, 40),
+                    new Change().withLatChange(1.0))
+                cmd.executeCommand()
+            }
+            assertEquals(40, ScriptRunMetricsRecorder.getLastMetrics().primitivesTouched())
+        } finally {
+            MainApplication.getLayerManager().removeLayer(layer)
+        }
+    }
+
+    @Test
+    void startWithNullName() {
+        shouldFail(NullPointerException) {
+            ScriptRunMetricsRecorder.start(null)
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test
 import org.openstreetmap.josm.data.Preferences
 import org.openstreetmap.josm.plugins.scripting.JOSMFixtureBasedTest
 
+import static groovy.test.GroovyAssert.shouldFail
 import static org.junit.Assert.*
 import static org.openstreetmap.josm.plugins.scripting.model.PreferenceKeys.*
 import static org.openstreetmap.josm.plugins.scripting.preferences.graalvm.GraalVMPrivilegesModel.DefaultAccessPolicy.ALLOW_ALL
@@ -301,4 +302,40 @@ class GraalVMPrivilegesModelTest extends JOSMFixtureBasedTest {
                 model.getHostAccessPolicy())
 
     }
+
+    @Test
+    void "should properly init the resource limits from preferences"() {
+        def prefs = new Preferences()
+        def model = new GraalVMPrivilegesModel()
+
+        // no limits by default
+        model.initFromPreferences(prefs)
+        assertEquals(0, model.getExecutionTimeout())
+        assertEquals(0L, model.getStatementLimit())
+        assertFalse(model.isCancelOnMemoryPressure())
+
+        prefs.putInt(GRAALVM_EXECUTION_TIMEOUT, 30)
+        prefs.putLong(GRAALVM_STATEMENT_LIMIT, 1_000_000L)
+        prefs.putBoolean(GRAALVM_CANCEL_ON_MEMORY_PRESSURE, true)
+        model.initFromPreferences(prefs)
+        assertEquals(30, model.getExecutionTimeout())
+        assertEquals(1_000_000L, model.getStatementLimit())
+        assertTrue(model.isCancelOnMemoryPressure())
+
+        // negative limits are ignored
+        prefs.putInt(GRAALVM_EXECUTION_TIMEOUT, -1)
+        model.initFromPreferences(prefs)
+        assertEquals(0, model.getExecutionTimeout())
+    }
+
+    @Test
+    void "should reject negative resource limits"() {
+        def model = new GraalVMPrivilegesModel()
+        shouldFail(IllegalArgumentException) {
+            model.setExecutionTimeout(-1)
+        }
+        shouldFail(IllegalArgumentException) {
+            model.setStatementLimit(-1)
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package org.openstreetmap.josm.plugins.scripting.ui
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.data.coor.LatLon
+import org.openstreetmap.josm.data.osm.DataSet
+import org.openstreetmap.josm.data.osm.Node
+import org.openstreetmap.josm.gui.MainApplication
+import org.openstreetmap.josm.gui.layer.OsmDataLayer
+import org.openstreetmap.josm.plugins.scripting.JOSMFixtureBasedTest
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class BackgroundDataSetLockTest extends JOSMFixtureBasedTest {
+
+    @Test
+    void "locks the data sets of the data layers while a script runs"() {
+        final layer = new OsmDataLayer(new DataSet(), null, null)
+        final readOnly = new DataSet()
+        readOnly.lock()
+        final readOnlyLayer = new OsmDataLayer(readOnly, null, null)
+        MainApplication.getLayerManager().addLayer(layer)
+        MainApplication.getLayerManager().addLayer(readOnlyLayer)
+        try {
+            BackgroundDataSetLock.lock()
+            try {
+                assertTrue(layer.dataSet.isLocked())
+                shouldFail(IllegalStateException) {
+                    layer.dataSet.addPrimitive(new Node(new LatLon(0, 0)))
+                }
+                BackgroundDataSetLock.runUnlocked {
+                    assertFalse(layer.dataSet.isLocked())
+                    layer.dataSet.addPrimitive(new Node(new LatLon(0, 0)))
+                }
+                assertTrue(layer.dataSet.isLocked())
+            } finally {
+                BackgroundDataSetLock.unlock()
+            }
+            assertFalse(layer.dataSet.isLocked())
+            assertEquals(1, layer.dataSet.nodes.size())
+            // a data set which was already locked stays locked
+            assertTrue(readOnly.isLocked())
+        } finally {
+            MainApplication.getLayerManager().removeLayer(layer)
+            MainApplication.getLayerManager().removeLayer(readOnlyLayer)
+        }
+    }
+
+    @Test
+    void "rejects a null runnable"() {
+        shouldFail(NullPointerException) {
+            BackgroundDataSetLock.runUnlocked(null)
+        }
+    }
+}
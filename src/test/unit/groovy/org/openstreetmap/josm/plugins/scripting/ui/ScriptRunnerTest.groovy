@@ -0,0 +1,109 @@
+package org.openstreetmap.josm.plugins.scripting.ui
+
+import org.junit.jupiter.api.Test
+import org.openstreetmap.josm.plugins.scripting.JOSMFixtureBasedTest
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static groovy.test.GroovyAssert.shouldFail
+import static org.junit.Assert.*
+
+class ScriptRunnerTest extends JOSMFixtureBasedTest {
+
+    static void waitUntilIdle(ScriptRunner runner) {
+        final deadline = System.currentTimeMillis() + 5000
+        while (runner.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertFalse(runner.isRunning())
+    }
+
+    @Test
+    void "runs submitted scripts one after the other"() {
+        final runner = new ScriptRunner()
+        final runs = Collections.synchronizedList([])
+        (1..3).each {i -> runner.submit({runs << i} as Runnable, null)}
+        waitUntilIdle(runner)
+        assertEquals([1, 2, 3], runs)
+    }
+
+    @Test
+    void "counts a script as running until it is finished"() {
+        final runner = new ScriptRunner()
+        final started = new CountDownLatch(1)
+        final release = new CountDownLatch(1)
+        runner.submit({
+            started.countDown()
+            release.await()
+        } as Runnable, null)
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        assertTrue(runner.isRunning())
+        release.countDown()
+        waitUntilIdle(runner)
+    }
+
+    @Test
+    void "cancel drops the waiting scripts"() {
+        final runner = new ScriptRunner()
+        final started = new CountDownLatch(1)
+        final release = new CountDownLatch(1)
+        final cancelled = new AtomicBoolean(false)
+        final droppedRun = new AtomicBoolean(false)
+        runner.submit({
+            started.countDown()
+            release.await()
+        } as Runnable, {
+            cancelled.set(true)
+            release.countDown()
+        } as Runnable)
+        runner.submit({droppedRun.set(true)} as Runnable, null)
+        runner.submit({droppedRun.set(true)} as Runnable, null)
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+
+        runner.cancel()
+        assertTrue(cancelled.get())
+        waitUntilIdle(runner)
+        assertFalse(droppedRun.get())
+
+        // the count of running scripts is still consistent
+        final ran = new CountDownLatch(1)
+        runner.submit({ran.countDown()} as Runnable, null)
+        assertTrue(ran.await(5, TimeUnit.SECONDS))
+        waitUntilIdle(runner)
+    }
+
+    @Test
+    void "cancel interrupts a script without cancel handler"() {
+        final runner = new ScriptRunner()
+        final started = new CountDownLatch(1)
+        final interrupted = new AtomicBoolean(false)
+        runner.submit({
+            started.countDown()
+            try {
+                Thread.sleep(10_000)
+            } catch (InterruptedException e) {
+                interrupted.set(true)
+            }
+        } as Runnable, null)
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        runner.cancel()
+        waitUntilIdle(runner)
+        assertTrue(interrupted.get())
+    }
+
+    @Test
+    void "cancel without scripts is a no-op"() {
+        final runner = new ScriptRunner()
+        runner.cancel()
+        assertFalse(runner.isRunning())
+    }
+
+    @Test
+    void "rejects a null task"() {
+        shouldFail(NullPointerException) {
+            new ScriptRunner().submit(null, null)
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.openstreetmap.josm.plugins.scripting.js.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.scripting.fixtures.JOSMFixture;
+import org.openstreetmap.josm.plugins.scripting.js.api.Change.PropertyChange;
+
+/**
+ * Compares applying a {@link Change} to a mixed selection of nodes, ways and
+ * relations with the compiled per-type plans of the change and with the
+ * former exception-driven check of {@link Change.PropertyChange#ensureApplicable(OsmPrimitive)}.
+ * <p>
+ * Run it with <code>./gradlew benchmarkChangeApply</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeApplyBenchmark {
+
+    @Param({"10000"})
+    public int numPrimitives;
+
+    private Change change;
+    private List<PropertyChange<?>> propertyChanges;
+    private OsmPrimitive[] primitives;
+
+    @Setup
+    public void setUp() throws Exception {
+        JOSMFixture.createFixture();
+        change = new Change()
+            .withLatChange(12.34)
+            .withLonChange(56.78)
+            .withTagsChange(Map.of("name", "benchmark"));
+        change.withNodeChange(new ArrayList<>());
+        propertyChanges = change.getPropertyChanges();
+
+        // a third nodes, ways and relations each
+        final List<OsmPrimitive> selection = new ArrayList<>();
+        for (int i = 0; i < numPrimitives; i++) {
+            final Node node = new Node(new LatLon(1, 1));
+            switch (i % 3) {
+                case 0 -> selection.add(node);
+                case 1 -> {
+                    final Way way = new Way(i + 1, 1);
+                    way.setNodes(List.of(node, node));
+                    selection.add(way);
+                }
+                default -> {
+                    final Relation relation = new Relation(i + 1, 1);
+                    relation.setMembers(List.of(new RelationMember("role", node)));
+                    selection.add(relation);
+                }
+            }
+        }
+        primitives = selection.toArray(new OsmPrimitive[0]);
+    }
+
+    /**
+     * Applies the change with the compiled per-type plans.
+     */
+    @Benchmark
+    public void compiledPlans(Blackhole blackhole) {
+        for (OsmPrimitive primitive: primitives) {
+            change.apply(primitive);
+        }
+        blackhole.consume(primitives);
+    }
+
+    /**
+     * Applies the change as it was applied before the per-type plans were
+     * introduced: every property change is checked for every primitive with
+     * {@link Change.PropertyChange#ensureApplicable(OsmPrimitive)}, which
+     * throws if it doesn't apply.
+     */
+    @Benchmark
+    public void exceptionDrivenChecks(Blackhole blackhole) {
+        for (OsmPrimitive primitive: primitives) {
+            for (PropertyChange<?> propertyChange: propertyChanges) {
+                boolean applies;
+                try {
+                    propertyChange.ensureApplicable(primitive);
+                    applies = true;
+                } catch (Exception e) {
+                    applies = false;
+                }
+                if (applies) {
+                    propertyChange.apply(primitive);
+                }
+            }
+        }
+        blackhole.consume(primitives);
+    }
+}